@@ -0,0 +1,148 @@
+package com.example.energybot_weather_app;
+
+import com.example.energybot_weather_app.ingest.BinaryStationFileWriter;
+import com.example.energybot_weather_app.ingest.GhcnBinaryEncoder;
+import com.example.energybot_weather_app.ingest.IngestPipeline;
+import com.example.energybot_weather_app.ingest.SortedStationWriter;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Deterministic generator for GHCN-Daily "by_year" style CSV data used by the benchmarks.
+ *
+ * Rows are ordered by date and then station, like the NOAA files, so every station
+ * is interleaved with every other one throughout the file.
+ */
+public final class SyntheticGhcnData {
+    private static final String[] ELEMENTS = {"PRCP", "TMAX", "TMIN", "SNOW", "SNWD", "TAVG"};
+    private static final String[] STATION_PREFIXES = {"USC00", "USW00", "US1CO", "CA00", "ASN000"};
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private SyntheticGhcnData() {
+    }
+
+    /**
+     * Write a gzip-compressed data file with the given number of stations and days
+     *
+     * @return the number of lines written
+     */
+    public static long writeGzip(Path file, int stations, int days, long seed) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024)) {
+            return write(out, stations, days, seed);
+        }
+    }
+
+    /**
+     * Write uncompressed CSV lines to the stream
+     *
+     * @return the number of lines written
+     */
+    public static long write(OutputStream out, int stations, int days, long seed) throws IOException {
+        Random random = new Random(seed);
+        String[] stationIds = stationIds(stations, random);
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        long lines = 0;
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 64 * 1024);
+        for (int day = 0; day < days; day++) {
+            String date = start.plusDays(day).format(DATE_FORMAT);
+            for (String stationId : stationIds) {
+                for (String element : ELEMENTS) {
+                    // Not every station reports every element every day
+                    if (random.nextInt(4) == 0) {
+                        continue;
+                    }
+                    writer.write(line(stationId, date, element, random));
+                    writer.write('\n');
+                    lines++;
+                }
+            }
+        }
+        writer.flush();
+        return lines;
+    }
+
+    /**
+     * Ingest synthetic data into binary station files in the directory, sorting through a
+     * temporary run directory
+     *
+     * @return the station IDs, in ascending order
+     */
+    public static String[] writeBinaryStationFiles(Path directory, int stations, int days, long seed) throws IOException {
+        Path runDir = Files.createTempDirectory("synthetic-runs");
+        try {
+            ByteArrayOutputStream csv = new ByteArrayOutputStream();
+            write(csv, stations, days, seed);
+            new IngestPipeline(GhcnBinaryEncoder::new,
+                    shard -> new SortedStationWriter(runDir, "shard-" + shard, 64 * 1024 * 1024, 16,
+                            () -> new BinaryStationFileWriter(directory), new AtomicInteger()),
+                    1, 1, new AtomicLong())
+                    .run(new ByteArrayInputStream(csv.toByteArray()), new IngestPipeline.Listener() {});
+        } finally {
+            try (Stream<Path> paths = Files.walk(runDir)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        String[] ids = stationIds(stations, new Random(seed));
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Station IDs in the 11-character GHCN format
+     */
+    public static String[] stationIds(int stations, Random random) {
+        String[] ids = new String[stations];
+        for (int i = 0; i < stations; i++) {
+            String prefix = STATION_PREFIXES[random.nextInt(STATION_PREFIXES.length)];
+            StringBuilder id = new StringBuilder(prefix);
+            while (id.length() < 11) {
+                id.append((char) ('0' + random.nextInt(10)));
+            }
+            // Keep IDs unique regardless of the random digits
+            String suffix = Integer.toString(i);
+            id.replace(11 - suffix.length(), 11, suffix);
+            ids[i] = id.toString();
+        }
+        return ids;
+    }
+
+    private static String line(String stationId, String date, String element, Random random) {
+        int value;
+        switch (element) {
+            case "PRCP" -> value = random.nextInt(3) == 0 ? random.nextInt(400) : 0;
+            case "SNOW", "SNWD" -> value = random.nextInt(5) == 0 ? random.nextInt(300) : 0;
+            default -> value = random.nextInt(600) - 200;
+        }
+        if (random.nextInt(500) == 0) {
+            value = -9999;
+        }
+
+        String mFlag = random.nextInt(20) == 0 ? "T" : "";
+        String qFlag = random.nextInt(200) == 0 ? "I" : "";
+        String sFlag = random.nextBoolean() ? "7" : "N";
+        String obsTime = random.nextInt(3) == 0 ? "0700" : "";
+        return stationId + ',' + date + ',' + element + ',' + value + ','
+                + mFlag + ',' + qFlag + ',' + sFlag + ',' + obsTime;
+    }
+}
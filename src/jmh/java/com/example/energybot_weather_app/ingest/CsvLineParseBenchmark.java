@@ -0,0 +1,70 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.SyntheticGhcnData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting CSV lines into fields alone, without encoding them: {@link GhcnLineParser} on the
+ * raw bytes against decoding each line to a String and splitting it, as the legacy encoder does.
+ * Scores are per line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvLineParseBenchmark {
+    private static final int LINES = 10_000;
+
+    @Param({"bytes", "split"})
+    private String parser;
+
+    private byte[] lines;
+    private final int[] lineStarts = new int[LINES + 1];
+    private final GhcnLineParser lineParser = new GhcnLineParser();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        SyntheticGhcnData.write(csv, 100, 40, 42);
+        byte[] all = csv.toByteArray();
+
+        int line = 0;
+        int i = 0;
+        while (line < LINES) {
+            if (all[i++] == '\n') {
+                lineStarts[++line] = i;
+            }
+        }
+        lines = new byte[lineStarts[LINES]];
+        System.arraycopy(all, 0, lines, 0, lines.length);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void parse(Blackhole blackhole) {
+        if ("split".equals(parser)) {
+            for (int line = 0; line < LINES; line++) {
+                int start = lineStarts[line];
+                String[] parts = new String(lines, start, lineStarts[line + 1] - 1 - start, StandardCharsets.UTF_8)
+                        .split(",", -1);
+                for (String part : parts) {
+                    blackhole.consume(part.trim());
+                }
+            }
+        } else {
+            for (int line = 0; line < LINES; line++) {
+                lineParser.parse(lines, lineStarts[line], lineStarts[line + 1] - 1);
+                blackhole.consume(lineParser.intValue(GhcnLineParser.VALUE));
+                blackhole.consume(lineParser.end(GhcnLineParser.OBS_TIME));
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.SyntheticGhcnData;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-line cost of the two record encoders on the same synthetic lines.
+ * Run with {@code -prof gc} to compare allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordEncoderBenchmark {
+
+    @Param({"bytes", "legacy"})
+    private String parser;
+
+    private byte[] lines;
+    private int[] lineStarts;
+    private RecordEncoder encoder;
+    private final BatchBuffer output = new BatchBuffer(1024 * 1024);
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        int count = (int) SyntheticGhcnData.write(csv, 100, 20, 42);
+        lines = csv.toByteArray();
+
+        lineStarts = new int[count + 1];
+        int line = 0;
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i] == '\n') {
+                lineStarts[++line] = i + 1;
+            }
+        }
+
+        // Same settings as the application's ObjectMapper
+        ObjectMapper objectMapper = new ObjectMapper()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        encoder = "legacy".equals(parser) ? new WeatherRecordJsonEncoder(objectMapper) : new GhcnJsonEncoder(objectMapper);
+    }
+
+    /**
+     * Encode one batch of lines - divide by the line count for the per-line figures
+     */
+    @Benchmark
+    public int encodeBatch() throws IOException {
+        output.reset();
+        for (int line = 0; line < lineStarts.length - 1; line++) {
+            encoder.encode(lines, lineStarts[line], lineStarts[line + 1] - 1, output);
+        }
+        return output.size();
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.SyntheticGhcnData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Wall-clock cost of reading the data file with and without the separate
+ * line-counting pass that used to precede processing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SinglePassIngestBenchmark {
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    @Param({"2000"})
+    private int stations;
+
+    @Param({"120"})
+    private int days;
+
+    private Path dataFile;
+
+    @Setup(Level.Trial)
+    public void createDataFile() throws IOException {
+        dataFile = Files.createTempFile("ghcn-bench", ".csv.gz");
+        SyntheticGhcnData.writeGzip(dataFile, stations, days, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDataFile() throws IOException {
+        Files.deleteIfExists(dataFile);
+    }
+
+    @Benchmark
+    public long twoPass() throws IOException {
+        long lines;
+        try (BufferedReader reader = open(Files.newInputStream(dataFile))) {
+            lines = reader.lines().count();
+        }
+        return lines + parse(Files.newInputStream(dataFile));
+    }
+
+    @Benchmark
+    public long singlePass() throws IOException {
+        AtomicLong compressedBytesRead = new AtomicLong();
+        return parse(new CountingInputStream(Files.newInputStream(dataFile), compressedBytesRead))
+                + compressedBytesRead.get();
+    }
+
+    private static long parse(InputStream in) throws IOException {
+        long fields = 0;
+        try (BufferedReader reader = open(in)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                fields += line.split(",", -1).length;
+            }
+        }
+        return fields;
+    }
+
+    private static BufferedReader open(InputStream in) throws IOException {
+        return new BufferedReader(new InputStreamReader(new GZIPInputStream(in, GZIP_BUFFER_SIZE)));
+    }
+}
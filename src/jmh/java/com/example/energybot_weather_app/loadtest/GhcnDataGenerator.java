@@ -0,0 +1,287 @@
+package com.example.energybot_weather_app.loadtest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes GHCN-Daily style data for testing ingest at scale without NOAA: one
+ * {@code <year>.csv.gz} per year in the {@code by_year} format and a fixed-width
+ * {@code ghcnd-stations.txt}. The same settings and seed give the same files.
+ *
+ * Like the real network, stations differ widely in how much they report. Stations are ranked
+ * and the i-th reports on a share of days falling off as {@code (i + 1)^-skew}, from every day
+ * for the busiest down to {@code minActivity} for the quietest; the ranks are shuffled over the
+ * station IDs. Each station reports its own subset of the element mix, each element being picked
+ * with its weight. Values follow the season, with the flags, observation times and missing
+ * values ({@code -9999}) of the real files at the configured rates. Rows are ordered by date and
+ * then station.
+ *
+ * Run with: {@code ./gradlew generateGhcnData -PgeneratorArgs="out=build/ghcn stations=40000 years=2020-2024"}, adding
+ * {@code serve=8000} to go on serving the files with {@link GhcnFileServer} afterwards.
+ */
+public final class GhcnDataGenerator {
+    public static final String STATIONS_FILE = "ghcnd-stations.txt";
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final String[] STATION_PREFIXES = {"USC00", "USW00", "US1CO", "US1TX", "CA00", "ASN000", "GME00", "UK000"};
+    private static final String[] STATES = {"CO", "TX", "NY", "CA", "WA", "MN", "FL", "  "};
+    private static final String[] SOURCE_FLAGS = {"7", "0", "N", "W", "K", "H", "E"};
+    private static final String[] QUALITY_FLAGS = {"I", "G", "D", "K", "O", "S", "X"};
+
+    /**
+     * @param stations number of stations
+     * @param firstYear first year to write a file for
+     * @param lastYear last year to write a file for
+     * @param seed seed of everything random
+     * @param skew how fast the share of reporting days falls off with a station's rank
+     * @param minActivity share of days the quietest stations report on
+     * @param elements elements with the share of stations reporting each, in column order
+     * @param mFlagRate share of rows with a measurement flag
+     * @param qFlagRate share of rows with a quality flag
+     * @param missingRate share of rows with the missing value -9999
+     */
+    public record Settings(int stations, int firstYear, int lastYear, long seed, double skew, double minActivity,
+                           Map<String, Double> elements, double mFlagRate, double qFlagRate, double missingRate) {
+
+        public static Settings defaults() {
+            return new Settings(2000, 2023, 2024, 42, 0.8, 0.05, parseElements(
+                    "PRCP:0.95,TMAX:0.6,TMIN:0.6,SNOW:0.5,SNWD:0.45,TOBS:0.3,TAVG:0.15,WT01:0.1,WESF:0.05"),
+                    0.03, 0.002, 0.002);
+        }
+
+        /**
+         * Settings from {@code key=value} options, the defaults for any left out: stations,
+         * years (e.g. 2020-2024), seed, skew, minActivity, elements (e.g. PRCP:0.9,TMAX:0.6),
+         * mFlagRate, qFlagRate, missingRate
+         */
+        public static Settings of(Map<String, String> options) {
+            Settings defaults = defaults();
+            int[] years = parseYears(options.getOrDefault("years", defaults.firstYear() + "-" + defaults.lastYear()));
+            return new Settings(
+                    Integer.parseInt(options.getOrDefault("stations", String.valueOf(defaults.stations()))),
+                    years[0], years[1],
+                    Long.parseLong(options.getOrDefault("seed", String.valueOf(defaults.seed()))),
+                    Double.parseDouble(options.getOrDefault("skew", String.valueOf(defaults.skew()))),
+                    Double.parseDouble(options.getOrDefault("minActivity", String.valueOf(defaults.minActivity()))),
+                    options.containsKey("elements") ? parseElements(options.get("elements")) : defaults.elements(),
+                    Double.parseDouble(options.getOrDefault("mFlagRate", String.valueOf(defaults.mFlagRate()))),
+                    Double.parseDouble(options.getOrDefault("qFlagRate", String.valueOf(defaults.qFlagRate()))),
+                    Double.parseDouble(options.getOrDefault("missingRate", String.valueOf(defaults.missingRate()))));
+        }
+
+        private static int[] parseYears(String years) {
+            String[] range = years.split("-");
+            int first = Integer.parseInt(range[0].trim());
+            return new int[] {first, range.length > 1 ? Integer.parseInt(range[1].trim()) : first};
+        }
+
+        private static Map<String, Double> parseElements(String elements) {
+            Map<String, Double> weights = new LinkedHashMap<>();
+            for (String element : elements.split(",")) {
+                String[] parts = element.split(":");
+                weights.put(parts[0].trim().toUpperCase(Locale.ROOT), parts.length > 1 ? Double.parseDouble(parts[1]) : 1.0);
+            }
+            return weights;
+        }
+    }
+
+    /**
+     * What was written
+     *
+     * @param stationIds station IDs from the busiest to the quietest
+     * @param rows rows written over all years
+     * @param bytes compressed bytes written over all years
+     */
+    public record Result(List<Path> files, String[] stationIds, long rows, long bytes) {
+    }
+
+    private final Settings settings;
+
+    public GhcnDataGenerator(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Write the year files and the station list into the directory
+     */
+    public Result write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Random random = new Random(settings.seed());
+        int count = settings.stations();
+        String[] elementNames = settings.elements().keySet().toArray(new String[0]);
+        double[] elementWeights = settings.elements().values().stream().mapToDouble(Double::doubleValue).toArray();
+
+        // Everything about a station is drawn up front, so the years agree with each other
+        String[] stationIds = stationIds(count, random);
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        double[] activity = new double[count];
+        boolean[][] reports = new boolean[count][];
+        boolean[] observed = new boolean[count];
+        String[] sourceFlags = new String[count];
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = 25 + random.nextDouble() * 45;
+            longitudes[i] = -125 + random.nextDouble() * 60;
+            reports[i] = new boolean[elementNames.length];
+            boolean any = false;
+            for (int e = 0; e < elementNames.length; e++) {
+                reports[i][e] = random.nextDouble() < elementWeights[e];
+                any |= reports[i][e];
+            }
+            if (!any) {
+                reports[i][0] = true;
+            }
+            observed[i] = random.nextInt(3) == 0;
+            sourceFlags[i] = SOURCE_FLAGS[random.nextInt(SOURCE_FLAGS.length)];
+        }
+        // Rank i reports on (i + 1)^-skew of the days, scaled so the quietest reports on minActivity
+        int[] ranks = shuffledRanks(count, random);
+        double scale = settings.minActivity() * Math.pow(count, settings.skew());
+        String[] byActivity = new String[count];
+        for (int i = 0; i < count; i++) {
+            activity[i] = Math.min(1.0, Math.max(settings.minActivity(), scale * Math.pow(ranks[i] + 1, -settings.skew())));
+            byActivity[ranks[i]] = stationIds[i];
+        }
+        writeStations(directory.resolve(STATIONS_FILE), stationIds, latitudes, longitudes, random);
+
+        List<Path> files = new ArrayList<>();
+        long rows = 0;
+        long bytes = 0;
+        StringBuilder line = new StringBuilder(64);
+        for (int year = settings.firstYear(); year <= settings.lastYear(); year++) {
+            Path file = directory.resolve(year + ".csv.gz");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024);
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII), 256 * 1024)) {
+                for (LocalDate date = LocalDate.of(year, 1, 1); date.getYear() == year; date = date.plusDays(1)) {
+                    String day = date.format(DATE_FORMAT);
+                    double season = Math.cos(2 * Math.PI * (date.getDayOfYear() - 200) / 365.0);
+                    for (int i = 0; i < count; i++) {
+                        if (random.nextDouble() >= activity[i]) {
+                            continue;
+                        }
+                        for (int e = 0; e < elementNames.length; e++) {
+                            if (!reports[i][e]) {
+                                continue;
+                            }
+                            line.setLength(0);
+                            line.append(stationIds[i]).append(',').append(day).append(',').append(elementNames[e]).append(',')
+                                    .append(random.nextDouble() < settings.missingRate() ? -9999
+                                            : value(elementNames[e], latitudes[i], season, random))
+                                    .append(',');
+                            if (random.nextDouble() < settings.mFlagRate()) {
+                                line.append(elementNames[e].equals("PRCP") ? 'T' : 'H');
+                            }
+                            line.append(',');
+                            if (random.nextDouble() < settings.qFlagRate()) {
+                                line.append(QUALITY_FLAGS[random.nextInt(QUALITY_FLAGS.length)]);
+                            }
+                            line.append(',').append(sourceFlags[i]).append(',');
+                            if (observed[i]) {
+                                line.append("0700");
+                            }
+                            line.append('\n');
+                            writer.append(line);
+                            rows++;
+                        }
+                    }
+                }
+            }
+            files.add(file);
+            bytes += Files.size(file);
+        }
+        return new Result(files, byActivity, rows, bytes);
+    }
+
+    /**
+     * A value in the element's units: tenths of a degree or millimeter, millimeters of snow
+     */
+    private static int value(String element, double latitude, double season, Random random) {
+        // Warmer to the south and in summer
+        double mean = 250 - (latitude - 25) * 6 + season * 120;
+        return switch (element) {
+            case "TMAX" -> (int) Math.round(mean + 60 + random.nextGaussian() * 40);
+            case "TMIN" -> (int) Math.round(mean - 60 + random.nextGaussian() * 40);
+            case "TAVG", "TOBS" -> (int) Math.round(mean + random.nextGaussian() * 40);
+            case "PRCP", "WESF" -> random.nextInt(3) == 0 ? (int) Math.round(-Math.log(1 - random.nextDouble()) * 60) : 0;
+            case "SNOW", "SNWD" -> mean < 20 && random.nextInt(4) == 0 ? random.nextInt(300) : 0;
+            default -> 1;
+        };
+    }
+
+    /**
+     * Unique station IDs in the 11-character GHCN format, in ascending order
+     */
+    private static String[] stationIds(int stations, Random random) {
+        String[] ids = new String[stations];
+        for (int i = 0; i < stations; i++) {
+            StringBuilder id = new StringBuilder(STATION_PREFIXES[random.nextInt(STATION_PREFIXES.length)]);
+            while (id.length() < 11) {
+                id.append((char) ('0' + random.nextInt(10)));
+            }
+            String suffix = Integer.toString(i);
+            id.replace(11 - suffix.length(), 11, suffix);
+            ids[i] = id.toString();
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static int[] shuffledRanks(int count, Random random) {
+        int[] ranks = new int[count];
+        for (int i = 0; i < count; i++) {
+            ranks[i] = i;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = ranks[i];
+            ranks[i] = ranks[j];
+            ranks[j] = swap;
+        }
+        return ranks;
+    }
+
+    /**
+     * The station list in the fixed-width layout of ghcnd-stations.txt
+     */
+    private static void writeStations(Path file, String[] stationIds, double[] latitudes, double[] longitudes,
+                                      Random random) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < stationIds.length; i++) {
+                writer.write(String.format(Locale.ROOT, "%-11s %8.4f %9.4f %6.1f %-2s %-30s%n", stationIds[i],
+                        latitudes[i], longitudes[i], random.nextDouble() * 2000, STATES[random.nextInt(STATES.length)],
+                        "SYNTHETIC STATION " + i));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = LoadTestOptions.parse(args);
+        Path out = Path.of(options.getOrDefault("out", "build/ghcn-synthetic"));
+        long start = System.nanoTime();
+        Result result = new GhcnDataGenerator(Settings.of(options)).write(out);
+        System.out.printf("Wrote %d rows for %d stations into %d files (%d MB) in %s in %d ms%n", result.rows(),
+                result.stationIds().length, result.files().size(), result.bytes() / (1024 * 1024), out.toAbsolutePath(),
+                (System.nanoTime() - start) / 1_000_000);
+        if (options.containsKey("serve")) {
+            GhcnFileServer server = GhcnFileServer.start(out, Integer.parseInt(options.get("serve")), 8);
+            System.out.printf("Serving them at %s, set weather.data.year-url=%s{year}.csv.gz and weather.stations.url=%s%s%n",
+                    server.baseUrl(), server.baseUrl(), server.baseUrl(), STATIONS_FILE);
+        }
+    }
+}
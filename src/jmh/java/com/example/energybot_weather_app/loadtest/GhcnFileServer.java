@@ -0,0 +1,154 @@
+package com.example.energybot_weather_app.loadtest;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A local stand-in for the NOAA file server, serving the files of one directory the way
+ * {@link com.example.energybot_weather_app.download.RangeDownloader} expects: {@code HEAD} with
+ * length, ETag, Last-Modified and {@code Accept-Ranges}, {@code 304} for conditional requests on
+ * an unchanged file and {@code 206} for byte ranges, honoring {@code If-Range}.
+ *
+ * Run with: {@code ./gradlew generateGhcnData -PgeneratorArgs="out=build/ghcn serve=8000"} to point
+ * {@code weather.data.year-url} at {@code http://localhost:8000/{year}.csv.gz}.
+ */
+public final class GhcnFileServer implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private GhcnFileServer(Path directory, HttpServer server, ExecutorService executor) {
+        this.directory = directory;
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Serve the directory on a port, or on any free port for 0
+     */
+    public static GhcnFileServer start(Path directory, int port, int threads) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 64);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        GhcnFileServer fileServer = new GhcnFileServer(directory.toAbsolutePath(), server, executor);
+        server.createContext("/", fileServer::handle);
+        server.setExecutor(executor);
+        server.start();
+        return fileServer;
+    }
+
+    /**
+     * URL of the directory, ending in a slash
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            Path file = directory.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!file.startsWith(directory) || !Files.isRegularFile(file)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            long length = Files.size(file);
+            Instant modified = Files.getLastModifiedTime(file).toInstant().truncatedTo(ChronoUnit.SECONDS);
+            String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(modified.getEpochSecond()) + "\"";
+            String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(modified, ZoneOffset.UTC));
+            Headers request = exchange.getRequestHeaders();
+            Headers response = exchange.getResponseHeaders();
+            response.set("ETag", etag);
+            response.set("Last-Modified", lastModified);
+            response.set("Accept-Ranges", "bytes");
+
+            if (notModified(request, etag, modified)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            long start = 0;
+            long end = length;
+            String range = request.getFirst("Range");
+            String ifRange = request.getFirst("If-Range");
+            boolean partial = range != null && range.startsWith("bytes=")
+                    && (ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModified));
+            if (partial) {
+                String[] bounds = range.substring("bytes=".length()).split("-", 2);
+                start = Long.parseLong(bounds[0]);
+                end = bounds[1].isEmpty() ? length : Math.min(length, Long.parseLong(bounds[1]) + 1);
+                if (start >= end) {
+                    response.set("Content-Range", "bytes */" + length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                response.set("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+
+            int status = partial ? 206 : 200;
+            if (method.equals("HEAD")) {
+                response.set("Content-Length", String.valueOf(end - start));
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, end - start);
+            try (InputStream in = Files.newInputStream(file); OutputStream out = exchange.getResponseBody()) {
+                in.skipNBytes(start);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long remaining = end - start;
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) {
+                        break;
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+        }
+    }
+
+    private static boolean notModified(Headers request, String etag, Instant modified) {
+        String ifNoneMatch = request.getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            return ifNoneMatch.equals(etag) || ifNoneMatch.equals("*");
+        }
+        String ifModifiedSince = request.getFirst("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                return !modified.isAfter(ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
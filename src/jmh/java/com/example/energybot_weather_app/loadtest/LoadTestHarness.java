@@ -0,0 +1,278 @@
+package com.example.energybot_weather_app.loadtest;
+
+import com.example.energybot_weather_app.EnergybotWeatherAppApplication;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test: generates a synthetic dataset with {@link GhcnDataGenerator}, serves it
+ * with {@link GhcnFileServer}, boots the application against it and times the download and
+ * ingest, then requests {@code /api/station/{id}} from a number of threads. Stations are picked
+ * with a Zipf distribution over their activity rank, so the busiest stations, which also have
+ * the largest responses, are asked for most, the way a popular few dominate real traffic.
+ *
+ * The results, with throughput and latency percentiles, are written as JSON to {@code output}
+ * and printed. Options, as {@code key=value}, are those of {@link GhcnDataGenerator.Settings#of}
+ * and: concurrency (16), requests (20000), warmup (2000), zipf exponent (1.0), query to add to
+ * each request (e.g. elementType=TMAX), gzip to accept compressed responses (true), output
+ * (build/loadtest/results.json), keep to leave the working directory behind (false) and
+ * appLogLevel (WARN).
+ *
+ * Run with: {@code ./gradlew loadTest -PloadTestArgs="stations=5000 years=2020-2024 concurrency=32"}
+ */
+public final class LoadTestHarness {
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final Map<String, String> options;
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private LoadTestHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    /**
+     * Results of one measured phase
+     *
+     * @param latencies latency of every request in nanoseconds, sorted
+     */
+    private record Phase(long durationNanos, long[] latencies, int errors, Map<Integer, Integer> statuses, long bytes) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadTestHarness(LoadTestOptions.parse(args)).run();
+    }
+
+    private void run() throws Exception {
+        GhcnDataGenerator.Settings settings = GhcnDataGenerator.Settings.of(options);
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "20000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "2000"));
+        double zipf = Double.parseDouble(options.getOrDefault("zipf", "1.0"));
+        boolean gzip = Boolean.parseBoolean(options.getOrDefault("gzip", "true"));
+        String query = options.getOrDefault("query", "");
+        Path output = Path.of(options.getOrDefault("output", "build/loadtest/results.json"));
+        boolean keep = Boolean.parseBoolean(options.getOrDefault("keep", "false"));
+
+        Path workDir = Files.createTempDirectory("weather-loadtest");
+        Path sourceDir = workDir.resolve("source");
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("options", options);
+        try {
+            log("Generating %d stations for %d-%d in %s", settings.stations(), settings.firstYear(), settings.lastYear(), workDir);
+            long started = System.nanoTime();
+            GhcnDataGenerator.Result data = new GhcnDataGenerator(settings).write(sourceDir);
+            Map<String, Object> dataset = new LinkedHashMap<>();
+            dataset.put("stations", data.stationIds().length);
+            dataset.put("files", data.files().size());
+            dataset.put("rows", data.rows());
+            dataset.put("compressedBytes", data.bytes());
+            dataset.put("generateMillis", millis(System.nanoTime() - started));
+            results.put("dataset", dataset);
+
+            try (GhcnFileServer server = GhcnFileServer.start(sourceDir, 0, 8)) {
+                log("Booting the application against %s", server.baseUrl());
+                started = System.nanoTime();
+                try (ConfigurableApplicationContext context = SpringApplication.run(EnergybotWeatherAppApplication.class,
+                        "--server.port=0",
+                        "--weather.data.years=" + settings.firstYear() + "-" + settings.lastYear(),
+                        "--weather.data.year-url=" + server.baseUrl() + "{year}.csv.gz",
+                        "--weather.stations.url=" + server.baseUrl() + GhcnDataGenerator.STATIONS_FILE,
+                        "--weather.data.directory=" + workDir.resolve("data"),
+                        "--weather.download.directory=" + workDir.resolve("download"),
+                        "--weather.refresh.cron=-",
+                        "--logging.level.root=" + options.getOrDefault("appLogLevel", "WARN"),
+                        "--logging.level.com.example.energybot_weather_app=" + options.getOrDefault("appLogLevel", "WARN"),
+                        "--spring.main.banner-mode=off")) {
+                    long bootNanos = System.nanoTime() - started;
+                    String baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+
+                    JsonNode status = objectMapper.readTree(client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/status")).build(),
+                            HttpResponse.BodyHandlers.ofByteArray()).body());
+                    if (!status.path("ready").asBoolean()) {
+                        throw new IllegalStateException("The application did not load the data: " + status);
+                    }
+                    Map<String, Object> ingest = new LinkedHashMap<>();
+                    ingest.put("bootMillis", millis(bootNanos));
+                    ingest.put("downloadAndIngestMillis", status.path("refresh").path("durationMillis").asLong());
+                    ingest.put("rowsPerSecond", Math.round(data.rows() * 1000.0
+                            / Math.max(1, status.path("refresh").path("durationMillis").asLong())));
+                    results.put("ingest", ingest);
+                    log("Loaded %d rows in %d ms", data.rows(), status.path("refresh").path("durationMillis").asLong());
+
+                    ZipfSampler sampler = new ZipfSampler(data.stationIds().length, zipf);
+                    String suffix = query.isEmpty() ? "" : "?" + query;
+                    log("Warming up with %d requests", warmup);
+                    drive(baseUrl, data.stationIds(), suffix, sampler, concurrency, warmup, gzip, settings.seed());
+                    log("Sending %d requests from %d threads", requests, concurrency);
+                    Phase phase = drive(baseUrl, data.stationIds(), suffix, sampler, concurrency, requests, gzip, settings.seed() + 1);
+                    results.put("load", describe(phase, concurrency));
+                }
+            }
+
+            Files.createDirectories(output.toAbsolutePath().getParent());
+            objectMapper.writeValue(output.toFile(), results);
+            System.out.println(objectMapper.writeValueAsString(results));
+            log("Wrote %s", output.toAbsolutePath());
+        } finally {
+            if (keep) {
+                log("Kept %s", workDir);
+            } else {
+                delete(workDir);
+            }
+        }
+    }
+
+    /**
+     * Send a number of requests from the given number of threads, each taking the next request
+     * as soon as the last one completes
+     */
+    private Phase drive(String baseUrl, String[] stationIds, String suffix, ZipfSampler sampler, int concurrency,
+                        int requests, boolean gzip, long seed) throws Exception {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            SplittableRandom seeds = new SplittableRandom(seed);
+            List<Future<Phase>> workers = new ArrayList<>();
+            long started = System.nanoTime();
+            for (int t = 0; t < concurrency; t++) {
+                SplittableRandom random = seeds.split();
+                workers.add(executor.submit(() -> {
+                    int errors = 0;
+                    long bytes = 0;
+                    Map<Integer, Integer> statuses = new TreeMap<>();
+                    for (int i = next.getAndIncrement(); i < requests; i = next.getAndIncrement()) {
+                        HttpRequest.Builder request = HttpRequest.newBuilder(
+                                URI.create(baseUrl + "/api/station/" + stationIds[sampler.sample(random)] + suffix));
+                        if (gzip) {
+                            request.header("Accept-Encoding", "gzip");
+                        }
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<byte[]> response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+                            latencies[i] = System.nanoTime() - start;
+                            statuses.merge(response.statusCode(), 1, Integer::sum);
+                            bytes += response.body().length;
+                        } catch (IOException e) {
+                            latencies[i] = System.nanoTime() - start;
+                            errors++;
+                        }
+                    }
+                    return new Phase(0, null, errors, statuses, bytes);
+                }));
+            }
+
+            int errors = 0;
+            long bytes = 0;
+            Map<Integer, Integer> statuses = new TreeMap<>();
+            for (Future<Phase> worker : workers) {
+                Phase result = worker.get();
+                errors += result.errors();
+                bytes += result.bytes();
+                result.statuses().forEach((status, count) -> statuses.merge(status, count, Integer::sum));
+            }
+            long duration = System.nanoTime() - started;
+            Arrays.sort(latencies);
+            return new Phase(duration, latencies, errors, statuses, bytes);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Map<String, Object> describe(Phase phase, int concurrency) {
+        long[] latencies = phase.latencies();
+        Map<String, Object> load = new LinkedHashMap<>();
+        load.put("requests", latencies.length);
+        load.put("concurrency", concurrency);
+        load.put("durationMillis", millis(phase.durationNanos()));
+        load.put("throughputPerSecond", round(latencies.length * 1e9 / phase.durationNanos()));
+        load.put("errors", phase.errors());
+        load.put("statusCounts", phase.statuses());
+        load.put("responseBytes", phase.bytes());
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("mean", round(Arrays.stream(latencies).average().orElse(0) / 1e6));
+        for (int p = 0; p < PERCENTILES.length; p++) {
+            // Nearest rank
+            int index = Math.max(0, (int) Math.ceil(PERCENTILES[p] * latencies.length) - 1);
+            latency.put(PERCENTILE_NAMES[p], round(latencies[index] / 1e6));
+        }
+        latency.put("max", round(latencies[latencies.length - 1] / 1e6));
+        load.put("latencyMillis", latency);
+        return load;
+    }
+
+    /**
+     * Picks ranks 0 to n - 1 with probability proportional to {@code 1 / (rank + 1)^exponent}
+     */
+    private static final class ZipfSampler {
+        private final double[] cumulative;
+
+        ZipfSampler(int n, double exponent) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int rank = 0; rank < n; rank++) {
+                sum += Math.pow(rank + 1, -exponent);
+                cumulative[rank] = sum;
+            }
+            for (int rank = 0; rank < n; rank++) {
+                cumulative[rank] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length - 1, index >= 0 ? index : -index - 1);
+        }
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    private static void log(String format, Object... args) {
+        System.err.printf("[loadtest] " + format + "%n", args);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
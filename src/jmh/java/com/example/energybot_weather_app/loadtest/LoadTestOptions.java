@@ -0,0 +1,28 @@
+package com.example.energybot_weather_app.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Command line options of the load test tools, given as {@code key=value} pairs
+ */
+final class LoadTestOptions {
+
+    private LoadTestOptions() {
+    }
+
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.isBlank()) {
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got " + arg);
+            }
+            options.put(arg.substring(0, equals).trim(), arg.substring(equals + 1).trim());
+        }
+        return options;
+    }
+}
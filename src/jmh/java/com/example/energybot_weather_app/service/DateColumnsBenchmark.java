@@ -0,0 +1,138 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.SyntheticGhcnData;
+import com.example.energybot_weather_app.ingest.BinaryStationFileWriter;
+import com.example.energybot_weather_app.ingest.DateColumnsWriter;
+import com.example.energybot_weather_app.ingest.GhcnBinaryEncoder;
+import com.example.energybot_weather_app.ingest.IngestPipeline;
+import com.example.energybot_weather_app.ingest.SortedStationWriter;
+import com.example.energybot_weather_app.storage.BinaryStationData;
+import com.example.energybot_weather_app.storage.BinaryStationFile;
+import com.example.energybot_weather_app.storage.BinaryStationFormat;
+import com.example.energybot_weather_app.storage.DateColumns;
+import com.example.energybot_weather_app.storage.StationSelection;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * TMAX of every station on one day: read from that day's date columns against opening each
+ * station's file and selecting the day from it, the only way before the date layout. Both write
+ * the values as JSON. The setup prints how long writing the date columns took.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DateColumnsBenchmark {
+    private static final int DATE = 20240115;
+
+    @Param({"5000"})
+    private int stations;
+
+    @Param({"31"})
+    private int days;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Path dataDir;
+    private Path runDir;
+    private WeatherDataService service;
+    private String[] stationIds;
+    private final ByteArrayOutputStream response = new ByteArrayOutputStream(1024 * 1024);
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        ch.qos.logback.classic.Logger appLogger =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.example.energybot_weather_app");
+        appLogger.setLevel(ch.qos.logback.classic.Level.WARN);
+
+        dataDir = Files.createTempDirectory("date-columns-bench");
+        runDir = Files.createTempDirectory("date-columns-runs");
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        SyntheticGhcnData.write(csv, stations, days, 42);
+        new IngestPipeline(GhcnBinaryEncoder::new,
+                shard -> new SortedStationWriter(runDir, "shard-" + shard, 64 * 1024 * 1024, 16,
+                        () -> new BinaryStationFileWriter(dataDir), new AtomicInteger()),
+                1, 1, new AtomicLong())
+                .run(new ByteArrayInputStream(csv.toByteArray()), new IngestPipeline.Listener() {});
+
+        stationIds = SyntheticGhcnData.stationIds(stations, new Random(42));
+        Arrays.sort(stationIds);
+        long start = System.nanoTime();
+        new DateColumnsWriter(dataDir, List.of(stationIds), stationId -> new BinaryStationData(stationId,
+                BinaryStationFile.open(dataDir.resolve(stationId + BinaryStationFormat.FILE_EXTENSION)), 0),
+                64L * 1024 * 1024).write();
+        System.out.printf("%nWrote the date columns of %d stations x %d days in %d ms%n", stations, days,
+                (System.nanoTime() - start) / 1_000_000);
+
+        // No station cache, a whole network doesn't fit in it
+        service = new WeatherDataService(objectMapper, new StationDataCache(0), new HotStationStore(0));
+        Field dataDirField = WeatherDataService.class.getDeclaredField("dataDir");
+        dataDirField.setAccessible(true);
+        dataDirField.set(service, dataDir.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path directory : List.of(dataDir, runDir)) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int dateColumns() throws IOException {
+        DateColumns day = service.getDateColumns(DATE);
+        int code = day.find("TMAX");
+        response.reset();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response)) {
+            generator.writeStartArray();
+            for (int i = 0; i < day.count(code); i++) {
+                generator.writeStartObject();
+                generator.writeStringField("stationId", day.stationId(code, i));
+                generator.writeNumberField("value", day.value(code, i));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        return response.size();
+    }
+
+    @Benchmark
+    public int stationFiles() throws IOException {
+        String date = BinaryStationFormat.formatDate(DATE);
+        response.reset();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response)) {
+            generator.writeStartArray();
+            for (String stationId : stationIds) {
+                StationSelection selection = service.selectStationData(stationId, "TMAX", date, date);
+                if (selection != null) {
+                    selection.writeJson(generator);
+                }
+            }
+            generator.writeEndArray();
+        }
+        return response.size();
+    }
+}
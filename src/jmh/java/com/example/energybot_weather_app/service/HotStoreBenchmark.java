@@ -0,0 +1,156 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.SyntheticGhcnData;
+import com.example.energybot_weather_app.ingest.BinaryStationFileWriter;
+import com.example.energybot_weather_app.ingest.GhcnBinaryEncoder;
+import com.example.energybot_weather_app.ingest.IngestPipeline;
+import com.example.energybot_weather_app.ingest.SortedStationWriter;
+import com.example.energybot_weather_app.storage.StationSelection;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Station queries written as JSON, over random stations and a mix of filters, from memory-mapped
+ * station files, from the heap station cache and from the off-heap hot store. Sample time mode
+ * reports the latency percentiles, p0.99 among them; the setup prints how long the hot store took
+ * to load and the process's resident memory before and after.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class HotStoreBenchmark {
+    private static final String[][] FILTERS = {
+            {null, null, null},
+            {"TMAX", null, null},
+            {null, "20240601", "20240630"},
+            {"PRCP", "20240101", "20240107"},
+    };
+
+    @Param({"files", "cache", "hot"})
+    private String source;
+
+    @Param({"2000"})
+    private int stations;
+
+    @Param({"366"})
+    private int days;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Path dataDir;
+    private Path runDir;
+    private WeatherDataService service;
+    private String[] stationIds;
+    private final Random random = new Random(7);
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        ch.qos.logback.classic.Logger appLogger =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.example.energybot_weather_app");
+        appLogger.setLevel(ch.qos.logback.classic.Level.WARN);
+
+        dataDir = Files.createTempDirectory("hot-store-bench");
+        runDir = Files.createTempDirectory("hot-store-runs");
+        Path csv = runDir.resolve("data.csv.gz");
+        SyntheticGhcnData.writeGzip(csv, stations, days, 42);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(csv), 64 * 1024)) {
+            new IngestPipeline(GhcnBinaryEncoder::new,
+                    shard -> new SortedStationWriter(runDir, "shard-" + shard, 128 * 1024 * 1024, 16,
+                            () -> new BinaryStationFileWriter(dataDir), new AtomicInteger()),
+                    1, 1, new AtomicLong())
+                    .run(in, new IngestPipeline.Listener() {});
+        }
+        stationIds = SyntheticGhcnData.stationIds(stations, new Random(42));
+
+        // The heap cache gets room for every station, the hot store is only enabled for its run
+        StationDataCache cache = new StationDataCache("cache".equals(source) ? 512 : 0);
+        HotStationStore hotStore = new HotStationStore("hot".equals(source) ? 512 : 0);
+        service = new WeatherDataService(objectMapper, cache, hotStore);
+        Field dataDirField = WeatherDataService.class.getDeclaredField("dataDir");
+        dataDirField.setAccessible(true);
+        dataDirField.set(service, dataDir.toString());
+
+        if ("hot".equals(source)) {
+            long rssBefore = residentBytes();
+            long start = System.nanoTime();
+            hotStore.load(List.of(dataDir));
+            System.out.printf("%nLoaded %d stations, %d MB of station files, in %d ms; resident memory %d MB -> %d MB%n",
+                    stations, hotStore.get().sizeBytes() / (1024 * 1024), (System.nanoTime() - start) / 1_000_000,
+                    rssBefore / (1024 * 1024), residentBytes() / (1024 * 1024));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path directory : List.of(dataDir, runDir)) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int query() throws IOException {
+        String stationId = stationIds[random.nextInt(stationIds.length)];
+        String[] filter = FILTERS[random.nextInt(FILTERS.length)];
+        StationSelection selection = service.selectStationData(stationId, filter[0], filter[1], filter[2]);
+        CountingOutputStream out = new CountingOutputStream();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            selection.writeJson(generator);
+            generator.writeEndArray();
+        }
+        return out.count;
+    }
+
+    /**
+     * Resident set size of the process from /proc, 0 where there is none
+     */
+    private static long residentBytes() throws IOException {
+        Path status = Path.of("/proc/self/status");
+        if (!Files.exists(status)) {
+            return 0;
+        }
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+            }
+        }
+        return 0;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private int count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.SyntheticGhcnData;
+import com.example.energybot_weather_app.ingest.BinaryStationFileWriter;
+import com.example.energybot_weather_app.ingest.GhcnBinaryEncoder;
+import com.example.energybot_weather_app.ingest.IngestPipeline;
+import com.example.energybot_weather_app.ingest.SortedStationWriter;
+import com.example.energybot_weather_app.ingest.StationSegmentWriter;
+import com.example.energybot_weather_app.storage.BinaryStationFormat;
+import com.example.energybot_weather_app.storage.StationSelection;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Uncached station queries over random stations, reading a file per station or a range of a
+ * segment found through the packed layout's index. The setup prints how long packing took and how
+ * many files each layout leaves in the directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class PackedLayoutBenchmark {
+    @Param({"files", "packed"})
+    private String layout;
+
+    @Param({"10000"})
+    private int stations;
+
+    @Param({"366"})
+    private int days;
+
+    private Path dataDir;
+    private Path runDir;
+    private WeatherDataService service;
+    private String[] stationIds;
+    private final Random random = new Random(7);
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        ch.qos.logback.classic.Logger appLogger =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.example.energybot_weather_app");
+        appLogger.setLevel(ch.qos.logback.classic.Level.WARN);
+
+        dataDir = Files.createTempDirectory("packed-layout-bench");
+        runDir = Files.createTempDirectory("packed-layout-runs");
+        Path csv = runDir.resolve("data.csv.gz");
+        SyntheticGhcnData.writeGzip(csv, stations, days, 42);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(csv), 64 * 1024)) {
+            new IngestPipeline(GhcnBinaryEncoder::new,
+                    shard -> new SortedStationWriter(runDir, "shard-" + shard, 128 * 1024 * 1024, 16,
+                            () -> new BinaryStationFileWriter(dataDir), new AtomicInteger()),
+                    1, 1, new AtomicLong())
+                    .run(in, new IngestPipeline.Listener() {});
+        }
+        stationIds = SyntheticGhcnData.stationIds(stations, new Random(42));
+
+        if ("packed".equals(layout)) {
+            List<String> sorted = Arrays.stream(stationIds).sorted().distinct().toList();
+            long start = System.nanoTime();
+            int segments = new StationSegmentWriter(dataDir, List.of(BinaryStationFormat.FILE_EXTENSION), 1024L * 1024 * 1024)
+                    .pack(sorted);
+            System.out.printf("%nPacked %d stations into %d segments in %d ms%n", sorted.size(), segments,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        try (Stream<Path> files = Files.walk(dataDir)) {
+            System.out.printf("%nLayout %s: %d files%n", layout, files.filter(Files::isRegularFile).count());
+        }
+
+        service = new WeatherDataService(new ObjectMapper(), new StationDataCache(0), new HotStationStore(0));
+        Field dataDirField = WeatherDataService.class.getDeclaredField("dataDir");
+        dataDirField.setAccessible(true);
+        dataDirField.set(service, dataDir.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path directory : List.of(dataDir, runDir)) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int query() throws IOException {
+        StationSelection selection = service.selectStationData(stationIds[random.nextInt(stationIds.length)],
+                "TMAX", null, null);
+        return selection.count();
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.SyntheticGhcnData;
+import com.example.energybot_weather_app.ingest.BinaryStationFileWriter;
+import com.example.energybot_weather_app.ingest.GhcnBinaryEncoder;
+import com.example.energybot_weather_app.ingest.IngestPipeline;
+import com.example.energybot_weather_app.ingest.SortedStationWriter;
+import com.example.energybot_weather_app.storage.StationResponseJson;
+import com.example.energybot_weather_app.storage.StationSelection;
+import com.example.energybot_weather_app.storage.StationSeries;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Heating degree days and rolling mean temperature of a date range, answered by the analytics
+ * endpoint's series against a client pulling the raw station response and computing them itself.
+ * Both include writing the response bytes; the client side also parses them. The setup prints
+ * the response sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StationAnalyticsBenchmark {
+    private static final int HDD_BASE = 183;
+
+    @Param({"month", "year"})
+    private String range;
+
+    @Param({"10"})
+    private int stations;
+
+    @Param({"366"})
+    private int days;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Path dataDir;
+    private Path runDir;
+    private WeatherDataService service;
+    private StationAnalyticsService analyticsService;
+    private String stationId;
+    private String startDate;
+    private String endDate;
+    private final ByteArrayOutputStream response = new ByteArrayOutputStream(1024 * 1024);
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        ch.qos.logback.classic.Logger appLogger =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.example.energybot_weather_app");
+        appLogger.setLevel(ch.qos.logback.classic.Level.WARN);
+
+        dataDir = Files.createTempDirectory("station-analytics-bench");
+        runDir = Files.createTempDirectory("station-analytics-runs");
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        SyntheticGhcnData.write(csv, stations, days, 42);
+        new IngestPipeline(GhcnBinaryEncoder::new,
+                shard -> new SortedStationWriter(runDir, "shard-" + shard, 64 * 1024 * 1024, 16,
+                        () -> new BinaryStationFileWriter(dataDir), new AtomicInteger()),
+                1, 1, new AtomicLong())
+                .run(new ByteArrayInputStream(csv.toByteArray()), new IngestPipeline.Listener() {});
+
+        service = new WeatherDataService(objectMapper, new StationDataCache(64), new HotStationStore(0));
+        Field dataDirField = WeatherDataService.class.getDeclaredField("dataDir");
+        dataDirField.setAccessible(true);
+        dataDirField.set(service, dataDir.toString());
+        analyticsService = new StationAnalyticsService(service, 16, HDD_BASE / 10.0, HDD_BASE / 10.0);
+        stationId = SyntheticGhcnData.stationIds(stations, new Random(42))[0];
+        startDate = "month".equals(range) ? "20240601" : "20240101";
+        endDate = "month".equals(range) ? "20240630" : "20241231";
+
+        analytics();
+        int analyticsBytes = response.size();
+        rawPull();
+        System.out.printf("%nResponse bytes for a %s: analytics %d, raw records %d%n", range, analyticsBytes, response.size());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path directory : List.of(dataDir, runDir)) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int analytics() throws IOException {
+        StationSeries series = analyticsService.getStationSeries(stationId);
+        response.reset();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response)) {
+            series.writeJson(generator, stationId, series.startIndex(startDate), series.endIndex(endDate),
+                    HDD_BASE, HDD_BASE, true);
+        }
+        return response.size();
+    }
+
+    /**
+     * What a dashboard does without the endpoint: fetch the station's records of the range,
+     * then pick out TMAX and TMIN and aggregate them itself
+     */
+    @Benchmark
+    public double rawPull() throws IOException {
+        StationSelection selection = service.selectStationData(stationId, null, startDate, endDate);
+        response.reset();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response)) {
+            StationResponseJson.write(generator, stationId, selection, null, startDate, endDate);
+        }
+
+        JsonNode data = objectMapper.readTree(response.toByteArray()).get("data");
+        TreeMap<String, int[]> temperatures = new TreeMap<>();
+        for (JsonNode record : data) {
+            String element = record.get("element").asText();
+            String value = record.get("value").asText();
+            if (record.has("qFlag") || value.isEmpty() || value.equals("-9999")
+                    || !(element.equals("TMAX") || element.equals("TMIN"))) {
+                continue;
+            }
+            int[] day = temperatures.computeIfAbsent(record.get("date").asText(),
+                    date -> new int[] {Integer.MIN_VALUE, Integer.MIN_VALUE});
+            day[element.equals("TMAX") ? 0 : 1] = Integer.parseInt(value);
+        }
+
+        double hdd = 0;
+        double rolling = 0;
+        double[] window = new double[7];
+        int filled = 0;
+        for (int[] day : temperatures.values()) {
+            if (day[0] == Integer.MIN_VALUE || day[1] == Integer.MIN_VALUE) {
+                continue;
+            }
+            double mean = (day[0] + day[1]) / 2.0;
+            hdd += Math.max(0, HDD_BASE - mean);
+            window[filled++ % 7] = mean;
+            double sum = 0;
+            for (int i = 0; i < Math.min(filled, 7); i++) {
+                sum += window[i];
+            }
+            rolling = sum / Math.min(filled, 7);
+        }
+        return hdd + rolling;
+    }
+}
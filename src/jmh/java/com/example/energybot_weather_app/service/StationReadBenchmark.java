@@ -0,0 +1,126 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.SyntheticGhcnData;
+import com.example.energybot_weather_app.ingest.BinaryStationFileWriter;
+import com.example.energybot_weather_app.ingest.GhcnBinaryEncoder;
+import com.example.energybot_weather_app.ingest.GhcnJsonEncoder;
+import com.example.energybot_weather_app.ingest.IngestPipeline;
+import com.example.energybot_weather_app.ingest.RecordEncoder;
+import com.example.energybot_weather_app.ingest.SortedStationWriter;
+import com.example.energybot_weather_app.ingest.StationFileWriter;
+import com.example.energybot_weather_app.ingest.StationSink;
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Latency of {@link WeatherDataService#getStationData} for JSON and binary station files,
+ * unfiltered, by element, by date range and by both, with and without the station cache.
+ * The setup prints the size of both formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StationReadBenchmark {
+
+    @Param({"json", "binary"})
+    private String format;
+
+    @Param({"none", "element", "month", "elementWeek"})
+    private String filter;
+
+    @Param({"10"})
+    private int stations;
+
+    @Param({"366"})
+    private int days;
+
+    // 0 reads the station file on every call
+    @Param({"0", "64"})
+    private int cacheMb;
+
+    private Path dataDir;
+    private Path runDir;
+    private WeatherDataService service;
+    private String stationId;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // The service logs every request, which would dominate the measurement
+        ch.qos.logback.classic.Logger appLogger =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.example.energybot_weather_app");
+        appLogger.setLevel(ch.qos.logback.classic.Level.WARN);
+
+        ObjectMapper objectMapper = new ObjectMapper()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        dataDir = Files.createTempDirectory("station-read-bench");
+        runDir = Files.createTempDirectory("station-read-runs");
+
+        Supplier<RecordEncoder> encoder = "json".equals(format)
+                ? () -> new GhcnJsonEncoder(objectMapper)
+                : GhcnBinaryEncoder::new;
+        Supplier<StationSink> output = "json".equals(format)
+                ? () -> new StationFileWriter(dataDir, 64 * 1024)
+                : () -> new BinaryStationFileWriter(dataDir);
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        SyntheticGhcnData.write(csv, stations, days, 42);
+        new IngestPipeline(encoder,
+                shard -> new SortedStationWriter(runDir, "shard-" + shard, 64 * 1024 * 1024, 16, output, new AtomicInteger()),
+                1, 1, new AtomicLong())
+                .run(new ByteArrayInputStream(csv.toByteArray()), new IngestPipeline.Listener() {});
+
+        try (Stream<Path> files = Files.list(dataDir)) {
+            long bytes = files.mapToLong(file -> file.toFile().length()).sum();
+            System.out.printf("%n%s station files: %d bytes for %d stations%n", format, bytes, stations);
+        }
+
+        service = new WeatherDataService(objectMapper, new StationDataCache(cacheMb), new HotStationStore(0));
+        Field dataDirField = WeatherDataService.class.getDeclaredField("dataDir");
+        dataDirField.setAccessible(true);
+        dataDirField.set(service, dataDir.toString());
+        stationId = SyntheticGhcnData.stationIds(stations, new Random(42))[0];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path directory : List.of(dataDir, runDir)) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public List<WeatherRecord> getStationData() throws IOException {
+        return switch (filter) {
+            case "element" -> service.getStationData(stationId, "TMAX", null, null);
+            case "month" -> service.getStationData(stationId, null, "20240601", "20240630");
+            case "elementWeek" -> service.getStationData(stationId, "TMAX", "20240601", "20240607");
+            default -> service.getStationData(stationId);
+        };
+    }
+}
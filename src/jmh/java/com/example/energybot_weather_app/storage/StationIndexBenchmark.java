@@ -0,0 +1,67 @@
+package com.example.energybot_weather_app.storage;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest station and radius queries against a station list the size of the full GHCN list,
+ * with the stations clustered over land like the real ones, at random query points.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StationIndexBenchmark {
+    @Param({"125000"})
+    private int stations;
+
+    private StationIndex index;
+    private final double[] queries = new double[2 * 1024];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < stations; i++) {
+            // Half of them in a dense region, like the U.S. stations, the rest anywhere
+            double lat = i % 2 == 0 ? 39 + random.nextGaussian() * 6 : Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+            double lon = i % 2 == 0 ? -98 + random.nextGaussian() * 14 : random.nextDouble() * 360 - 180;
+            list.append(String.format(Locale.ROOT, "US%09d %8.4f %9.4f %6.1f %-2s %-30s%n",
+                    i, Math.max(-90, Math.min(90, lat)), Math.max(-180, Math.min(180, lon)), 100.0, "", "STATION " + i));
+        }
+        Path file = Files.createTempFile("ghcnd-stations", ".txt");
+        try {
+            Files.writeString(file, list);
+            long start = System.nanoTime();
+            index = StationIndex.read(file, stationId -> true);
+            System.out.printf("%nIndexed %d stations in %d ms%n", index.size(), (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            Files.delete(file);
+        }
+        for (int i = 0; i < queries.length; i += 2) {
+            queries[i] = 39 + random.nextGaussian() * 6;
+            queries[i + 1] = -98 + random.nextGaussian() * 14;
+        }
+    }
+
+    @Benchmark
+    public StationIndex.Matches nearest10() {
+        int query = next = (next + 2) % queries.length;
+        return index.nearest(queries[query], queries[query + 1], 10);
+    }
+
+    @Benchmark
+    public StationIndex.Matches within50Km() {
+        int query = next = (next + 2) % queries.length;
+        return index.withinRadius(queries[query], queries[query + 1], 50, 1000);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.energybot_weather_app.storage;
+
+import com.example.energybot_weather_app.SyntheticGhcnData;
+import com.example.energybot_weather_app.ingest.GhcnJsonEncoder;
+import com.example.energybot_weather_app.ingest.IngestPipeline;
+import com.example.energybot_weather_app.ingest.SortedStationWriter;
+import com.example.energybot_weather_app.ingest.StationFileWriter;
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * JSON station files held in memory as a WeatherRecord per row, the way they were loaded before,
+ * against the primitive columns of {@link JsonStationData}. The setup prints the retained heap
+ * of each per million rows, measured after a full GC; the benchmark filters one element over a
+ * month across all stations, comparing dates as strings and as ints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StationRecordMemoryBenchmark {
+
+    @Param({"records", "columns"})
+    private String model;
+
+    @Param({"250"})
+    private int stations;
+
+    @Param({"900"})
+    private int days;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private Path dataDir;
+    private Path runDir;
+    private final List<List<WeatherRecord>> records = new ArrayList<>();
+    private final List<JsonStationData> columns = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dataDir = Files.createTempDirectory("record-memory-bench");
+        runDir = Files.createTempDirectory("record-memory-runs");
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        long rows = SyntheticGhcnData.write(csv, stations, days, 42);
+        new IngestPipeline(() -> new GhcnJsonEncoder(objectMapper),
+                shard -> new SortedStationWriter(runDir, "shard-" + shard, 64 * 1024 * 1024, 16,
+                        () -> new StationFileWriter(dataDir, 64 * 1024), new AtomicInteger()),
+                1, 1, new AtomicLong())
+                .run(new ByteArrayInputStream(csv.toByteArray()), new IngestPipeline.Listener() {});
+        csv = null;
+
+        long before = retainedHeap();
+        for (String stationId : SyntheticGhcnData.stationIds(stations, new Random(42))) {
+            Path file = dataDir.resolve(stationId + ".json");
+            if ("records".equals(model)) {
+                records.add(objectMapper.readValue(file.toFile(), new TypeReference<List<WeatherRecord>>() {}));
+            } else {
+                columns.add(JsonStationData.read(file, objectMapper.getFactory()));
+            }
+        }
+        long retained = retainedHeap() - before;
+        System.out.printf("%n%s: %d rows retain %d bytes, %.1f MB per million rows (%.1f bytes a row)%n", model, rows,
+                retained, retained * 1_000_000.0 / rows / (1024 * 1024), (double) retained / rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path directory : List.of(dataDir, runDir)) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int filterMonth() {
+        int matches = 0;
+        if ("records".equals(model)) {
+            for (List<WeatherRecord> station : records) {
+                for (WeatherRecord record : station) {
+                    if ("TMAX".equalsIgnoreCase(record.getElement())
+                            && record.getDate().compareTo("20240601") >= 0 && record.getDate().compareTo("20240630") <= 0) {
+                        matches++;
+                    }
+                }
+            }
+        } else {
+            for (JsonStationData station : columns) {
+                matches += station.select("TMAX", "20240601", "20240630").count();
+            }
+        }
+        return matches;
+    }
+
+    private static long retainedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
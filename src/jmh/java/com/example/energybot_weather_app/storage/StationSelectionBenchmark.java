@@ -0,0 +1,103 @@
+package com.example.energybot_weather_app.storage;
+
+import com.example.energybot_weather_app.SyntheticGhcnData;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Filtering ten years of one station held in memory, from every record down to none, on a
+ * binary station file and on the columns of {@link JsonStationData}. {@code select} only counts
+ * the matches, {@code selectAndWrite} also writes them as JSON the way a response does. The
+ * setup prints the share of records each filter keeps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StationSelectionBenchmark {
+    // Element type, start date and end date of each filter
+    private static final Map<String, String[]> FILTERS = Map.of(
+            "all", new String[] {null, null, null},
+            "element", new String[] {"TMAX", null, null},
+            "year", new String[] {null, "20280101", "20281231"},
+            "month", new String[] {null, "20280601", "20280630"},
+            "elementMonth", new String[] {"TMAX", "20280601", "20280630"},
+            "elementWeek", new String[] {"TMAX", "20280601", "20280607"},
+            "none", new String[] {"WT01", null, null});
+
+    @Param({"binary", "columns"})
+    private String model;
+
+    @Param({"all", "element", "year", "month", "elementMonth", "elementWeek", "none"})
+    private String filter;
+
+    @Param({"3652"})
+    private int days;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private StationData stationData;
+    private String[] filterArgs;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path dataDir = Files.createTempDirectory("station-selection-bench");
+        try {
+            String stationId = SyntheticGhcnData.writeBinaryStationFiles(dataDir, 1, days, 42)[0];
+            BinaryStationFile stationFile = BinaryStationFile.read(dataDir.resolve(stationId + BinaryStationFormat.FILE_EXTENSION));
+            BinaryStationData binary = new BinaryStationData(stationId, stationFile, stationFile.size());
+            stationData = "columns".equals(model) ? new JsonStationData(binary.query(null, null, null)) : binary;
+        } finally {
+            try (Stream<Path> paths = Files.walk(dataDir)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        filterArgs = FILTERS.get(filter);
+        int total = stationData.select(null, null, null).count();
+        int matches = select();
+        System.out.printf("%n%s keeps %d of %d records (%.2f%%)%n", filter, matches, total, matches * 100.0 / total);
+    }
+
+    @Benchmark
+    public int select() {
+        return stationData.select(filterArgs[0], filterArgs[1], filterArgs[2]).count();
+    }
+
+    @Benchmark
+    public int selectAndWrite() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.writeStartArray();
+            stationData.select(filterArgs[0], filterArgs[1], filterArgs[2]).writeJson(generator);
+            generator.writeEndArray();
+        }
+        return out.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private int count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.energybot_weather_app.storage;
+
+import com.example.energybot_weather_app.SyntheticGhcnData;
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Writing a year of one station's records as a JSON array: Jackson databind over the
+ * WeatherRecords, {@link WeatherRecordJson} on a streaming generator over the same records, and
+ * a {@link StationSelection} of a binary station file that never builds the records. The setup
+ * prints the record count and the response size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeatherRecordJsonBenchmark {
+
+    @Param({"databind", "generator", "selection"})
+    private String writer;
+
+    @Param({"366"})
+    private int days;
+
+    // The application's ObjectMapper leaves out null fields; responses are compact
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private List<WeatherRecord> records;
+    private StationSelection selection;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path dataDir = Files.createTempDirectory("record-json-bench");
+        try {
+            String stationId = SyntheticGhcnData.writeBinaryStationFiles(dataDir, 1, days, 42)[0];
+            BinaryStationFile stationFile = BinaryStationFile.read(dataDir.resolve(stationId + BinaryStationFormat.FILE_EXTENSION));
+            selection = new BinaryStationData(stationId, stationFile, stationFile.size()).select(null, null, null);
+            records = selection.toRecords();
+        } finally {
+            try (Stream<Path> paths = Files.walk(dataDir)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+        System.out.printf("%n%d records, %d bytes of JSON%n", records.size(), write());
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        if ("databind".equals(writer)) {
+            objectMapper.writeValue(out, records);
+            return out.count;
+        }
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            if ("generator".equals(writer)) {
+                for (WeatherRecord record : records) {
+                    WeatherRecordJson.write(generator, record);
+                }
+            } else {
+                selection.writeJson(generator);
+            }
+            generator.writeEndArray();
+        }
+        return out.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private int count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
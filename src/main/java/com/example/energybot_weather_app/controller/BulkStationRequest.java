@@ -0,0 +1,14 @@
+package com.example.energybot_weather_app.controller;
+
+import java.util.List;
+
+/**
+ * Body of a bulk station query: the stations and the filters applied to each of them
+ *
+ * @param stationIds the station IDs to retrieve data for
+ * @param elementType Optional filter for specific element type (e.g., TMAX, PRCP)
+ * @param startDate Optional filter for start date (YYYYMMDD format)
+ * @param endDate Optional filter for end date (YYYYMMDD format)
+ */
+public record BulkStationRequest(List<String> stationIds, String elementType, String startDate, String endDate) {
+}
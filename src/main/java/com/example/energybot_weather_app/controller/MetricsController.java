@@ -0,0 +1,22 @@
+package com.example.energybot_weather_app.controller;
+
+import com.example.energybot_weather_app.metrics.MetricsRegistry;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Prometheus scrape endpoint, at the path Spring Boot Actuator would serve it from
+ */
+@RestController
+public class MetricsController {
+    private final MetricsRegistry metricsRegistry;
+
+    public MetricsController(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    @GetMapping(value = "/actuator/prometheus", produces = MetricsRegistry.CONTENT_TYPE)
+    public String prometheus() {
+        return metricsRegistry.scrape();
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.energybot_weather_app.controller;
+
+import com.example.energybot_weather_app.metrics.MetricsRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Times requests for a station's data, {@code /api/station/{id}}, from arrival until the last
+ * byte of the response is written, which for a streamed response is after the handler returned.
+ *
+ * Timings are tagged with the kind of filter, the response size class and the status, as a
+ * request for a week of one element and one for a station's whole history take very different
+ * paths. The size is what was written, or the declared length of a response sent with sendfile.
+ */
+@Component
+public class StationRequestMetricsFilter extends OncePerRequestFilter {
+    private static final String STATION_PATH = "/api/station/";
+    private static final double[] BUCKET_SECONDS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final MetricsRegistry metricsRegistry;
+
+    public StationRequestMetricsFilter(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith(STATION_PATH) || path.indexOf('/', STATION_PATH.length()) >= 0
+                || path.length() == STATION_PATH.length();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        CountingResponse countingResponse = new CountingResponse(response);
+        try {
+            chain.doFilter(request, countingResponse);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(request, countingResponse, start);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                record(request, countingResponse, start);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, CountingResponse response, long start) {
+        metricsRegistry.timer("weather_station_request_seconds", "Time to answer a request for a station's data",
+                BUCKET_SECONDS,
+                "filter", filterType(request),
+                "size", sizeClass(response.bytes()),
+                "status", String.valueOf(response.getStatus()))
+                .record(System.nanoTime() - start);
+    }
+
+    /**
+     * Which of the filters a request sets: none, element, date or element_date
+     */
+    static String filterType(HttpServletRequest request) {
+        boolean element = request.getParameter("elementType") != null;
+        boolean date = request.getParameter("startDate") != null || request.getParameter("endDate") != null;
+        if (element) {
+            return date ? "element_date" : "element";
+        }
+        return date ? "date" : "none";
+    }
+
+    static String sizeClass(long bytes) {
+        if (bytes < 10 * 1024) {
+            return "0-10KB";
+        }
+        if (bytes < 100 * 1024) {
+            return "10KB-100KB";
+        }
+        return bytes < 1024 * 1024 ? "100KB-1MB" : "1MB+";
+    }
+
+    /**
+     * Counts the bytes written to the response body and remembers its declared length
+     */
+    private static final class CountingResponse extends HttpServletResponseWrapper {
+        private volatile long written;
+        private long declaredLength = -1;
+        private ServletOutputStream outputStream;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        long bytes() {
+            return Math.max(written, declaredLength);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                        written++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        delegate.write(b, off, len);
+                        written += len;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        delegate.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            super.setContentLength(length);
+            declaredLength = length;
+        }
+
+        @Override
+        public void setContentLengthLong(long length) {
+            super.setContentLengthLong(length);
+            declaredLength = length;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            super.setHeader(name, value);
+            captureContentLength(name, value);
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            super.addHeader(name, value);
+            captureContentLength(name, value);
+        }
+
+        private void captureContentLength(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name) && value != null) {
+                try {
+                    declaredLength = Long.parseLong(value.trim());
+                } catch (NumberFormatException e) {
+                    // Left to the container to reject
+                }
+            }
+        }
+    }
+}
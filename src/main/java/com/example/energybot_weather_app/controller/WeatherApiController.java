@@ -1,29 +1,106 @@
 package com.example.energybot_weather_app.controller;
 
-import com.example.energybot_weather_app.model.WeatherRecord;
+import com.example.energybot_weather_app.service.BulkStationService;
+import com.example.energybot_weather_app.service.StationAnalyticsService;
+import com.example.energybot_weather_app.service.StationLocationService;
 import com.example.energybot_weather_app.service.WeatherDataProcessor;
 import com.example.energybot_weather_app.service.WeatherDataService;
+import com.example.energybot_weather_app.storage.BinaryStationFormat;
+import com.example.energybot_weather_app.storage.DatasetHashes;
+import com.example.energybot_weather_app.storage.DateColumns;
+import com.example.energybot_weather_app.storage.StationIndex;
+import com.example.energybot_weather_app.storage.StationResponseJson;
+import com.example.energybot_weather_app.storage.StationSegments;
+import com.example.energybot_weather_app.storage.StationSelection;
+import com.example.energybot_weather_app.storage.StationSeries;
+import com.example.energybot_weather_app.storage.StationSummary;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 
 @RestController
 @RequestMapping("/api")
 public class WeatherApiController {
     private static final Logger logger = LoggerFactory.getLogger(WeatherApiController.class);
     
+    // Request attributes through which Tomcat sends a file region with sendfile after the handler returns
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    
+    // How long clients may reuse a station response before revalidating it, 0 to always revalidate
+    @Value("${weather.api.cache-max-age-seconds:60}")
+    private long cacheMaxAgeSeconds;
+    
+    // Base temperatures in degrees C of the degree days when a request doesn't give its own
+    @Value("${weather.analytics.hdd-base-c:18.3}")
+    private double hddBaseC;
+    @Value("${weather.analytics.cdd-base-c:18.3}")
+    private double cddBaseC;
+    
+    // Most stations a bulk request may ask for
+    @Value("${weather.api.bulk.max-stations:5000}")
+    private int bulkMaxStations;
+    
+    // Most days a date query may span
+    @Value("${weather.api.date.max-days:31}")
+    private int dateMaxDays;
+    
+    // Most stations a nearest station query returns
+    @Value("${weather.api.nearest.max-results:1000}")
+    private int nearestMaxResults;
+    
     private final WeatherDataService weatherDataService;
     private final WeatherDataProcessor weatherDataProcessor;
+    private final StationAnalyticsService stationAnalyticsService;
+    private final BulkStationService bulkStationService;
+    private final StationLocationService stationLocationService;
+    private final ObjectMapper objectMapper;
     
-    public WeatherApiController(WeatherDataService weatherDataService, WeatherDataProcessor weatherDataProcessor) {
+    public WeatherApiController(WeatherDataService weatherDataService, WeatherDataProcessor weatherDataProcessor,
+                                StationAnalyticsService stationAnalyticsService, BulkStationService bulkStationService,
+                                StationLocationService stationLocationService, ObjectMapper objectMapper) {
         this.weatherDataService = weatherDataService;
         this.weatherDataProcessor = weatherDataProcessor;
+        this.stationAnalyticsService = stationAnalyticsService;
+        this.bulkStationService = bulkStationService;
+        this.stationLocationService = stationLocationService;
+        this.objectMapper = objectMapper;
     }
     
     /**
@@ -36,16 +113,33 @@ public class WeatherApiController {
         
         response.put("ready", isReady);
         response.put("status", isReady ? "ready" : "initializing");
+        response.put("cache", weatherDataService.getCacheStats());
+        response.put("hotStore", weatherDataService.getHotStoreStats());
+        response.put("refresh", weatherDataProcessor.getRefreshStatus());
+        
+        DatasetHashes datasetHashes = weatherDataService.getDatasetHashes();
+        if (datasetHashes != null) {
+            response.put("datasetVersion", datasetHashes.hash());
+        }
         
         if (!isReady) {
             Map<String, Object> progress = weatherDataProcessor.getProcessingProgress();
             boolean isDownloading = progress.containsKey("isDownloading") && 
                                    Boolean.TRUE.equals(progress.get("isDownloading"));
+            boolean isProcessing = Boolean.TRUE.equals(progress.get("isProcessing"));
             
             String currentPhase = isDownloading ? "Downloading weather data file" : "Processing weather data";
             
             String message;
-            if (isDownloading) {
+            if (isDownloading && isProcessing) {
+                // The file is processed as it downloads, so both stages are under way
+                Number downloadPercent = progress.containsKey("downloadPercent") ? 
+                                       (Number)progress.get("downloadPercent") : 0;
+                Number percentComplete = progress.containsKey("percentComplete") ? 
+                                       (Number)progress.get("percentComplete") : 0;
+                message = String.format("Downloading (%.1f%%) and processing (%.1f%%) weather data", 
+                        downloadPercent.doubleValue(), percentComplete.doubleValue());
+            } else if (isDownloading) {
                 // Safely convert to double regardless of whether it's Integer or Double
                 Number downloadPercent = progress.containsKey("downloadPercent") ? 
                                        (Number)progress.get("downloadPercent") : 0;
@@ -89,6 +183,7 @@ public class WeatherApiController {
         stationParams.put("elementType", "Optional query parameter - Filter by element type (e.g., TMAX, PRCP, TMIN)");
         stationParams.put("startDate", "Optional query parameter - Filter by start date in YYYYMMDD format");
         stationParams.put("endDate", "Optional query parameter - Filter by end date in YYYYMMDD format");
+        stationParams.put("pretty", "Optional query parameter - Indent the JSON response (default false)");
         
         stationEndpoint.put("parameters", stationParams);
         
@@ -102,6 +197,109 @@ public class WeatherApiController {
         
         endpoints.put("stationData", stationEndpoint);
         
+        // Station summary endpoint
+        Map<String, Object> summaryEndpoint = new LinkedHashMap<>();
+        summaryEndpoint.put("method", "GET");
+        summaryEndpoint.put("description", "Get monthly and annual count, min, max, sum and mean per element for a station. "
+                + "Missing values (-9999) and quality-flagged rows are counted separately and left out of the statistics");
+        summaryEndpoint.put("url", "/api/station/{stationId}/summary");
+        
+        Map<String, Object> summaryParams = new LinkedHashMap<>();
+        summaryParams.put("stationId", "Path parameter - The 11-character station ID");
+        summaryParams.put("elementType", "Optional query parameter - Only summarize this element type (e.g., TMAX, PRCP)");
+        summaryParams.put("period", "Optional query parameter - monthly or annual to return only those rollups (default both)");
+        summaryParams.put("pretty", "Optional query parameter - Indent the JSON response (default false)");
+        
+        summaryEndpoint.put("parameters", summaryParams);
+        summaryEndpoint.put("examples", Map.of("Monthly TMAX", "/api/station/USS0013B25S/summary?elementType=TMAX&period=monthly"));
+        
+        endpoints.put("stationSummary", summaryEndpoint);
+        
+        // Station analytics endpoint
+        Map<String, Object> analyticsEndpoint = new LinkedHashMap<>();
+        analyticsEndpoint.put("method", "GET");
+        analyticsEndpoint.put("description", "Get heating and cooling degree days, 7 and 30 day rolling mean temperature "
+                + "and cumulative precipitation for a station, as totals over the date range and per day");
+        analyticsEndpoint.put("url", "/api/station/{stationId}/analytics");
+        
+        Map<String, Object> analyticsParams = new LinkedHashMap<>();
+        analyticsParams.put("stationId", "Path parameter - The 11-character station ID");
+        analyticsParams.put("startDate", "Optional query parameter - First day in YYYYMMDD format");
+        analyticsParams.put("endDate", "Optional query parameter - Last day in YYYYMMDD format");
+        analyticsParams.put("hddBase", "Optional query parameter - Heating degree day base temperature in degrees C (default " + hddBaseC + ")");
+        analyticsParams.put("cddBase", "Optional query parameter - Cooling degree day base temperature in degrees C (default " + cddBaseC + ")");
+        analyticsParams.put("daily", "Optional query parameter - Include one entry per day (default true)");
+        analyticsParams.put("pretty", "Optional query parameter - Indent the JSON response (default false)");
+        
+        analyticsEndpoint.put("parameters", analyticsParams);
+        analyticsEndpoint.put("examples", Map.of("January totals", "/api/station/USS0013B25S/analytics?startDate=20240101&endDate=20240131&daily=false"));
+        
+        endpoints.put("stationAnalytics", analyticsEndpoint);
+        
+        // Bulk station data endpoint
+        Map<String, Object> bulkEndpoint = new LinkedHashMap<>();
+        bulkEndpoint.put("method", "GET or POST");
+        bulkEndpoint.put("description", "Get weather data for many stations at once as newline-delimited JSON, "
+                + "one station response per line in the order the stations are read");
+        bulkEndpoint.put("url", "/api/stations");
+        
+        Map<String, Object> bulkParams = new LinkedHashMap<>();
+        bulkParams.put("stationIds", "Comma-separated query parameter, or an array in the JSON body of a POST - "
+                + "Up to " + bulkMaxStations + " station IDs");
+        bulkParams.put("elementType", "Optional query parameter or body field - Filter by element type (e.g., TMAX, PRCP, TMIN)");
+        bulkParams.put("startDate", "Optional query parameter or body field - Filter by start date in YYYYMMDD format");
+        bulkParams.put("endDate", "Optional query parameter or body field - Filter by end date in YYYYMMDD format");
+        
+        bulkEndpoint.put("parameters", bulkParams);
+        bulkEndpoint.put("examples", Map.of("Two stations in January",
+                "/api/stations?stationIds=USS0013B25S,USW00094728&startDate=20240101&endDate=20240131"));
+        
+        endpoints.put("bulkStationData", bulkEndpoint);
+        
+        // Date endpoint
+        Map<String, Object> dateEndpoint = new LinkedHashMap<>();
+        dateEndpoint.put("method", "GET");
+        dateEndpoint.put("description", "Get one element of every station, or of the listed stations, on a date or a short "
+                + "range of dates. Missing values (-9999) and quality-flagged rows are left out");
+        dateEndpoint.put("url", "/api/date/{date}");
+        
+        Map<String, Object> dateParams = new LinkedHashMap<>();
+        dateParams.put("date", "Path parameter - The date in YYYYMMDD format, or the first date of the range");
+        dateParams.put("elementType", "Query parameter - The element type (e.g., TMAX, PRCP, TMIN)");
+        dateParams.put("endDate", "Optional query parameter - Last date of the range in YYYYMMDD format, "
+                + "at most " + dateMaxDays + " days in all");
+        dateParams.put("stationIds", "Optional comma-separated query parameter - Only these stations, up to " + bulkMaxStations);
+        dateParams.put("pretty", "Optional query parameter - Indent the JSON response (default false)");
+        
+        dateEndpoint.put("parameters", dateParams);
+        dateEndpoint.put("examples", Map.of("TMAX of all stations", "/api/date/20240715?elementType=TMAX",
+                "A week of two stations", "/api/date/20240715?elementType=PRCP&endDate=20240721&stationIds=USS0013B25S,USW00094728"));
+        
+        endpoints.put("dateData", dateEndpoint);
+        
+        // Nearest stations endpoint
+        Map<String, Object> nearestEndpoint = new LinkedHashMap<>();
+        nearestEndpoint.put("method", "GET");
+        nearestEndpoint.put("description", "Find the stations with data nearest to a point, or all of them within a radius, "
+                + "nearest first with their great-circle distance");
+        nearestEndpoint.put("url", "/api/stations/nearest");
+        
+        Map<String, Object> nearestParams = new LinkedHashMap<>();
+        nearestParams.put("lat", "Query parameter - Latitude in decimal degrees");
+        nearestParams.put("lon", "Query parameter - Longitude in decimal degrees");
+        nearestParams.put("k", "Optional query parameter - Number of stations to return (default 10, or all within the radius), "
+                + "at most " + nearestMaxResults);
+        nearestParams.put("radiusKm", "Optional query parameter - Only return stations within this distance in km");
+        nearestParams.put("coverage", "Optional query parameter - Include each station's first and last month and number "
+                + "of values per element (default false)");
+        nearestParams.put("pretty", "Optional query parameter - Indent the JSON response (default false)");
+        
+        nearestEndpoint.put("parameters", nearestParams);
+        nearestEndpoint.put("examples", Map.of("Five nearest to Central Park", "/api/stations/nearest?lat=40.78&lon=-73.97&k=5",
+                "Within 25 km", "/api/stations/nearest?lat=40.78&lon=-73.97&radiusKm=25&coverage=true"));
+        
+        endpoints.put("nearestStations", nearestEndpoint);
+        
         // Status endpoint
         Map<String, Object> statusEndpoint = new LinkedHashMap<>();
         statusEndpoint.put("method", "GET");
@@ -127,75 +325,665 @@ public class WeatherApiController {
     }
     
     /**
-     * Get weather data for a specific station
+     * Get weather data for a specific station. The response is streamed: records are written
+     * to the socket as they are read from storage, so memory use doesn't grow with the station.
+     * 
+     * Responses carry an ETag derived from the station's content hash and the dataset's ingest
+     * time as Last-Modified, so repeat requests are answered with 304 Not Modified. Unfiltered
+     * requests from clients accepting gzip get the response pre-compressed at ingest.
      * 
      * @param stationId The station ID to retrieve data for
      * @param elementType Optional filter for specific element type (e.g., TMAX, PRCP)
      * @param startDate Optional filter for start date (YYYYMMDD format)
      * @param endDate Optional filter for end date (YYYYMMDD format)
+     * @param pretty Whether to indent the JSON response
      * @return JSON response containing station weather data
      */
     @GetMapping("/station/{stationId}")
-    public ResponseEntity<Map<String, Object>> getStationData(
+    public ResponseEntity<StreamingResponseBody> getStationData(
             @PathVariable String stationId,
             @RequestParam(required = false) String elementType,
             @RequestParam(required = false) String startDate,
-            @RequestParam(required = false) String endDate) {
+            @RequestParam(required = false) String endDate,
+            @RequestParam(required = false, defaultValue = "false") boolean pretty,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            ServletWebRequest webRequest) {
         
         // Check if system is ready
         if (!weatherDataProcessor.isProcessingComplete()) {
-            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
-                    .body(Map.of(
-                            "error", "System is initializing",
-                            "message", "Weather data is still being processed. Please try again later.",
-                            "status", "INITIALIZING",
-                            "progress", weatherDataProcessor.getProcessingProgress()
-                    ));
+            return initializingResponse();
         }
         
         logger.info("Received request for station data: {}, elementType: {}, startDate: {}, endDate: {}", 
                 stationId, elementType, startDate, endDate);
         
+        // Stations ingested with content hashes support conditional requests. Headers and body
+        // all come from the one version, even if a new one is published meanwhile.
+        WeatherDataService.DatasetSnapshot snapshot = weatherDataService.snapshot();
+        DatasetHashes datasetHashes = snapshot.hashes();
+        String stationHash = snapshot.stationHash(stationId);
+        boolean unfiltered = elementType == null && startDate == null && endDate == null;
+        StationSegments.Range precompressed = stationHash != null && unfiltered && !pretty && acceptsGzip(acceptEncoding)
+                ? snapshot.precompressedResponse(stationId) : null;
+        HttpHeaders cacheHeaders = new HttpHeaders();
+        if (stationHash != null) {
+            String etag = responseETag(stationHash, pretty, precompressed != null, elementType, startDate, endDate);
+            // Sets the ETag and Last-Modified headers on the response either way
+            if (webRequest.checkNotModified(etag, datasetHashes.createdAt())) {
+                logger.info("Station {} not modified", stationId);
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl()).build();
+            }
+            cacheHeaders.setCacheControl(cacheControl());
+            if (unfiltered) {
+                cacheHeaders.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+            }
+        }
+        
+        if (precompressed != null) {
+            try {
+                return sendPrecompressed(precompressed, cacheHeaders, webRequest);
+            } catch (IOException e) {
+                // Fall back to writing the response, e.g. if the file went away with a new ingest
+                logger.warn("Could not send pre-compressed response {}: {}", precompressed, e.getMessage());
+            }
+        }
+        
+        StationSelection selection;
         try {
-            List<WeatherRecord> stationData = weatherDataService.getStationData(stationId, elementType, startDate, endDate);
-            
-            if (stationData == null) {
+            selection = snapshot.selectStationData(stationId, elementType, startDate, endDate);
+        } catch (Exception e) {
+            logger.error("Error retrieving data for station {}: {}", stationId, e.getMessage());
+            return jsonResponse(HttpStatus.INTERNAL_SERVER_ERROR,
+                    Map.of("error", "Error retrieving station data: " + e.getMessage()));
+        }
+        
+        if (selection == null) {
+            logger.warn("No data found for station ID: {}", stationId);
+            return jsonResponse(HttpStatus.NOT_FOUND, Map.of("error", "No data found for station ID: " + stationId));
+        }
+        
+        if (selection.count() == 0) {
+            logger.info("No matching records found for station ID: {} with the specified filters", stationId);
+        }
+        
+        return ResponseEntity.ok()
+                .headers(cacheHeaders)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> writeStationResponse(out, stationId, elementType, startDate, endDate, selection, pretty));
+    }
+    
+    /**
+     * Get weather data for many stations at once, see {@link #postStationsData}
+     * 
+     * @param stationIds The station IDs to retrieve data for
+     * @param elementType Optional filter for specific element type (e.g., TMAX, PRCP)
+     * @param startDate Optional filter for start date (YYYYMMDD format)
+     * @param endDate Optional filter for end date (YYYYMMDD format)
+     * @return newline-delimited JSON, one station per line
+     */
+    @GetMapping("/stations")
+    public ResponseEntity<StreamingResponseBody> getStationsData(
+            @RequestParam List<String> stationIds,
+            @RequestParam(required = false) String elementType,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate) {
+        return bulkStationData(new BulkStationRequest(stationIds, elementType, startDate, endDate));
+    }
+    
+    /**
+     * Get weather data for many stations at once. Stations are read concurrently and each one is
+     * written as a line of newline-delimited JSON as soon as it is ready, so the lines come in
+     * completion order rather than request order. A line holds the same envelope as the single
+     * station endpoint, or the station ID and an error.
+     * 
+     * @param request the station IDs and filters
+     * @return newline-delimited JSON, one station per line
+     */
+    @PostMapping("/stations")
+    public ResponseEntity<StreamingResponseBody> postStationsData(@RequestBody BulkStationRequest request) {
+        return bulkStationData(request);
+    }
+    
+    private ResponseEntity<StreamingResponseBody> bulkStationData(BulkStationRequest request) {
+        if (!weatherDataProcessor.isProcessingComplete()) {
+            return initializingResponse();
+        }
+        
+        // Each station once, in the order asked for
+        List<String> stationIds = request.stationIds() == null ? List.of() : request.stationIds().stream()
+                .map(String::trim)
+                .filter(stationId -> !stationId.isEmpty())
+                .distinct()
+                .toList();
+        if (stationIds.isEmpty()) {
+            return jsonResponse(HttpStatus.BAD_REQUEST, Map.of("error", "No station IDs given"));
+        }
+        if (stationIds.size() > bulkMaxStations) {
+            return jsonResponse(HttpStatus.BAD_REQUEST,
+                    Map.of("error", "At most " + bulkMaxStations + " stations can be requested at once"));
+        }
+        
+        logger.info("Received bulk request for {} stations, elementType: {}, startDate: {}, endDate: {}",
+                stationIds.size(), request.elementType(), request.startDate(), request.endDate());
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> {
+                    long start = System.nanoTime();
+                    int written = bulkStationService.write(stationIds, request.elementType(), request.startDate(),
+                            request.endDate(), objectMapper.getFactory(), out);
+                    logger.info("Wrote {} stations in {} ms", written, (System.nanoTime() - start) / 1_000_000);
+                });
+    }
+    
+    /**
+     * Get the monthly and annual rollups of a station's values, computed at ingest. Responses carry
+     * an ETag derived from the station's content hash like the station data.
+     * 
+     * @param stationId The station ID to retrieve the rollups for
+     * @param elementType Optional filter for specific element type (e.g., TMAX, PRCP)
+     * @param period Optional filter, "monthly" or "annual"
+     * @param pretty Whether to indent the JSON response
+     * @return JSON response containing the rollups per element
+     */
+    @GetMapping("/station/{stationId}/summary")
+    public ResponseEntity<StreamingResponseBody> getStationSummary(
+            @PathVariable String stationId,
+            @RequestParam(required = false) String elementType,
+            @RequestParam(required = false) String period,
+            @RequestParam(required = false, defaultValue = "false") boolean pretty,
+            ServletWebRequest webRequest) {
+        
+        if (!weatherDataProcessor.isProcessingComplete()) {
+            return initializingResponse();
+        }
+        
+        if (period != null && !period.equalsIgnoreCase("monthly") && !period.equalsIgnoreCase("annual")) {
+            return jsonResponse(HttpStatus.BAD_REQUEST, Map.of("error", "period must be monthly or annual"));
+        }
+        
+        // The tag and Last-Modified from the one version
+        WeatherDataService.DatasetSnapshot snapshot = weatherDataService.snapshot();
+        DatasetHashes datasetHashes = snapshot.hashes();
+        String stationHash = snapshot.stationHash(stationId);
+        HttpHeaders cacheHeaders = new HttpHeaders();
+        if (stationHash != null) {
+            String etag = responseETag(stationHash + "-summary", pretty, false, elementType, period);
+            if (webRequest.checkNotModified(etag, datasetHashes.createdAt())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl()).build();
+            }
+            cacheHeaders.setCacheControl(cacheControl());
+        }
+        
+        List<StationSummary> summaries;
+        try {
+            summaries = weatherDataService.getStationSummary(stationId);
+        } catch (Exception e) {
+            logger.error("Error retrieving summary for station {}: {}", stationId, e.getMessage());
+            return jsonResponse(HttpStatus.INTERNAL_SERVER_ERROR,
+                    Map.of("error", "Error retrieving station summary: " + e.getMessage()));
+        }
+        
+        if (summaries == null) {
+            logger.warn("No data found for station ID: {}", stationId);
+            return jsonResponse(HttpStatus.NOT_FOUND, Map.of("error", "No data found for station ID: " + stationId));
+        }
+        
+        return ResponseEntity.ok()
+                .headers(cacheHeaders)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> {
+                    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                        if (pretty) {
+                            generator.useDefaultPrettyPrinter();
+                        }
+                        StationSummary.writeJson(generator, stationId, summaries, elementType, period);
+                    }
+                });
+    }
+    
+    /**
+     * Get degree days, rolling mean temperatures and cumulative precipitation of a station, computed
+     * from its daily series. Totals over the range take constant time once the series is built.
+     * 
+     * @param stationId The station ID to compute the analytics for
+     * @param startDate Optional first day (YYYYMMDD format)
+     * @param endDate Optional last day (YYYYMMDD format)
+     * @param hddBase Optional heating degree day base temperature in degrees C
+     * @param cddBase Optional cooling degree day base temperature in degrees C
+     * @param daily Whether to include one entry per day
+     * @param pretty Whether to indent the JSON response
+     * @return JSON response containing the totals and daily values
+     */
+    @GetMapping("/station/{stationId}/analytics")
+    public ResponseEntity<StreamingResponseBody> getStationAnalytics(
+            @PathVariable String stationId,
+            @RequestParam(required = false) String startDate,
+            @RequestParam(required = false) String endDate,
+            @RequestParam(required = false) Double hddBase,
+            @RequestParam(required = false) Double cddBase,
+            @RequestParam(required = false, defaultValue = "true") boolean daily,
+            @RequestParam(required = false, defaultValue = "false") boolean pretty,
+            ServletWebRequest webRequest) {
+        
+        if (!weatherDataProcessor.isProcessingComplete()) {
+            return initializingResponse();
+        }
+        
+        // Base temperatures in tenths of a degree, like the data
+        int hddBaseTenths = (int) Math.round((hddBase != null ? hddBase : hddBaseC) * 10);
+        int cddBaseTenths = (int) Math.round((cddBase != null ? cddBase : cddBaseC) * 10);
+        
+        // The tag and Last-Modified from the one version
+        WeatherDataService.DatasetSnapshot snapshot = weatherDataService.snapshot();
+        DatasetHashes datasetHashes = snapshot.hashes();
+        String stationHash = snapshot.stationHash(stationId);
+        HttpHeaders cacheHeaders = new HttpHeaders();
+        if (stationHash != null) {
+            String etag = responseETag(stationHash + "-analytics", pretty, false, startDate, endDate,
+                    Integer.toString(hddBaseTenths), Integer.toString(cddBaseTenths), Boolean.toString(daily));
+            if (webRequest.checkNotModified(etag, datasetHashes.createdAt())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl()).build();
+            }
+            cacheHeaders.setCacheControl(cacheControl());
+        }
+        
+        StationSeries series;
+        int from;
+        int to;
+        try {
+            series = stationAnalyticsService.getStationSeries(stationId);
+            if (series == null) {
                 logger.warn("No data found for station ID: {}", stationId);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body(Map.of("error", "No data found for station ID: " + stationId));
+                return jsonResponse(HttpStatus.NOT_FOUND, Map.of("error", "No data found for station ID: " + stationId));
             }
-            
-            if (stationData.isEmpty()) {
-                logger.info("No matching records found for station ID: {} with the specified filters", stationId);
-                return ResponseEntity.ok()
-                        .body(Map.of("message", "No matching records found with the specified filters",
-                                "stationId", stationId,
-                                "count", 0,
-                                "data", stationData));
+            from = series.startIndex(startDate);
+            to = series.endIndex(endDate);
+        } catch (IllegalArgumentException e) {
+            return jsonResponse(HttpStatus.BAD_REQUEST, Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error computing analytics for station {}: {}", stationId, e.getMessage());
+            return jsonResponse(HttpStatus.INTERNAL_SERVER_ERROR,
+                    Map.of("error", "Error computing station analytics: " + e.getMessage()));
+        }
+        
+        return ResponseEntity.ok()
+                .headers(cacheHeaders)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> {
+                    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                        if (pretty) {
+                            generator.useDefaultPrettyPrinter();
+                        }
+                        series.writeJson(generator, stationId, from, to, hddBaseTenths, cddBaseTenths, daily);
+                    }
+                });
+    }
+    
+    /**
+     * Get one element of all stations on a date or a short range of dates, read from the date
+     * columns written at ingest: one file per day instead of one per station. Responses carry an
+     * ETag derived from the dataset's hash.
+     * 
+     * @param date The date (YYYYMMDD format), or the first date of the range
+     * @param elementType The element type (e.g., TMAX, PRCP)
+     * @param endDate Optional last date of the range (YYYYMMDD format)
+     * @param stationIds Optional stations to include instead of all
+     * @param pretty Whether to indent the JSON response
+     * @return JSON response containing the stations and their values per date
+     */
+    @GetMapping("/date/{date}")
+    public ResponseEntity<StreamingResponseBody> getDateData(
+            @PathVariable String date,
+            @RequestParam String elementType,
+            @RequestParam(required = false) String endDate,
+            @RequestParam(required = false) List<String> stationIds,
+            @RequestParam(required = false, defaultValue = "false") boolean pretty,
+            ServletWebRequest webRequest) {
+        
+        if (!weatherDataProcessor.isProcessingComplete()) {
+            return initializingResponse();
+        }
+        
+        LocalDate first;
+        LocalDate last;
+        try {
+            first = LocalDate.parse(date, DateTimeFormatter.BASIC_ISO_DATE);
+            last = endDate == null ? first : LocalDate.parse(endDate, DateTimeFormatter.BASIC_ISO_DATE);
+        } catch (DateTimeParseException e) {
+            return jsonResponse(HttpStatus.BAD_REQUEST, Map.of("error", "Dates must be valid dates in YYYYMMDD format"));
+        }
+        long days = ChronoUnit.DAYS.between(first, last) + 1;
+        if (days < 1 || days > dateMaxDays) {
+            return jsonResponse(HttpStatus.BAD_REQUEST, Map.of("error",
+                    "endDate must be on or after the date and the range at most " + dateMaxDays + " days"));
+        }
+        // Each station once, in the order asked for
+        List<String> stations = stationIds == null ? null : stationIds.stream()
+                .map(String::trim)
+                .filter(stationId -> !stationId.isEmpty())
+                .distinct()
+                .toList();
+        if (stations != null && stations.size() > bulkMaxStations) {
+            return jsonResponse(HttpStatus.BAD_REQUEST,
+                    Map.of("error", "At most " + bulkMaxStations + " stations can be requested at once"));
+        }
+        
+        DatasetHashes datasetHashes = weatherDataService.getDatasetHashes();
+        HttpHeaders cacheHeaders = new HttpHeaders();
+        if (datasetHashes != null) {
+            String etag = responseETag(datasetHashes.hash() + "-date", pretty, false, date, endDate,
+                    elementType.toUpperCase(), stations == null ? null : String.join(",", stations));
+            if (webRequest.checkNotModified(etag, datasetHashes.createdAt())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl()).build();
             }
-            
-            Map<String, Object> response = new LinkedHashMap<>();
-            response.put("stationId", stationId);
-            response.put("count", stationData.size());
-            response.put("data", stationData);
-            
-            if (elementType != null) {
-                response.put("elementType", elementType);
+            cacheHeaders.setCacheControl(cacheControl());
+        }
+        
+        // The days' files are mapped up front, so errors are reported before the response starts
+        List<Integer> dates = new ArrayList<>();
+        List<DateColumns> columns = new ArrayList<>();
+        try {
+            if (!weatherDataService.hasDateColumns()) {
+                return jsonResponse(HttpStatus.SERVICE_UNAVAILABLE,
+                        Map.of("error", "The dataset was ingested without date columns"));
             }
-            
-            if (startDate != null) {
-                response.put("startDate", startDate);
+            for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+                int yyyymmdd = day.getYear() * 10000 + day.getMonthValue() * 100 + day.getDayOfMonth();
+                dates.add(yyyymmdd);
+                columns.add(weatherDataService.getDateColumns(yyyymmdd));
             }
-            
-            if (endDate != null) {
-                response.put("endDate", endDate);
+        } catch (Exception e) {
+            logger.error("Error retrieving data for date {}: {}", date, e.getMessage());
+            return jsonResponse(HttpStatus.INTERNAL_SERVER_ERROR,
+                    Map.of("error", "Error retrieving date data: " + e.getMessage()));
+        }
+        
+        return ResponseEntity.ok()
+                .headers(cacheHeaders)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> {
+                    long start = System.nanoTime();
+                    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                        if (pretty) {
+                            generator.useDefaultPrettyPrinter();
+                        }
+                        writeDateData(generator, elementType.toUpperCase(), dates, columns, stations);
+                    }
+                    logger.info("Wrote {} of {} days in {} ms", elementType, dates.size(), (System.nanoTime() - start) / 1_000_000);
+                });
+    }
+    
+    /**
+     * Write the days as parallel arrays of station IDs and values, which keeps a day of the whole
+     * network compact enough to render as a heat map
+     */
+    private static void writeDateData(JsonGenerator generator, String elementType, List<Integer> dates,
+                                      List<DateColumns> columns, List<String> stationIds) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("elementType", elementType);
+        generator.writeStringField("startDate", BinaryStationFormat.formatDate(dates.get(0)));
+        generator.writeStringField("endDate", BinaryStationFormat.formatDate(dates.get(dates.size() - 1)));
+        generator.writeArrayFieldStart("dates");
+        int[] positions = new int[0];
+        for (int day = 0; day < dates.size(); day++) {
+            DateColumns dayColumns = columns.get(day);
+            int code = dayColumns == null ? -1 : dayColumns.find(elementType);
+            // Positions in the column of the values to write
+            int count = 0;
+            if (code >= 0) {
+                int candidates = stationIds == null ? dayColumns.count(code) : stationIds.size();
+                if (positions.length < candidates) {
+                    positions = new int[candidates];
+                }
+                for (int i = 0; i < candidates; i++) {
+                    int position = stationIds == null ? i : dayColumns.indexOf(code, stationIds.get(i));
+                    if (position >= 0 && !StationSummary.isMissing(dayColumns.value(code, position))
+                            && !StationSummary.isFlagged(dayColumns.qFlag(code, position))) {
+                        positions[count++] = position;
+                    }
+                }
             }
             
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            logger.error("Error retrieving data for station {}: {}", stationId, e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Error retrieving station data: " + e.getMessage()));
+            generator.writeStartObject();
+            generator.writeStringField("date", BinaryStationFormat.formatDate(dates.get(day)));
+            generator.writeNumberField("count", count);
+            generator.writeArrayFieldStart("stationIds");
+            for (int i = 0; i < count; i++) {
+                generator.writeString(dayColumns.stationId(code, positions[i]));
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("values");
+            for (int i = 0; i < count; i++) {
+                generator.writeNumber(dayColumns.value(code, positions[i]));
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+    
+    /**
+     * Find the stations nearest to a point, from the GHCN station list stored with the dataset.
+     * Only stations the dataset has data for are considered.
+     * 
+     * @param lat Latitude in decimal degrees
+     * @param lon Longitude in decimal degrees
+     * @param k Optional number of stations to return
+     * @param radiusKm Optional distance in km the stations must be within
+     * @param coverage Whether to include the months and number of values of each station's elements
+     * @param pretty Whether to indent the JSON response
+     * @return JSON response containing the stations, nearest first
+     */
+    @GetMapping("/stations/nearest")
+    public ResponseEntity<StreamingResponseBody> getNearestStations(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam(required = false) Integer k,
+            @RequestParam(required = false) Double radiusKm,
+            @RequestParam(required = false, defaultValue = "false") boolean coverage,
+            @RequestParam(required = false, defaultValue = "false") boolean pretty) {
+        
+        if (!weatherDataProcessor.isProcessingComplete()) {
+            return initializingResponse();
         }
+        
+        if (!(lat >= -90 && lat <= 90) || !(lon >= -180 && lon <= 180)) {
+            return jsonResponse(HttpStatus.BAD_REQUEST, Map.of("error", "lat must be within [-90, 90] and lon within [-180, 180]"));
+        }
+        if ((k != null && (k < 1 || k > nearestMaxResults)) || (radiusKm != null && !(radiusKm >= 0))) {
+            return jsonResponse(HttpStatus.BAD_REQUEST, Map.of("error",
+                    "k must be between 1 and " + nearestMaxResults + " and radiusKm must not be negative"));
+        }
+        
+        StationIndex stationIndex = stationLocationService.getStationIndex();
+        if (stationIndex == null) {
+            return jsonResponse(HttpStatus.SERVICE_UNAVAILABLE, Map.of("error", "No station list is available for the dataset"));
+        }
+        StationIndex.Matches matches = radiusKm == null
+                ? stationIndex.nearest(lat, lon, k != null ? k : 10)
+                : stationIndex.withinRadius(lat, lon, radiusKm, k != null ? k : nearestMaxResults);
+        
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> {
+                    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                        if (pretty) {
+                            generator.useDefaultPrettyPrinter();
+                        }
+                        writeNearestStations(generator, stationIndex, matches, lat, lon, radiusKm, coverage);
+                    }
+                });
+    }
+    
+    private void writeNearestStations(JsonGenerator generator, StationIndex stationIndex, StationIndex.Matches matches,
+                                      double lat, double lon, Double radiusKm, boolean coverage) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("lat", lat);
+        generator.writeNumberField("lon", lon);
+        if (radiusKm != null) {
+            generator.writeNumberField("radiusKm", radiusKm);
+        }
+        generator.writeNumberField("count", matches.size());
+        generator.writeArrayFieldStart("stations");
+        for (int i = 0; i < matches.size(); i++) {
+            int station = matches.stations()[i];
+            String stationId = stationIndex.id(station);
+            generator.writeStartObject();
+            generator.writeStringField("stationId", stationId);
+            generator.writeStringField("name", stationIndex.name(station));
+            if (!stationIndex.state(station).isEmpty()) {
+                generator.writeStringField("state", stationIndex.state(station));
+            }
+            generator.writeNumberField("latitude", stationIndex.latitude(station));
+            generator.writeNumberField("longitude", stationIndex.longitude(station));
+            if (stationIndex.elevation(station) != StationIndex.MISSING_ELEVATION) {
+                generator.writeNumberField("elevation", stationIndex.elevation(station));
+            }
+            generator.writeNumberField("distanceKm", Math.round(matches.distancesKm()[i] * 1000) / 1000.0);
+            if (coverage) {
+                List<StationSummary> summaries = weatherDataService.getStationSummary(stationId);
+                if (summaries != null) {
+                    generator.writeFieldName("coverage");
+                    StationSummary.writeCoverage(generator, summaries);
+                }
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+    
+    /**
+     * Write the station data envelope with the records written one at a time
+     */
+    private void writeStationResponse(OutputStream out, String stationId, String elementType, String startDate,
+                                      String endDate, StationSelection selection, boolean pretty) throws IOException {
+        // The mapper's factory leaves out its indent-output setting, so the output is compact unless asked for
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (pretty) {
+                generator.useDefaultPrettyPrinter();
+            }
+            StationResponseJson.write(generator, stationId, selection, elementType, startDate, endDate);
+        }
+    }
+    
+    /**
+     * Send a pre-compressed response as it is, from its own file or its range of a segment. Under
+     * Tomcat the file region goes out with sendfile once the handler returns, elsewhere it is
+     * copied to the response.
+     */
+    private ResponseEntity<StreamingResponseBody> sendPrecompressed(StationSegments.Range range, HttpHeaders headers,
+                                                                    ServletWebRequest webRequest) throws IOException {
+        Path file = range.file();
+        long offset = range.offset();
+        long size = range.length();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setContentLength(size);
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        
+        HttpServletRequest request = webRequest.getRequest();
+        HttpServletResponse response = webRequest.getResponse();
+        if (response != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+            request.setAttribute(SENDFILE_FILENAME, file.toRealPath().toString());
+            request.setAttribute(SENDFILE_START, offset);
+            request.setAttribute(SENDFILE_END, offset + size);
+            // The response is complete, nothing is left for Spring to write
+            return null;
+        }
+        
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(out -> {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        WritableByteChannel target = Channels.newChannel(out);
+                        long sent = 0;
+                        while (sent < size) {
+                            long transferred = channel.transferTo(offset + sent, size - sent, target);
+                            if (transferred <= 0) {
+                                throw new IOException("Pre-compressed response was truncated: " + file);
+                            }
+                            sent += transferred;
+                        }
+                    }
+                });
+    }
+    
+    /**
+     * Entity tag of a station response. Each filter combination, indentation and content
+     * encoding is a different representation of the station's data, so each gets its own tag.
+     * 
+     * @param filters the request's filter parameters, null where absent
+     */
+    private static String responseETag(String stationHash, boolean pretty, boolean gzip, String... filters) {
+        StringBuilder etag = new StringBuilder("\"").append(stationHash);
+        if (Arrays.stream(filters).anyMatch(Objects::nonNull)) {
+            CRC32 checksum = new CRC32();
+            checksum.update(Arrays.stream(filters).map(String::valueOf).collect(Collectors.joining("|"))
+                    .getBytes(StandardCharsets.UTF_8));
+            etag.append('-').append(Long.toHexString(checksum.getValue()));
+        }
+        if (pretty) {
+            etag.append("-pretty");
+        }
+        if (gzip) {
+            etag.append("-gzip");
+        }
+        return etag.append('"').toString();
+    }
+    
+    /**
+     * Whether an Accept-Encoding header allows gzip, i.e. lists it without q=0
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                for (int i = 1; i < parts.length; i++) {
+                    if (parts[i].trim().matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private CacheControl cacheControl() {
+        if (cacheMaxAgeSeconds <= 0) {
+            return CacheControl.noCache();
+        }
+        return CacheControl.maxAge(Duration.ofSeconds(cacheMaxAgeSeconds)).cachePublic();
+    }
+    
+    /**
+     * 503 with the ingest progress, for requests that arrive before the data is loaded
+     */
+    private ResponseEntity<StreamingResponseBody> initializingResponse() {
+        return jsonResponse(HttpStatus.SERVICE_UNAVAILABLE, Map.of(
+                "error", "System is initializing",
+                "message", "Weather data is still being processed. Please try again later.",
+                "status", "INITIALIZING",
+                "progress", weatherDataProcessor.getProcessingProgress()
+        ));
+    }
+    
+    /**
+     * A small JSON response, such as an error, serialized with the application's Jackson settings
+     */
+    private ResponseEntity<StreamingResponseBody> jsonResponse(HttpStatus status, Map<String, Object> body) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(out, body));
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+package com.example.energybot_weather_app.download;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file while it is being downloaded. The downloader reports how much of the start of the
+ * file is on disk with {@link #advance}, and reads block until the bytes they need are there or
+ * the download has {@link #finish finished}.
+ *
+ * The file on disk is the buffer between the two sides: the download never waits for the reader,
+ * and a reader that falls behind costs disk space rather than memory.
+ */
+public class DownloadInputStream extends InputStream {
+    private final Path file;
+    private FileChannel channel;
+    private long position;
+    // Guarded by this
+    private long available;
+    private boolean finished;
+    private IOException failure;
+    private boolean closed;
+
+    public DownloadInputStream(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * The first {@code bytes} bytes of the file can be read
+     */
+    public synchronized void advance(long bytes) {
+        if (bytes > available) {
+            available = bytes;
+            notifyAll();
+        }
+    }
+
+    /**
+     * No more bytes will arrive. Reads past what is available fail with the given exception,
+     * or reach the end of the stream if the download succeeded.
+     *
+     * @param failure why the download stopped, null if it completed
+     */
+    public synchronized void finish(IOException failure) {
+        this.finished = true;
+        this.failure = failure;
+        notifyAll();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        long limit = awaitBytes();
+        if (limit <= position) {
+            return -1;
+        }
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+        int bytesRead = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, limit - position)), position);
+        if (bytesRead > 0) {
+            position += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public synchronized int available() {
+        return (int) Math.min(Integer.MAX_VALUE, available - position);
+    }
+
+    /**
+     * Wait until there is something past the read position, or the download is over
+     *
+     * @return how far the file can be read
+     */
+    private synchronized long awaitBytes() throws IOException {
+        while (available <= position && !finished && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the download");
+            }
+        }
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (available <= position && failure != null) {
+            throw new IOException("Download failed: " + failure.getMessage(), failure);
+        }
+        return available;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.energybot_weather_app.download;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Progress of a ranged download, saved next to the partial file so that a restarted
+ * download continues where the previous one stopped.
+ *
+ * Segment i covers bytes [segmentStarts[i], segmentEnds[i]) of the file and everything
+ * before segmentPositions[i] has been written and flushed to disk.
+ *
+ * @param url the file's URL
+ * @param length the file's length
+ * @param etag the file's entity tag, or null if the server sent none
+ * @param lastModified the file's Last-Modified header, or null if the server sent none
+ */
+public record DownloadState(String url, long length, String etag, String lastModified,
+                            long[] segmentStarts, long[] segmentEnds, long[] segmentPositions) {
+
+    /**
+     * Split a file into consecutive segments of the given size, none of them started yet
+     */
+    public static DownloadState start(String url, long length, String etag, String lastModified, long segmentSize) {
+        int segments = (int) Math.max(1, (length + segmentSize - 1) / segmentSize);
+        long[] starts = new long[segments];
+        long[] ends = new long[segments];
+        for (int i = 0; i < segments; i++) {
+            starts[i] = i * segmentSize;
+            ends[i] = Math.min(length, (i + 1) * segmentSize);
+        }
+        return new DownloadState(url, length, etag, lastModified, starts, ends, starts.clone());
+    }
+
+    /**
+     * Read the saved progress of a download
+     *
+     * @return the progress, or null if there is none or it can't be read
+     */
+    public static DownloadState read(Path file, ObjectMapper objectMapper) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(file.toFile(), DownloadState.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Save the progress, replacing the previous state in one step so a crash never leaves a torn file
+     */
+    public void write(Path file, ObjectMapper objectMapper) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        objectMapper.writeValue(temp.toFile(), this);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Whether the saved progress belongs to the same version of the same file
+     */
+    public boolean matches(String url, long length, String etag, String lastModified) {
+        return this.url.equals(url) && this.length == length
+                && Objects.equals(this.etag, etag) && Objects.equals(this.lastModified, lastModified);
+    }
+
+    @JsonIgnore
+    public long downloadedBytes() {
+        long downloaded = 0;
+        for (int i = 0; i < segmentStarts.length; i++) {
+            downloaded += segmentPositions[i] - segmentStarts[i];
+        }
+        return downloaded;
+    }
+
+    /**
+     * Length of the downloaded part at the start of the file, which can be read while the rest is downloading
+     */
+    @JsonIgnore
+    public long contiguousBytes() {
+        for (int i = 0; i < segmentStarts.length; i++) {
+            if (segmentPositions[i] < segmentEnds[i]) {
+                return segmentPositions[i];
+            }
+        }
+        return length;
+    }
+
+    @JsonIgnore
+    public boolean isComplete() {
+        return Arrays.equals(segmentPositions, segmentEnds);
+    }
+}
@@ -0,0 +1,454 @@
+package com.example.energybot_weather_app.download;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Downloads a file over HTTP in {@code Range} segments fetched over parallel connections and
+ * written into place with positional writes, so a single slow or broken connection neither
+ * limits the throughput nor loses what the others fetched.
+ *
+ * Segments are handed to the connections in file order, so the finished part at the start of
+ * the file grows steadily and can be read while the rest is still arriving, see
+ * {@link Listener#onAvailable} and {@link DownloadInputStream}.
+ *
+ * Progress is saved next to the file ({@code <file>.download}) as segments advance. A download
+ * that is started again for the same URL continues where the saved progress left off, as long as
+ * the server still reports the same length, ETag and Last-Modified - otherwise it starts over.
+ * Every range request carries {@code If-Range}, so a file that changes on the server halfway
+ * through is detected instead of being stitched together from two versions.
+ *
+ * Servers that don't advertise range support get a single plain request, which skips the
+ * bytes already written when it is retried.
+ */
+public class RangeDownloader {
+    private static final Logger logger = LoggerFactory.getLogger(RangeDownloader.class);
+
+    public static final String STATE_FILE_SUFFIX = ".download";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 30_000;
+    private static final int READ_TIMEOUT_MILLIS = 60_000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long RETRY_DELAY_MILLIS = 1_000;
+    // Save progress whenever this many bytes have been written since the last save
+    private static final long CHECKPOINT_BYTES = 8 * 1024 * 1024;
+
+    private final ObjectMapper objectMapper;
+    private final int connections;
+    private final long segmentSize;
+    private final int retries;
+    private final AtomicLong downloadedBytes;
+    private final AtomicLong totalBytes;
+    private final Listener listener;
+
+    /**
+     * Notified from the download threads as data arrives
+     */
+    public interface Listener {
+        default void onProgress(long downloadedBytes, long totalBytes) {
+        }
+
+        /**
+         * Bytes were received from the server, whether or not they go on to count as progress
+         */
+        default void onReceived(int bytes) {
+        }
+
+        /**
+         * The first {@code bytes} bytes of the file are on disk
+         */
+        default void onAvailable(long bytes) {
+        }
+    }
+
+    /**
+     * @param connections number of segments fetched in parallel
+     * @param segmentSize bytes per range request
+     * @param retries attempts per segment after the first one fails
+     * @param downloadedBytes set to the bytes downloaded so far, including any resumed progress
+     * @param totalBytes set to the file's length once it is known
+     */
+    public RangeDownloader(ObjectMapper objectMapper, int connections, long segmentSize, int retries,
+                           AtomicLong downloadedBytes, AtomicLong totalBytes, Listener listener) {
+        this.objectMapper = objectMapper;
+        this.connections = Math.max(1, connections);
+        this.segmentSize = Math.max(1, segmentSize);
+        this.retries = Math.max(0, retries);
+        this.downloadedBytes = downloadedBytes;
+        this.totalBytes = totalBytes;
+        this.listener = listener;
+    }
+
+    /**
+     * Download a URL into a file, resuming an earlier download of it if possible.
+     * The saved progress is kept until {@link #discard} is called, so a file that was
+     * completely downloaded but not yet used isn't fetched again.
+     */
+    public void download(String url, Path file) throws IOException {
+        download(head(url), file);
+    }
+
+    /**
+     * Download a file described by an earlier {@link #head} request. Fails if the server
+     * no longer has that version of the file.
+     */
+    public void download(RemoteFile remote, Path file) throws IOException {
+        String url = remote.url();
+        totalBytes.set(Math.max(0, remote.length()));
+        Path stateFile = stateFile(file);
+        if (remote.length() < 0 || !remote.acceptsRanges()) {
+            logger.info("Server doesn't support ranged downloads of {}, downloading in one piece", url);
+            Files.deleteIfExists(stateFile);
+            downloadWhole(url, file);
+            if (remote.length() >= 0) {
+                verify(file, remote);
+            }
+            return;
+        }
+
+        DownloadState state = DownloadState.read(stateFile, objectMapper);
+        if (state != null && state.matches(url, remote.length(), remote.etag(), remote.lastModified())
+                && Files.isRegularFile(file) && Files.size(file) == remote.length()) {
+            logger.info("Resuming download of {} at {} of {} bytes", url, state.downloadedBytes(), remote.length());
+        } else {
+            if (state != null) {
+                logger.info("Saved download of {} is out of date, starting over", url);
+            }
+            state = DownloadState.start(url, remote.length(), remote.etag(), remote.lastModified(), segmentSize);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                // Size the file up front so every segment can write into place
+                if (remote.length() > 0) {
+                    channel.write(ByteBuffer.allocate(1), remote.length() - 1);
+                }
+            }
+            state.write(stateFile, objectMapper);
+        }
+
+        downloadedBytes.set(state.downloadedBytes());
+        listener.onAvailable(state.contiguousBytes());
+        if (!state.isComplete()) {
+            new SegmentedDownload(state, file, stateFile).run();
+        }
+        verify(file, remote);
+    }
+
+    /**
+     * Delete a downloaded file together with its saved progress
+     */
+    public void discard(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(stateFile(file));
+    }
+
+    private static Path stateFile(Path file) {
+        return file.resolveSibling(file.getFileName() + STATE_FILE_SUFFIX);
+    }
+
+    /**
+     * Check the finished file against the server's description before anyone processes it
+     */
+    private void verify(Path file, RemoteFile remote) throws IOException {
+        long size = Files.size(file);
+        if (size != remote.length()) {
+            throw new IOException("Downloaded " + size + " bytes but the server reported " + remote.length());
+        }
+        RemoteFile current = head(remote.url());
+        if (current.length() != remote.length() || !Objects.equals(current.etag(), remote.etag())) {
+            throw new IOException("The file changed on the server during the download");
+        }
+        logger.info("Downloaded {} bytes of {} (ETag {})", size, remote.url(), remote.etag());
+    }
+
+    /**
+     * Ask the server for the file's length and version without downloading it
+     */
+    public RemoteFile head(String url) throws IOException {
+        return head(url, null);
+    }
+
+    /**
+     * Ask the server whether the file differs from a known version, with a conditional request
+     *
+     * @param known the version to compare with, or null to always get the file's description
+     * @return the file's description, or null if the server reports it unchanged
+     */
+    public RemoteFile head(String url, RemoteFile known) throws IOException {
+        HttpURLConnection conn = open(url);
+        try {
+            conn.setRequestMethod("HEAD");
+            if (known != null && known.etag() != null) {
+                conn.setRequestProperty("If-None-Match", known.etag());
+            } else if (known != null && known.lastModified() != null) {
+                conn.setRequestProperty("If-Modified-Since", known.lastModified());
+            }
+            int status = conn.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && known != null) {
+                return null;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HEAD " + url + " returned " + status);
+            }
+            return new RemoteFile(url, conn.getContentLengthLong(), conn.getHeaderField("ETag"),
+                    conn.getHeaderField("Last-Modified"), "bytes".equalsIgnoreCase(conn.getHeaderField("Accept-Ranges")));
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Fallback for servers without range support: one request, and on failure another one
+     * that skips the bytes already written, so what was read from the file stays valid
+     */
+    private void downloadWhole(String url, Path file) throws IOException {
+        downloadedBytes.set(0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int attempt = 0; ; attempt++) {
+                HttpURLConnection conn = open(url);
+                try (InputStream in = conn.getInputStream()) {
+                    in.skipNBytes(channel.size());
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int bytesRead;
+                    while ((bytesRead = in.read(buffer)) != -1) {
+                        channel.write(ByteBuffer.wrap(buffer, 0, bytesRead));
+                        listener.onReceived(bytesRead);
+                        listener.onProgress(downloadedBytes.addAndGet(bytesRead), totalBytes.get());
+                        listener.onAvailable(channel.size());
+                    }
+                    if (totalBytes.get() > 0 && channel.size() != totalBytes.get()) {
+                        throw new IOException("Connection closed after " + channel.size() + " of " + totalBytes.get() + " bytes");
+                    }
+                    return;
+                } catch (IOException e) {
+                    if (attempt >= retries) {
+                        throw e;
+                    }
+                    logger.warn("Download of {} failed at byte {} ({}), retrying", url, channel.size(), e.getMessage());
+                    pause(attempt);
+                } finally {
+                    conn.disconnect();
+                }
+            }
+        }
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+        return conn;
+    }
+
+    private static void pause(int attempt) throws IOException {
+        try {
+            Thread.sleep(RETRY_DELAY_MILLIS * (1L << Math.min(attempt, 5)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry the download", e);
+        }
+    }
+
+    /**
+     * One run over the unfinished segments of a download. The segments are queued in file
+     * order and taken by a fixed number of connection threads.
+     */
+    private final class SegmentedDownload {
+        private final DownloadState state;
+        private final Path file;
+        private final Path stateFile;
+        private final AtomicLongArray positions;
+        private final AtomicLong unsavedBytes = new AtomicLong();
+        private final RemoteFile remote;
+        // Set when a segment has failed for good, so the queued ones aren't started
+        private final AtomicBoolean failed = new AtomicBoolean();
+        private volatile int firstIncomplete;
+        private long availableBytes;
+
+        SegmentedDownload(DownloadState state, Path file, Path stateFile) {
+            this.state = state;
+            this.file = file;
+            this.stateFile = stateFile;
+            this.positions = new AtomicLongArray(state.segmentPositions());
+            this.remote = new RemoteFile(state.url(), state.length(), state.etag(), state.lastModified(), true);
+        }
+
+        void run() throws IOException {
+            List<Integer> pending = new ArrayList<>();
+            for (int i = 0; i < positions.length(); i++) {
+                if (positions.get(i) < state.segmentEnds()[i]) {
+                    pending.add(i);
+                }
+            }
+            int threads = Math.min(connections, pending.size());
+            logger.info("Downloading {} in {} segments over {} connections ({} segments left)",
+                    state.url(), positions.length(), threads, pending.size());
+
+            AtomicInteger threadNumber = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "download-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int segment : pending) {
+                    futures.add(executor.submit(() -> {
+                        if (!failed.get()) {
+                            downloadSegment(channel, segment);
+                        }
+                        return null;
+                    }));
+                }
+
+                IOException failure = null;
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            failure = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while downloading", e);
+                    }
+                }
+                // Whatever made it to disk is kept for the next attempt
+                checkpoint(channel);
+                if (failure != null) {
+                    throw failure;
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        private void downloadSegment(FileChannel channel, int segment) throws IOException {
+            long end = state.segmentEnds()[segment];
+            for (int attempt = 0; ; attempt++) {
+                long position = positions.get(segment);
+                if (position >= end) {
+                    return;
+                }
+                try {
+                    fetchRange(channel, segment, position, end);
+                    return;
+                } catch (IOException e) {
+                    if (e instanceof SourceChangedException || attempt >= retries || failed.get()) {
+                        failed.set(true);
+                        throw e;
+                    }
+                    logger.warn("Segment {} of {} failed at byte {} ({}), retrying", segment, state.url(),
+                            positions.get(segment), e.getMessage());
+                    pause(attempt);
+                }
+            }
+        }
+
+        private void fetchRange(FileChannel channel, int segment, long start, long end) throws IOException {
+            HttpURLConnection conn = open(state.url());
+            try {
+                conn.setRequestProperty("Range", "bytes=" + start + "-" + (end - 1));
+                String ifRange = remote.ifRange();
+                if (ifRange != null) {
+                    conn.setRequestProperty("If-Range", ifRange);
+                }
+                int status = conn.getResponseCode();
+                if (status != HttpURLConnection.HTTP_PARTIAL) {
+                    // A full response to a conditional range request means the file is no longer the same
+                    throw new SourceChangedException("Expected a partial response for bytes " + start + "-" + (end - 1)
+                            + " of " + state.url() + " but got " + status);
+                }
+
+                try (InputStream in = conn.getInputStream()) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+                    long position = start;
+                    while (position < end) {
+                        int bytesRead = in.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+                        if (bytesRead == -1) {
+                            throw new IOException("Connection closed at byte " + position + " of segment " + segment);
+                        }
+                        wrapped.clear().limit(bytesRead);
+                        while (wrapped.hasRemaining()) {
+                            position += channel.write(wrapped, position);
+                        }
+                        positions.set(segment, position);
+                        listener.onReceived(bytesRead);
+                        listener.onProgress(downloadedBytes.addAndGet(bytesRead), totalBytes.get());
+                        if (segment == firstIncomplete || position == end) {
+                            advanceAvailable();
+                        }
+                        if (unsavedBytes.addAndGet(bytesRead) >= CHECKPOINT_BYTES) {
+                            checkpoint(channel);
+                        }
+                    }
+                }
+            } finally {
+                conn.disconnect();
+            }
+        }
+
+        /**
+         * Report how far the file is complete from its start
+         */
+        private synchronized void advanceAvailable() {
+            long[] ends = state.segmentEnds();
+            while (firstIncomplete < ends.length && positions.get(firstIncomplete) == ends[firstIncomplete]) {
+                firstIncomplete++;
+            }
+            long available = firstIncomplete < ends.length ? positions.get(firstIncomplete) : state.length();
+            if (available > availableBytes) {
+                availableBytes = available;
+                listener.onAvailable(available);
+            }
+        }
+
+        /**
+         * Flush what has been written and save the segment positions. Positions only move after
+         * their bytes are written, so the saved state never claims more than is on disk.
+         */
+        private synchronized void checkpoint(FileChannel channel) throws IOException {
+            unsavedBytes.set(0);
+            long[] snapshot = new long[positions.length()];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = positions.get(i);
+            }
+            channel.force(false);
+            new DownloadState(state.url(), state.length(), state.etag(), state.lastModified(),
+                    state.segmentStarts(), state.segmentEnds(), snapshot).write(stateFile, objectMapper);
+        }
+    }
+
+    /**
+     * The server no longer has the version of the file the download started with
+     */
+    private static final class SourceChangedException extends IOException {
+        SourceChangedException(String message) {
+            super(message);
+        }
+    }
+}
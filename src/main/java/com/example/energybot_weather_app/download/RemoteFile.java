@@ -0,0 +1,42 @@
+package com.example.energybot_weather_app.download;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Objects;
+
+/**
+ * A file on an HTTP server as described by a HEAD request
+ *
+ * @param url the file's URL
+ * @param length the file's length, or -1 if the server didn't say
+ * @param etag the file's entity tag, or null if the server sent none
+ * @param lastModified the file's Last-Modified header, or null if the server sent none
+ * @param acceptsRanges whether the server advertised byte range support
+ */
+public record RemoteFile(String url, long length, String etag, String lastModified, boolean acceptsRanges) {
+
+    /**
+     * Whether both describe the same version of the same file. Without an ETag or
+     * Last-Modified to compare there is no telling, so the answer is no.
+     */
+    public boolean isSameVersion(RemoteFile other) {
+        if (other == null || !url.equals(other.url) || length != other.length) {
+            return false;
+        }
+        if (etag != null || other.etag != null) {
+            return Objects.equals(etag, other.etag);
+        }
+        return lastModified != null && lastModified.equals(other.lastModified);
+    }
+
+    /**
+     * Validator for If-Range: a strong ETag, else the modification date
+     */
+    @JsonIgnore
+    String ifRange() {
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+}
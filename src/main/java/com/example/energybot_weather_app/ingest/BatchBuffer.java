@@ -0,0 +1,62 @@
+package com.example.energybot_weather_app.ingest;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Growable byte buffer that is reused from batch to batch instead of being reallocated.
+ * Exposes its backing array so readers can decode entries in place.
+ */
+public class BatchBuffer extends ByteArrayOutputStream {
+
+    public BatchBuffer(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    /**
+     * Backing array - only the first {@link #size()} bytes are valid
+     */
+    public byte[] array() {
+        return buf;
+    }
+
+    /**
+     * Drop everything written after the given position
+     */
+    public void truncate(int position) {
+        count = position;
+    }
+
+    public void writeInt(int value) {
+        write(value >>> 24);
+        write(value >>> 16);
+        write(value >>> 8);
+        write(value);
+    }
+
+    public void writeShort(int value) {
+        write(value >>> 8);
+        write(value);
+    }
+
+    public void setShort(int position, int value) {
+        buf[position] = (byte) (value >>> 8);
+        buf[position + 1] = (byte) value;
+    }
+
+    /**
+     * Overwrite a previously reserved int, e.g. a length prefix once the payload is known
+     */
+    public void setInt(int position, int value) {
+        buf[position] = (byte) (value >>> 24);
+        buf[position + 1] = (byte) (value >>> 16);
+        buf[position + 2] = (byte) (value >>> 8);
+        buf[position + 3] = (byte) value;
+    }
+
+    public static int readInt(byte[] buf, int position) {
+        return ((buf[position] & 0xff) << 24)
+                | ((buf[position + 1] & 0xff) << 16)
+                | ((buf[position + 2] & 0xff) << 8)
+                | (buf[position + 3] & 0xff);
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.storage.BinaryStationFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.example.energybot_weather_app.storage.BinaryStationFormat.*;
+
+/**
+ * Writes each station's records, as encoded by {@link GhcnBinaryEncoder}, to a binary station file.
+ *
+ * A station's rows are collected in memory while its element dictionary is built, then grouped
+ * by element, sorted by date and written in one go. Only the file of the current station is open
+ * at any time.
+ */
+public class BinaryStationFileWriter implements StationSink {
+    // Beyond this the element ordering matrix gets too big to be worth it
+    private static final int MAX_ORDERED_ELEMENTS = 1024;
+
+    private final Path directory;
+    private final BatchBuffer rows = new BatchBuffer(64 * 1024);
+    private final BatchBuffer sortedRows = new BatchBuffer(64 * 1024);
+    private final BatchBuffer header = new BatchBuffer(HEADER_SIZE + 64 * DICTIONARY_ENTRY_SIZE);
+    private long[] sortKeys = new long[4096];
+    private int[] elements = new int[64];
+    private int[] elementFirstRows = new int[64];
+    private int[] elementRowCounts = new int[64];
+    private int elementCount;
+    private int rowCount;
+    private String stationId;
+
+    public BinaryStationFileWriter(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void beginStation(String stationId, int recordCount) {
+        this.stationId = stationId;
+        rows.reset();
+        elementCount = 0;
+        rowCount = 0;
+    }
+
+    @Override
+    public void record(byte[] buf, int offset, int length) throws IOException {
+        if (length != GhcnBinaryEncoder.ENCODED_SIZE) {
+            throw new IOException("Unexpected binary record length " + length + " for station " + stationId);
+        }
+
+        int code = elementCode(BatchBuffer.readInt(buf, offset));
+        int rowStart = rows.size();
+        rows.write(buf, offset + 4, ROW_SIZE);
+        rows.setShort(rowStart + ELEMENT_OFFSET, code);
+        elementRowCounts[code]++;
+        rowCount++;
+    }
+
+    @Override
+    public void endStation() throws IOException {
+        int[] order = elementOrder();
+        sortRows(order);
+
+        header.reset();
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        header.writeShort(ROW_SIZE);
+        header.writeInt(rowCount);
+        header.writeShort(elementCount);
+        header.writeShort(0);
+        for (int code = 0; code < elementCount; code++) {
+            header.writeInt(elements[order[code]]);
+            header.writeInt(elementFirstRows[code]);
+            header.writeInt(elementRowCounts[order[code]]);
+        }
+
+        try (OutputStream out = Files.newOutputStream(directory.resolve(stationId + BinaryStationFormat.FILE_EXTENSION))) {
+            out.write(header.array(), 0, header.size());
+            out.write(sortedRows.array(), 0, sortedRows.size());
+        }
+        stationId = null;
+    }
+
+    /**
+     * Order the elements so that sorting a day's rows by element code gives the order the input
+     * lists them in. Elements are numbered in order of first appearance while reading; here
+     * they are sorted topologically by which element directly precedes which within a day.
+     * Should the input not be consistent about that, the rest keep first-appearance order.
+     *
+     * @return the original element code for each final code
+     */
+    private int[] elementOrder() {
+        int[] order = new int[elementCount];
+        for (int code = 0; code < elementCount; code++) {
+            order[code] = code;
+        }
+        if (elementCount < 2 || elementCount > MAX_ORDERED_ELEMENTS) {
+            return order;
+        }
+
+        boolean[] precedes = new boolean[elementCount * elementCount];
+        int[] predecessors = new int[elementCount];
+        byte[] buf = rows.array();
+        for (int row = 1; row < rowCount; row++) {
+            int rowStart = row * ROW_SIZE;
+            if (BatchBuffer.readInt(buf, rowStart - ROW_SIZE + DATE_OFFSET) != BatchBuffer.readInt(buf, rowStart + DATE_OFFSET)) {
+                continue;
+            }
+            int before = readCode(buf, rowStart - ROW_SIZE);
+            int after = readCode(buf, rowStart);
+            if (before != after && !precedes[before * elementCount + after]) {
+                precedes[before * elementCount + after] = true;
+                predecessors[after]++;
+            }
+        }
+
+        boolean[] placed = new boolean[elementCount];
+        for (int position = 0; position < elementCount; position++) {
+            int next = -1;
+            for (int code = 0; code < elementCount && next < 0; code++) {
+                if (!placed[code] && predecessors[code] == 0) {
+                    next = code;
+                }
+            }
+            if (next < 0) {
+                // Contradictory input - take the earliest remaining element
+                for (int code = 0; code < elementCount && next < 0; code++) {
+                    if (!placed[code]) {
+                        next = code;
+                    }
+                }
+            }
+
+            placed[next] = true;
+            order[position] = next;
+            for (int code = 0; code < elementCount; code++) {
+                if (precedes[next * elementCount + code]) {
+                    predecessors[code]--;
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Group the rows by final element code and sort each group by date, keeping input order for equal dates
+     */
+    private void sortRows(int[] order) {
+        if (sortKeys.length < rowCount) {
+            sortKeys = new long[Math.max(rowCount, sortKeys.length * 2)];
+        }
+
+        int[] finalCodes = new int[elementCount];
+        int[] fill = new int[elementCount];
+        int firstRow = 0;
+        for (int code = 0; code < elementCount; code++) {
+            finalCodes[order[code]] = code;
+            elementFirstRows[code] = firstRow;
+            fill[code] = firstRow;
+            firstRow += elementRowCounts[order[code]];
+        }
+
+        byte[] buf = rows.array();
+        for (int row = 0; row < rowCount; row++) {
+            int rowStart = row * ROW_SIZE;
+            int code = finalCodes[readCode(buf, rowStart)];
+            int date = BatchBuffer.readInt(buf, rowStart + DATE_OFFSET);
+            sortKeys[fill[code]++] = ((long) date << 32) | row;
+        }
+        // The input is ordered by date already, so these sorts rarely move anything
+        for (int code = 0; code < elementCount; code++) {
+            Arrays.sort(sortKeys, elementFirstRows[code], fill[code]);
+        }
+
+        sortedRows.reset();
+        for (int i = 0; i < rowCount; i++) {
+            int rowStart = (int) sortKeys[i] * ROW_SIZE;
+            int position = sortedRows.size();
+            sortedRows.write(buf, rowStart, ROW_SIZE);
+            sortedRows.setShort(position + ELEMENT_OFFSET, finalCodes[readCode(buf, rowStart)]);
+        }
+    }
+
+    private static int readCode(byte[] buf, int rowStart) {
+        return ((buf[rowStart + ELEMENT_OFFSET] & 0xff) << 8) | (buf[rowStart + ELEMENT_OFFSET + 1] & 0xff);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private int elementCode(int element) throws IOException {
+        // A station reports a few dozen elements at most, so a linear scan beats hashing
+        for (int code = 0; code < elementCount; code++) {
+            if (elements[code] == element) {
+                return code;
+            }
+        }
+        if (elementCount == 0xffff) {
+            throw new IOException("Too many elements for station " + stationId);
+        }
+        if (elementCount == elements.length) {
+            elements = Arrays.copyOf(elements, elementCount * 2);
+            elementFirstRows = Arrays.copyOf(elementFirstRows, elementCount * 2);
+            elementRowCounts = Arrays.copyOf(elementRowCounts, elementCount * 2);
+        }
+        elements[elementCount] = element;
+        elementRowCounts[elementCount] = 0;
+        return elementCount++;
+    }
+}
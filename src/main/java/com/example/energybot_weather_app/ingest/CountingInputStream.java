@@ -0,0 +1,55 @@
+package com.example.energybot_weather_app.ingest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Input stream wrapper that adds every byte read to a shared counter.
+ *
+ * Placed underneath a GZIPInputStream it tells us how much of the compressed
+ * file has been consumed, which is enough to report ingest progress without
+ * decompressing the file a second time just to count its lines.
+ */
+public class CountingInputStream extends FilterInputStream {
+    private final AtomicLong counter;
+
+    public CountingInputStream(InputStream in, AtomicLong counter) {
+        super(in);
+        this.counter = counter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            counter.incrementAndGet();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int bytesRead = super.read(b, off, len);
+        if (bytesRead > 0) {
+            counter.addAndGet(bytesRead);
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if (skipped > 0) {
+            counter.addAndGet(skipped);
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // Re-reading marked bytes would count them twice
+        return false;
+    }
+}
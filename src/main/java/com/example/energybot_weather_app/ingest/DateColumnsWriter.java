@@ -0,0 +1,248 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.storage.BinaryStationFormat;
+import com.example.energybot_weather_app.storage.DatasetStore;
+import com.example.energybot_weather_app.storage.DateColumns;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes the {@link DateColumns} of a directory of station files, turning the station-by-station
+ * layout into one file per day.
+ *
+ * The stations are read back once to count their values per month, then the months are taken in
+ * chunks that fit the memory budget: for each chunk every station is read again and its values of
+ * those months are collected in primitive arrays, grouped by day and element with a counting
+ * sort and written out. Stations are read in ascending order and the sort is stable, so every
+ * column comes out ordered by station. A single year usually takes one or two chunks.
+ *
+ * All stations of the directory are read, including those linked unchanged from a previous
+ * version, so the layout is rebuilt as a whole on every ingest.
+ */
+public class DateColumnsWriter {
+    private static final Logger logger = LoggerFactory.getLogger(DateColumnsWriter.class);
+
+    // Heap per collected value: its station, value and flag, its day and element key and its place in the sort
+    private static final int BYTES_PER_VALUE = DateColumns.VALUE_SIZE + 8;
+    // Keeps the day and element of a value within an int key, and the sort's buckets few
+    private static final int MAX_CHUNK_MONTHS = 120;
+
+    private final Path directory;
+    private final List<String> stationIds;
+    private final PrecompressedResponseWriter.StationReader stationReader;
+    private final long maxChunkValues;
+    // Element names in the order first seen, with their codes
+    private final Map<String, Integer> elementCodes = new HashMap<>();
+    private final List<String> elements = new ArrayList<>();
+
+    /**
+     * @param stationIds the directory's stations, in ascending order
+     * @param memoryBytes heap to use for the values of a chunk of months
+     */
+    public DateColumnsWriter(Path directory, List<String> stationIds,
+                             PrecompressedResponseWriter.StationReader stationReader, long memoryBytes) {
+        this.directory = directory;
+        this.stationIds = stationIds;
+        this.stationReader = stationReader;
+        this.maxChunkValues = Math.max(1, Math.min(Integer.MAX_VALUE - 8, memoryBytes / BYTES_PER_VALUE));
+    }
+
+    /**
+     * Write the date columns, replacing any written before
+     *
+     * @return the number of day files written
+     */
+    public int write() throws IOException {
+        long start = System.nanoTime();
+        Path datesDirectory = directory.resolve(DateColumns.DIRECTORY);
+        DatasetStore.deleteRecursively(datesDirectory);
+        Files.createDirectories(datesDirectory);
+        Files.writeString(datesDirectory.resolve(DateColumns.STATIONS_FILE),
+                stationIds.isEmpty() ? "" : String.join("\n", stationIds) + "\n", StandardCharsets.US_ASCII);
+
+        // Values per yyyyMM month. A station's values come in date order, so the month's counter
+        // is only looked up when the month changes.
+        TreeMap<Integer, long[]> monthCounters = new TreeMap<>();
+        for (String stationId : stationIds) {
+            int[] month = {-1};
+            long[][] counter = {null};
+            stationReader.read(stationId).visitValues((element, date, value, qFlag) -> {
+                if (!isValidDate(date)) {
+                    return;
+                }
+                if (date / 100 != month[0]) {
+                    month[0] = date / 100;
+                    counter[0] = monthCounters.computeIfAbsent(month[0], key -> new long[1]);
+                }
+                counter[0][0]++;
+            });
+        }
+        TreeMap<Integer, Long> monthCounts = new TreeMap<>();
+        monthCounters.forEach((month, counter) -> monthCounts.put(month, counter[0]));
+
+        int days = 0;
+        int chunks = 0;
+        List<Integer> months = new ArrayList<>(monthCounts.keySet());
+        int first = 0;
+        while (first < months.size()) {
+            // At least one month per chunk, however large
+            long values = monthCounts.get(months.get(first));
+            int last = first;
+            while (last + 1 < months.size() && values + monthCounts.get(months.get(last + 1)) <= maxChunkValues
+                    && monthsBetween(months.get(first), months.get(last + 1)) < MAX_CHUNK_MONTHS) {
+                values += monthCounts.get(months.get(++last));
+            }
+            days += writeChunk(months.get(first), months.get(last), (int) Math.min(Integer.MAX_VALUE - 8, values));
+            chunks++;
+            first = last + 1;
+        }
+        logger.info("Wrote {} days of {} stations into date columns in {} chunks in {} ms", days, stationIds.size(), chunks,
+                (System.nanoTime() - start) / 1_000_000);
+        return days;
+    }
+
+    /**
+     * Collect the values of the months [firstMonth, lastMonth] and write their days
+     */
+    private int writeChunk(int firstMonth, int lastMonth, int valueCount) throws IOException {
+        int[] keys = new int[valueCount];
+        int[] stations = new int[valueCount];
+        int[] values = new int[valueCount];
+        byte[] qFlags = new byte[valueCount];
+        int[] size = {0};
+        for (int station = 0; station < stationIds.size(); station++) {
+            int ordinal = station;
+            stationReader.read(stationIds.get(station)).visitValues((element, date, value, qFlag) -> {
+                int month = date / 100;
+                if (month < firstMonth || month > lastMonth || !isValidDate(date)) {
+                    return;
+                }
+                int i = size[0]++;
+                keys[i] = dayIndex(date, firstMonth) * 65536 + elementCode(element);
+                stations[i] = ordinal;
+                values[i] = value;
+                qFlags[i] = qFlag;
+            });
+        }
+
+        // Stable counting sort on day and element, so each column stays in station order
+        int dayCount = dayIndex(lastMonth * 100 + 31, firstMonth) + 1;
+        int elementCount = elements.size();
+        int[] bucketStarts = new int[dayCount * elementCount + 1];
+        for (int i = 0; i < size[0]; i++) {
+            bucketStarts[bucket(keys[i], elementCount) + 1]++;
+        }
+        for (int bucket = 0; bucket < dayCount * elementCount; bucket++) {
+            bucketStarts[bucket + 1] += bucketStarts[bucket];
+        }
+        int[] order = new int[size[0]];
+        int[] next = bucketStarts.clone();
+        for (int i = 0; i < size[0]; i++) {
+            order[next[bucket(keys[i], elementCount)]++] = i;
+        }
+
+        int written = 0;
+        for (int day = 0; day < dayCount; day++) {
+            int from = bucketStarts[day * elementCount];
+            int to = bucketStarts[(day + 1) * elementCount];
+            if (from == to) {
+                continue;
+            }
+            writeDay(dateOf(day, firstMonth), bucketStarts, day * elementCount, elementCount,
+                    order, stations, values, qFlags);
+            written++;
+        }
+        return written;
+    }
+
+    private static int bucket(int key, int elementCount) {
+        return (key >>> 16) * elementCount + (key & 0xffff);
+    }
+
+    private void writeDay(int date, int[] bucketStarts, int firstBucket, int elementCount, int[] order,
+                          int[] stations, int[] values, byte[] qFlags) throws IOException {
+        int present = 0;
+        int valueCount = 0;
+        for (int code = 0; code < elementCount; code++) {
+            int count = bucketStarts[firstBucket + code + 1] - bucketStarts[firstBucket + code];
+            if (count > 0) {
+                present++;
+                valueCount += count;
+            }
+        }
+
+        int columnsOffset = DateColumns.HEADER_SIZE + present * DateColumns.DICTIONARY_ENTRY_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(columnsOffset + valueCount * DateColumns.VALUE_SIZE);
+        buffer.putInt(DateColumns.MAGIC);
+        buffer.putShort(DateColumns.VERSION);
+        buffer.putShort((short) 0);
+        buffer.putInt(date);
+        buffer.putInt(present);
+        int entry = DateColumns.HEADER_SIZE;
+        int column = columnsOffset;
+        for (int code = 0; code < elementCount; code++) {
+            int from = bucketStarts[firstBucket + code];
+            int count = bucketStarts[firstBucket + code + 1] - from;
+            if (count == 0) {
+                continue;
+            }
+            byte[] name = elements.get(code).getBytes(StandardCharsets.US_ASCII);
+            buffer.putInt(entry, BinaryStationFormat.packElement(name, 0, name.length));
+            buffer.putInt(entry + 4, count);
+            buffer.putInt(entry + 8, column);
+            entry += DateColumns.DICTIONARY_ENTRY_SIZE;
+            for (int i = 0; i < count; i++) {
+                int row = order[from + i];
+                buffer.putInt(column + i * 4, stations[row]);
+                buffer.putInt(column + count * 4 + i * 4, values[row]);
+                buffer.put(column + count * 8 + i, qFlags[row]);
+            }
+            column += count * DateColumns.VALUE_SIZE;
+        }
+        Files.write(DateColumns.file(directory, date), buffer.array());
+    }
+
+    private int elementCode(String element) {
+        Integer code = elementCodes.get(element);
+        if (code == null) {
+            code = elements.size();
+            elementCodes.put(element, code);
+            elements.add(element);
+        }
+        return code;
+    }
+
+    /**
+     * A day's index counting 31 days per month from the chunk's first month, so indexes are
+     * computed without calendar arithmetic; the gaps after short months stay empty
+     */
+    private static int dayIndex(int date, int firstMonth) {
+        return monthsBetween(firstMonth, date / 100) * 31 + date % 100 - 1;
+    }
+
+    private static int monthsBetween(int fromMonth, int toMonth) {
+        return (toMonth / 100 - fromMonth / 100) * 12 + (toMonth % 100 - fromMonth % 100);
+    }
+
+    private static int dateOf(int dayIndex, int firstMonth) {
+        int months = firstMonth / 100 * 12 + firstMonth % 100 - 1 + dayIndex / 31;
+        return (months / 12 * 100 + months % 12 + 1) * 100 + dayIndex % 31 + 1;
+    }
+
+    private static boolean isValidDate(int date) {
+        int month = date / 100 % 100;
+        int day = date % 100;
+        return date > 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31;
+    }
+}
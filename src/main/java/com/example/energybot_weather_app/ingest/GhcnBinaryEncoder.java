@@ -0,0 +1,96 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.storage.BinaryStationFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.example.energybot_weather_app.storage.BinaryStationFormat.*;
+
+/**
+ * Encodes a CSV line as a fixed-width binary row, see {@link BinaryStationFormat}.
+ *
+ * The element dictionary is per station and only known once all of a station's records are
+ * merged, so the encoded record carries the packed element name in front of the row and
+ * {@link BinaryStationFileWriter} fills in the element code. Lines whose fields don't fit the
+ * binary layout, or whose value wouldn't read back exactly as written, are rejected as malformed.
+ */
+public class GhcnBinaryEncoder implements RecordEncoder {
+    /**
+     * Packed element name followed by the row
+     */
+    static final int ENCODED_SIZE = 4 + ROW_SIZE;
+
+    private final GhcnLineParser parser = new GhcnLineParser();
+    private final BatchBuffer record = new BatchBuffer(ENCODED_SIZE);
+
+    @Override
+    public boolean encode(byte[] buf, int start, int end, OutputStream out) throws IOException {
+        if (!parser.parse(buf, start, end)) {
+            return false;
+        }
+
+        record.reset();
+        record.writeInt(packElement(parser.buffer(), parser.start(GhcnLineParser.ELEMENT), parser.length(GhcnLineParser.ELEMENT)));
+        record.writeInt(date());
+        record.writeInt(value());
+        record.writeShort(0);
+        record.writeShort(obsTime());
+        record.write(flag(GhcnLineParser.M_FLAG));
+        record.write(flag(GhcnLineParser.Q_FLAG));
+        record.write(flag(GhcnLineParser.S_FLAG));
+        record.write(0);
+        out.write(record.array(), 0, ENCODED_SIZE);
+        return true;
+    }
+
+    private int date() {
+        if (parser.length(GhcnLineParser.DATE) != 8 || !isDigit(parser.buffer()[parser.start(GhcnLineParser.DATE)])) {
+            throw new IllegalArgumentException("date is not in yyyyMMdd format");
+        }
+        return parser.intValue(GhcnLineParser.DATE);
+    }
+
+    private int value() {
+        if (parser.isEmpty(GhcnLineParser.VALUE)) {
+            return EMPTY_VALUE;
+        }
+        int value = parser.intValue(GhcnLineParser.VALUE);
+        if (value == EMPTY_VALUE) {
+            throw new IllegalArgumentException("value out of range");
+        }
+        // Values are served back as formatted from the number, so "005", "+5" or "-0" would change
+        byte[] buf = parser.buffer();
+        int start = parser.start(GhcnLineParser.VALUE);
+        int digits = buf[start] == '-' ? start + 1 : start;
+        if (buf[start] == '+' || (buf[digits] == '0' && parser.length(GhcnLineParser.VALUE) > 1)) {
+            throw new IllegalArgumentException("value is not in canonical form");
+        }
+        return value;
+    }
+
+    private int obsTime() {
+        if (parser.isEmpty(GhcnLineParser.OBS_TIME)) {
+            return NO_OBS_TIME;
+        }
+        if (parser.length(GhcnLineParser.OBS_TIME) != 4 || !isDigit(parser.buffer()[parser.start(GhcnLineParser.OBS_TIME)])) {
+            throw new IllegalArgumentException("observation time is not in HHMM format");
+        }
+        return parser.intValue(GhcnLineParser.OBS_TIME);
+    }
+
+    private int flag(int field) {
+        if (parser.isEmpty(field)) {
+            return 0;
+        }
+        byte flag = parser.buffer()[parser.start(field)];
+        if (parser.length(field) != 1 || flag < 0) {
+            throw new IllegalArgumentException("flag is not a single ASCII character");
+        }
+        return flag;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
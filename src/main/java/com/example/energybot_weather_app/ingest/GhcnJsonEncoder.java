@@ -0,0 +1,96 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.PrettyPrinter;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.example.energybot_weather_app.storage.WeatherRecordJson.*;
+
+/**
+ * Writes the JSON for a CSV line straight from the line's bytes, without building a WeatherRecord.
+ *
+ * The JsonGenerator comes from the application's ObjectMapper, so the output is byte-for-byte
+ * what {@code objectMapper.writeValueAsString(record)} produces - including pretty printing -
+ * while creating no objects per line. Each parse worker gets its own instance.
+ */
+public class GhcnJsonEncoder implements RecordEncoder {
+    private final GhcnLineParser parser = new GhcnLineParser();
+    private final RedirectingOutputStream target = new RedirectingOutputStream();
+    private final JsonGenerator generator;
+
+    @SuppressWarnings("deprecation")
+    public GhcnJsonEncoder(ObjectMapper objectMapper) {
+        try {
+            generator = objectMapper.writer().createGenerator(target);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create JSON generator", e);
+        }
+
+        // Every record is written as a separate root value, so drop the separator between them.
+        // withRootSeparator() keeps the rest of the mapper's pretty printer configuration as is.
+        PrettyPrinter prettyPrinter = generator.getPrettyPrinter();
+        if (prettyPrinter instanceof DefaultPrettyPrinter defaultPrettyPrinter) {
+            generator.setPrettyPrinter(defaultPrettyPrinter.withRootSeparator((String) null));
+        } else if (prettyPrinter == null) {
+            generator.setRootValueSeparator(null);
+        }
+    }
+
+    @Override
+    public boolean encode(byte[] buf, int start, int end, OutputStream out) throws IOException {
+        if (!parser.parse(buf, start, end)) {
+            return false;
+        }
+
+        target.out = out;
+        try {
+            generator.writeStartObject();
+            writeField(STATION_ID, GhcnLineParser.STATION_ID);
+            writeField(DATE, GhcnLineParser.DATE);
+            writeField(ELEMENT, GhcnLineParser.ELEMENT);
+            writeField(VALUE, GhcnLineParser.VALUE);
+            writeOptionalField(M_FLAG, GhcnLineParser.M_FLAG);
+            writeOptionalField(Q_FLAG, GhcnLineParser.Q_FLAG);
+            writeOptionalField(S_FLAG, GhcnLineParser.S_FLAG);
+            writeOptionalField(OBS_TIME, GhcnLineParser.OBS_TIME);
+            generator.writeEndObject();
+            generator.flush();
+        } finally {
+            target.out = null;
+        }
+        return true;
+    }
+
+    private void writeField(SerializableString name, int field) throws IOException {
+        generator.writeFieldName(name);
+        generator.writeUTF8String(parser.buffer(), parser.start(field), parser.length(field));
+    }
+
+    private void writeOptionalField(SerializableString name, int field) throws IOException {
+        if (!parser.isEmpty(field)) {
+            writeField(name, field);
+        }
+    }
+
+    /**
+     * Lets one long-lived generator write into whichever shard buffer the current line belongs to
+     */
+    private static final class RedirectingOutputStream extends OutputStream {
+        private OutputStream out;
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.energybot_weather_app.ingest;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits one GHCN-Daily CSV line held in a byte array into field offsets, without creating any objects.
+ *
+ * Field handling mirrors {@code line.split(",", -1)} followed by {@code trim()} on each field:
+ * the first four fields are required, empty optional fields count as absent and anything
+ * after the observation time is ignored. A parser instance is reused line after line and
+ * is not thread-safe.
+ */
+public class GhcnLineParser {
+    public static final int STATION_ID = 0;
+    public static final int DATE = 1;
+    public static final int ELEMENT = 2;
+    public static final int VALUE = 3;
+    public static final int M_FLAG = 4;
+    public static final int Q_FLAG = 5;
+    public static final int S_FLAG = 6;
+    public static final int OBS_TIME = 7;
+
+    private static final int FIELD_COUNT = 8;
+
+    private final int[] starts = new int[FIELD_COUNT];
+    private final int[] ends = new int[FIELD_COUNT];
+    private byte[] buf;
+
+    /**
+     * Parse the line held in buf[start, end) - without its line terminator
+     *
+     * @return false if the line is blank
+     * @throws IllegalArgumentException if the line has fewer than 4 fields or lacks a required one
+     */
+    public boolean parse(byte[] buf, int start, int end) {
+        this.buf = buf;
+
+        int fields = 0;
+        int fieldStart = start;
+        boolean blank = true;
+        for (int i = start; i <= end; i++) {
+            if (i == end || buf[i] == ',') {
+                if (fields < FIELD_COUNT) {
+                    setField(fields, fieldStart, i);
+                }
+                fields++;
+                fieldStart = i + 1;
+            }
+            if (blank && i < end && !isWhitespace(buf[i])) {
+                blank = false;
+            }
+        }
+
+        if (blank) {
+            return false;
+        }
+        if (fields < 4) {
+            throw new IllegalArgumentException("fewer than 4 fields: " + describe(start, end));
+        }
+        if (isEmpty(STATION_ID) || isEmpty(DATE) || isEmpty(ELEMENT)) {
+            throw new IllegalArgumentException("missing required fields: " + describe(start, end));
+        }
+
+        // Missing optional fields are treated like empty ones
+        for (int field = fields; field < FIELD_COUNT; field++) {
+            starts[field] = end;
+            ends[field] = end;
+        }
+        return true;
+    }
+
+    /**
+     * Buffer holding the last parsed line
+     */
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public int start(int field) {
+        return starts[field];
+    }
+
+    public int end(int field) {
+        return ends[field];
+    }
+
+    public int length(int field) {
+        return ends[field] - starts[field];
+    }
+
+    public boolean isEmpty(int field) {
+        return ends[field] == starts[field];
+    }
+
+    /**
+     * Parse a field as a decimal int with an optional sign
+     *
+     * @throws IllegalArgumentException if the field is empty, not a number or out of range
+     */
+    public int intValue(int field) {
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = i < end && buf[i] == '-';
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+            i++;
+        }
+        if (i == end || end - i > 10) {
+            throw new IllegalArgumentException("not a number: " + describe(starts[field], end));
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("not a number: " + describe(starts[field], end));
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("number out of range: " + describe(starts[field], end));
+        }
+        return (int) value;
+    }
+
+    private void setField(int field, int start, int end) {
+        // Trim like String.trim()
+        while (start < end && isWhitespace(buf[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(buf[end - 1])) {
+            end--;
+        }
+        starts[field] = start;
+        ends[field] = end;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return (b & 0xff) <= ' ';
+    }
+
+    private String describe(int start, int end) {
+        return new String(buf, start, end - start, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.download.RemoteFile;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * State of the ingest in the staging directory, saved whenever the pipeline reports a checkpoint
+ * so a restarted ingest of the same source can continue the same version.
+ *
+ * @param version name of the version being built
+ * @param source the data file being ingested
+ * @param format station file format
+ * @param writerThreads number of writer shards, which the run files are split by
+ * @param attempt how many times the ingest was restarted, keeps run file names of attempts apart
+ * @param progress the last checkpoint, or null if the ingest hasn't reached one
+ */
+public record IngestCheckpoint(String version, RemoteFile source, String format, int writerThreads, int attempt,
+                               IngestPipeline.Checkpoint progress) {
+    public static final String FILE_NAME = "checkpoint.json";
+
+    /**
+     * Whether an ingest of the given source with the given settings can continue from here
+     */
+    public boolean isResumable(RemoteFile source, String format, int writerThreads) {
+        return this.source != null && this.source.isSameVersion(source)
+                && this.format.equals(format) && this.writerThreads == writerThreads;
+    }
+
+    public IngestCheckpoint withProgress(IngestPipeline.Checkpoint progress) {
+        return new IngestCheckpoint(version, source, format, writerThreads, attempt, progress);
+    }
+
+    /**
+     * Read the checkpoint in a staging directory
+     *
+     * @return the checkpoint, or null if there is none or it can't be read
+     */
+    public static IngestCheckpoint read(Path directory, ObjectMapper objectMapper) {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(file.toFile(), IngestCheckpoint.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Save the checkpoint, replacing the previous one in one step
+     */
+    public void write(Path directory, ObjectMapper objectMapper) throws IOException {
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+        objectMapper.writeValue(temp.toFile(), this);
+        Files.move(temp, directory.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,582 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.metrics.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Multi-threaded ingest of the decompressed GHCN CSV stream into per-station files.
+ *
+ * The work is split into three stages:
+ * 1. the calling thread reads the stream into batches that end on a line boundary,
+ * 2. parse workers encode every line of a batch, grouping the results by writer shard,
+ * 3. one writer thread per shard passes its part of each batch to a {@link SortedStationWriter}.
+ *
+ * A station always hashes to the same shard, so each station file has exactly one writer.
+ * Writers apply batches strictly in the order they were read, which keeps every station's
+ * records in input order no matter which worker parsed them. Once the input is complete,
+ * each writer merges its sorted runs into the station files.
+ *
+ * With checkpoints enabled, the batch that crosses each checkpoint interval makes every writer
+ * spill its buffer once it has applied that batch. The last writer to do so reports a
+ * {@link Checkpoint}: the input offset and the run files holding everything before it. A new
+ * pipeline given that checkpoint skips the covered input and picks up the runs.
+ *
+ * A pipeline instance is meant to be run once.
+ */
+public class IngestPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(IngestPipeline.class);
+
+    // Bytes read from the decompressed stream per batch, before cutting back to the last full line
+    private static final int BATCH_SIZE = 256 * 1024;
+    private static final long POLL_MILLIS = 100;
+    private static final long SHUTDOWN_WAIT_SECONDS = 30;
+
+    // Sentinel batch that tells parse workers and writers to stop
+    private static final Batch END_OF_INPUT = new Batch(0);
+
+    private final Supplier<RecordEncoder> encoderFactory;
+    private final IntFunction<SortedStationWriter> writerFactory;
+    private final int parseThreads;
+    private final int writerThreads;
+    private final AtomicLong processedLines;
+
+    // Lines of this pipeline's input, while processedLines may be shared with pipelines running alongside
+    private final AtomicLong pipelineLines = new AtomicLong(0);
+    private final AtomicLong validLines = new AtomicLong(0);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    // Batches circulate reader -> parser -> writers -> back to this pool,
+    // so its size bounds the memory held by the pipeline
+    private final BlockingQueue<Batch> freeBatches = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Batch> parseQueue = new LinkedBlockingQueue<>();
+    private final List<BlockingQueue<Batch>> writeQueues = new ArrayList<>();
+    private final int batchCount;
+    private volatile long totalBatches = -1;
+
+    private long checkpointBytes = 0;
+    private Checkpoint resumeFrom;
+
+    // Totals across pipelines for the metrics, updated once per batch like processedLines
+    private Counter lineCounter = new Counter();
+    private Counter validLineCounter = new Counter();
+    private Counter invalidLineCounter = new Counter();
+
+    /**
+     * @param encoderFactory creates the record encoder for each parse worker
+     * @param writerFactory creates the station writer for the given writer shard
+     * @param processedLines progress counter the lines read are added to, which may be shared between pipelines
+     */
+    public IngestPipeline(Supplier<RecordEncoder> encoderFactory, IntFunction<SortedStationWriter> writerFactory,
+                          int parseThreads, int writerThreads, AtomicLong processedLines) {
+        this.encoderFactory = encoderFactory;
+        this.writerFactory = writerFactory;
+        this.parseThreads = Math.max(1, parseThreads);
+        this.writerThreads = Math.max(1, writerThreads);
+        this.processedLines = processedLines;
+        this.batchCount = this.parseThreads * 2 + 2;
+
+        for (int i = 0; i < batchCount; i++) {
+            freeBatches.add(new Batch(this.writerThreads));
+        }
+        for (int i = 0; i < this.writerThreads; i++) {
+            writeQueues.add(new LinkedBlockingQueue<>());
+        }
+    }
+
+    /**
+     * Report a checkpoint every {@code intervalBytes} of decompressed input, and optionally
+     * continue from the checkpoint of an interrupted run over the same input
+     *
+     * @param intervalBytes decompressed input between checkpoints, 0 disables them
+     * @param resumeFrom where to continue, or null to start at the beginning of the input
+     */
+    public void setCheckpoints(long intervalBytes, Checkpoint resumeFrom) {
+        this.checkpointBytes = Math.max(0, intervalBytes);
+        this.resumeFrom = resumeFrom;
+    }
+
+    /**
+     * Also count the lines read, valid and invalid, into these counters
+     */
+    public void setLineCounters(Counter lines, Counter validLines, Counter invalidLines) {
+        this.lineCounter = lines;
+        this.validLineCounter = validLines;
+        this.invalidLineCounter = invalidLines;
+    }
+
+    /**
+     * Number of lines that were written to a station file so far
+     */
+    public long getValidLines() {
+        return validLines.get();
+    }
+
+    /**
+     * Read the whole stream and write all station files
+     *
+     * @param in decompressed CSV data
+     * @param listener notified on the reading thread as the input is consumed
+     */
+    public IngestStats run(InputStream in, Listener listener) throws IOException {
+        ExecutorService parsers = Executors.newFixedThreadPool(parseThreads, threadFactory("ingest-parse"));
+        ExecutorService writers = Executors.newFixedThreadPool(writerThreads, threadFactory("ingest-write"));
+        List<SortedStationWriter> stationWriters = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < parseThreads; i++) {
+                parsers.submit(stage(this::parseBatches));
+            }
+            if (resumeFrom != null) {
+                pipelineLines.set(resumeFrom.lines());
+                validLines.set(resumeFrom.validLines());
+                processedLines.addAndGet(resumeFrom.lines());
+            }
+            for (int shard = 0; shard < writerThreads; shard++) {
+                SortedStationWriter stationWriter = writerFactory.apply(shard);
+                if (resumeFrom != null) {
+                    stationWriter.resume(resumeFrom.runs().get(shard));
+                }
+                stationWriters.add(stationWriter);
+                int writerShard = shard;
+                writers.submit(stage(() -> writeBatches(writerShard, stationWriter, listener)));
+            }
+
+            long batches = readBatches(in, listener);
+            listener.onInputComplete();
+
+            // Let the parse workers drain the queue, then tell the writers how many batches to expect
+            for (int i = 0; i < parseThreads; i++) {
+                parseQueue.add(END_OF_INPUT);
+            }
+            awaitStage(parsers);
+            totalBatches = batches;
+            for (BlockingQueue<Batch> writeQueue : writeQueues) {
+                writeQueue.add(END_OF_INPUT);
+            }
+            awaitStage(writers);
+            checkFailure();
+
+            int stations = stationWriters.stream().mapToInt(SortedStationWriter::getStationCount).sum();
+            return new IngestStats(pipelineLines.get(), validLines.get(), stations);
+        } finally {
+            parsers.shutdownNow();
+            writers.shutdownNow();
+            // After a failure, let the writers finish removing their run files before returning
+            awaitShutdown(writers);
+        }
+    }
+
+    /**
+     * Reading stage - cut the stream into batches that end on a line boundary
+     *
+     * @return the number of batches handed to the parse workers
+     */
+    private long readBatches(InputStream in, Listener listener) throws IOException {
+        byte[] carry = new byte[BATCH_SIZE];
+        int carryLength = 0;
+        long seq = 0;
+        boolean endOfStream = false;
+        long inputOffset = 0;
+        if (resumeFrom != null) {
+            in.skipNBytes(resumeFrom.inputOffset());
+            inputOffset = resumeFrom.inputOffset();
+        }
+        long nextCheckpoint = checkpointBytes > 0 ? inputOffset + checkpointBytes : Long.MAX_VALUE;
+
+        while (!endOfStream) {
+            Batch batch = acquireBatch();
+            byte[] input = batch.input;
+            int length = 0;
+
+            // Start with the partial line left over from the previous batch
+            if (carryLength > 0) {
+                if (input.length < carryLength + BATCH_SIZE / 2) {
+                    input = Arrays.copyOf(input, carryLength + BATCH_SIZE);
+                }
+                System.arraycopy(carry, 0, input, 0, carryLength);
+                length = carryLength;
+                carryLength = 0;
+            }
+
+            while (true) {
+                if (length == input.length) {
+                    int end = lastLineEnd(input, length);
+                    if (end > 0) {
+                        carryLength = length - end;
+                        if (carry.length < carryLength) {
+                            carry = new byte[carryLength];
+                        }
+                        System.arraycopy(input, end, carry, 0, carryLength);
+                        length = end;
+                        break;
+                    }
+                    // A single line longer than the whole batch
+                    input = Arrays.copyOf(input, input.length * 2);
+                }
+
+                int bytesRead = in.read(input, length, input.length - length);
+                if (bytesRead < 0) {
+                    endOfStream = true;
+                    break;
+                }
+                length += bytesRead;
+            }
+
+            batch.input = input;
+            batch.length = length;
+            if (length == 0) {
+                freeBatches.add(batch);
+                continue;
+            }
+
+            inputOffset += length;
+            batch.checkpointOffset = -1;
+            if (inputOffset >= nextCheckpoint && !endOfStream) {
+                batch.checkpointOffset = inputOffset;
+                batch.pendingCheckpoint.set(writerThreads);
+                nextCheckpoint = inputOffset + checkpointBytes;
+            }
+            batch.seq = seq++;
+            parseQueue.add(batch);
+            listener.onBatch();
+        }
+        return seq;
+    }
+
+    /**
+     * Parsing stage - encode each line into the output buffer of its station's shard
+     */
+    private void parseBatches() throws InterruptedException {
+        RecordEncoder encoder = encoderFactory.get();
+        while (true) {
+            Batch batch = parseQueue.take();
+            if (batch == END_OF_INPUT) {
+                return;
+            }
+
+            for (BatchBuffer output : batch.shardOutputs) {
+                output.reset();
+            }
+
+            byte[] input = batch.input;
+            int lines = 0;
+            int valid = 0;
+            int lineStart = 0;
+            while (lineStart < batch.length) {
+                int lineEnd = indexOf(input, (byte) '\n', lineStart, batch.length);
+                int nextLine = lineEnd + 1;
+                if (lineEnd > lineStart && input[lineEnd - 1] == '\r') {
+                    lineEnd--;
+                }
+
+                lines++;
+                if (encodeLine(encoder, batch, lines, lineStart, lineEnd)) {
+                    valid++;
+                }
+                lineStart = nextLine;
+            }
+
+            // Counters are updated once per batch rather than once per line
+            pipelineLines.addAndGet(lines);
+            processedLines.addAndGet(lines);
+            validLines.addAndGet(valid);
+            lineCounter.increment(lines);
+            validLineCounter.increment(valid);
+            invalidLineCounter.increment(lines - valid);
+            batch.lines = lines;
+            batch.validLines = valid;
+
+            batch.pendingWriters.set(writerThreads);
+            for (BlockingQueue<Batch> writeQueue : writeQueues) {
+                writeQueue.add(batch);
+            }
+        }
+    }
+
+    /**
+     * Append one line to its shard's output as [station length][station ID][payload length][payload]
+     */
+    private boolean encodeLine(RecordEncoder encoder, Batch batch, int lineNumber, int start, int end) {
+        byte[] input = batch.input;
+
+        // The station ID is the first field, trimmed like String.trim()
+        int stationStart = start;
+        while (stationStart < end && (input[stationStart] & 0xff) <= ' ') {
+            stationStart++;
+        }
+        int stationEnd = indexOf(input, (byte) ',', stationStart, end);
+        while (stationEnd > stationStart && (input[stationEnd - 1] & 0xff) <= ' ') {
+            stationEnd--;
+        }
+        int stationLength = stationEnd - stationStart;
+        if (stationLength > 255) {
+            logger.warn("Line {} of batch {} has an invalid station ID", lineNumber, batch.seq);
+            return false;
+        }
+
+        BatchBuffer output = batch.shardOutputs[shardOf(input, stationStart, stationEnd)];
+        int mark = output.size();
+        output.write(stationLength);
+        output.write(input, stationStart, stationLength);
+        output.writeInt(0);
+        int payloadStart = output.size();
+
+        try {
+            if (!encoder.encode(input, start, end, output)) {
+                output.truncate(mark);
+                return false;
+            }
+        } catch (Exception e) {
+            output.truncate(mark);
+            logger.warn("Error processing line {} of batch {}: {}", lineNumber, batch.seq, e.getMessage());
+            return false;
+        }
+
+        output.setInt(payloadStart - 4, output.size() - payloadStart);
+        return true;
+    }
+
+    /**
+     * Writing stage - apply this shard's part of every batch, in batch order, then write the station files
+     */
+    private void writeBatches(int shard, SortedStationWriter stationWriter, Listener listener) throws Exception {
+        BlockingQueue<Batch> writeQueue = writeQueues.get(shard);
+        // Batches that arrived ahead of their turn, indexed by sequence number
+        Batch[] pending = new Batch[batchCount];
+        long nextSeq = 0;
+        // Lines of the batches applied so far, which every shard sees in the same order
+        long lines = resumeFrom == null ? 0 : resumeFrom.lines();
+        long valid = resumeFrom == null ? 0 : resumeFrom.validLines();
+
+        try {
+            while (totalBatches < 0 || nextSeq < totalBatches) {
+                Batch batch = writeQueue.take();
+                if (batch != END_OF_INPUT) {
+                    pending[(int) (batch.seq % batchCount)] = batch;
+                }
+
+                int slot = (int) (nextSeq % batchCount);
+                while (pending[slot] != null && pending[slot].seq == nextSeq) {
+                    Batch ready = pending[slot];
+                    pending[slot] = null;
+                    writeShard(ready.shardOutputs[shard], stationWriter);
+                    lines += ready.lines;
+                    valid += ready.validLines;
+                    if (ready.checkpointOffset >= 0) {
+                        checkpoint(ready, shard, stationWriter, lines, valid, listener);
+                    }
+                    if (ready.pendingWriters.decrementAndGet() == 0) {
+                        freeBatches.add(ready);
+                    }
+                    nextSeq++;
+                    slot = (int) (nextSeq % batchCount);
+                }
+            }
+            stationWriter.finish();
+        } catch (Exception e) {
+            stationWriter.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Spill this shard's records up to and including a checkpoint batch; the last shard to get
+     * there reports the checkpoint
+     */
+    private void checkpoint(Batch batch, int shard, SortedStationWriter stationWriter, long lines, long valid,
+                            Listener listener) throws IOException {
+        batch.checkpointRuns.set(shard, stationWriter.checkpoint());
+        if (batch.pendingCheckpoint.decrementAndGet() == 0) {
+            List<List<String>> runs = new ArrayList<>();
+            for (int i = 0; i < writerThreads; i++) {
+                runs.add(batch.checkpointRuns.get(i));
+            }
+            listener.onCheckpoint(new Checkpoint(batch.checkpointOffset, lines, valid, runs));
+        }
+    }
+
+    private void writeShard(BatchBuffer output, SortedStationWriter stationWriter) throws IOException {
+        byte[] buf = output.array();
+        int size = output.size();
+        int position = 0;
+        while (position < size) {
+            int stationLength = buf[position++] & 0xff;
+            int stationOffset = position;
+            position += stationLength;
+            int payloadLength = BatchBuffer.readInt(buf, position);
+            position += 4;
+            stationWriter.append(buf, stationOffset, stationLength, position, payloadLength);
+            position += payloadLength;
+        }
+    }
+
+    private Batch acquireBatch() throws IOException {
+        try {
+            Batch batch;
+            while ((batch = freeBatches.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkFailure();
+            }
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading weather data", e);
+        }
+    }
+
+    private void awaitStage(ExecutorService stage) throws IOException {
+        stage.shutdown();
+        try {
+            while (!stage.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing weather data", e);
+        }
+    }
+
+    private static void awaitShutdown(ExecutorService stage) {
+        try {
+            if (!stage.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Ingest threads did not stop within {} seconds", SHUTDOWN_WAIT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable cause = failure.get();
+        if (cause != null) {
+            throw new IOException("Ingest pipeline failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Wrap a stage so that its first failure is recorded for the reading thread to rethrow
+     */
+    private Callable<Void> stage(Stage task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                if (failure.compareAndSet(null, t) && !(t instanceof InterruptedException)) {
+                    logger.error("Ingest pipeline stage failed", t);
+                }
+            }
+            return null;
+        };
+    }
+
+    private int shardOf(byte[] buf, int start, int end) {
+        return (StationTable.hash(buf, start, end - start) & Integer.MAX_VALUE) % writerThreads;
+    }
+
+    private static int indexOf(byte[] buf, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == value) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int lastLineEnd(byte[] buf, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buf[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+    }
+
+    /**
+     * Progress notifications, delivered on the thread calling {@link #run} unless noted otherwise
+     */
+    public interface Listener {
+
+        /**
+         * A batch of input was handed to the parse workers
+         */
+        default void onBatch() {
+        }
+
+        /**
+         * The whole input was read; writers are now merging their runs into station files
+         */
+        default void onInputComplete() {
+        }
+
+        /**
+         * Everything up to a checkpoint is in run files. Called on a writer thread, which
+         * waits for this to return; checkpoints are reported one at a time, in input order.
+         */
+        default void onCheckpoint(Checkpoint checkpoint) throws IOException {
+        }
+    }
+
+    /**
+     * The point up to which an interrupted run can be picked up again
+     *
+     * @param inputOffset bytes of decompressed input covered by the runs
+     * @param lines lines read from that part of the input
+     * @param validLines lines from that part of the input that went into the runs
+     * @param runs each writer shard's run file names, in input order
+     */
+    public record Checkpoint(long inputOffset, long lines, long validLines, List<List<String>> runs) {
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    /**
+     * A slice of the input together with the encoded output for each writer shard
+     */
+    private static final class Batch {
+        final BatchBuffer[] shardOutputs;
+        final AtomicInteger pendingWriters = new AtomicInteger();
+        final AtomicInteger pendingCheckpoint = new AtomicInteger();
+        final AtomicReferenceArray<List<String>> checkpointRuns;
+        byte[] input = new byte[BATCH_SIZE];
+        int length;
+        long seq;
+        int lines;
+        int validLines;
+        // Input offset after this batch if it completes a checkpoint, otherwise -1
+        long checkpointOffset = -1;
+
+        Batch(int shards) {
+            checkpointRuns = new AtomicReferenceArray<>(shards);
+            shardOutputs = new BatchBuffer[shards];
+            for (int i = 0; i < shards; i++) {
+                shardOutputs[i] = new BatchBuffer(BATCH_SIZE / shards);
+            }
+        }
+    }
+}
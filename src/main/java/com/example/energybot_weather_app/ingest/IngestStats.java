@@ -0,0 +1,11 @@
+package com.example.energybot_weather_app.ingest;
+
+/**
+ * Totals for one run of the ingest pipeline
+ *
+ * @param lines number of lines read from the data file
+ * @param validLines number of lines written to a station file
+ * @param stations number of station files written
+ */
+public record IngestStats(long lines, long validLines, int stations) {
+}
@@ -0,0 +1,65 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.storage.PartitionedSelection;
+import com.example.energybot_weather_app.storage.StationData;
+import com.example.energybot_weather_app.storage.StationResponseJson;
+import com.example.energybot_weather_app.storage.StationSelection;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the unfiltered API response of a station of a version split into year partitions,
+ * compact and gzip compressed, as {@code <stationId>.json.gz} in the version directory.
+ *
+ * The response spans every year, so it is written once all partitions are complete rather than
+ * by each year's ingest. The API then sends it just like that of an unpartitioned version.
+ */
+public class PartitionedResponseWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final List<PrecompressedResponseWriter.StationReader> partitions;
+    private final JsonFactory jsonFactory;
+
+    /**
+     * @param directory the version directory
+     * @param partitions readers of the partitions in ascending year order, each returning null for
+     *                   a station the partition doesn't hold
+     */
+    public PartitionedResponseWriter(Path directory, List<PrecompressedResponseWriter.StationReader> partitions,
+                                     JsonFactory jsonFactory) {
+        this.directory = directory;
+        this.partitions = partitions;
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Write a station's response, its records of each partition one after the other
+     */
+    public void write(String stationId) throws IOException {
+        List<StationSelection> selections = new ArrayList<>(partitions.size());
+        for (PrecompressedResponseWriter.StationReader partition : partitions) {
+            StationData stationData = partition.read(stationId);
+            if (stationData != null) {
+                selections.add(stationData.select(null, null, null));
+            }
+        }
+        try (
+            OutputStream file = new BufferedOutputStream(Files.newOutputStream(
+                    directory.resolve(stationId + PrecompressedResponseWriter.FILE_EXTENSION)), BUFFER_SIZE);
+            OutputStream gzip = new GZIPOutputStream(file, BUFFER_SIZE);
+            JsonGenerator generator = jsonFactory.createGenerator(gzip)
+        ) {
+            StationResponseJson.write(generator, stationId, new PartitionedSelection(selections), null, null, null);
+        }
+    }
+}
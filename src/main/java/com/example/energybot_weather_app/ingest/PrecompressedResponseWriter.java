@@ -0,0 +1,103 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.storage.DatasetHashes;
+import com.example.energybot_weather_app.storage.StationData;
+import com.example.energybot_weather_app.storage.StationResponseJson;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Passes the stations on to the sink writing their files, then reads each finished station back
+ * and writes its unfiltered API response, compact and gzip compressed, as {@code <stationId>.json.gz}.
+ * The response is hashed on the way, so the station's content hash comes for free.
+ *
+ * Compression happens once here, so the API can send these files as they are without compressing
+ * on every request. A year partition's response isn't the station's, so there the response is
+ * only hashed and {@link PartitionedResponseWriter} writes one spanning all years.
+ */
+public class PrecompressedResponseWriter implements StationSink {
+    public static final String FILE_EXTENSION = ".json.gz";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final StationSink stationFiles;
+    private final StationReader stationReader;
+    private final Path directory;
+    private final JsonFactory jsonFactory;
+    private final Map<String, String> stationHashes;
+    private String stationId;
+    // The finished station as read back, for the sinks wrapping this one
+    private StationData stationData;
+
+    /**
+     * Reads a station back from the files the wrapped sink has written
+     */
+    public interface StationReader {
+        StationData read(String stationId) throws IOException;
+    }
+
+    /**
+     * @param directory where the responses go, or null to only hash them
+     * @param stationHashes receives the content hash of each station, shared between writer threads
+     */
+    public PrecompressedResponseWriter(StationSink stationFiles, StationReader stationReader, Path directory,
+                                       JsonFactory jsonFactory, Map<String, String> stationHashes) {
+        this.stationFiles = stationFiles;
+        this.stationReader = stationReader;
+        this.directory = directory;
+        this.jsonFactory = jsonFactory;
+        this.stationHashes = stationHashes;
+    }
+
+    @Override
+    public void beginStation(String stationId, int recordCount) throws IOException {
+        this.stationId = stationId;
+        this.stationData = null;
+        stationFiles.beginStation(stationId, recordCount);
+    }
+
+    @Override
+    public void record(byte[] buf, int offset, int length) throws IOException {
+        stationFiles.record(buf, offset, length);
+    }
+
+    @Override
+    public void endStation() throws IOException {
+        stationFiles.endStation();
+
+        stationData = stationReader.read(stationId);
+        MessageDigest digest = DatasetHashes.newDigest();
+        try (
+            OutputStream file = directory == null ? OutputStream.nullOutputStream()
+                    : new BufferedOutputStream(Files.newOutputStream(directory.resolve(stationId + FILE_EXTENSION)), BUFFER_SIZE);
+            OutputStream gzip = directory == null ? file : new GZIPOutputStream(file, BUFFER_SIZE);
+            JsonGenerator generator = jsonFactory.createGenerator(new DigestOutputStream(gzip, digest))
+        ) {
+            StationResponseJson.write(generator, stationId, stationData.select(null, null, null), null, null, null);
+        }
+        stationHashes.put(stationId, DatasetHashes.toHash(digest));
+    }
+
+    /**
+     * The station finished by the last {@link #endStation()} as it was read back, so the sinks
+     * wrapping this one don't have to decode it again
+     */
+    public StationData getStationData() {
+        return stationData;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stationFiles.close();
+    }
+}
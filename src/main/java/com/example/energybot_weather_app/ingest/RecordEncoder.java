@@ -0,0 +1,19 @@
+package com.example.energybot_weather_app.ingest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Turns one line of the GHCN CSV file into the bytes stored for it in the station file.
+ * Every parse worker gets its own instance, so implementations may keep reusable state.
+ */
+public interface RecordEncoder {
+
+    /**
+     * Encode the line held in buf[start, end) - without its line terminator - into out
+     *
+     * @return false if the line is blank and should be skipped
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    boolean encode(byte[] buf, int start, int end, OutputStream out) throws IOException;
+}
@@ -0,0 +1,77 @@
+package com.example.energybot_weather_app.ingest;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads the station blocks of a run written by {@link RunWriter}, one station at a time
+ */
+class RunReader implements Closeable {
+    private final DataInputStream in;
+    private final int runIndex;
+    private byte[] record = new byte[1024];
+    private String stationId;
+    private int recordCount;
+
+    RunReader(Path file, int runIndex, int bufferSize) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), bufferSize));
+        this.runIndex = runIndex;
+    }
+
+    /**
+     * Move to the next station block
+     *
+     * @return false at the end of the run
+     */
+    boolean nextStation() throws IOException {
+        int idLength = in.read();
+        if (idLength < 0) {
+            stationId = null;
+            return false;
+        }
+        byte[] id = new byte[idLength];
+        in.readFully(id);
+        stationId = new String(id, StandardCharsets.UTF_8);
+        recordCount = in.readInt();
+        return true;
+    }
+
+    String stationId() {
+        return stationId;
+    }
+
+    int recordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Position of the run in input order - used to keep a station's records in input order when merging
+     */
+    int runIndex() {
+        return runIndex;
+    }
+
+    /**
+     * Pass all records of the current station block on to the sink
+     */
+    void copyRecords(StationSink sink) throws IOException {
+        for (int i = 0; i < recordCount; i++) {
+            int length = in.readInt();
+            if (length > record.length) {
+                record = new byte[Math.max(length, record.length * 2)];
+            }
+            in.readFully(record, 0, length);
+            sink.record(record, 0, length);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
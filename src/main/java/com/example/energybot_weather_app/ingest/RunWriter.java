@@ -0,0 +1,43 @@
+package com.example.energybot_weather_app.ingest;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes a sorted run: a sequence of station blocks in station ID order, each laid out as
+ * [station ID length][station ID][record count] followed by [record length][record] entries.
+ */
+class RunWriter implements StationSink {
+    private final DataOutputStream out;
+
+    RunWriter(Path file, int bufferSize) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), bufferSize));
+    }
+
+    @Override
+    public void beginStation(String stationId, int recordCount) throws IOException {
+        byte[] id = stationId.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(id.length);
+        out.write(id);
+        out.writeInt(recordCount);
+    }
+
+    @Override
+    public void record(byte[] buf, int offset, int length) throws IOException {
+        out.writeInt(length);
+        out.write(buf, offset, length);
+    }
+
+    @Override
+    public void endStation() {
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
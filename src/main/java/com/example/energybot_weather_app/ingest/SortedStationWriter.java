@@ -0,0 +1,297 @@
+package com.example.energybot_weather_app.ingest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Writes the stations of one writer shard with a fixed memory and open file budget, using an external sort.
+ *
+ * Records are buffered in memory up to the buffer budget, then sorted by station (keeping input order
+ * within a station) and spilled to a run file. Once the input is complete the runs are merged, at most
+ * {@code mergeFanIn} at a time, and every station is handed to the output sink exactly once. Only one
+ * output file is open at a time, however many stations there are.
+ *
+ * A {@link #checkpoint} spills the buffered records, so that everything appended so far is in run
+ * files that an interrupted ingest can {@link #resume} from.
+ *
+ * Used from a single writer thread.
+ */
+public class SortedStationWriter {
+    private static final Logger logger = LoggerFactory.getLogger(SortedStationWriter.class);
+
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private final Path runDirectory;
+    private final String runPrefix;
+    private final int bufferBytes;
+    private final int mergeFanIn;
+    private final Supplier<StationSink> outputFactory;
+    private final AtomicInteger processedStations;
+
+    private final StationTable stations = new StationTable();
+    private final BatchBuffer records;
+    private int[] recordOffsets = new int[8192];
+    private int[] recordStations = new int[8192];
+    private int recordCount = 0;
+
+    // Rank of each station in ID order, rebuilt when new stations appear
+    private int[] stationRanks = new int[0];
+
+    private final List<Path> runs = new ArrayList<>();
+    private int runsCreated = 0;
+    // Runs referenced by the last checkpoint, kept when the ingest is aborted
+    private final List<Path> checkpointedRuns = new ArrayList<>();
+
+    /**
+     * @param runDirectory directory for the temporary run files
+     * @param runPrefix prefix that keeps this shard's run files apart from other shards'
+     * @param bufferBytes memory budget for buffered records
+     * @param mergeFanIn maximum number of runs open at once while merging
+     * @param outputFactory creates the sink that receives the final, merged stations
+     */
+    public SortedStationWriter(Path runDirectory, String runPrefix, int bufferBytes, int mergeFanIn,
+                               Supplier<StationSink> outputFactory, AtomicInteger processedStations) {
+        this.runDirectory = runDirectory;
+        this.runPrefix = runPrefix;
+        this.bufferBytes = bufferBytes;
+        this.mergeFanIn = Math.max(2, mergeFanIn);
+        this.outputFactory = outputFactory;
+        this.processedStations = processedStations;
+        this.records = new BatchBuffer(Math.min(bufferBytes, IO_BUFFER_SIZE * 16));
+    }
+
+    /**
+     * Buffer one encoded record held in buf[offset, offset + length) for the station
+     * whose ID is held in buf[stationOffset, stationOffset + stationLength)
+     */
+    public void append(byte[] buf, int stationOffset, int stationLength, int offset, int length) throws IOException {
+        int knownStations = stations.size();
+        int station = stations.getOrAdd(buf, stationOffset, stationLength);
+        if (stations.size() > knownStations) {
+            processedStations.incrementAndGet();
+        }
+
+        if (recordCount > 0 && records.size() + length + 4 > bufferBytes) {
+            spill();
+        }
+        if (recordCount == recordOffsets.length) {
+            recordOffsets = Arrays.copyOf(recordOffsets, recordCount * 2);
+            recordStations = Arrays.copyOf(recordStations, recordCount * 2);
+        }
+        recordOffsets[recordCount] = records.size();
+        recordStations[recordCount] = station;
+        recordCount++;
+        records.writeInt(length);
+        records.write(buf, offset, length);
+    }
+
+    /**
+     * Number of distinct stations seen by this writer
+     */
+    public int getStationCount() {
+        return stations.size();
+    }
+
+    /**
+     * Continue after the runs an earlier writer of this shard left at a checkpoint.
+     * Must be called before anything is appended.
+     *
+     * @param runFiles names of the run files in the run directory, in input order
+     */
+    public void resume(List<String> runFiles) {
+        for (String runFile : runFiles) {
+            runs.add(runDirectory.resolve(runFile));
+        }
+        checkpointedRuns.addAll(runs);
+    }
+
+    /**
+     * Spill the buffered records, so that everything appended so far is in run files
+     *
+     * @return names of the run files in the run directory, in input order
+     */
+    public List<String> checkpoint() throws IOException {
+        if (recordCount > 0) {
+            spill();
+        }
+        checkpointedRuns.clear();
+        checkpointedRuns.addAll(runs);
+        return runs.stream().map(run -> run.getFileName().toString()).toList();
+    }
+
+    /**
+     * Spill the remaining records and merge all runs into the output
+     */
+    public void finish() throws IOException {
+        // Everything fit in memory - no need to go through a run file
+        if (runs.isEmpty()) {
+            try (StationSink output = outputFactory.get()) {
+                writeSorted(output);
+            }
+            return;
+        }
+
+        if (recordCount > 0) {
+            spill();
+        }
+
+        // Merge the oldest runs first so that the run list stays in input order
+        while (runs.size() > mergeFanIn) {
+            List<Path> group = new ArrayList<>(runs.subList(0, mergeFanIn));
+            Path merged = nextRunFile();
+            try (RunWriter writer = new RunWriter(merged, IO_BUFFER_SIZE)) {
+                merge(group, writer);
+            }
+            deleteRuns(group);
+            runs.subList(0, mergeFanIn).clear();
+            runs.add(0, merged);
+        }
+
+        try (StationSink output = outputFactory.get()) {
+            merge(runs, output);
+        }
+        deleteRuns(runs);
+        runs.clear();
+    }
+
+    /**
+     * Remove the run files after a failure, except those of the last checkpoint
+     */
+    public void abort() {
+        try {
+            List<Path> uncheckpointed = new ArrayList<>(runs);
+            uncheckpointed.removeAll(checkpointedRuns);
+            deleteRuns(uncheckpointed);
+        } catch (IOException e) {
+            logger.warn("Could not delete run files in {}: {}", runDirectory, e.getMessage());
+        }
+        runs.clear();
+    }
+
+    /**
+     * Sort the buffered records by station and write them out as a run
+     */
+    private void spill() throws IOException {
+        Path run = nextRunFile();
+        try (RunWriter writer = new RunWriter(run, IO_BUFFER_SIZE)) {
+            writeSorted(writer);
+        }
+        runs.add(run);
+        logger.debug("Spilled {} records to {}", recordCount, run.getFileName());
+
+        records.reset();
+        recordCount = 0;
+    }
+
+    /**
+     * Pass the buffered records to the sink grouped by station, in station ID order
+     */
+    private void writeSorted(StationSink sink) throws IOException {
+        int[] ranks = stationRanks();
+        long[] keys = new long[recordCount];
+        for (int i = 0; i < recordCount; i++) {
+            // Sorting by rank, then by position keeps each station's records in input order
+            keys[i] = ((long) ranks[recordStations[i]] << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        byte[] buf = records.array();
+        int i = 0;
+        while (i < recordCount) {
+            int station = recordStations[(int) keys[i]];
+            int end = i + 1;
+            while (end < recordCount && recordStations[(int) keys[end]] == station) {
+                end++;
+            }
+
+            sink.beginStation(stations.stationId(station), end - i);
+            for (; i < end; i++) {
+                int recordOffset = recordOffsets[(int) keys[i]];
+                sink.record(buf, recordOffset + 4, BatchBuffer.readInt(buf, recordOffset));
+            }
+            sink.endStation();
+        }
+    }
+
+    /**
+     * Merge the runs by station ID, passing each station to the sink once with all of its records
+     */
+    private void merge(List<Path> runFiles, StationSink sink) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            PriorityQueue<RunReader> queue = new PriorityQueue<>(
+                    Comparator.comparing(RunReader::stationId).thenComparingInt(RunReader::runIndex));
+            for (int i = 0; i < runFiles.size(); i++) {
+                RunReader reader = new RunReader(runFiles.get(i), i, IO_BUFFER_SIZE);
+                readers.add(reader);
+                if (reader.nextStation()) {
+                    queue.add(reader);
+                }
+            }
+
+            List<RunReader> sameStation = new ArrayList<>();
+            while (!queue.isEmpty()) {
+                RunReader first = queue.poll();
+                sameStation.add(first);
+                int count = first.recordCount();
+                while (!queue.isEmpty() && queue.peek().stationId().equals(first.stationId())) {
+                    RunReader next = queue.poll();
+                    sameStation.add(next);
+                    count += next.recordCount();
+                }
+
+                // The queue hands out equal stations in run order, which is input order
+                sink.beginStation(first.stationId(), count);
+                for (RunReader reader : sameStation) {
+                    reader.copyRecords(sink);
+                    if (reader.nextStation()) {
+                        queue.add(reader);
+                    }
+                }
+                sink.endStation();
+                sameStation.clear();
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private int[] stationRanks() {
+        if (stationRanks.length != stations.size()) {
+            Integer[] order = new Integer[stations.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(stations::stationId));
+
+            stationRanks = new int[order.length];
+            for (int rank = 0; rank < order.length; rank++) {
+                stationRanks[order[rank]] = rank;
+            }
+        }
+        return stationRanks;
+    }
+
+    private Path nextRunFile() {
+        return runDirectory.resolve(runPrefix + "-" + (runsCreated++) + ".run");
+    }
+
+    private static void deleteRuns(List<Path> runFiles) throws IOException {
+        for (Path run : runFiles) {
+            Files.deleteIfExists(run);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.energybot_weather_app.ingest;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes each station's encoded records as a JSON array file named after the station.
+ * Only the file of the current station is open at any time.
+ */
+public class StationFileWriter implements StationSink {
+    private static final byte[] ARRAY_START = "[\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SEPARATOR = ",\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ARRAY_END = "\n]".getBytes(StandardCharsets.US_ASCII);
+
+    private final Path directory;
+    private final int bufferSize;
+    private OutputStream writer;
+    private boolean firstRecord;
+
+    public StationFileWriter(Path directory, int bufferSize) {
+        this.directory = directory;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void beginStation(String stationId, int recordCount) throws IOException {
+        writer = new BufferedOutputStream(Files.newOutputStream(directory.resolve(stationId + ".json")), bufferSize);
+        writer.write(ARRAY_START);
+        firstRecord = true;
+    }
+
+    @Override
+    public void record(byte[] buf, int offset, int length) throws IOException {
+        if (!firstRecord) {
+            writer.write(SEPARATOR);
+        }
+        firstRecord = false;
+        writer.write(buf, offset, length);
+    }
+
+    @Override
+    public void endStation() throws IOException {
+        writer.write(ARRAY_END);
+        writer.close();
+        writer = null;
+    }
+
+    /**
+     * Close the current station's file if a failure left it open
+     */
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.storage.DatasetManifest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only log of the stations whose files are complete, one line per station:
+ * {@code <stationId> <records> <checksum> <hash> <recordsHash>}. Lines are flushed as they are written, so after
+ * a crash the log names exactly the stations that don't need to be written again. A torn last
+ * line is ignored.
+ *
+ * Shared by the writer threads.
+ */
+public class StationLog implements Closeable {
+    public static final String FILE_NAME = "stations.log";
+
+    private final Map<String, DatasetManifest.Station> stations = new ConcurrentHashMap<>();
+    private final BufferedWriter writer;
+
+    /**
+     * Open a log, keeping the stations logged by an earlier run
+     */
+    public StationLog(Path file) throws IOException {
+        if (Files.isRegularFile(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(" ");
+                    if (fields.length == 5 && fields[2].length() == fields[4].length()) {
+                        stations.put(fields[0], new DatasetManifest.Station(Integer.parseInt(fields[1]),
+                                fields[2], fields[3], fields[4]));
+                    }
+                }
+            }
+        }
+        writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        // Start on a fresh line in case the last one was torn
+        writer.newLine();
+        writer.flush();
+    }
+
+    public boolean contains(String stationId) {
+        return stations.containsKey(stationId);
+    }
+
+    public synchronized void append(String stationId, DatasetManifest.Station station) throws IOException {
+        writer.write(stationId + " " + station.records() + " " + station.checksum() + " " + station.hash()
+                + " " + station.recordsHash());
+        writer.newLine();
+        writer.flush();
+        stations.put(stationId, station);
+    }
+
+    /**
+     * All stations logged so far, including those from earlier runs
+     */
+    public Map<String, DatasetManifest.Station> getStations() {
+        return stations;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.storage.DatasetHashes;
+import com.example.energybot_weather_app.storage.DatasetManifest;
+import com.example.energybot_weather_app.storage.StationSegments;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Passes stations on to the sink writing their files and records each finished one in the
+ * {@link StationLog}, with its record count, file checksum and a hash of its encoded records.
+ * Stations already in the log, written by an interrupted earlier run, are skipped.
+ *
+ * Given the previous dataset version, a station's records are held back until its hash is known.
+ * If the previous version has the same records for the station, its files are hard linked from
+ * there instead of being written again, and only changed stations go to the wrapped sink. A
+ * previous version packed into {@link StationSegments} has the files copied out of its segments.
+ */
+public class StationLogWriter implements StationSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final StationSink stationFiles;
+    private final StationLog stationLog;
+    private final Path directory;
+    private final List<String> fileExtensions;
+    private final Map<String, String> stationHashes;
+    private final DatasetManifest previous;
+    private final Path previousDirectory;
+    private final StationSegments previousSegments;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final BatchBuffer records = new BatchBuffer(BUFFER_SIZE);
+    private MessageDigest digest;
+    private String stationId;
+    private int recordCount;
+    private boolean skipping;
+
+    /**
+     * @param fileExtensions extensions of the files written per station, the first being the
+     *                       station file whose checksum is logged
+     * @param stationHashes content hashes of the stations, filled in by the wrapped sink
+     * @param previous manifest of the previous version to take unchanged stations from, or null
+     * @param previousDirectory directory of the previous version
+     * @param previousSegments segments of the previous version, or null if it isn't packed
+     */
+    public StationLogWriter(StationSink stationFiles, StationLog stationLog, Path directory, List<String> fileExtensions,
+                            Map<String, String> stationHashes, DatasetManifest previous, Path previousDirectory,
+                            StationSegments previousSegments) {
+        this.stationFiles = stationFiles;
+        this.stationLog = stationLog;
+        this.directory = directory;
+        this.fileExtensions = fileExtensions;
+        this.stationHashes = stationHashes;
+        this.previous = previous;
+        this.previousDirectory = previousDirectory;
+        this.previousSegments = previousSegments;
+    }
+
+    @Override
+    public void beginStation(String stationId, int recordCount) throws IOException {
+        this.stationId = stationId;
+        this.recordCount = recordCount;
+        skipping = stationLog.contains(stationId);
+        if (skipping) {
+            return;
+        }
+        digest = DatasetHashes.newDigest();
+        records.reset();
+        if (previous == null) {
+            stationFiles.beginStation(stationId, recordCount);
+        }
+    }
+
+    @Override
+    public void record(byte[] buf, int offset, int length) throws IOException {
+        if (skipping) {
+            return;
+        }
+        digest.update((byte) (length >>> 24));
+        digest.update((byte) (length >>> 16));
+        digest.update((byte) (length >>> 8));
+        digest.update((byte) length);
+        digest.update(buf, offset, length);
+        if (previous == null) {
+            stationFiles.record(buf, offset, length);
+        } else {
+            records.writeInt(length);
+            records.write(buf, offset, length);
+        }
+    }
+
+    @Override
+    public void endStation() throws IOException {
+        if (skipping) {
+            skipping = false;
+            return;
+        }
+        String recordsHash = DatasetHashes.toHash(digest);
+        if (previous != null) {
+            DatasetManifest.Station unchanged = previous.stations().get(stationId);
+            if (unchanged != null && recordsHash.equals(unchanged.recordsHash()) && linkPreviousFiles()) {
+                stationLog.append(stationId, unchanged);
+                return;
+            }
+            writeHeldRecords();
+        }
+        stationFiles.endStation();
+        stationLog.append(stationId, new DatasetManifest.Station(recordCount, checksum(), stationHashes.get(stationId),
+                recordsHash));
+    }
+
+    /**
+     * Link the station's files of the previous version into this one
+     *
+     * @return false if the previous version lacks one of the files
+     */
+    private boolean linkPreviousFiles() throws IOException {
+        if (previousSegments != null) {
+            return copyPreviousFiles();
+        }
+        for (String extension : fileExtensions) {
+            if (!Files.isRegularFile(previousDirectory.resolve(stationId + extension))) {
+                return false;
+            }
+        }
+        for (String extension : fileExtensions) {
+            Path source = previousDirectory.resolve(stationId + extension);
+            Path target = directory.resolve(stationId + extension);
+            Files.deleteIfExists(target);
+            try {
+                Files.createLink(target, source);
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(source, target);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy the station's files of the previous version out of its segments into this one
+     *
+     * @return false if the previous version lacks one of the files
+     */
+    private boolean copyPreviousFiles() throws IOException {
+        int station = previousSegments.find(stationId);
+        if (station < 0) {
+            return false;
+        }
+        for (String extension : fileExtensions) {
+            if (previousSegments.range(station, extension) == null) {
+                return false;
+            }
+        }
+        for (String extension : fileExtensions) {
+            ByteBuffer bytes = previousSegments.read(stationId, extension);
+            Path target = directory.resolve(stationId + extension);
+            Files.deleteIfExists(target);
+            try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Pass the held back records of a changed station on to the wrapped sink
+     */
+    private void writeHeldRecords() throws IOException {
+        // Remove links left by an interrupted run, writing through them would change the previous version
+        for (String extension : fileExtensions) {
+            Files.deleteIfExists(directory.resolve(stationId + extension));
+        }
+        stationFiles.beginStation(stationId, recordCount);
+        byte[] buf = records.array();
+        int position = 0;
+        while (position < records.size()) {
+            int length = BatchBuffer.readInt(buf, position);
+            stationFiles.record(buf, position + 4, length);
+            position += 4 + length;
+        }
+    }
+
+    private String checksum() throws IOException {
+        MessageDigest fileDigest = DatasetHashes.newDigest();
+        try (InputStream in = Files.newInputStream(directory.resolve(stationId + fileExtensions.get(0)))) {
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                fileDigest.update(buffer, 0, bytesRead);
+            }
+        }
+        return DatasetHashes.toHash(fileDigest);
+    }
+
+    @Override
+    public void close() throws IOException {
+        stationFiles.close();
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.storage.StationSegments;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Packs the station files written by an ingest into the {@link StationSegments} of their
+ * directory: the files are appended to segments of up to the given size, the index is written
+ * once every segment is complete and only then are the small files deleted. An ingest stopped
+ * while packing leaves the small files in place and packs them again when resumed.
+ */
+public class StationSegmentWriter {
+    private final Path directory;
+    private final List<String> fileExtensions;
+    private final long segmentSize;
+
+    /**
+     * @param fileExtensions extensions of the files written per station
+     * @param segmentSize size a segment is closed at, a larger file still gets a segment of its own
+     */
+    public StationSegmentWriter(Path directory, List<String> fileExtensions, long segmentSize) {
+        this.directory = directory;
+        this.fileExtensions = fileExtensions;
+        this.segmentSize = Math.max(1, segmentSize);
+    }
+
+    /**
+     * Pack the stations' files, recording a file a station lacks as absent
+     *
+     * @param stationIds the stations, in ascending order
+     * @return the number of segments
+     */
+    public int pack(List<String> stationIds) throws IOException {
+        Path indexFile = StationSegments.indexFile(directory);
+        if (Files.isRegularFile(indexFile)) {
+            // Packed by an earlier run that stopped before deleting the small files
+            deleteStationFiles(stationIds);
+            return countSegments();
+        }
+        for (String extension : fileExtensions) {
+            if (extension.length() > StationSegments.EXTENSION_SIZE) {
+                throw new IOException("File extension too long for a segment index: " + extension);
+            }
+        }
+        Files.createDirectories(indexFile.getParent());
+
+        int entrySize = StationSegments.ID_SIZE + fileExtensions.size() * StationSegments.SLOT_SIZE;
+        long indexSize = StationSegments.HEADER_SIZE + (long) fileExtensions.size() * StationSegments.EXTENSION_SIZE
+                + (long) stationIds.size() * entrySize;
+        if (indexSize > Integer.MAX_VALUE) {
+            throw new IOException("Too many stations for a segment index: " + stationIds.size());
+        }
+        ByteBuffer index = ByteBuffer.allocate((int) indexSize).order(ByteOrder.BIG_ENDIAN);
+        index.position(StationSegments.HEADER_SIZE);
+        for (String extension : fileExtensions) {
+            writeAscii(index, extension, StationSegments.EXTENSION_SIZE);
+        }
+
+        int segment = -1;
+        FileChannel out = null;
+        try {
+            String previousId = null;
+            for (String stationId : stationIds) {
+                if (previousId != null && previousId.compareTo(stationId) >= 0) {
+                    throw new IOException("Stations to pack aren't in ascending order: " + previousId + ", " + stationId);
+                }
+                previousId = stationId;
+                if (stationId.length() > StationSegments.ID_SIZE) {
+                    throw new IOException("Station ID too long for a segment index: " + stationId);
+                }
+                writeAscii(index, stationId, StationSegments.ID_SIZE);
+                for (String extension : fileExtensions) {
+                    Path file = directory.resolve(stationId + extension);
+                    if (!Files.isRegularFile(file)) {
+                        index.putInt(-1).putLong(0).putInt(0);
+                        continue;
+                    }
+                    try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                        long size = in.size();
+                        if (size > Integer.MAX_VALUE) {
+                            throw new IOException("Station file too large for a segment: " + file);
+                        }
+                        if (out == null || (out.position() > 0 && out.position() + size > segmentSize)) {
+                            if (out != null) {
+                                out.force(false);
+                                out.close();
+                            }
+                            segment++;
+                            out = FileChannel.open(StationSegments.segmentFile(directory, segment), StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                        }
+                        long offset = out.position();
+                        long transferred = 0;
+                        while (transferred < size) {
+                            transferred += in.transferTo(transferred, size - transferred, out);
+                        }
+                        index.putInt(segment).putLong(offset).putInt((int) size);
+                    }
+                }
+            }
+            if (out != null) {
+                out.force(false);
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+        if (segment + 1 > 0xffff) {
+            throw new IOException("Too many segments for a segment index: " + (segment + 1));
+        }
+
+        index.putInt(0, StationSegments.MAGIC)
+                .putShort(4, StationSegments.VERSION)
+                .putShort(6, (short) StationSegments.ID_SIZE)
+                .putInt(8, stationIds.size())
+                .putShort(12, (short) fileExtensions.size())
+                .putShort(14, (short) (segment + 1));
+        index.limit(index.position()).position(0);
+        Path tempFile = indexFile.resolveSibling(StationSegments.INDEX_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (index.hasRemaining()) {
+                channel.write(index);
+            }
+            channel.force(false);
+        }
+        Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        deleteStationFiles(stationIds);
+        return segment + 1;
+    }
+
+    private void deleteStationFiles(List<String> stationIds) throws IOException {
+        for (String stationId : stationIds) {
+            for (String extension : fileExtensions) {
+                Files.deleteIfExists(directory.resolve(stationId + extension));
+            }
+        }
+    }
+
+    private int countSegments() {
+        int count = 0;
+        while (Files.isRegularFile(StationSegments.segmentFile(directory, count))) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void writeAscii(ByteBuffer buffer, String text, int size) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        buffer.put(bytes);
+        for (int i = bytes.length; i < size; i++) {
+            buffer.put((byte) 0);
+        }
+    }
+}
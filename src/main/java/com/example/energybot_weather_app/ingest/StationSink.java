@@ -0,0 +1,22 @@
+package com.example.energybot_weather_app.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the encoded records of one station after another, each station exactly once.
+ */
+public interface StationSink extends Closeable {
+
+    /**
+     * Start a station that will receive the given number of records
+     */
+    void beginStation(String stationId, int recordCount) throws IOException;
+
+    /**
+     * Add one encoded record held in buf[offset, offset + length) to the current station
+     */
+    void record(byte[] buf, int offset, int length) throws IOException;
+
+    void endStation() throws IOException;
+}
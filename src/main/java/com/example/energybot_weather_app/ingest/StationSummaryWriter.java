@@ -0,0 +1,54 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.storage.StationData;
+import com.example.energybot_weather_app.storage.StationSummary;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Passes the stations on to the {@link PrecompressedResponseWriter}, then takes each finished
+ * station as that writer read it back and writes its monthly and annual rollups as
+ * {@code <stationId>.summary}, see {@link StationSummary}.
+ *
+ * The rollups are built with one builder per writer thread, reused from station to station, so
+ * the summary API reads a small file instead of aggregating the station's records per request.
+ */
+public class StationSummaryWriter implements StationSink {
+    private final PrecompressedResponseWriter stationFiles;
+    private final Path directory;
+    private final StationSummary.Builder builder = new StationSummary.Builder();
+    private String stationId;
+
+    public StationSummaryWriter(PrecompressedResponseWriter stationFiles, Path directory) {
+        this.stationFiles = stationFiles;
+        this.directory = directory;
+    }
+
+    @Override
+    public void beginStation(String stationId, int recordCount) throws IOException {
+        this.stationId = stationId;
+        stationFiles.beginStation(stationId, recordCount);
+    }
+
+    @Override
+    public void record(byte[] buf, int offset, int length) throws IOException {
+        stationFiles.record(buf, offset, length);
+    }
+
+    @Override
+    public void endStation() throws IOException {
+        stationFiles.endStation();
+
+        StationData stationData = stationFiles.getStationData();
+        builder.reset();
+        stationData.visitValues(builder::add);
+        Files.write(directory.resolve(stationId + StationSummary.FILE_EXTENSION), builder.toByteArray());
+    }
+
+    @Override
+    public void close() throws IOException {
+        stationFiles.close();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.energybot_weather_app.ingest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Assigns dense numbers to station IDs that are given as byte ranges.
+ *
+ * Lets the writer stage find a station's state without creating a String for every record;
+ * the String form of an ID is only built once, when the station is first added.
+ * Not thread-safe.
+ */
+public class StationTable {
+    private int[] slots = new int[1024];
+    private byte[][] keys = new byte[512][];
+    private int[] hashes = new int[512];
+    private String[] stationIds = new String[512];
+    private int size = 0;
+
+    public StationTable() {
+        Arrays.fill(slots, -1);
+    }
+
+    /**
+     * Number of the station held in buf[offset, offset + length), adding it if it is new
+     */
+    public int getOrAdd(byte[] buf, int offset, int length) {
+        int hash = hash(buf, offset, length);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        int index;
+        while ((index = slots[slot]) != -1) {
+            if (hashes[index] == hash && Arrays.equals(keys[index], 0, keys[index].length, buf, offset, offset + length)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        index = size++;
+        if (index == keys.length) {
+            keys = Arrays.copyOf(keys, index * 2);
+            hashes = Arrays.copyOf(hashes, index * 2);
+            stationIds = Arrays.copyOf(stationIds, index * 2);
+        }
+        keys[index] = Arrays.copyOfRange(buf, offset, offset + length);
+        hashes[index] = hash;
+        stationIds[index] = new String(buf, offset, length, StandardCharsets.UTF_8);
+        slots[slot] = index;
+
+        // Keep the table at most half full
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return index;
+    }
+
+    /**
+     * Number of stations in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    public String stationId(int index) {
+        return stationIds[index];
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, -1);
+        int mask = slots.length - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = hashes[index] & mask;
+            while (slots[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index;
+        }
+    }
+
+    /**
+     * Hash of a station ID's bytes - also used to pick the station's writer shard
+     */
+    public static int hash(byte[] buf, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        // Spread the bits so that consecutive IDs do not cluster in the table
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.energybot_weather_app.ingest;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passes stations on to another sink, counting the stations it has begun but not yet ended
+ * in a count shared by all writers
+ */
+public class TrackedStationSink implements StationSink {
+    private final StationSink delegate;
+    private final AtomicInteger openStations;
+    private boolean open;
+
+    public TrackedStationSink(StationSink delegate, AtomicInteger openStations) {
+        this.delegate = delegate;
+        this.openStations = openStations;
+    }
+
+    @Override
+    public void beginStation(String stationId, int recordCount) throws IOException {
+        delegate.beginStation(stationId, recordCount);
+        open = true;
+        openStations.incrementAndGet();
+    }
+
+    @Override
+    public void record(byte[] buf, int offset, int length) throws IOException {
+        delegate.record(buf, offset, length);
+    }
+
+    @Override
+    public void endStation() throws IOException {
+        try {
+            delegate.endStation();
+        } finally {
+            ended();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            ended();
+        }
+    }
+
+    private void ended() {
+        if (open) {
+            open = false;
+            openStations.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses a CSV line into a {@link WeatherRecord} and serializes it with the application's ObjectMapper
+ */
+public class WeatherRecordJsonEncoder implements RecordEncoder {
+    private final ObjectMapper objectMapper;
+
+    public WeatherRecordJsonEncoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean encode(byte[] buf, int start, int end, OutputStream out) throws IOException {
+        String line = new String(buf, start, end - start, StandardCharsets.UTF_8);
+
+        // Handle potential empty lines
+        if (line.trim().isEmpty()) {
+            return false;
+        }
+
+        // Split by comma, while preserving empty fields
+        String[] parts = line.split(",", -1);
+
+        // A valid line should have at least the first 4 required fields
+        if (parts.length < 4) {
+            throw new IllegalArgumentException("fewer than 4 fields: " + line);
+        }
+
+        // Extract data from the line according to the format
+        String stationId = parts[0].trim();
+        String dateStr = parts[1].trim();
+        String element = parts[2].trim();
+        String value = parts[3].trim();
+
+        // Check for required fields
+        if (stationId.isEmpty() || dateStr.isEmpty() || element.isEmpty()) {
+            throw new IllegalArgumentException("missing required fields: " + line);
+        }
+
+        // Optional fields - might be empty
+        String mFlag = (parts.length > 4) ? parts[4].trim() : "";
+        String qFlag = (parts.length > 5) ? parts[5].trim() : "";
+        String sFlag = (parts.length > 6) ? parts[6].trim() : "";
+        String obsTime = (parts.length > 7) ? parts[7].trim() : "";
+
+        // Create a weather record object
+        WeatherRecord record = new WeatherRecord(stationId, dateStr, element, value);
+        if (!mFlag.isEmpty()) record.setmFlag(mFlag);
+        if (!qFlag.isEmpty()) record.setqFlag(qFlag);
+        if (!sFlag.isEmpty()) record.setsFlag(sFlag);
+        if (!obsTime.isEmpty()) record.setObsTime(obsTime);
+
+        out.write(objectMapper.writeValueAsBytes(record));
+        return true;
+    }
+}
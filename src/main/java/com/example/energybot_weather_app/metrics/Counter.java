@@ -0,0 +1,23 @@
+package com.example.energybot_weather_app.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up. Increments from many threads don't contend, but callers on a hot
+ * loop should still add up locally and increment once per batch.
+ */
+public class Counter {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void increment(long amount) {
+        count.add(amount);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.energybot_weather_app.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The application's metrics, written out in the Prometheus text format for scraping.
+ *
+ * Counters and timers are updated by the code they measure; gauges and function counters are
+ * read from the owning component's own state at scrape time, so they cost nothing in between.
+ * Names follow the Prometheus conventions: counters end in {@code _total}, durations are in
+ * seconds. Tags are given as alternating names and values.
+ *
+ * Registering a meter that exists returns it for counters and timers; gauges are replaced, so a
+ * component created again reports its own state.
+ */
+@Component
+public class MetricsRegistry {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private enum Type { COUNTER, GAUGE, HISTOGRAM }
+
+    /**
+     * All series of one metric name, by their rendered labels
+     */
+    private record Family(Type type, String help, Map<String, Object> series) {
+    }
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help, String... tags) {
+        return (Counter) family(name, help, Type.COUNTER).series().computeIfAbsent(labels(tags), labels -> new Counter());
+    }
+
+    /**
+     * A count kept elsewhere that only goes up, read when scraped
+     */
+    public void functionCounter(String name, String help, DoubleSupplier value, String... tags) {
+        family(name, help, Type.COUNTER).series().put(labels(tags), value);
+    }
+
+    /**
+     * A value that goes up and down, read when scraped
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... tags) {
+        family(name, help, Type.GAUGE).series().put(labels(tags), value);
+    }
+
+    /**
+     * @param bucketSeconds upper bounds of the histogram buckets in seconds, ascending; ignored if the timer exists
+     */
+    public Timer timer(String name, String help, double[] bucketSeconds, String... tags) {
+        return (Timer) family(name, help, Type.HISTOGRAM).series().computeIfAbsent(labels(tags), labels -> new Timer(bucketSeconds));
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(type, help, new ConcurrentSkipListMap<>()));
+        if (family.type() != type) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type() + ", not a " + type);
+        }
+        return family;
+    }
+
+    /**
+     * All metrics in the Prometheus text exposition format
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        families.forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help().replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type().name().toLowerCase(Locale.ROOT)).append('\n');
+            family.series().forEach((labels, meter) -> {
+                if (meter instanceof Counter counter) {
+                    sample(out, name, labels, counter.count());
+                } else if (meter instanceof Timer timer) {
+                    writeHistogram(out, name, labels, timer);
+                } else {
+                    sample(out, name, labels, ((DoubleSupplier) meter).getAsDouble());
+                }
+            });
+        });
+        return out.toString();
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, Timer timer) {
+        double[] bounds = timer.bucketSeconds();
+        long[] cumulative = timer.cumulativeCounts();
+        for (int i = 0; i <= bounds.length; i++) {
+            String le = i < bounds.length ? formatValue(bounds[i]) : "+Inf";
+            String bucketLabels = labels.isEmpty() ? "{le=\"" + le + "\"}"
+                    : labels.substring(0, labels.length() - 1) + ",le=\"" + le + "\"}";
+            sample(out, name + "_bucket", bucketLabels, cumulative[i]);
+        }
+        sample(out, name + "_sum", labels, timer.totalSeconds());
+        // The count matches the +Inf bucket even while durations are being recorded
+        sample(out, name + "_count", labels, cumulative[bounds.length]);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append(labels).append(' ').append(formatValue(value)).append('\n');
+    }
+
+    private static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    /**
+     * Render tags as Prometheus labels, e.g. {@code {filter="none",size="0-10KB"}}, empty without tags
+     */
+    static String labels(String... tags) {
+        if (tags.length % 2 != 0) {
+            throw new IllegalArgumentException("Tags must be pairs of names and values");
+        }
+        if (tags.length == 0) {
+            return "";
+        }
+        StringBuilder labels = new StringBuilder("{");
+        for (int i = 0; i < tags.length; i += 2) {
+            if (i > 0) {
+                labels.append(',');
+            }
+            labels.append(tags[i]).append("=\"")
+                    .append(tags[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return labels.append('}').toString();
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.energybot_weather_app.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durations counted into fixed buckets, exposed as a Prometheus histogram in seconds so
+ * percentiles can be computed over any set of instances and time window
+ */
+public class Timer {
+    private final double[] bucketSeconds;
+    // Durations at or below each bucket's bound and above the one before, the last one above all bounds
+    private final LongAdder[] bucketCounts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * @param bucketSeconds upper bounds of the buckets in seconds, ascending
+     */
+    public Timer(double[] bucketSeconds) {
+        this.bucketSeconds = bucketSeconds.clone();
+        this.bucketCounts = new LongAdder[bucketSeconds.length + 1];
+        for (int i = 0; i < bucketCounts.length; i++) {
+            bucketCounts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        double seconds = nanos / 1e9;
+        int bucket = 0;
+        while (bucket < bucketSeconds.length && seconds > bucketSeconds[bucket]) {
+            bucket++;
+        }
+        bucketCounts[bucket].increment();
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double totalSeconds() {
+        return totalNanos.sum() / 1e9;
+    }
+
+    double[] bucketSeconds() {
+        return bucketSeconds;
+    }
+
+    /**
+     * Number of durations at or below each bucket's bound, with the total count last
+     */
+    long[] cumulativeCounts() {
+        long[] cumulative = new long[bucketCounts.length];
+        long sum = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            sum += bucketCounts[i].sum();
+            cumulative[i] = sum;
+        }
+        return cumulative;
+    }
+}
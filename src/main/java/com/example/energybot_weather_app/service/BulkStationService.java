@@ -0,0 +1,150 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.storage.StationResponseJson;
+import com.example.energybot_weather_app.storage.StationSelection;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers the same query for many stations at once. Stations are read and rendered to JSON on a
+ * fixed pool of threads shared by all bulk requests, and written out as newline-delimited JSON,
+ * one station per line, in the order they complete.
+ *
+ * Each request keeps at most a fixed number of stations in flight and only submits the next one
+ * once a rendered station has been written, so memory use doesn't grow with the number of stations
+ * asked for, and a slow client holds back its own request rather than piling up rendered stations.
+ */
+@Service
+public class BulkStationService {
+    private static final Logger logger = LoggerFactory.getLogger(BulkStationService.class);
+
+    private final WeatherDataService weatherDataService;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+
+    /**
+     * @param threads threads reading stations, shared by all bulk requests (0 = one per available processor)
+     * @param maxInFlight stations each request has read or is reading but hasn't written yet (0 = twice the threads)
+     */
+    public BulkStationService(WeatherDataService weatherDataService,
+                              @Value("${weather.api.bulk.threads:0}") int threads,
+                              @Value("${weather.api.bulk.max-in-flight:0}") int maxInFlight) {
+        this.weatherDataService = weatherDataService;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : 2 * poolSize;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-station-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Write one line per station to the output: the station's response envelope as returned by
+     * the single station endpoint, or {"stationId":...,"error":...} if it couldn't be read
+     *
+     * @param stationIds stations to query, each once
+     * @return the number of stations written
+     * @throws IOException if writing to the output fails, in which case the remaining stations are cancelled
+     */
+    public int write(List<String> stationIds, String elementType, String startDate, String endDate,
+                     JsonFactory jsonFactory, OutputStream out) throws IOException {
+        CompletionService<byte[]> completed = new ExecutorCompletionService<>(executor);
+        List<Future<byte[]>> pending = new ArrayList<>();
+        Iterator<String> remaining = stationIds.iterator();
+        int inFlight = 0;
+        int written = 0;
+        try {
+            while (inFlight < maxInFlight && remaining.hasNext()) {
+                String stationId = remaining.next();
+                pending.add(completed.submit(() -> render(stationId, elementType, startDate, endDate, jsonFactory)));
+                inFlight++;
+            }
+            while (inFlight > 0) {
+                Future<byte[]> next = completed.take();
+                inFlight--;
+                out.write(next.get());
+                written++;
+                if (remaining.hasNext()) {
+                    String stationId = remaining.next();
+                    pending.add(completed.submit(() -> render(stationId, elementType, startDate, endDate, jsonFactory)));
+                    inFlight++;
+                }
+                // Drop finished futures so the list stays as small as the window
+                if (pending.size() > 2 * maxInFlight) {
+                    pending.removeIf(Future::isDone);
+                }
+            }
+            out.flush();
+            return written;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading stations", e);
+        } catch (ExecutionException e) {
+            // render() turns failures into error lines, so this is a bug rather than bad data
+            throw new IllegalStateException("Rendering a station failed", e.getCause());
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Read a station and render its line
+     */
+    private byte[] render(String stationId, String elementType, String startDate, String endDate,
+                          JsonFactory jsonFactory) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try {
+            StationSelection selection = weatherDataService.selectStationData(stationId, elementType, startDate, endDate);
+            try (JsonGenerator generator = jsonFactory.createGenerator(line)) {
+                if (selection != null) {
+                    StationResponseJson.write(generator, stationId, selection, elementType, startDate, endDate);
+                } else {
+                    writeError(generator, stationId, "No data found for station ID: " + stationId);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error retrieving data for station {}: {}", stationId, e.getMessage());
+            line.reset();
+            try (JsonGenerator generator = jsonFactory.createGenerator(line)) {
+                writeError(generator, stationId, "Error retrieving station data: " + e.getMessage());
+            }
+        }
+        line.write('\n');
+        return line.toByteArray();
+    }
+
+    private static void writeError(JsonGenerator generator, String stationId, String error) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("stationId", stationId);
+        generator.writeStringField("error", error);
+        generator.writeEndObject();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
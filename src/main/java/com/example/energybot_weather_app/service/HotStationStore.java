@@ -0,0 +1,127 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.storage.OffHeapStationStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optionally keeps the whole served dataset in an {@link OffHeapStationStore}, so station queries
+ * are answered from memory without the disk or the station cache.
+ *
+ * The store is loaded in the background once the application is ready and again whenever a new
+ * version is published; until a load completes, queries read the station files as usual. Only
+ * binary station files are loaded.
+ *
+ * The previous store is dropped before the next one is loaded, so the two never hold the budget
+ * twice over. Its direct buffers are freed once collected, which the JVM forces when a new
+ * allocation would exceed {@code -XX:MaxDirectMemorySize}.
+ */
+@Component
+public class HotStationStore {
+    private static final Logger logger = LoggerFactory.getLogger(HotStationStore.class);
+
+    private final long maxBytes;
+    private final ExecutorService loader;
+    // Bumped by every load request, so a load that was overtaken by a newer one is dropped
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile OffHeapStationStore store;
+    private volatile long loadMillis;
+    private volatile String lastError;
+
+    /**
+     * @param maxMemoryMb memory budget for the station files, 0 disables the store
+     */
+    public HotStationStore(@Value("${weather.hotstore.max-memory-mb:0}") long maxMemoryMb) {
+        this.maxBytes = Math.max(0, maxMemoryMb) * 1024 * 1024;
+        this.loader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-store-load");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * The loaded store, or null if it's disabled or not loaded yet
+     */
+    public OffHeapStationStore get() {
+        return store;
+    }
+
+    /**
+     * Load the directories' station files in the background in place of the current store
+     */
+    public void loadAsync(List<Path> directories) {
+        if (!isEnabled()) {
+            return;
+        }
+        long requested = generation.incrementAndGet();
+        loader.execute(() -> {
+            if (generation.get() == requested) {
+                load(directories, requested);
+            }
+        });
+    }
+
+    /**
+     * Load the directories' station files in place of the current store
+     */
+    public void load(List<Path> directories) {
+        if (isEnabled()) {
+            load(directories, generation.incrementAndGet());
+        }
+    }
+
+    private void load(List<Path> directories, long requested) {
+        long start = System.nanoTime();
+        // Queries read the station files until the new store is in place
+        store = null;
+        try {
+            OffHeapStationStore loaded = OffHeapStationStore.load(directories, maxBytes);
+            if (generation.get() != requested) {
+                return;
+            }
+            store = loaded;
+            loadMillis = (System.nanoTime() - start) / 1_000_000;
+            lastError = null;
+            logger.info("Loaded {} stations ({} MB) into the hot store in {} ms", loaded.stationCount(),
+                    loaded.sizeBytes() / (1024 * 1024), loadMillis);
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            lastError = e.getMessage();
+            logger.warn("Could not load the hot store, station files are read from disk: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Size and load time of the store
+     */
+    public Map<String, Object> getStats() {
+        OffHeapStationStore current = store;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", isEnabled());
+        result.put("loaded", current != null);
+        result.put("stations", current == null ? 0 : current.stationCount());
+        result.put("offHeapBytes", current == null ? 0 : current.sizeBytes());
+        result.put("maxBytes", maxBytes);
+        result.put("loadMillis", loadMillis);
+        if (lastError != null) {
+            result.put("lastError", lastError);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.energybot_weather_app.service;
+
+import java.time.Instant;
+
+/**
+ * Outcome of the last check of the source data file by {@link WeatherDataProcessor}
+ *
+ * @param time when the check finished
+ * @param result "loaded" for the first ingest, "updated", "unchanged" or "failed"
+ * @param version the dataset version served afterwards
+ * @param stationsChanged stations that are new or whose records changed, and were written again
+ * @param stationsRemoved stations no longer in the source
+ * @param stationsUnchanged stations taken over from the previous version
+ * @param durationMillis time taken by the check, including any download and ingest
+ * @param error why the check failed, null otherwise
+ */
+public record RefreshResult(Instant time, String result, String version, int stationsChanged, int stationsRemoved,
+                            int stationsUnchanged, long durationMillis, String error) {
+}
@@ -0,0 +1,91 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.storage.StationData;
+import com.example.energybot_weather_app.storage.StationSeries;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Degree days, rolling mean temperatures and accumulated precipitation of a station.
+ *
+ * A station's {@link StationSeries} is built from its data on first use and kept in memory,
+ * bounded by its estimated size, so later date ranges are answered from its prefix sums.
+ * Series are keyed by the dataset version they were built from, so one built while a new
+ * version was published is never served for it. Emptied whenever the station files are rewritten.
+ */
+@Service
+public class StationAnalyticsService {
+    private static final Logger logger = LoggerFactory.getLogger(StationAnalyticsService.class);
+
+    private final WeatherDataService weatherDataService;
+    private final Cache<String, StationSeries> cache;
+    // Degree day bases the series keep prefix sums for, in tenths of a degree C
+    private final int heatingBase;
+    private final int coolingBase;
+
+    /**
+     * @param maxMemoryMb memory budget for the series kept between requests
+     * @param hddBaseC default heating degree day base in degrees C
+     * @param cddBaseC default cooling degree day base in degrees C
+     */
+    public StationAnalyticsService(WeatherDataService weatherDataService,
+                                   @Value("${weather.analytics.cache-max-memory-mb:16}") long maxMemoryMb,
+                                   @Value("${weather.analytics.hdd-base-c:18.3}") double hddBaseC,
+                                   @Value("${weather.analytics.cdd-base-c:18.3}") double cddBaseC) {
+        this.weatherDataService = weatherDataService;
+        this.heatingBase = (int) Math.round(hddBaseC * 10);
+        this.coolingBase = (int) Math.round(cddBaseC * 10);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(Math.max(0, maxMemoryMb) * 1024 * 1024)
+                .weigher((String key, StationSeries series) -> (int) Math.min(Integer.MAX_VALUE, series.estimatedBytes()))
+                .build();
+    }
+
+    /**
+     * The daily series of a station, built from its data on a miss
+     *
+     * @return the series, or null if the station is not found
+     */
+    public StationSeries getStationSeries(String stationId) throws IOException {
+        String normalizedId = WeatherDataService.normalizeStationId(stationId);
+        // The version is resolved before the series is loaded, so a series can only be newer than its key
+        String key = weatherDataService.getDataDirectory().resolve(normalizedId).toString();
+        try {
+            return cache.get(key, k -> {
+                try {
+                    return loadStationSeries(normalizedId);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private StationSeries loadStationSeries(String stationId) throws IOException {
+        List<StationData> partitions = weatherDataService.getStationDataPartitions(stationId);
+        if (partitions == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        StationSeries series = StationSeries.of(partitions, heatingBase, coolingBase);
+        logger.info("Built the daily series of station {}: {} days in {} ms", stationId, series.days(),
+                (System.nanoTime() - start) / 1_000_000);
+        return series;
+    }
+
+    @EventListener
+    public void onStationDataUpdated(StationDataUpdatedEvent event) {
+        cache.invalidateAll();
+    }
+}
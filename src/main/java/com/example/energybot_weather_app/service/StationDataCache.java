@@ -0,0 +1,116 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.storage.StationData;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently used stations in memory, bounded by their estimated size in bytes.
+ *
+ * Eviction is Caffeine's size-based W-TinyLFU, so a burst of one-off lookups doesn't push out
+ * the stations the dashboard keeps asking for. Emptied whenever the station files are rewritten.
+ */
+@Component
+public class StationDataCache {
+    private static final Logger logger = LoggerFactory.getLogger(StationDataCache.class);
+
+    private final long maxBytes;
+    private final Cache<String, StationData> cache;
+
+    /**
+     * @param maxMemoryMb memory budget for cached stations, 0 disables caching
+     */
+    public StationDataCache(@Value("${weather.cache.max-memory-mb:64}") long maxMemoryMb) {
+        this.maxBytes = Math.max(0, maxMemoryMb) * 1024 * 1024;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, StationData data) -> (int) Math.min(Integer.MAX_VALUE, data.estimatedBytes()))
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Get a station from the cache, loading and caching it on a miss
+     *
+     * @param key identifies the station and the version it was read from, such as the path of its file
+     * @return the station's data, or null if the loader found no data
+     */
+    public StationData get(String key, StationLoader loader) throws IOException {
+        if (!isEnabled()) {
+            return loader.load(key);
+        }
+        try {
+            return cache.get(key, k -> {
+                try {
+                    return loader.load(k);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @EventListener
+    public void onStationDataUpdated(StationDataUpdatedEvent event) {
+        invalidateAll();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+        logger.info("Station data cache cleared");
+    }
+
+    /**
+     * Caffeine's hit, miss and eviction counters
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Current weight of the cached stations in estimated bytes
+     */
+    public long weightBytes() {
+        return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    /**
+     * Hit, miss and eviction counters together with the current size of the cache
+     */
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("entries", cache.estimatedSize());
+        result.put("weightBytes", weightBytes());
+        result.put("maxBytes", maxBytes);
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("evictions", stats.evictionCount());
+        result.put("hitRate", stats.hitRate());
+        return result;
+    }
+
+    public interface StationLoader {
+        /**
+         * @return the station's data, or null if there is none
+         */
+        StationData load(String key) throws IOException;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.energybot_weather_app.service;
+
+import java.nio.file.Path;
+
+/**
+ * Published by {@link WeatherDataProcessor} after a new dataset version has been published
+ *
+ * @param dataDirectory directory holding the new version's station files
+ */
+public record StationDataUpdatedEvent(Path dataDirectory) {
+}
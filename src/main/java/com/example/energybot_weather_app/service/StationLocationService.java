@@ -0,0 +1,83 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.storage.DatasetHashes;
+import com.example.energybot_weather_app.storage.StationIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Finds the stations nearest to a point, from the station list stored with the dataset.
+ *
+ * The {@link StationIndex} is built from the list on first use, keeping only the stations the
+ * dataset has data for. It is kept with the directory it was built from and built again once
+ * the dataset's directory is a different one, whichever order the update listeners run in.
+ */
+@Service
+public class StationLocationService {
+    private static final Logger logger = LoggerFactory.getLogger(StationLocationService.class);
+
+    private final WeatherDataService weatherDataService;
+    private volatile LoadedIndex loadedIndex;
+
+    /**
+     * An index with the directory it was built from; the index is null if that has no station list
+     */
+    private record LoadedIndex(Path directory, StationIndex index) {
+    }
+
+    public StationLocationService(WeatherDataService weatherDataService) {
+        this.weatherDataService = weatherDataService;
+    }
+
+    /**
+     * The index of the current dataset's stations
+     *
+     * @return the index, or null if the dataset has no station list
+     */
+    public StationIndex getStationIndex() {
+        Path directory = weatherDataService.getDataDirectory();
+        LoadedIndex loaded = loadedIndex;
+        if (loaded == null || !loaded.directory().equals(directory)) {
+            synchronized (this) {
+                loaded = loadedIndex;
+                if (loaded == null || !loaded.directory().equals(directory)) {
+                    loaded = new LoadedIndex(directory, loadStationIndex(directory));
+                    loadedIndex = loaded;
+                }
+            }
+        }
+        return loaded.index();
+    }
+
+    private StationIndex loadStationIndex(Path directory) {
+        Path file = directory.resolve(StationIndex.FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            logger.info("No station list in {}, nearest station queries are unavailable", directory);
+            return null;
+        }
+        // Without hashes there is no list of the dataset's stations, so every listed one is kept
+        DatasetHashes hashes = weatherDataService.getDatasetHashes();
+        try {
+            long start = System.nanoTime();
+            StationIndex index = StationIndex.read(file, stationId -> hashes == null || hashes.stationHash(stationId) != null);
+            logger.info("Indexed the locations of {} stations in {} ms", index.size(), (System.nanoTime() - start) / 1_000_000);
+            return index;
+        } catch (IOException e) {
+            logger.warn("Could not read the station list {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    @EventListener
+    public void onStationDataUpdated(StationDataUpdatedEvent event) {
+        synchronized (this) {
+            loadedIndex = null;
+        }
+    }
+}
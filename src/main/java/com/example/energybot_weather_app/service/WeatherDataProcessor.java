@@ -1,54 +1,245 @@
 package com.example.energybot_weather_app.service;
 
-import com.example.energybot_weather_app.model.WeatherRecord;
+import com.example.energybot_weather_app.download.DownloadInputStream;
+import com.example.energybot_weather_app.download.RangeDownloader;
+import com.example.energybot_weather_app.download.RemoteFile;
+import com.example.energybot_weather_app.ingest.BinaryStationFileWriter;
+import com.example.energybot_weather_app.ingest.CountingInputStream;
+import com.example.energybot_weather_app.ingest.DateColumnsWriter;
+import com.example.energybot_weather_app.ingest.GhcnBinaryEncoder;
+import com.example.energybot_weather_app.ingest.GhcnJsonEncoder;
+import com.example.energybot_weather_app.ingest.IngestCheckpoint;
+import com.example.energybot_weather_app.ingest.IngestPipeline;
+import com.example.energybot_weather_app.ingest.IngestStats;
+import com.example.energybot_weather_app.ingest.PartitionedResponseWriter;
+import com.example.energybot_weather_app.ingest.PrecompressedResponseWriter;
+import com.example.energybot_weather_app.ingest.RecordEncoder;
+import com.example.energybot_weather_app.ingest.SortedStationWriter;
+import com.example.energybot_weather_app.ingest.StationSegmentWriter;
+import com.example.energybot_weather_app.ingest.StationFileWriter;
+import com.example.energybot_weather_app.ingest.StationLog;
+import com.example.energybot_weather_app.ingest.StationLogWriter;
+import com.example.energybot_weather_app.ingest.StationSink;
+import com.example.energybot_weather_app.ingest.StationSummaryWriter;
+import com.example.energybot_weather_app.ingest.TrackedStationSink;
+import com.example.energybot_weather_app.ingest.WeatherRecordJsonEncoder;
+import com.example.energybot_weather_app.metrics.Counter;
+import com.example.energybot_weather_app.metrics.MetricsRegistry;
+import com.example.energybot_weather_app.storage.BinaryStationData;
+import com.example.energybot_weather_app.storage.BinaryStationFile;
+import com.example.energybot_weather_app.storage.BinaryStationFormat;
+import com.example.energybot_weather_app.storage.DatasetHashes;
+import com.example.energybot_weather_app.storage.DatasetManifest;
+import com.example.energybot_weather_app.storage.DatasetStore;
+import com.example.energybot_weather_app.storage.JsonStationData;
+import com.example.energybot_weather_app.storage.StationIndex;
+import com.example.energybot_weather_app.storage.StationSegments;
+import com.example.energybot_weather_app.storage.StationSummary;
+import com.example.energybot_weather_app.storage.YearPartitions;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.security.MessageDigest;
+import java.time.Instant;
 import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
 
 @Service
 public class WeatherDataProcessor {
     private static final Logger logger = LoggerFactory.getLogger(WeatherDataProcessor.class);
     
+    // Larger than the 512 byte default so the inflater is fed in bigger chunks
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final int STATION_FILE_BUFFER_SIZE = 64 * 1024;
+    // Sorted runs are spilled here inside the staging directory, so they survive a restart
+    private static final String RUN_DIRECTORY = "runs";
+    // Bounds in seconds of the buckets ingest phases are timed into, from a small test file to all years
+    private static final double[] PHASE_BUCKET_SECONDS = {0.1, 0.5, 1, 5, 10, 30, 60, 120, 300, 600, 1800, 3600, 7200};
+    
     @Value("${weather.data.url}")
     private String dataUrl;
     
+    // Years to ingest from one source file each, e.g. "2015-2024" or "2020,2022-2024", stored
+    // in year partitions. Empty ingests the single file at weather.data.url.
+    @Value("${weather.data.years:}")
+    private String dataYears;
+    
+    // Source file of each year, with {year} standing for the year
+    @Value("${weather.data.year-url:https://www.ncei.noaa.gov/pub/data/ghcn/daily/by_year/{year}.csv.gz}")
+    private String dataYearUrl;
+    
+    // GHCN station list with the stations' coordinates and names, stored with each version for the
+    // nearest station queries. A URL is downloaded, anything else read as a local file; empty disables it.
+    @Value("${weather.stations.url:https://www.ncei.noaa.gov/pub/data/ghcn/daily/ghcnd-stations.txt}")
+    private String stationsUrl;
+    
     @Value("${weather.data.directory}")
     private String dataDir;
     
+    // Where the source file is downloaded to, kept until it has been processed so an interrupted
+    // download or ingest can resume without fetching it again
+    @Value("${weather.download.directory:weather_download}")
+    private String downloadDir;
+    
+    // Number of connections downloading byte ranges of the source file in parallel
+    @Value("${weather.download.connections:4}")
+    private int downloadConnections;
+    
+    // Size of each byte range; ranges are fetched in file order so the start of the file is ready first
+    @Value("${weather.download.segment-size-mb:16}")
+    private int downloadSegmentSizeMb;
+    
+    // Attempts per byte range after the first one fails
+    @Value("${weather.download.retries:5}")
+    private int downloadRetries;
+    
+    // When enabled, the data file is decompressed once and progress is estimated
+    // from the compressed bytes consumed instead of a separate line-counting pass
+    @Value("${weather.ingest.single-pass:true}")
+    private boolean singlePassIngest;
+    
+    // When enabled, the data file is parsed from disk while it is still downloading instead of
+    // after the download has finished. Always single pass.
+    @Value("${weather.ingest.streaming:true}")
+    private boolean streamingIngest;
+    
+    // Number of threads parsing and serializing records, 0 uses one per available processor
+    @Value("${weather.ingest.threads:0}")
+    private int ingestThreads;
+    
+    // Number of threads writing station files; each station is always written by the same thread
+    @Value("${weather.ingest.writer-threads:2}")
+    private int ingestWriterThreads;
+    
+    // Number of years ingested at the same time, each by its own pipeline, 0 uses one per available
+    // processor. Parse threads, sort buffer and open files are shared out between them.
+    @Value("${weather.ingest.parallel-years:0}")
+    private int parallelYears;
+    
+    // "bytes" parses lines in place and streams the JSON out, "legacy" builds a WeatherRecord per line.
+    // Only applies to JSON station files.
+    @Value("${weather.ingest.parser:bytes}")
+    private String ingestParser;
+    
+    // Station file format: "binary" for compact fixed-width rows, "json" for pretty printed records
+    @Value("${weather.storage.format:binary}")
+    private String storageFormat;
+    
+    // Station file layout: "files" keeps a file per station and file type, "packed" appends them all
+    // to a few large segment files with a sorted index of where each station's files are
+    @Value("${weather.storage.layout:files}")
+    private String storageLayout;
+    
+    // Size a segment file of the packed layout is closed at
+    @Value("${weather.storage.segment-size-mb:1024}")
+    private int segmentSizeMb;
+    
+    // Memory used to buffer records before they are sorted by station and spilled to disk
+    @Value("${weather.ingest.sort-buffer-mb:256}")
+    private int sortBufferMb;
+    
+    // Maximum number of files the ingest keeps open at once
+    @Value("${weather.ingest.max-open-files:64}")
+    private int maxOpenFiles;
+    
+    // Decompressed input between checkpoints an interrupted ingest can resume from, 0 disables them
+    @Value("${weather.ingest.checkpoint-mb:256}")
+    private int checkpointMb;
+    
+    // Also write the values of all stations per day, for queries of one date across the network
+    @Value("${weather.ingest.date-columns:true}")
+    private boolean writeDateColumns;
+    
     private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
     
     // Status tracking
     private final AtomicBoolean processingComplete = new AtomicBoolean(false);
-    private final AtomicInteger processedLines = new AtomicInteger(0);
-    private final AtomicInteger totalLines = new AtomicInteger(0);
+    private final AtomicLong processedLines = new AtomicLong(0);
+    private final AtomicLong totalLines = new AtomicLong(0);
     private final AtomicInteger processedStations = new AtomicInteger(0);
-    private final AtomicLong downloadedBytes = new AtomicLong(0);
-    private final AtomicLong totalBytes = new AtomicLong(0);
-    private String currentStatus = "Not started";
-    private long startTime = 0;
-    private boolean isDownloading = false;
+    // Source files being downloaded and ingested, several when years are ingested in parallel
+    private final List<SourceIngest> sourceIngests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger activeDownloads = new AtomicInteger(0);
+    private final AtomicInteger activeIngests = new AtomicInteger(0);
+    private long nextDownloadProgressLog = 0;
+    // Written by the ingest threads and read by status requests
+    private volatile String currentStatus = "Not started";
+    private volatile long startTime = 0;
+    
+    // Refresh tracking
+    private final AtomicBoolean refreshRunning = new AtomicBoolean(false);
+    private final AtomicReference<RefreshResult> lastRefresh = new AtomicReference<>();
+    
+    // Metrics, counted across all ingests since startup
+    private final MetricsRegistry metricsRegistry;
+    private final Counter downloadedBytesCounter;
+    private final Counter lineCounter;
+    private final Counter validLineCounter;
+    private final Counter invalidLineCounter;
+    // Stations whose files are being written, across all writer threads
+    private final AtomicInteger openStationWriters = new AtomicInteger(0);
     
-    public WeatherDataProcessor(ObjectMapper objectMapper) {
+    public WeatherDataProcessor(ObjectMapper objectMapper, ApplicationEventPublisher eventPublisher) {
+        this(objectMapper, eventPublisher, new MetricsRegistry());
+    }
+    
+    @Autowired
+    public WeatherDataProcessor(ObjectMapper objectMapper, ApplicationEventPublisher eventPublisher,
+                                MetricsRegistry metricsRegistry) {
         this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.metricsRegistry = metricsRegistry;
+        
+        downloadedBytesCounter = metricsRegistry.counter("weather_download_bytes_total", "Bytes of source data downloaded");
+        lineCounter = metricsRegistry.counter("weather_ingest_lines_total", "Lines read from source data files");
+        validLineCounter = metricsRegistry.counter("weather_ingest_valid_lines_total",
+                "Lines read from source data files and written to a station file");
+        invalidLineCounter = metricsRegistry.counter("weather_ingest_invalid_lines_total",
+                "Lines read from source data files and skipped as invalid");
+        metricsRegistry.gauge("weather_ingest_open_station_writers", "Stations whose files are being written",
+                openStationWriters::get);
+        metricsRegistry.gauge("weather_ingest_active_downloads", "Source files being downloaded", activeDownloads::get);
+        metricsRegistry.gauge("weather_ingest_active_ingests", "Source files being ingested as they download",
+                activeIngests::get);
+        metricsRegistry.gauge("weather_data_ready", "1 once a dataset version is being served",
+                () -> processingComplete.get() ? 1 : 0);
+        metricsRegistry.gauge("weather_refresh_running", "1 while a refresh is checking for or ingesting new data",
+                () -> refreshRunning.get() ? 1 : 0);
     }
     
     /**
@@ -65,35 +256,135 @@ public class WeatherDataProcessor {
         Map<String, Object> progress = new HashMap<>();
         progress.put("status", currentStatus);
         
-        // If downloading, show download progress
+        // If downloading, show download progress - and processing progress too when the
+        // file is processed as it downloads
+        boolean isDownloading = activeDownloads.get() > 0;
         if (isDownloading) {
+            long downloaded = getDownloadedBytes();
+            long total = getTotalBytes();
             progress.put("isDownloading", true);
-            progress.put("downloadedBytes", downloadedBytes.get());
-            if (totalBytes.get() > 0) {
-                progress.put("totalBytes", totalBytes.get());
-                int downloadPercent = (int) ((downloadedBytes.get() * 100) / totalBytes.get());
+            progress.put("downloadedBytes", downloaded);
+            if (total > 0) {
+                progress.put("totalBytes", total);
+                int downloadPercent = (int) ((downloaded * 100) / total);
                 progress.put("downloadPercent", downloadPercent);
             }
-        } else {
-            // If processing, show processing progress
-            int total = totalLines.get();
-            int processed = processedLines.get();
-            
-            progress.put("processedLines", processed);
-            progress.put("totalLines", total);
+        }
+        if (!isDownloading || activeIngests.get() > 0) {
+            if (isDownloading) {
+                progress.put("isProcessing", true);
+            }
+            progress.put("processedLines", processedLines.get());
+            progress.put("totalLines", getTotalLines());
             progress.put("processedStations", processedStations.get());
+            progress.put("percentComplete", getPercentComplete());
             
-            if (total > 0) {
-                int percentage = (int) ((processed / (double) total) * 100);
-                progress.put("percentComplete", percentage);
-            } else {
-                progress.put("percentComplete", 0);
+            // Without a counting pass the total is extrapolated from the compressed bytes consumed
+            if (totalLines.get() == 0 && getCompressedBytesTotal() > 0) {
+                progress.put("totalLinesEstimated", true);
             }
         }
         
         return progress;
     }
     
+    /**
+     * Total number of lines in the data file - exact after a counting pass,
+     * otherwise estimated from the share of compressed bytes consumed so far
+     */
+    private long getTotalLines() {
+        return totalLines(processedLines.get(), totalLines.get(), getCompressedBytesRead(), getCompressedBytesTotal());
+    }
+    
+    /**
+     * Percentage of the data file processed so far
+     */
+    private int getPercentComplete() {
+        return percentComplete(processedLines.get(), totalLines.get(), getCompressedBytesRead(), getCompressedBytesTotal());
+    }
+    
+    /**
+     * @param countedLines lines found by a counting pass, 0 without one
+     * @return the counted lines, or the lines processed scaled up by the share of compressed bytes
+     *         they took, or 0 before any bytes were read
+     */
+    static long totalLines(long processedLines, long countedLines, long compressedBytesRead, long compressedBytesTotal) {
+        if (countedLines > 0) {
+            return countedLines;
+        }
+        if (compressedBytesRead == 0 || compressedBytesTotal == 0) {
+            return 0;
+        }
+        return (long) (processedLines * ((double) compressedBytesTotal / compressedBytesRead));
+    }
+    
+    /**
+     * @param countedLines lines found by a counting pass, 0 without one
+     */
+    static int percentComplete(long processedLines, long countedLines, long compressedBytesRead, long compressedBytesTotal) {
+        if (countedLines > 0) {
+            return (int) ((processedLines / (double) countedLines) * 100);
+        }
+        if (compressedBytesTotal > 0) {
+            return (int) Math.min(100, (compressedBytesRead * 100) / compressedBytesTotal);
+        }
+        return 0;
+    }
+    
+    private long getDownloadedBytes() {
+        return sourceIngests.stream().mapToLong(ingest -> ingest.downloadedBytes.get()).sum();
+    }
+    
+    private long getTotalBytes() {
+        return sourceIngests.stream().mapToLong(ingest -> ingest.totalBytes.get()).sum();
+    }
+    
+    private long getCompressedBytesRead() {
+        return sourceIngests.stream().mapToLong(ingest -> ingest.compressedBytesRead.get()).sum();
+    }
+    
+    private long getCompressedBytesTotal() {
+        return sourceIngests.stream().mapToLong(ingest -> ingest.compressedBytesTotal.get()).sum();
+    }
+    
+    /**
+     * Outcome of the last refresh, and its progress while one is running
+     */
+    public Map<String, Object> getRefreshStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        boolean running = refreshRunning.get();
+        status.put("running", running);
+        RefreshResult last = lastRefresh.get();
+        if (last != null) {
+            status.put("lastRefreshTime", last.time().toString());
+            status.put("lastResult", last.result());
+            status.put("version", last.version());
+            status.put("stationsChanged", last.stationsChanged());
+            status.put("stationsRemoved", last.stationsRemoved());
+            status.put("stationsUnchanged", last.stationsUnchanged());
+            status.put("durationMillis", last.durationMillis());
+            if (last.error() != null) {
+                status.put("error", last.error());
+            }
+        }
+        if (running) {
+            status.put("progress", getProcessingProgress());
+        }
+        return status;
+    }
+    
+    private void resetProgress() {
+        processedLines.set(0);
+        totalLines.set(0);
+        processedStations.set(0);
+        sourceIngests.clear();
+        activeDownloads.set(0);
+        activeIngests.set(0);
+        synchronized (this) {
+            nextDownloadProgressLog = 0;
+        }
+    }
+    
     /**
      * Initialize the data processing - called at application startup
      */
@@ -101,12 +392,7 @@ public class WeatherDataProcessor {
         try {
             // Reset status
             processingComplete.set(false);
-            processedLines.set(0);
-            totalLines.set(0);
-            processedStations.set(0);
-            downloadedBytes.set(0);
-            totalBytes.set(0);
-            isDownloading = false;
+            resetProgress();
             currentStatus = "Checking data directory";
             startTime = System.currentTimeMillis();
             
@@ -115,22 +401,27 @@ public class WeatherDataProcessor {
             if (!Files.exists(dataDirectory)) {
                 logger.info("Creating data directory: {}", dataDirectory);
                 Files.createDirectories(dataDirectory);
-                
-                // Download and process data
+            }
+            
+            // Only a published version counts - a staged one is resumed, anything else rebuilt
+            DatasetStore datasetStore = new DatasetStore(dataDirectory);
+            Path currentDirectory = datasetStore.getCurrentDirectory();
+            DatasetManifest manifest = currentDirectory == null ? null : DatasetManifest.read(currentDirectory, objectMapper);
+            if (manifest != null) {
+                logger.info("Serving dataset version {} ({} stations) from {}", 
+                        manifest.version(), manifest.stations().size(), currentDirectory.toAbsolutePath());
+                processingComplete.set(true);
+                currentStatus = "Ready";
+            } else if (currentDirectory == null && datasetStore.hasUnversionedStations()) {
+                // Station files from before versioning stay servable; the next refresh publishes a version over them
+                logger.info("Serving the unversioned dataset in {} until the next refresh publishes a version", 
+                        dataDirectory.toAbsolutePath());
+                processingComplete.set(true);
+                currentStatus = "Ready";
+            } else {
+                logger.info("No published dataset in {}. Downloading and processing data...", dataDirectory.toAbsolutePath());
                 currentStatus = "Preparing to download data";
                 downloadAndProcessData();
-            } else {
-                logger.info("Data directory already exists at: {}", dataDirectory.toAbsolutePath());
-                // Check if the directory is empty, process data if needed
-                if (Files.list(dataDirectory).findAny().isEmpty()) {
-                    logger.info("Data directory is empty. Downloading and processing data...");
-                    currentStatus = "Preparing to download data";
-                    downloadAndProcessData();
-                } else {
-                    logger.info("Data files already exist. Skipping download and processing.");
-                    processingComplete.set(true);
-                    currentStatus = "Ready";
-                }
             }
         } catch (IOException e) {
             logger.error("Error initializing data processing", e);
@@ -142,67 +433,598 @@ public class WeatherDataProcessor {
      * Download the weather data file and process it
      */
     private void downloadAndProcessData() {
-        logger.info("Starting to download weather data from: {}", dataUrl);
+        logger.info("Starting to download weather data from: {}", describeSource());
+        long started = System.currentTimeMillis();
         
         try {
-            // Get file size first
-            URL url = new URL(dataUrl);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("HEAD");
-            long fileSize = conn.getContentLengthLong();
-            totalBytes.set(fileSize);
-            logger.info("File size to download: {} bytes", fileSize);
-            
-            // Download with progress tracking
-            isDownloading = true;
             currentStatus = "Downloading weather data";
-            Path tempFile = Files.createTempFile("weather_data", ".csv.gz");
+            DatasetManifest manifest = downloadAndIngest(null);
             
-            try (
-                InputStream in = url.openStream();
-                FileOutputStream fos = new FileOutputStream(tempFile.toFile())
-            ) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                
-                while ((bytesRead = in.read(buffer)) != -1) {
-                    fos.write(buffer, 0, bytesRead);
-                    downloadedBytes.addAndGet(bytesRead);
-                    
-                    // Update status periodically
-                    if (downloadedBytes.get() % (1024 * 1024) < 8192) { // Every ~1MB
-                        long downloaded = downloadedBytes.get();
-                        int percent = (int)((downloaded * 100) / fileSize);
-                        currentStatus = String.format("Downloading: %d%% (%d MB / %d MB)", 
-                                percent, downloaded / (1024 * 1024), fileSize / (1024 * 1024));
-                        logger.info(currentStatus);
+            logger.info("Data processing complete");
+            lastRefresh.set(new RefreshResult(Instant.now(), "loaded", manifest.version(), manifest.stations().size(),
+                    0, 0, System.currentTimeMillis() - started, null));
+            processingComplete.set(true);
+            currentStatus = "Ready";
+            
+        } catch (IOException e) {
+            logger.error("Error downloading or processing weather data", e);
+            currentStatus = "Error: " + e.getMessage();
+            activeDownloads.set(0);
+            activeIngests.set(0);
+        }
+    }
+    
+    /**
+     * Check the source for a new version of the weather data file, on the schedule set by
+     * {@code weather.refresh.cron}.
+     * 
+     * The check is a conditional request against the file the current version was built from.
+     * A new file is ingested into a new version in the staging directory while the current
+     * version keeps serving; stations whose records are unchanged are linked from the current
+     * version instead of written again. Readers switch over once the new version is published.
+     */
+    @Scheduled(cron = "${weather.refresh.cron:0 0 6 * * *}", zone = "${weather.refresh.zone:UTC}")
+    public void refreshData() {
+        // Until the first version is published the initial ingest is still at work
+        if (!processingComplete.get() || !refreshRunning.compareAndSet(false, true)) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        DatasetManifest previous = null;
+        
+        try {
+            resetProgress();
+            currentStatus = "Checking for new weather data";
+            Path currentDirectory = new DatasetStore(Paths.get(dataDir)).getCurrentDirectory();
+            previous = currentDirectory == null ? null : DatasetManifest.read(currentDirectory, objectMapper);
+            logger.info("Checking {} for new weather data", describeSource());
+            
+            DatasetManifest manifest = downloadAndIngest(previous);
+            long duration = System.currentTimeMillis() - started;
+            if (manifest == null) {
+                logger.info("Weather data unchanged, still serving dataset version {}", previous.version());
+                lastRefresh.set(new RefreshResult(Instant.now(), "unchanged", previous.version(), 0, 0,
+                        previous.stations().size(), duration, null));
+                return;
+            }
+            
+            int changed = 0;
+            int unchanged = 0;
+            for (Map.Entry<String, DatasetManifest.Station> station : manifest.stations().entrySet()) {
+                DatasetManifest.Station old = previous == null ? null : previous.stations().get(station.getKey());
+                if (old != null && old.recordsHash() != null && old.recordsHash().equals(station.getValue().recordsHash())) {
+                    unchanged++;
+                } else {
+                    changed++;
+                }
+            }
+            int removed = 0;
+            if (previous != null) {
+                for (String stationId : previous.stations().keySet()) {
+                    if (!manifest.stations().containsKey(stationId)) {
+                        removed++;
                     }
                 }
             }
+            logger.info("Refreshed weather data to dataset version {} in {} ms: {} stations changed, {} removed, {} unchanged", 
+                    manifest.version(), duration, changed, removed, unchanged);
+            lastRefresh.set(new RefreshResult(Instant.now(), "updated", manifest.version(), changed, removed,
+                    unchanged, duration, null));
+                    
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error refreshing weather data, the current version keeps serving", e);
+            lastRefresh.set(new RefreshResult(Instant.now(), "failed", previous == null ? null : previous.version(),
+                    0, 0, 0, System.currentTimeMillis() - started, e.getMessage()));
+        } finally {
+            activeDownloads.set(0);
+            activeIngests.set(0);
+            currentStatus = "Ready";
+            refreshRunning.set(false);
+        }
+    }
+    
+    /**
+     * Download the weather data and ingest it into a new dataset version, then switch readers
+     * over to that version. With {@code weather.data.years} set, each year is its own file.
+     *
+     * @param previous manifest of the current version, whose unchanged stations are taken over; null to write all
+     * @return the new version's manifest, or null if the data is unchanged since the previous version
+     */
+    private DatasetManifest downloadAndIngest(DatasetManifest previous) throws IOException {
+        long started = System.nanoTime();
+        DatasetStore datasetStore = new DatasetStore(Paths.get(dataDir));
+        List<Integer> years = parseYears(dataYears);
+        DatasetManifest manifest = years.isEmpty()
+                ? downloadAndIngestFile(datasetStore, previous)
+                : downloadAndIngestYears(datasetStore, years, previous);
+        if (manifest == null) {
+            return null;
+        }
+        stageStationList(datasetStore.getStagingDirectory(),
+                previous == null ? null : datasetStore.getVersionDirectory(previous.version()));
+        datasetStore.publish(manifest.version());
+        
+        // Switch readers over to the new version and drop anything cached from the previous one
+        eventPublisher.publishEvent(new StationDataUpdatedEvent(datasetStore.getVersionDirectory(manifest.version())));
+        recordPhase("total", started);
+        return manifest;
+    }
+    
+    /**
+     * Put the station list from {@code weather.stations.url} into the staging directory. The list
+     * is small and changes rarely, so if it can't be fetched the previous version's copy is kept
+     * rather than failing the ingest.
+     *
+     * @param previousDirectory directory of the current version, null if there is none
+     */
+    private void stageStationList(Path stagingDirectory, Path previousDirectory) {
+        if (stationsUrl == null || stationsUrl.isBlank()) {
+            return;
+        }
+        Path target = stagingDirectory.resolve(StationIndex.FILE_NAME);
+        try {
+            currentStatus = "Fetching station list";
+            Files.deleteIfExists(target);
+            if (stationsUrl.startsWith("http://") || stationsUrl.startsWith("https://")) {
+                Path download = Paths.get(downloadDir).resolve(StationIndex.FILE_NAME);
+                Files.createDirectories(download.getParent());
+                RangeDownloader downloader = new RangeDownloader(objectMapper, 1, downloadSegmentSizeMb * 1024L * 1024L,
+                        downloadRetries, new AtomicLong(), new AtomicLong(), new RangeDownloader.Listener() {});
+                downloader.download(stationsUrl, download);
+                Files.copy(download, target);
+                downloader.discard(download);
+            } else {
+                Files.copy(Paths.get(stationsUrl), target);
+            }
+            logger.info("Stored the station list from {}", stationsUrl);
+        } catch (IOException e) {
+            Path previousList = previousDirectory == null ? null : previousDirectory.resolve(StationIndex.FILE_NAME);
+            try {
+                if (previousList != null && Files.isRegularFile(previousList)) {
+                    logger.warn("Could not fetch the station list from {}, keeping the previous one: {}", stationsUrl, e.getMessage());
+                    Files.createLink(target, previousList);
+                } else {
+                    logger.warn("Could not fetch the station list from {}, nearest station queries are unavailable: {}",
+                            stationsUrl, e.getMessage());
+                }
+            } catch (IOException | UnsupportedOperationException linkFailure) {
+                logger.warn("Could not keep the previous station list: {}", linkFailure.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Download the single file at {@code weather.data.url} and ingest it into the staging directory
+     *
+     * @return the staged version's manifest, or null if the file is the one the previous version was built from
+     */
+    private DatasetManifest downloadAndIngestFile(DatasetStore datasetStore, DatasetManifest previous) throws IOException {
+        // Stations of a partitioned version don't line up with those of a single file
+        DatasetManifest previousFile = previous != null && previous.years() == null ? previous : null;
+        SourceIngest ingest = new SourceIngest(Paths.get(downloadDir).resolve(downloadFileName(dataUrl)),
+                datasetStore.getStagingDirectory(), previousFile,
+                previousFile == null ? null : datasetStore.getVersionDirectory(previousFile.version()), 1, false);
+        RemoteFile known = knownSource(previousFile, dataUrl);
+        RemoteFile source = ingest.downloader.head(dataUrl, known);
+        if (source == null || source.isSameVersion(known)) {
+            return null;
+        }
+        return downloadAndIngest(ingest, source);
+    }
+    
+    /**
+     * Download and ingest one file per year into the year partitions of the staging directory.
+     * Years run in parallel, each through its own pipeline, with the threads and memory of the
+     * ingest shared out between the years running at the same time.
+     * 
+     * A year whose file is the one the previous version was built from is linked from there, as
+     * is a year completed by an interrupted earlier run. The version's manifest and hashes merge
+     * those of the years.
+     *
+     * @return the staged version's manifest, or null if no year's file changed since the previous version
+     */
+    private DatasetManifest downloadAndIngestYears(DatasetStore datasetStore, List<Integer> years,
+                                                   DatasetManifest previous) throws IOException {
+        Path stagingDirectory = datasetStore.getStagingDirectory();
+        Path previousDirectory = previous != null && previous.years() != null
+                ? datasetStore.getVersionDirectory(previous.version()) : null;
+        
+        // Check every year's file before staging anything
+        RangeDownloader probe = new RangeDownloader(objectMapper, 1, downloadSegmentSizeMb * 1024L * 1024L,
+                downloadRetries, new AtomicLong(), new AtomicLong(), new RangeDownloader.Listener() {});
+        Map<Integer, DatasetManifest> previousYears = new TreeMap<>();
+        Map<Integer, RemoteFile> changedSources = new TreeMap<>();
+        for (int year : years) {
+            String url = dataYearUrl.replace("{year}", Integer.toString(year));
+            DatasetManifest previousYear = previousDirectory == null ? null
+                    : DatasetManifest.read(YearPartitions.directory(previousDirectory, year), objectMapper);
+            RemoteFile known = knownSource(previousYear, url);
+            RemoteFile source = probe.head(url, known);
+            if (source != null && !source.isSameVersion(known)) {
+                changedSources.put(year, source);
+            } else {
+                previousYears.put(year, previousYear);
+            }
+        }
+        if (changedSources.isEmpty() && previous != null && years.equals(previous.years())) {
+            return null;
+        }
+        
+        // Only the changed years are ingested, and they share the ingest's threads and memory
+        int concurrentYears = Math.max(1, Math.min(changedSources.size(),
+                parallelYears > 0 ? parallelYears : Runtime.getRuntime().availableProcessors()));
+        logger.info("Ingesting {} of {} years from {}, {} at a time", 
+                changedSources.size(), years.size(), dataYearUrl, concurrentYears);
+        
+        // A staged single file ingest, or years no longer asked for, can't be continued
+        Files.createDirectories(stagingDirectory);
+        try (Stream<Path> entries = Files.list(stagingDirectory)) {
+            for (Path entry : entries.toList()) {
+                if (!years.contains(parseYear(entry.getFileName().toString()))) {
+                    DatasetStore.deleteRecursively(entry);
+                }
+            }
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(concurrentYears, runnable -> {
+            Thread thread = new Thread(runnable, "weather-year-ingest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<Integer, DatasetManifest> partitions = new TreeMap<>();
+        try {
+            Map<Integer, Future<DatasetManifest>> results = new TreeMap<>();
+            for (int year : years) {
+                Path partition = YearPartitions.directory(stagingDirectory, year);
+                Path previousPartition = previousDirectory == null ? null : YearPartitions.directory(previousDirectory, year);
+                RemoteFile source = changedSources.get(year);
+                if (source == null) {
+                    DatasetManifest previousYear = previousYears.get(year);
+                    results.put(year, executor.submit(() -> linkYear(year, previousYear, previousPartition, partition)));
+                } else {
+                    DatasetManifest previousYear = previousPartition == null ? null
+                            : DatasetManifest.read(previousPartition, objectMapper);
+                    SourceIngest ingest = new SourceIngest(
+                            Paths.get(downloadDir).resolve(Integer.toString(year)).resolve(downloadFileName(source.url())),
+                            partition, previousYear, previousPartition, concurrentYears, true);
+                    results.put(year, executor.submit(() -> ingestYear(year, ingest, source)));
+                }
+            }
+            for (Map.Entry<Integer, Future<DatasetManifest>> result : results.entrySet()) {
+                partitions.put(result.getKey(), result.getValue().get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Ingest of a year failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while ingesting years", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return mergeYears(stagingDirectory, years, partitions, previousDirectory == null ? null : previous, previousDirectory);
+    }
+    
+    /**
+     * Take over a year whose file hasn't changed by linking its partition from the previous version
+     *
+     * @return the partition's manifest
+     */
+    private DatasetManifest linkYear(int year, DatasetManifest previousYear, Path previousPartition,
+                                     Path partition) throws IOException {
+        logger.info("Year {} unchanged, linking its partition from the previous dataset version", year);
+        DatasetStore.deleteRecursively(partition);
+        DatasetStore.linkFiles(previousPartition, partition);
+        return previousYear;
+    }
+    
+    /**
+     * Ingest a year whose file changed into its partition, keeping the partition if an
+     * interrupted earlier run already completed it
+     *
+     * @return the partition's manifest
+     */
+    private DatasetManifest ingestYear(int year, SourceIngest ingest, RemoteFile source) throws IOException {
+        DatasetManifest staged = DatasetManifest.read(ingest.outputDirectory, objectMapper);
+        if (staged != null && source.isSameVersion(knownSource(staged, source.url()))) {
+            logger.info("Year {} was completed by an earlier run, keeping its partition", year);
+            return staged;
+        }
+        return downloadAndIngest(ingest, source);
+    }
+    
+    /**
+     * Write the manifest and hashes of a partitioned version, merging those of its years. A station's
+     * hashes are taken over its hashes in each year, so they change whenever any of its years does.
+     * The stations' pre-compressed responses span all years and are written here as well.
+     *
+     * @param previous manifest of the previous partitioned version, whose unchanged responses are taken over, or null
+     * @return the version's manifest
+     */
+    private DatasetManifest mergeYears(Path stagingDirectory, List<Integer> years, Map<Integer, DatasetManifest> partitions,
+                                       DatasetManifest previous, Path previousDirectory) throws IOException {
+        Map<String, MessageDigest> hashDigests = new TreeMap<>();
+        Map<String, MessageDigest> recordsDigests = new HashMap<>();
+        Map<String, Integer> records = new HashMap<>();
+        long sourceLength = 0;
+        long lines = 0;
+        long validLines = 0;
+        for (Map.Entry<Integer, DatasetManifest> partition : partitions.entrySet()) {
+            byte[] year = (partition.getKey() + ":").getBytes(StandardCharsets.US_ASCII);
+            DatasetManifest manifest = partition.getValue();
+            sourceLength += manifest.sourceLength();
+            lines += manifest.lines();
+            validLines += manifest.validLines();
+            manifest.stations().forEach((stationId, station) -> {
+                MessageDigest hashDigest = hashDigests.computeIfAbsent(stationId, id -> DatasetHashes.newDigest());
+                hashDigest.update(year);
+                hashDigest.update(String.valueOf(station.hash()).getBytes(StandardCharsets.US_ASCII));
+                MessageDigest recordsDigest = recordsDigests.computeIfAbsent(stationId, id -> DatasetHashes.newDigest());
+                recordsDigest.update(year);
+                recordsDigest.update(String.valueOf(station.recordsHash()).getBytes(StandardCharsets.US_ASCII));
+                records.merge(stationId, station.records(), Integer::sum);
+            });
+        }
+        
+        Map<String, String> hashes = new HashMap<>();
+        Map<String, DatasetManifest.Station> stations = new TreeMap<>();
+        hashDigests.forEach((stationId, digest) -> {
+            String hash = DatasetHashes.toHash(digest);
+            hashes.put(stationId, hash);
+            stations.put(stationId, new DatasetManifest.Station(records.get(stationId), null, hash,
+                    DatasetHashes.toHash(recordsDigests.get(stationId))));
+        });
+        writePartitionedResponses(stagingDirectory, partitions, stations, previous, previousDirectory);
+        
+        long createdAt = System.currentTimeMillis();
+        DatasetHashes datasetHashes = DatasetHashes.of(hashes, createdAt);
+        datasetHashes.write(stagingDirectory, objectMapper);
+        
+        DatasetManifest manifest = new DatasetManifest(DatasetStore.newVersion(createdAt), createdAt, dataYearUrl,
+                null, null, sourceLength, "json".equalsIgnoreCase(storageFormat) ? "json" : "binary", lines,
+                validLines, datasetHashes.hash(), stations, years);
+        manifest.write(stagingDirectory, objectMapper);
+        logger.info("Merged {} years into dataset version {}: {} stations, {} valid lines", 
+                years.size(), manifest.version(), stations.size(), validLines);
+        return manifest;
+    }
+    
+    /**
+     * Write each station's pre-compressed response of a partitioned version into the version directory.
+     * A station whose records are those of the previous version has its response linked from there.
+     */
+    private void writePartitionedResponses(Path stagingDirectory, Map<Integer, DatasetManifest> partitions,
+                                           Map<String, DatasetManifest.Station> stations, DatasetManifest previous,
+                                           Path previousDirectory) throws IOException {
+        currentStatus = "Writing pre-compressed responses";
+        long started = System.nanoTime();
+        List<StationSegments> openSegments = new ArrayList<>();
+        try {
+            List<PrecompressedResponseWriter.StationReader> readers = new ArrayList<>();
+            for (Map.Entry<Integer, DatasetManifest> partition : partitions.entrySet()) {
+                Path directory = YearPartitions.directory(stagingDirectory, partition.getKey());
+                StationSegments segments = StationSegments.open(directory);
+                if (segments != null) {
+                    openSegments.add(segments);
+                }
+                Map<String, DatasetManifest.Station> partitionStations = partition.getValue().stations();
+                PrecompressedResponseWriter.StationReader reader = mappedStationReader(directory, segments,
+                        "json".equals(partition.getValue().format()));
+                readers.add(stationId -> partitionStations.containsKey(stationId) ? reader.read(stationId) : null);
+            }
             
-            isDownloading = false;
+            PartitionedResponseWriter writer = new PartitionedResponseWriter(stagingDirectory, readers, objectMapper.getFactory());
+            int linked = 0;
+            for (Map.Entry<String, DatasetManifest.Station> station : stations.entrySet()) {
+                String stationId = station.getKey();
+                String fileName = stationId + PrecompressedResponseWriter.FILE_EXTENSION;
+                Path target = stagingDirectory.resolve(fileName);
+                Files.deleteIfExists(target);
+                DatasetManifest.Station old = previous == null ? null : previous.stations().get(stationId);
+                if (old != null && station.getValue().recordsHash().equals(old.recordsHash())
+                        && Files.isRegularFile(previousDirectory.resolve(fileName))) {
+                    try {
+                        Files.createLink(target, previousDirectory.resolve(fileName));
+                    } catch (UnsupportedOperationException | IOException e) {
+                        Files.copy(previousDirectory.resolve(fileName), target);
+                    }
+                    linked++;
+                } else {
+                    writer.write(stationId);
+                }
+            }
+            logger.info("Wrote the pre-compressed responses of {} stations, took over {} unchanged ones", 
+                    stations.size() - linked, linked);
+        } finally {
+            for (StationSegments segments : openSegments) {
+                segments.close();
+            }
+        }
+        recordPhase("responses", started);
+    }
+    
+    /**
+     * Reader of the stations written into a directory: out of its segments if it is packed, otherwise
+     * from their files, binary ones through memory mappings as they are visited too briefly to be worth
+     * copying onto the heap
+     */
+    private PrecompressedResponseWriter.StationReader mappedStationReader(Path directory, StationSegments segments,
+                                                                           boolean jsonFormat) {
+        if (segments != null) {
+            String extension = jsonFormat ? ".json" : BinaryStationFormat.FILE_EXTENSION;
+            return stationId -> {
+                ByteBuffer bytes = segments.read(stationId, extension);
+                Path file = directory.resolve(stationId + extension);
+                return jsonFormat ? JsonStationData.read(bytes, file, objectMapper.getFactory())
+                        : new BinaryStationData(stationId, BinaryStationFile.wrap(bytes, file), 0);
+            };
+        }
+        if (jsonFormat) {
+            return stationId -> JsonStationData.read(directory.resolve(stationId + ".json"), objectMapper.getFactory());
+        }
+        return stationId -> new BinaryStationData(stationId,
+                BinaryStationFile.open(directory.resolve(stationId + BinaryStationFormat.FILE_EXTENSION)), 0);
+    }
+    
+    /**
+     * Download one source file and ingest it into its staging directory
+     *
+     * @return the manifest written into the staging directory
+     */
+    private DatasetManifest downloadAndIngest(SourceIngest ingest, RemoteFile source) throws IOException {
+        Files.createDirectories(ingest.tempFile.getParent());
+        sourceIngests.add(ingest);
+        DatasetManifest manifest;
+        
+        // Download with progress tracking, resuming a previous attempt if there is one
+        activeDownloads.incrementAndGet();
+        if (streamingIngest) {
+            manifest = downloadWhileProcessing(ingest, source);
+        } else {
+            long downloadStarted = System.nanoTime();
+            try {
+                ingest.downloader.download(source, ingest.tempFile);
+                recordPhase("download", downloadStarted);
+            } finally {
+                activeDownloads.decrementAndGet();
+            }
             logger.info("Download complete. Processing data file...");
-            currentStatus = "Counting total lines";
             
-            // First, count lines to track progress
-            countTotalLines(tempFile);
+            if (!singlePassIngest) {
+                // First, count lines to track progress
+                currentStatus = "Counting total lines";
+                countTotalLines(ingest.tempFile);
+            }
             
             // Process the data file
             currentStatus = "Processing data";
-            processWeatherDataFile(tempFile);
-            
-            // Clean up temp file
-            Files.deleteIfExists(tempFile);
-            
-            logger.info("Data processing complete");
-            processingComplete.set(true);
-            currentStatus = "Ready";
-            
+            manifest = processWeatherDataFile(ingest, source);
+        }
+        
+        // Clean up the downloaded file, it has served its purpose
+        ingest.downloader.discard(ingest.tempFile);
+        return manifest;
+    }
+    
+    /**
+     * Download the data file on a background thread while this thread decompresses and parses
+     * the part that has arrived. The bytes go to disk first, so an interrupted run still resumes
+     * the download, and parsing finishes shortly after the last byte is written.
+     */
+    private DatasetManifest downloadWhileProcessing(SourceIngest ingest, RemoteFile source) throws IOException {
+        currentStatus = "Downloading and processing weather data";
+        activeIngests.incrementAndGet();
+        DownloadInputStream downloadStream = ingest.downloadStream;
+        Thread downloadThread = new Thread(() -> {
+            long downloadStarted = System.nanoTime();
+            try {
+                ingest.downloader.download(source, ingest.tempFile);
+                recordPhase("download", downloadStarted);
+                downloadStream.finish(null);
+                logger.info("Download of {} complete, processing the rest of the data file", source.url());
+            } catch (IOException e) {
+                downloadStream.finish(e);
+            } finally {
+                activeDownloads.decrementAndGet();
+            }
+        }, "weather-download");
+        downloadThread.setDaemon(true);
+        downloadThread.start();
+        
+        try (downloadStream) {
+            // Progress is measured against the file's full size, which is known before the first byte arrives
+            DatasetManifest manifest = processWeatherData(downloadStream, ingest.totalBytes::get, source, ingest);
+            downloadThread.join();
+            return manifest;
         } catch (IOException e) {
-            logger.error("Error downloading or processing weather data", e);
-            currentStatus = "Error: " + e.getMessage();
-            isDownloading = false;
+            downloadThread.interrupt();
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            downloadThread.interrupt();
+            throw new IOException("Interrupted while waiting for the download", e);
+        } finally {
+            activeIngests.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Report download progress across all files being downloaded, roughly every 1MB
+     */
+    private synchronized void onDownloadProgress() {
+        long downloaded = getDownloadedBytes();
+        long fileSize = getTotalBytes();
+        // While files are processed as they download, the processing status reports both
+        if (downloaded >= nextDownloadProgressLog && fileSize > 0 && activeIngests.get() == 0) {
+            nextDownloadProgressLog = (downloaded / (1024 * 1024) + 1) * (1024 * 1024);
+            int percent = (int) ((downloaded * 100) / fileSize);
+            currentStatus = String.format("Downloading: %d%% (%d MB / %d MB)", 
+                    percent, downloaded / (1024 * 1024), fileSize / (1024 * 1024));
+            logger.info(currentStatus);
+        }
+    }
+    
+    /**
+     * The source file a version was built from, for a conditional request against the same URL
+     *
+     * @return the file, or null if there is no manifest or it was built from another URL
+     */
+    private static RemoteFile knownSource(DatasetManifest manifest, String url) {
+        if (manifest == null || !url.equals(manifest.sourceUrl())) {
+            return null;
+        }
+        return new RemoteFile(manifest.sourceUrl(), manifest.sourceLength(), manifest.sourceEtag(),
+                manifest.sourceLastModified(), true);
+    }
+    
+    private String describeSource() {
+        List<Integer> years = parseYears(dataYears);
+        return years.isEmpty() ? dataUrl : dataYearUrl + " for " + years.size() + " years";
+    }
+    
+    /**
+     * Parse the years to ingest, a comma separated list of years and ranges of years
+     *
+     * @return the years in ascending order, empty if none are set
+     */
+    static List<Integer> parseYears(String years) {
+        Set<Integer> parsed = new TreeSet<>();
+        if (years != null) {
+            for (String part : years.split(",")) {
+                part = part.trim();
+                if (part.isEmpty()) {
+                    continue;
+                }
+                int dash = part.indexOf('-');
+                int first = parseYear(dash < 0 ? part : part.substring(0, dash).trim());
+                int last = dash < 0 ? first : parseYear(part.substring(dash + 1).trim());
+                if (first < 0 || last < first) {
+                    throw new IllegalArgumentException("Invalid weather.data.years entry: " + part);
+                }
+                for (int year = first; year <= last; year++) {
+                    parsed.add(year);
+                }
+            }
         }
+        return new ArrayList<>(parsed);
+    }
+    
+    /**
+     * @return the four digit year, or -1 if the text isn't one
+     */
+    private static int parseYear(String text) {
+        return text.matches("\\d{4}") ? Integer.parseInt(text) : -1;
+    }
+    
+    /**
+     * Name of the downloaded file, taken from the last segment of the URL's path
+     */
+    private static String downloadFileName(String url) {
+        String path = URI.create(url).getPath();
+        String name = path == null ? "" : path.substring(path.lastIndexOf('/') + 1);
+        return name.isEmpty() ? "weather_data.csv.gz" : name;
     }
     
     /**
@@ -211,161 +1033,317 @@ public class WeatherDataProcessor {
     private void countTotalLines(Path dataFile) throws IOException {
         try (
             InputStream fileStream = Files.newInputStream(dataFile);
-            GZIPInputStream gzipStream = new GZIPInputStream(fileStream);
+            GZIPInputStream gzipStream = new GZIPInputStream(fileStream, GZIP_BUFFER_SIZE);
             InputStreamReader reader = new InputStreamReader(gzipStream);
             BufferedReader bufferedReader = new BufferedReader(reader)
         ) {
             long lineCount = bufferedReader.lines().count();
-            totalLines.set((int) lineCount);
+            totalLines.addAndGet(lineCount);
             logger.info("Total lines in data file: {}", lineCount);
         }
     }
     
     /**
      * Process the downloaded weather data file
+     *
+     * @return the manifest written into the staging directory
+     */
+    private DatasetManifest processWeatherDataFile(SourceIngest ingest, RemoteFile source) throws IOException {
+        long size = Files.size(ingest.tempFile);
+        try (InputStream fileStream = Files.newInputStream(ingest.tempFile)) {
+            return processWeatherData(fileStream, () -> size, source, ingest);
+        }
+    }
+    
+    /**
+     * Process gzip compressed weather data read from a stream into the ingest's staging directory.
+     * 
+     * The station files are written with a checkpoint saved every
+     * {@code weather.ingest.checkpoint-mb} of input. If the directory holds an interrupted
+     * ingest of the same source, this continues it: input covered by its last checkpoint is
+     * skipped and stations it already wrote are kept. The manifest is written last, after
+     * which the directory can be published.
+     * 
+     * Stations with the same records as in the previous version are linked from there.
+     *
+     * @param compressedSize size of the compressed data, for progress estimates
+     * @param source the data file, identifying whose staged ingest can be continued
+     * @param ingest where to write, what to take over and how much of the ingest budget to use
+     * @return the manifest written into the staging directory
      */
-    private void processWeatherDataFile(Path dataFile) throws IOException {
-        // Map of file writers for each station
-        Map<String, Writer> stationWriters = new HashMap<>();
-        // Map to track if we've started a station's array
-        Map<String, Boolean> stationStarted = new HashMap<>();
-        // Track all stations we've seen
-        Set<String> allStations = new HashSet<>();
+    private DatasetManifest processWeatherData(InputStream compressedData, LongSupplier compressedSize, RemoteFile source,
+                                               SourceIngest ingest) throws IOException {
+        ingest.compressedBytesRead.set(0);
+        ingest.compressedBytesTotal.set(compressedSize.getAsLong());
+        
+        // Pipelines running side by side share the threads, sort buffer and open files
+        int parseThreads = Math.max(1, (ingestThreads > 0 ? ingestThreads : Runtime.getRuntime().availableProcessors())
+                / ingest.concurrentIngests);
+        int writerThreads = Math.max(1, ingestWriterThreads);
+        long sortBufferBytes = sortBufferMb * 1024L * 1024L / ingest.concurrentIngests;
+        int openFiles = Math.max(writerThreads * 3, maxOpenFiles / ingest.concurrentIngests);
+        boolean jsonFormat = "json".equalsIgnoreCase(storageFormat);
+        String format = jsonFormat ? "json" : "binary";
+        Path outputDirectory = ingest.outputDirectory;
+        Path runDirectory = outputDirectory.resolve(RUN_DIRECTORY);
+        IngestCheckpoint checkpoint = startStaging(outputDirectory, runDirectory, source, format, writerThreads);
+        IngestPipeline.Checkpoint resumeFrom = checkpoint.progress();
+        Supplier<RecordEncoder> encoderFactory;
+        Supplier<StationSink> stationFileFactory;
+        PrecompressedResponseWriter.StationReader stationReader;
+        if (jsonFormat) {
+            encoderFactory = "legacy".equalsIgnoreCase(ingestParser)
+                    ? () -> new WeatherRecordJsonEncoder(objectMapper)
+                    : () -> new GhcnJsonEncoder(objectMapper);
+            stationFileFactory = () -> new StationFileWriter(outputDirectory, STATION_FILE_BUFFER_SIZE);
+            stationReader = stationId -> JsonStationData.read(outputDirectory.resolve(stationId + ".json"),
+                    objectMapper.getFactory());
+        } else {
+            encoderFactory = GhcnBinaryEncoder::new;
+            stationFileFactory = () -> new BinaryStationFileWriter(outputDirectory);
+            stationReader = stationId -> new BinaryStationData(stationId,
+                    BinaryStationFile.read(outputDirectory.resolve(stationId + BinaryStationFormat.FILE_EXTENSION)), 0);
+        }
+        
+        // Each station file is followed by the station's pre-compressed API response and content hash
+        // and its monthly and annual rollups, then logged as complete so a restarted ingest doesn't write it again.
+        // A year partition only hashes the response, the version's response spans all years.
+        Map<String, String> stationHashes = new ConcurrentHashMap<>();
+        StationLog stationLog = new StationLog(outputDirectory.resolve(StationLog.FILE_NAME));
+        String stationExtension = jsonFormat ? ".json" : BinaryStationFormat.FILE_EXTENSION;
+        List<String> fileExtensions = ingest.partition
+                ? List.of(stationExtension, StationSummary.FILE_EXTENSION)
+                : List.of(stationExtension, PrecompressedResponseWriter.FILE_EXTENSION, StationSummary.FILE_EXTENSION);
+        // Files of a version in another format can't be taken over
+        DatasetManifest reusable = ingest.previous != null && format.equals(ingest.previous.format()) ? ingest.previous : null;
+        StationSegments previousSegments = reusable == null ? null : StationSegments.open(ingest.previousDirectory);
+        Supplier<StationSink> outputFactory = () -> new TrackedStationSink(new StationLogWriter(
+                new StationSummaryWriter(new PrecompressedResponseWriter(stationFileFactory.get(), stationReader,
+                        ingest.partition ? null : outputDirectory, objectMapper.getFactory(), stationHashes), outputDirectory),
+                stationLog, outputDirectory, fileExtensions, stationHashes, reusable, ingest.previousDirectory,
+                previousSegments), openStationWriters);
+        
+        // Split the memory and open file budgets evenly between the writer threads,
+        // each of which holds its merge inputs plus one output file open at a time
+        int writerBufferBytes = (int) Math.min(Integer.MAX_VALUE - 8, sortBufferBytes / writerThreads);
+        int mergeFanIn = Math.max(2, openFiles / writerThreads - 1);
+        IngestPipeline pipeline = new IngestPipeline(encoderFactory,
+                shard -> new SortedStationWriter(runDirectory, "shard-" + shard + "-" + checkpoint.attempt(),
+                        writerBufferBytes, mergeFanIn, outputFactory, processedStations),
+                parseThreads, writerThreads, processedLines);
+        pipeline.setCheckpoints(checkpointMb * 1024L * 1024L, resumeFrom);
+        pipeline.setLineCounters(lineCounter, validLineCounter, invalidLineCounter);
+        logger.info("Processing {} into {} station files with {} parse threads, {} writer threads ({} MB sort buffer, {} open files)", 
+                source.url(), jsonFormat ? "JSON" : "binary", parseThreads, writerThreads,
+                sortBufferBytes / (1024 * 1024), openFiles);
         
         try (
-            InputStream fileStream = Files.newInputStream(dataFile);
-            GZIPInputStream gzipStream = new GZIPInputStream(fileStream);
-            InputStreamReader reader = new InputStreamReader(gzipStream);
-            BufferedReader bufferedReader = new BufferedReader(reader)
+            previousSegments;
+            InputStream fileStream = new CountingInputStream(compressedData, ingest.compressedBytesRead);
+            GZIPInputStream gzipStream = new GZIPInputStream(fileStream, GZIP_BUFFER_SIZE)
         ) {
-            String line;
-            int lineCount = 0;
-            int validLines = 0;
-            
-            while ((line = bufferedReader.readLine()) != null) {
-                lineCount++;
-                processedLines.incrementAndGet();
-                
-                // Handle potential empty lines
-                if (line.trim().isEmpty()) {
-                    continue;
-                }
+            // The input is parsed until it runs out, after which the sorted runs are merged into station files
+            long parseStarted = System.nanoTime();
+            AtomicLong mergeStarted = new AtomicLong();
+            IngestStats stats = pipeline.run(gzipStream, new IngestPipeline.Listener() {
+                // Log progress roughly every 100000 lines
+                private long nextProgressLog = 100000;
                 
-                try {
-                    // Split by comma, while preserving empty fields
-                    String[] parts = line.split(",", -1);
-                    
-                    // A valid line should have at least the first 4 required fields
-                    if (parts.length < 4) {
-                        logger.warn("Line {} has fewer than 4 fields: {}", lineCount, line);
-                        continue;
-                    }
-                    
-                    // Extract data from the line according to the format
-                    String stationId = parts[0].trim();
-                    String dateStr = parts[1].trim();
-                    String element = parts[2].trim();
-                    String value = parts[3].trim();
-                    
-                    // Check for required fields
-                    if (stationId.isEmpty() || dateStr.isEmpty() || element.isEmpty()) {
-                        logger.warn("Line {} is missing required fields: {}", lineCount, line);
-                        continue;
-                    }
-                    
-                    // Optional fields - might be empty
-                    String mFlag = (parts.length > 4) ? parts[4].trim() : "";
-                    String qFlag = (parts.length > 5) ? parts[5].trim() : "";
-                    String sFlag = (parts.length > 6) ? parts[6].trim() : "";
-                    String obsTime = (parts.length > 7) ? parts[7].trim() : "";
-                    
-                    // Create a weather record object
-                    WeatherRecord record = new WeatherRecord(stationId, dateStr, element, value);
-                    if (!mFlag.isEmpty()) record.setmFlag(mFlag);
-                    if (!qFlag.isEmpty()) record.setqFlag(qFlag);
-                    if (!sFlag.isEmpty()) record.setsFlag(sFlag);
-                    if (!obsTime.isEmpty()) record.setObsTime(obsTime);
-                    
-                    // Get or create the writer for this station
-                    Writer writer = getStationWriter(stationId, stationWriters, stationStarted);
-                    
-                    // Write the record to the station's file
-                    String json = objectMapper.writeValueAsString(record);
-                    if (stationStarted.get(stationId)) {
-                        writer.write(",\n");
-                    } else {
-                        stationStarted.put(stationId, true);
-                    }
-                    writer.write(json);
-                    
-                    // Track this station
-                    if (!allStations.contains(stationId)) {
-                        allStations.add(stationId);
-                        processedStations.incrementAndGet();
-                    }
-                    validLines++;
-                    
-                    // Log progress periodically
-                    if (lineCount % 100000 == 0) {
-                        int total = totalLines.get();
-                        int percent = (int)((lineCount * 100.0) / total);
+                @Override
+                public void onBatch() {
+                    ingest.compressedBytesTotal.set(compressedSize.getAsLong());
+                    long lineCount = processedLines.get();
+                    if (lineCount >= nextProgressLog) {
+                        nextProgressLog = (lineCount / 100000 + 1) * 100000;
                         currentStatus = String.format("Processing: %d%% - %d lines (%d valid), found %d stations", 
-                                percent, lineCount, validLines, allStations.size());
+                                getPercentComplete(), lineCount, pipeline.getValidLines(), processedStations.get());
+                        long downloadTotal = getTotalBytes();
+                        if (activeDownloads.get() > 0 && downloadTotal > 0) {
+                            currentStatus += String.format(", downloaded %d%%", (getDownloadedBytes() * 100) / downloadTotal);
+                        }
                         logger.info(currentStatus);
                     }
-                } catch (Exception e) {
-                    logger.warn("Error processing line {}: {}. Error: {}", lineCount, line, e.getMessage());
                 }
-            }
-            
-            logger.info("Finished reading data file. Total lines: {}, Valid lines: {}, Unique stations: {}", 
-                    lineCount, validLines, allStations.size());
-            currentStatus = "Finalizing JSON files";
-            
-            // Close all writers and finalize the JSON files
-            for (Map.Entry<String, Writer> entry : stationWriters.entrySet()) {
-                String stationId = entry.getKey();
-                Writer writer = entry.getValue();
                 
-                // Write the closing bracket for the JSON array
-                writer.write("\n]");
-                writer.close();
-            }
+                @Override
+                public void onInputComplete() {
+                    recordPhase("parse", parseStarted);
+                    mergeStarted.set(System.nanoTime());
+                    currentStatus = "Finalizing station files";
+                    logger.info("Finished reading data file, merging sorted runs into station files");
+                }
+                
+                @Override
+                public void onCheckpoint(IngestPipeline.Checkpoint progress) throws IOException {
+                    checkpoint.withProgress(progress).write(outputDirectory, objectMapper);
+                    logger.debug("Checkpoint at {} MB of input, {} lines", progress.inputOffset() / (1024 * 1024), progress.lines());
+                }
+            });
+            recordPhase("merge", mergeStarted.get());
+            stationLog.close();
             
-            logger.info("Successfully wrote data files for {} stations in {}", 
-                    allStations.size(), Paths.get(dataDir).toAbsolutePath());
+            Map<String, DatasetManifest.Station> stations = stationLog.getStations();
+            logger.info("Finished processing data file. Total lines: {}, Valid lines: {}, Unique stations: {}", 
+                    stats.lines(), stats.validLines(), stations.size());
             
-        } catch (IOException e) {
-            logger.error("Error processing weather data file", e);
+            List<String> stationIds = new ArrayList<>(new TreeMap<>(stations).keySet());
+            // A run that stopped after packing left the index behind, the small files are gone
+            if ("packed".equalsIgnoreCase(storageLayout) || Files.isRegularFile(StationSegments.indexFile(outputDirectory))) {
+                currentStatus = "Packing station files";
+                long packStarted = System.nanoTime();
+                int segmentCount = new StationSegmentWriter(outputDirectory, fileExtensions, segmentSizeMb * 1024L * 1024L)
+                        .pack(stationIds);
+                logger.info("Packed the files of {} stations into {} segments", stationIds.size(), segmentCount);
+                recordPhase("pack", packStarted);
+            }
             
-            // Make sure to close any open writers in case of exception
-            for (Writer writer : stationWriters.values()) {
-                try {
-                    writer.close();
-                } catch (IOException closeEx) {
-                    logger.error("Error closing writer", closeEx);
+            if (writeDateColumns) {
+                currentStatus = "Writing date columns";
+                long dateColumnsStarted = System.nanoTime();
+                try (StationSegments segments = StationSegments.open(outputDirectory)) {
+                    new DateColumnsWriter(outputDirectory, stationIds, mappedStationReader(outputDirectory, segments, jsonFormat),
+                            sortBufferBytes).write();
                 }
+                recordPhase("date_columns", dateColumnsStarted);
             }
             
+            // Stations kept from an interrupted run have their hashes in the log only
+            Map<String, String> hashes = new HashMap<>();
+            stations.forEach((stationId, station) -> hashes.put(stationId, station.hash()));
+            long createdAt = System.currentTimeMillis();
+            DatasetHashes datasetHashes = DatasetHashes.of(hashes, createdAt);
+            datasetHashes.write(outputDirectory, objectMapper);
+            
+            // The manifest goes last: a version without one is incomplete
+            DatasetStore.deleteRecursively(runDirectory);
+            Files.deleteIfExists(outputDirectory.resolve(StationLog.FILE_NAME));
+            Files.deleteIfExists(outputDirectory.resolve(IngestCheckpoint.FILE_NAME));
+            DatasetManifest manifest = new DatasetManifest(checkpoint.version(), createdAt, source.url(), source.etag(),
+                    source.lastModified(), source.length(), format, stats.lines(), stats.validLines(),
+                    datasetHashes.hash(), new TreeMap<>(stations), null);
+            manifest.write(outputDirectory, objectMapper);
+            logger.info("Successfully wrote data files for {} stations, dataset hash {}", 
+                    stations.size(), datasetHashes.hash());
+            return manifest;
+            
+        } catch (IOException e) {
+            logger.error("Error processing weather data file", e);
             throw e;
+        } finally {
+            stationLog.close();
         }
     }
     
     /**
-     * Gets or creates a writer for a station ID
+     * Prepare the staging directory for an ingest of the given source, continuing the ingest
+     * staged there if it is of the same source with the same settings, otherwise starting over
+     *
+     * @return the checkpoint to continue from, without progress if the input is read from the start
      */
-    private Writer getStationWriter(String stationId, Map<String, Writer> stationWriters, Map<String, Boolean> stationStarted) throws IOException {
-        if (!stationWriters.containsKey(stationId)) {
-            // Create a new file for this station
-            Path stationFile = Paths.get(dataDir, stationId + ".json");
-            Writer writer = new BufferedWriter(new FileWriter(stationFile.toFile()));
-            
-            // Start the JSON array
-            writer.write("[\n");
-            stationWriters.put(stationId, writer);
-            stationStarted.put(stationId, false);
+    private IngestCheckpoint startStaging(Path stagingDirectory, Path runDirectory, RemoteFile source,
+                                          String format, int writerThreads) throws IOException {
+        IngestCheckpoint checkpoint = IngestCheckpoint.read(stagingDirectory, objectMapper);
+        IngestCheckpoint started;
+        if (checkpoint != null && checkpoint.isResumable(source, format, writerThreads)) {
+            IngestPipeline.Checkpoint progress = checkpoint.progress();
+            // Merging runs at the end replaces them, after which the input has to be read again
+            if (progress != null && !runsExist(runDirectory, progress)) {
+                logger.info("Run files of the last checkpoint are gone, reading the input from the start");
+                progress = null;
+            }
+            started = new IngestCheckpoint(checkpoint.version(), source, format, writerThreads,
+                    checkpoint.attempt() + 1, progress);
+            logger.info("Resuming ingest of dataset version {} at {} MB of input", 
+                    started.version(), progress == null ? 0 : progress.inputOffset() / (1024 * 1024));
+        } else {
+            if (Files.exists(stagingDirectory)) {
+                logger.info("Discarding the staged ingest, it is of a different source or with different settings");
+                DatasetStore.deleteRecursively(stagingDirectory);
+            }
+            started = new IngestCheckpoint(DatasetStore.newVersion(System.currentTimeMillis()), source, format,
+                    writerThreads, 0, null);
         }
         
-        return stationWriters.get(stationId);
+        // Runs spilled after the last checkpoint can't be used
+        Files.createDirectories(runDirectory);
+        Set<String> checkpointedRuns = new HashSet<>();
+        if (started.progress() != null) {
+            started.progress().runs().forEach(checkpointedRuns::addAll);
+        }
+        try (Stream<Path> runs = Files.list(runDirectory)) {
+            for (Path run : runs.toList()) {
+                if (!checkpointedRuns.contains(run.getFileName().toString())) {
+                    Files.delete(run);
+                }
+            }
+        }
+        started.write(stagingDirectory, objectMapper);
+        return started;
+    }
+    
+    /**
+     * Record how long a phase of the ingest took, e.g. download, parse, merge or pack
+     */
+    private void recordPhase(String phase, long startedNanos) {
+        metricsRegistry.timer("weather_ingest_phase_seconds", "Duration of each phase of an ingest",
+                PHASE_BUCKET_SECONDS, "phase", phase).record(System.nanoTime() - startedNanos);
+    }
+    
+    private static boolean runsExist(Path runDirectory, IngestPipeline.Checkpoint progress) {
+        return progress.runs().stream().flatMap(List::stream)
+                .allMatch(run -> Files.isRegularFile(runDirectory.resolve(run)));
+    }
+    
+    /**
+     * One source file being downloaded and ingested into a staging directory, with its progress
+     */
+    private final class SourceIngest {
+        final Path tempFile;
+        final Path outputDirectory;
+        // The previous version of the output, whose unchanged stations are taken over, or null
+        final DatasetManifest previous;
+        final Path previousDirectory;
+        // Number of ingests running at the same time, which share the ingest's threads and memory
+        final int concurrentIngests;
+        // Whether this is a year partition, whose stations' responses are written for the whole version instead
+        final boolean partition;
+        final AtomicLong downloadedBytes = new AtomicLong(0);
+        final AtomicLong totalBytes = new AtomicLong(0);
+        final AtomicLong compressedBytesRead = new AtomicLong(0);
+        final AtomicLong compressedBytesTotal = new AtomicLong(0);
+        final DownloadInputStream downloadStream;
+        final RangeDownloader downloader;
+        
+        SourceIngest(Path tempFile, Path outputDirectory, DatasetManifest previous, Path previousDirectory,
+                     int concurrentIngests, boolean partition) {
+            this.tempFile = tempFile;
+            this.outputDirectory = outputDirectory;
+            this.previous = previous;
+            this.previousDirectory = previousDirectory;
+            this.concurrentIngests = Math.max(1, concurrentIngests);
+            this.partition = partition;
+            this.downloadStream = streamingIngest ? new DownloadInputStream(tempFile) : null;
+            // Files downloaded side by side share the connections
+            int connections = Math.max(1, downloadConnections / this.concurrentIngests);
+            this.downloader = new RangeDownloader(objectMapper, connections, downloadSegmentSizeMb * 1024L * 1024L,
+                    downloadRetries, downloadedBytes, totalBytes, new RangeDownloader.Listener() {
+                        @Override
+                        public void onProgress(long downloaded, long fileSize) {
+                            onDownloadProgress();
+                        }
+                        
+                        @Override
+                        public void onReceived(int bytes) {
+                            downloadedBytesCounter.increment(bytes);
+                        }
+                        
+                        @Override
+                        public void onAvailable(long bytes) {
+                            if (downloadStream != null) {
+                                downloadStream.advance(bytes);
+                            }
+                        }
+                    });
+        }
     }
-} 
\ No newline at end of file
+}
@@ -1,23 +1,60 @@
 package com.example.energybot_weather_app.service;
 
+import com.example.energybot_weather_app.ingest.PrecompressedResponseWriter;
+import com.example.energybot_weather_app.metrics.Counter;
+import com.example.energybot_weather_app.metrics.MetricsRegistry;
 import com.example.energybot_weather_app.model.WeatherRecord;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.example.energybot_weather_app.storage.BinaryStationData;
+import com.example.energybot_weather_app.storage.BinaryStationFile;
+import com.example.energybot_weather_app.storage.BinaryStationFormat;
+import com.example.energybot_weather_app.storage.DatasetHashes;
+import com.example.energybot_weather_app.storage.DatasetStore;
+import com.example.energybot_weather_app.storage.DateColumns;
+import com.example.energybot_weather_app.storage.JsonStationData;
+import com.example.energybot_weather_app.storage.OffHeapStationStore;
+import com.example.energybot_weather_app.storage.PartitionedSelection;
+import com.example.energybot_weather_app.storage.StationData;
+import com.example.energybot_weather_app.storage.StationSegments;
+import com.example.energybot_weather_app.storage.StationSelection;
+import com.example.energybot_weather_app.storage.StationSummary;
+import com.example.energybot_weather_app.storage.YearPartitions;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Service for retrieving weather data from the processed files
+ * Service for retrieving weather data from the processed files.
+ * Station files are read in the binary format when present, otherwise as JSON,
+ * and kept in the {@link StationDataCache} so repeated requests don't touch disk. With the
+ * {@link HotStationStore} enabled, all binary station files are held off the heap and queries
+ * are answered from there instead.
+ * 
+ * Files are read from the current version in the {@link DatasetStore}, or straight from the
+ * data directory for data ingested before versioning. A newly published version is picked up
+ * from the {@link StationDataUpdatedEvent}.
+ * 
+ * A version ingested from one file per year is split into {@link YearPartitions}; queries read
+ * only the partitions of the years their date range overlaps.
+ * 
+ * A directory ingested with the packed layout keeps its station files in {@link StationSegments};
+ * stations are looked up in its memory-mapped index and read with positional reads.
  */
 @Service
 public class WeatherDataService {
@@ -27,9 +64,42 @@ public class WeatherDataService {
     private String dataDir;
     
     private final ObjectMapper objectMapper;
+    private final StationDataCache stationDataCache;
+    private final HotStationStore hotStationStore;
     
-    public WeatherDataService(ObjectMapper objectMapper) {
+    // Bytes of station data loaded from separate files and from the segments of the packed layout
+    private final Counter fileBytesRead;
+    private final Counter segmentBytesRead;
+    
+    // The dataset version being served, resolved on first use and replaced as a whole on a switch
+    private volatile Dataset dataset;
+    
+    // The version served before, whose segments stay open for requests that started on it
+    private Dataset previousDataset;
+    
+    public WeatherDataService(ObjectMapper objectMapper, StationDataCache stationDataCache,
+                              HotStationStore hotStationStore) {
+        this(objectMapper, stationDataCache, hotStationStore, new MetricsRegistry());
+    }
+    
+    @Autowired
+    public WeatherDataService(ObjectMapper objectMapper, StationDataCache stationDataCache,
+                              HotStationStore hotStationStore, MetricsRegistry metricsRegistry) {
         this.objectMapper = objectMapper;
+        this.stationDataCache = stationDataCache;
+        this.hotStationStore = hotStationStore;
+        
+        String bytesReadHelp = "Bytes of station data loaded from disk";
+        fileBytesRead = metricsRegistry.counter("weather_station_file_read_bytes_total", bytesReadHelp, "layout", "files");
+        segmentBytesRead = metricsRegistry.counter("weather_station_file_read_bytes_total", bytesReadHelp, "layout", "packed");
+        metricsRegistry.functionCounter("weather_station_cache_requests_total", "Lookups in the station data cache",
+                () -> stationDataCache.stats().hitCount(), "result", "hit");
+        metricsRegistry.functionCounter("weather_station_cache_requests_total", "Lookups in the station data cache",
+                () -> stationDataCache.stats().missCount(), "result", "miss");
+        metricsRegistry.functionCounter("weather_station_cache_evictions_total", "Stations evicted from the station data cache",
+                () -> stationDataCache.stats().evictionCount());
+        metricsRegistry.gauge("weather_station_cache_bytes", "Estimated size of the stations in the station data cache",
+                stationDataCache::weightBytes);
     }
     
     /**
@@ -54,13 +124,371 @@ public class WeatherDataService {
      * @throws IOException if there is an error reading the file
      */
     public List<WeatherRecord> getStationData(String stationId, String elementType, String startDate, String endDate) throws IOException {
+        StationSelection selection = selectStationData(stationId, elementType, startDate, endDate);
+        return selection == null ? null : selection.toRecords();
+    }
+    
+    /**
+     * Select the weather data of a station without decoding it, so the records can be
+     * streamed to a response one at a time
+     * 
+     * @param stationId The station ID to retrieve data for
+     * @param elementType Optional filter for specific element type (e.g., TMAX, PRCP)
+     * @param startDate Optional filter for start date (YYYYMMDD format)
+     * @param endDate Optional filter for end date (YYYYMMDD format)
+     * @return The matching records, or null if the station is not found
+     * @throws IOException if there is an error reading the file
+     */
+    public StationSelection selectStationData(String stationId, String elementType, String startDate, String endDate) throws IOException {
+        return selectStationData(getDataset(), stationId, elementType, startDate, endDate);
+    }
+    
+    private StationSelection selectStationData(Dataset dataset, String stationId, String elementType, String startDate,
+                                               String endDate) throws IOException {
         // Normalize station ID to prevent path traversal attacks
         stationId = normalizeStationId(stationId);
         
-        Path stationFilePath = Paths.get(dataDir, stationId + ".json");
-        File stationFile = stationFilePath.toFile();
+        int[] years = dataset.partitionYears();
+        if (years.length > 0) {
+            return selectPartitionedStationData(dataset, stationId, years, elementType, startDate, endDate);
+        }
+        
+        StationData stationData = getStationData(dataset, dataset.directory, stationId);
+        if (stationData == null) {
+            return null;
+        }
+        
+        StationSelection selection = stationData.select(elementType, startDate, endDate);
+        if (elementType != null || startDate != null || endDate != null) {
+            logger.info("Applied filters: elementType={}, startDate={}, endDate={}, records after filtering: {}", 
+                    elementType, startDate, endDate, selection.count());
+        }
+        return selection;
+    }
+    
+    /**
+     * Select a station's data from the year partitions overlapping the date filters
+     */
+    private StationSelection selectPartitionedStationData(Dataset dataset, String stationId, int[] years, String elementType,
+                                                          String startDate, String endDate) throws IOException {
+        int[] plan = YearPartitions.select(years, startDate, endDate);
+        List<StationSelection> selections = new ArrayList<>(plan.length);
+        for (int year : plan) {
+            Path partition = YearPartitions.directory(dataset.directory, year);
+            StationData stationData = getStationData(dataset, partition, stationId);
+            if (stationData != null) {
+                selections.add(stationData.select(elementType, startDate, endDate));
+            }
+        }
+        // A station outside the queried years still exists, it just has nothing to return
+        DatasetHashes hashes = dataset.hashes();
+        if (selections.isEmpty() && (hashes == null || hashes.stationHash(stationId) == null)) {
+            return null;
+        }
+        
+        StationSelection selection = new PartitionedSelection(selections);
+        logger.info("Read {} of {} year partitions for elementType={}, startDate={}, endDate={}, records after filtering: {}", 
+                plan.length, years.length, elementType, startDate, endDate, selection.count());
+        return selection;
+    }
+    
+    /**
+     * All of a station's data, one entry per year partition in ascending order, or a single one
+     * for an unpartitioned dataset
+     * 
+     * @param stationId The station ID to retrieve data for
+     * @return The station's data, or null if the station is not found
+     * @throws IOException if there is an error reading the files
+     */
+    public List<StationData> getStationDataPartitions(String stationId) throws IOException {
+        String normalizedId = normalizeStationId(stationId);
+        Dataset dataset = getDataset();
+        int[] years = dataset.partitionYears();
+        List<StationData> partitions = new ArrayList<>(Math.max(1, years.length));
+        if (years.length == 0) {
+            StationData stationData = getStationData(dataset, dataset.directory, normalizedId);
+            if (stationData != null) {
+                partitions.add(stationData);
+            }
+        }
+        for (int year : years) {
+            Path partition = YearPartitions.directory(dataset.directory, year);
+            StationData stationData = getStationData(dataset, partition, normalizedId);
+            if (stationData != null) {
+                partitions.add(stationData);
+            }
+        }
+        return partitions.isEmpty() ? null : partitions;
+    }
+    
+    /**
+     * Monthly and annual rollups of a station, read from the summary files written at ingest.
+     * Stations ingested before summaries existed are rolled up from their records instead.
+     * 
+     * @param stationId The station ID to retrieve the rollups for
+     * @return The station's summary per year partition in ascending order, or a single one for an
+     *         unpartitioned dataset, or null if the station is not found
+     * @throws IOException if there is an error reading the files
+     */
+    public List<StationSummary> getStationSummary(String stationId) throws IOException {
+        String normalizedId = normalizeStationId(stationId);
+        Dataset dataset = getDataset();
+        int[] years = dataset.partitionYears();
+        List<StationSummary> summaries = new ArrayList<>(Math.max(1, years.length));
+        if (years.length == 0) {
+            StationSummary summary = loadStationSummary(dataset, dataset.directory, normalizedId);
+            if (summary != null) {
+                summaries.add(summary);
+            }
+        }
+        for (int year : years) {
+            StationSummary summary = loadStationSummary(dataset, YearPartitions.directory(dataset.directory, year), normalizedId);
+            if (summary != null) {
+                summaries.add(summary);
+            }
+        }
+        return summaries.isEmpty() ? null : summaries;
+    }
+    
+    /**
+     * Read a station's summary file, falling back to rolling up its records
+     * 
+     * @return the summary, or null if the station has no data in the directory
+     */
+    private StationSummary loadStationSummary(Dataset dataset, Path directory, String stationId) throws IOException {
+        Path summaryFile = directory.resolve(stationId + StationSummary.FILE_EXTENSION);
+        StationSegments segments = dataset.segments(directory);
+        if (segments != null) {
+            ByteBuffer bytes = segments.read(stationId, StationSummary.FILE_EXTENSION);
+            if (bytes != null) {
+                return StationSummary.read(bytes, summaryFile);
+            }
+        } else if (Files.isRegularFile(summaryFile)) {
+            return StationSummary.read(summaryFile);
+        }
+        StationData stationData = getStationData(dataset, directory, stationId);
+        return stationData == null ? null : StationSummary.of(stationData);
+    }
+    
+    /**
+     * The values of all stations on a day, from the date columns written at ingest
+     * 
+     * @param date the day, as a yyyyMMdd int
+     * @return the day's columns, or null if no station has a row on the day
+     * @throws IOException if there is an error reading the files
+     */
+    public DateColumns getDateColumns(int date) throws IOException {
+        Dataset dataset = getDataset();
+        Path directory = dataset.directory;
+        int[] years = dataset.partitionYears();
+        if (years.length > 0) {
+            if (Arrays.binarySearch(years, date / 10000) < 0) {
+                return null;
+            }
+            directory = YearPartitions.directory(directory, date / 10000);
+        }
+        Path file = DateColumns.file(directory, date);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        return DateColumns.open(file, dataset.dateColumnStations(directory));
+    }
+    
+    /**
+     * Whether the current dataset was ingested with date columns
+     */
+    public boolean hasDateColumns() throws IOException {
+        Dataset dataset = getDataset();
+        Path directory = dataset.directory;
+        int[] years = dataset.partitionYears();
+        if (years.length > 0) {
+            directory = YearPartitions.directory(directory, years[years.length - 1]);
+        }
+        return Files.isDirectory(directory.resolve(DateColumns.DIRECTORY));
+    }
+    
+    /**
+     * A station's data in a directory, from the hot store if it holds the directory, otherwise
+     * from the cache or the station's file. Cached stations are keyed by their directory, which
+     * names the version, so a load that outlives a switch can't be served for the new version.
+     * 
+     * @return the station's data, or null if the station has none in the directory
+     */
+    private StationData getStationData(Dataset dataset, Path directory, String stationId) throws IOException {
+        OffHeapStationStore store = hotStationStore.get();
+        if (store != null && store.contains(directory)) {
+            BinaryStationFile stationFile = store.station(directory, stationId);
+            return stationFile == null ? null : new BinaryStationData(stationId, stationFile, 0);
+        }
+        return stationDataCache.get(directory.resolve(stationId).toString(), key -> loadStationData(dataset, directory, stationId));
+    }
+    
+    /**
+     * Content hashes of the current dataset
+     * 
+     * @return the hashes, or null if the data was ingested without them
+     */
+    public DatasetHashes getDatasetHashes() {
+        return getDataset().hashes();
+    }
+    
+    /**
+     * Content hash of a station's data, or null if the station or its hash doesn't exist
+     */
+    public String getStationHash(String stationId) {
+        return stationHash(getDataset(), stationId);
+    }
+    
+    private String stationHash(Dataset dataset, String stationId) {
+        DatasetHashes hashes = dataset.hashes();
+        return hashes == null ? null : hashes.stationHash(normalizeStationId(stationId));
+    }
+    
+    /**
+     * The gzip compressed unfiltered response written for a station at ingest
+     * 
+     * @return where the response is kept, its own file or a range of a segment, or null if there
+     *         is none or the station ID had to be normalized (the response holds the normalized ID)
+     */
+    public StationSegments.Range getPrecompressedResponse(String stationId) {
+        return precompressedResponse(getDataset(), stationId);
+    }
+    
+    private StationSegments.Range precompressedResponse(Dataset dataset, String stationId) {
+        if (!stationId.equals(normalizeStationId(stationId))) {
+            return null;
+        }
+        Path directory = dataset.directory;
+        try {
+            StationSegments segments = dataset.segments(directory);
+            if (segments != null) {
+                return segments.range(stationId, PrecompressedResponseWriter.FILE_EXTENSION);
+            }
+            Path file = directory.resolve(stationId + PrecompressedResponseWriter.FILE_EXTENSION);
+            return Files.isRegularFile(file) ? new StationSegments.Range(file, 0, (int) Files.size(file)) : null;
+        } catch (IOException e) {
+            logger.warn("Could not look up the pre-compressed response of {}: {}", stationId, e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * The dataset version being served, for a request that reads several things from it
+     */
+    public DatasetSnapshot snapshot() {
+        return new DatasetSnapshot(getDataset());
+    }
+    
+    /**
+     * Directory holding the station files being served
+     */
+    public Path getDataDirectory() {
+        return getDataset().directory;
+    }
+    
+    /**
+     * The dataset version being served, resolved from the data directory on first use
+     */
+    private Dataset getDataset() {
+        Dataset current = dataset;
+        if (current == null) {
+            synchronized (this) {
+                current = dataset;
+                if (current == null) {
+                    Path directory = Paths.get(dataDir);
+                    try {
+                        Path version = new DatasetStore(directory).getCurrentDirectory();
+                        if (version != null) {
+                            directory = version;
+                        }
+                    } catch (IOException e) {
+                        logger.warn("Could not read the current dataset version: {}", e.getMessage());
+                    }
+                    current = new Dataset(directory);
+                    dataset = current;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * Switch to the newly published data
+     */
+    @EventListener
+    public void onStationDataUpdated(StationDataUpdatedEvent event) {
+        Dataset retired;
+        synchronized (this) {
+            retired = previousDataset;
+            previousDataset = dataset;
+            dataset = new Dataset(event.dataDirectory());
+        }
+        // The version before the previous one has had a whole refresh to finish its requests,
+        // and its files are removed from the data directory with the switch
+        if (retired != null) {
+            retired.close();
+        }
+        loadHotStore();
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        loadHotStore();
+    }
+    
+    /**
+     * Start loading the current dataset into the hot store, if it's enabled
+     */
+    private void loadHotStore() {
+        if (!hotStationStore.isEnabled()) {
+            return;
+        }
+        try {
+            hotStationStore.loadAsync(getDataset().stationDirectories());
+        } catch (IOException e) {
+            logger.warn("Could not list the station directories for the hot store: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Hit, miss and eviction counters of the station data cache
+     */
+    public Map<String, Object> getCacheStats() {
+        return stationDataCache.getStats();
+    }
+    
+    /**
+     * Size and load time of the hot store
+     */
+    public Map<String, Object> getHotStoreStats() {
+        return hotStationStore.getStats();
+    }
+    
+    /**
+     * Load a station's file, or return null if the station has none
+     */
+    private StationData loadStationData(Dataset dataset, Path directory, String stationId) throws IOException {
+        StationSegments segments = dataset.segments(directory);
+        if (segments != null) {
+            return loadPackedStationData(segments, directory, stationId);
+        }
+        
+        Path binaryFilePath = directory.resolve(stationId + BinaryStationFormat.FILE_EXTENSION);
+        if (Files.isRegularFile(binaryFilePath)) {
+            long fileSize = Files.size(binaryFilePath);
+            logger.info("Reading station data file: {} (size: {} bytes)", binaryFilePath, fileSize);
+            fileBytesRead.increment(fileSize);
+            // Cached stations live on the heap, uncached ones are only mapped for the one request
+            if (stationDataCache.isEnabled()) {
+                BinaryStationFile stationFile = BinaryStationFile.read(binaryFilePath);
+                return new BinaryStationData(stationId, stationFile, stationFile.size());
+            }
+            return new BinaryStationData(stationId, BinaryStationFile.open(binaryFilePath), 0);
+        }
+        
+        Path stationFilePath = directory.resolve(stationId + ".json");
         
-        if (!stationFile.exists() || !stationFile.isFile()) {
+        if (!Files.isRegularFile(stationFilePath)) {
             logger.warn("Station data file not found: {}", stationFilePath);
             return null;
         }
@@ -68,58 +496,201 @@ public class WeatherDataService {
         // Check file size to avoid potential OOM for very large files
         long fileSize = Files.size(stationFilePath);
         logger.info("Reading station data file: {} (size: {} bytes)", stationFilePath, fileSize);
+        fileBytesRead.increment(fileSize);
         
-        // Read and parse the JSON file
-        List<WeatherRecord> records = objectMapper.readValue(stationFile, new TypeReference<List<WeatherRecord>>() {});
+        // Parse the JSON file straight into primitive columns
+        return JsonStationData.read(stationFilePath, objectMapper.getFactory());
+    }
+    
+    /**
+     * Read a station's file out of its directory's segments, or return null if the station has none
+     */
+    private StationData loadPackedStationData(StationSegments segments, Path directory, String stationId) throws IOException {
+        Path binaryFilePath = directory.resolve(stationId + BinaryStationFormat.FILE_EXTENSION);
+        ByteBuffer bytes = segments.read(stationId, BinaryStationFormat.FILE_EXTENSION);
+        if (bytes != null) {
+            logger.info("Reading station data from segment: {} (size: {} bytes)", binaryFilePath, bytes.remaining());
+            segmentBytesRead.increment(bytes.remaining());
+            BinaryStationFile stationFile = BinaryStationFile.wrap(bytes, binaryFilePath);
+            return new BinaryStationData(stationId, stationFile, stationFile.size());
+        }
         
-        // Apply filters if provided
-        if (elementType != null || startDate != null || endDate != null) {
-            records = filterRecords(records, elementType, startDate, endDate);
-            logger.info("Applied filters: elementType={}, startDate={}, endDate={}, records after filtering: {}", 
-                    elementType, startDate, endDate, records.size());
+        Path stationFilePath = directory.resolve(stationId + ".json");
+        bytes = segments.read(stationId, ".json");
+        if (bytes == null) {
+            logger.warn("Station data not found in segments: {}", stationFilePath);
+            return null;
+        }
+        logger.info("Reading station data from segment: {} (size: {} bytes)", stationFilePath, bytes.remaining());
+        segmentBytesRead.increment(bytes.remaining());
+        return JsonStationData.read(bytes, stationFilePath, objectMapper.getFactory());
+    }
+    
+    /**
+     * One dataset version as a request sees it. Hashes, pre-compressed responses and station data
+     * all come from that version, even if a new one is published while the request runs, so its
+     * ETag, Last-Modified and body belong together.
+     */
+    public final class DatasetSnapshot {
+        private final Dataset dataset;
+        
+        private DatasetSnapshot(Dataset dataset) {
+            this.dataset = dataset;
         }
         
-        return records;
+        /**
+         * @return the content hashes, or null if the version was ingested without them
+         */
+        public DatasetHashes hashes() {
+            return dataset.hashes();
+        }
+        
+        /**
+         * @see WeatherDataService#getStationHash(String)
+         */
+        public String stationHash(String stationId) {
+            return WeatherDataService.this.stationHash(dataset, stationId);
+        }
+        
+        /**
+         * @see WeatherDataService#getPrecompressedResponse(String)
+         */
+        public StationSegments.Range precompressedResponse(String stationId) {
+            return WeatherDataService.this.precompressedResponse(dataset, stationId);
+        }
+        
+        /**
+         * @see WeatherDataService#selectStationData(String, String, String, String)
+         */
+        public StationSelection selectStationData(String stationId, String elementType, String startDate,
+                                                  String endDate) throws IOException {
+            return WeatherDataService.this.selectStationData(dataset, stationId, elementType, startDate, endDate);
+        }
     }
     
     /**
-     * Filter records based on element type and date range
+     * A dataset version and what is read from it on first use. A published version replaces the
+     * whole object, so a request that started on the old version keeps reading the old version
+     * and nothing it reads can be left behind for requests to the new one.
      */
-    private List<WeatherRecord> filterRecords(List<WeatherRecord> records, String elementType, String startDate, String endDate) {
-        return records.stream()
-            .filter(record -> {
-                // Filter by element type if provided
-                if (elementType != null && !elementType.isEmpty() && !elementType.equalsIgnoreCase(record.getElement())) {
-                    return false;
-                }
-                
-                // Filter by start date if provided
-                if (startDate != null && !startDate.isEmpty()) {
-                    // Compare strings (YYYYMMDD format allows for string comparison)
-                    if (record.getDate().compareTo(startDate) < 0) {
-                        return false;
+    private final class Dataset {
+        final Path directory;
+        
+        // Year partitions, listed on first use
+        private volatile int[] partitionYears;
+        
+        // Content hashes, read on first use
+        private volatile DatasetHashes hashes;
+        private volatile boolean hashesLoaded;
+        
+        // Station lists of the date columns by directory, read on first use
+        private final Map<Path, String[]> dateColumnStations = new ConcurrentHashMap<>();
+        
+        // Segments of the packed directories by directory, empty for one of separate files, opened on first use
+        private final Map<Path, Optional<StationSegments>> stationSegments = new ConcurrentHashMap<>();
+        
+        Dataset(Path directory) {
+            this.directory = directory;
+        }
+        
+        /**
+         * Years the version is partitioned by, empty if it isn't
+         */
+        int[] partitionYears() throws IOException {
+            int[] years = partitionYears;
+            if (years == null) {
+                years = YearPartitions.list(directory);
+                partitionYears = years;
+            }
+            return years;
+        }
+        
+        /**
+         * Directories of the version's station files: its year partitions, or the version
+         * directory itself if it isn't partitioned
+         */
+        List<Path> stationDirectories() throws IOException {
+            int[] years = partitionYears();
+            if (years.length == 0) {
+                return List.of(directory);
+            }
+            List<Path> directories = new ArrayList<>(years.length);
+            for (int year : years) {
+                directories.add(YearPartitions.directory(directory, year));
+            }
+            return directories;
+        }
+        
+        /**
+         * @return the content hashes, or null if the version was ingested without them
+         */
+        DatasetHashes hashes() {
+            if (!hashesLoaded) {
+                synchronized (this) {
+                    if (!hashesLoaded) {
+                        try {
+                            hashes = DatasetHashes.read(directory, objectMapper);
+                        } catch (IOException e) {
+                            logger.warn("Could not read dataset hashes: {}", e.getMessage());
+                        }
+                        hashesLoaded = true;
                     }
                 }
-                
-                // Filter by end date if provided
-                if (endDate != null && !endDate.isEmpty()) {
-                    // Compare strings (YYYYMMDD format allows for string comparison)
-                    if (record.getDate().compareTo(endDate) > 0) {
-                        return false;
+            }
+            return hashes;
+        }
+        
+        String[] dateColumnStations(Path partition) throws IOException {
+            String[] stations = dateColumnStations.get(partition);
+            if (stations == null) {
+                stations = DateColumns.readStations(partition);
+                dateColumnStations.put(partition, stations);
+            }
+            return stations;
+        }
+        
+        /**
+         * Segments of one of the version's directories
+         * 
+         * @return the segments, or null if the directory keeps each station file separately
+         */
+        StationSegments segments(Path partition) throws IOException {
+            Optional<StationSegments> segments = stationSegments.get(partition);
+            if (segments == null) {
+                Optional<StationSegments> opened = Optional.ofNullable(StationSegments.open(partition));
+                segments = stationSegments.putIfAbsent(partition, opened);
+                if (segments == null) {
+                    segments = opened;
+                } else if (opened.isPresent()) {
+                    // Another request opened them first
+                    opened.get().close();
+                }
+            }
+            return segments.orElse(null);
+        }
+        
+        /**
+         * Close the segments opened for the version
+         */
+        void close() {
+            for (Optional<StationSegments> segments : stationSegments.values()) {
+                if (segments.isPresent()) {
+                    try {
+                        segments.get().close();
+                    } catch (IOException e) {
+                        logger.warn("Could not close the segments of {}: {}", directory, e.getMessage());
                     }
                 }
-                
-                return true;
-            })
-            .collect(Collectors.toList());
+            }
+        }
     }
     
     /**
      * Normalize the station ID to prevent path traversal attacks
      * Only allow alphanumeric characters, hyphens, and underscores
      */
-    private String normalizeStationId(String stationId) {
+    static String normalizeStationId(String stationId) {
         // Remove any path characters and only allow safe characters
         return stationId.replaceAll("[^a-zA-Z0-9\\-_]", "");
     }
-} 
\ No newline at end of file
+}
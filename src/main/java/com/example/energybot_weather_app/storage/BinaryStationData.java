@@ -0,0 +1,244 @@
+package com.example.energybot_weather_app.storage;
+
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.energybot_weather_app.storage.WeatherRecordJson.*;
+
+/**
+ * Station data backed by a binary station file, see {@link BinaryStationFormat}.
+ *
+ * Each element's rows are sorted by date, so the filters narrow the file down to one slice per
+ * matching element by binary search, and only the rows in those slices are decoded.
+ */
+public class BinaryStationData implements StationData {
+    // Rough heap cost of the file object, its dictionary arrays and element names
+    private static final int FIXED_OVERHEAD_BYTES = 128;
+    private static final int PER_ELEMENT_BYTES = 64;
+
+    private final String stationId;
+    private final BinaryStationFile stationFile;
+    private final long estimatedBytes;
+
+    /**
+     * @param heapBytes bytes of the file held on the heap - 0 for a memory-mapped file
+     */
+    public BinaryStationData(String stationId, BinaryStationFile stationFile, long heapBytes) {
+        this.stationId = stationId;
+        this.stationFile = stationFile;
+        this.estimatedBytes = FIXED_OVERHEAD_BYTES + heapBytes + (long) stationFile.elementCount() * PER_ELEMENT_BYTES;
+    }
+
+    @Override
+    public StationSelection select(String elementType, String startDate, String endDate) {
+        boolean hasStartDate = startDate != null && !startDate.isEmpty();
+        boolean hasEndDate = endDate != null && !endDate.isEmpty();
+        int startBound = BinaryStationFormat.parseDate(startDate);
+        int endBound = BinaryStationFormat.parseDate(endDate);
+
+        int[] sliceStarts = new int[stationFile.elementCount()];
+        int[] sliceEnds = new int[stationFile.elementCount()];
+        int slices = 0;
+        int matchingRows = 0;
+        for (int code = 0; code < stationFile.elementCount(); code++) {
+            if (elementType != null && !elementType.isEmpty() && !elementType.equalsIgnoreCase(stationFile.element(code))) {
+                continue;
+            }
+            int from = stationFile.firstRow(code);
+            int to = from + stationFile.rowCount(code);
+            if (hasStartDate) {
+                from = searchDate(from, to, startDate, startBound, false);
+            }
+            if (hasEndDate) {
+                to = searchDate(from, to, endDate, endBound, true);
+            }
+            if (from < to) {
+                sliceStarts[slices] = from;
+                sliceEnds[slices] = to;
+                slices++;
+                matchingRows += to - from;
+            }
+        }
+        return new Selection(sliceStarts, sliceEnds, slices, matchingRows);
+    }
+
+    @Override
+    public void visitValues(ValueVisitor visitor) {
+        for (int code = 0; code < stationFile.elementCount(); code++) {
+            String element = stationFile.element(code);
+            int end = stationFile.firstRow(code) + stationFile.rowCount(code);
+            for (int row = stationFile.firstRow(code); row < end; row++) {
+                visitor.visit(element, stationFile.date(row), stationFile.value(row), stationFile.qFlag(row));
+            }
+        }
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Binary search a date-sorted slice of rows
+     *
+     * @param after false to find the first row on or after the filter date, true for the first row after it
+     */
+    private int searchDate(int from, int to, String filterDate, int parsedFilterDate, boolean after) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            int comparison = compareDate(stationFile.date(mid), filterDate, parsedFilterDate);
+            if (comparison < 0 || (after && comparison == 0)) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Compare a stored date with a filter date. yyyyMMdd filters compare as ints, anything else
+     * falls back to the string comparison used for JSON files.
+     */
+    private static int compareDate(int date, String filterDate, int parsedFilterDate) {
+        if (parsedFilterDate >= 0) {
+            return Integer.compare(date, parsedFilterDate);
+        }
+        return BinaryStationFormat.formatDate(date).compareTo(filterDate);
+    }
+
+    private interface RowVisitor {
+        void visit(int row) throws IOException;
+    }
+
+    /**
+     * The matching slices, one per element, visited in date order
+     */
+    private final class Selection implements StationSelection {
+        private final int[] sliceStarts;
+        private final int[] sliceEnds;
+        private final int slices;
+        private final int count;
+
+        Selection(int[] sliceStarts, int[] sliceEnds, int slices, int count) {
+            this.sliceStarts = sliceStarts;
+            this.sliceEnds = sliceEnds;
+            this.slices = slices;
+            this.count = count;
+        }
+
+        @Override
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public void writeJson(JsonGenerator generator) throws IOException {
+            char[] digits = new char[BinaryStationFormat.MAX_DIGITS];
+            visitRows(row -> {
+                generator.writeStartObject();
+                generator.writeFieldName(STATION_ID);
+                generator.writeString(stationId);
+                generator.writeFieldName(DATE);
+                generator.writeString(digits, 0, BinaryStationFormat.formatDate(stationFile.date(row), digits));
+                generator.writeFieldName(ELEMENT);
+                generator.writeString(stationFile.element(stationFile.elementCode(row)));
+                generator.writeFieldName(VALUE);
+                generator.writeString(digits, 0, BinaryStationFormat.formatValue(stationFile.value(row), digits));
+                writeFlag(generator, M_FLAG, stationFile.mFlag(row));
+                writeFlag(generator, Q_FLAG, stationFile.qFlag(row));
+                writeFlag(generator, S_FLAG, stationFile.sFlag(row));
+                int obsTime = stationFile.obsTime(row);
+                if (obsTime != BinaryStationFormat.NO_OBS_TIME) {
+                    generator.writeFieldName(OBS_TIME);
+                    generator.writeString(digits, 0, BinaryStationFormat.formatObsTime(obsTime, digits));
+                }
+                generator.writeEndObject();
+            });
+        }
+
+        @Override
+        public List<WeatherRecord> toRecords() {
+            List<WeatherRecord> records = new ArrayList<>(count);
+            try {
+                visitRows(row -> records.add(stationFile.toRecord(row, stationId)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Collecting records does not do I/O", e);
+            }
+            return records;
+        }
+
+        private void writeFlag(JsonGenerator generator, SerializableString name, byte flag) throws IOException {
+            if (flag > 0) {
+                generator.writeFieldName(name);
+                generator.writeString(BinaryStationFormat.formatFlag(flag));
+            }
+        }
+
+        /**
+         * Visit the selected rows in date order. Slices are in dictionary order, so rows on the
+         * same date come out in the input order of their elements.
+         */
+        private void visitRows(RowVisitor visitor) throws IOException {
+            if (slices == 1) {
+                for (int row = sliceStarts[0]; row < sliceEnds[0]; row++) {
+                    visitor.visit(row);
+                }
+                return;
+            }
+
+            // Merge the slices through a min-heap of slice indexes ordered by (date of the next row, slice)
+            int[] next = new int[slices];
+            int[] heap = new int[slices];
+            int size = 0;
+            for (int slice = 0; slice < slices; slice++) {
+                next[slice] = sliceStarts[slice];
+                heap[size++] = slice;
+            }
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(heap, size, i, next);
+            }
+
+            while (size > 0) {
+                int slice = heap[0];
+                visitor.visit(next[slice]++);
+                if (next[slice] == sliceEnds[slice]) {
+                    heap[0] = heap[--size];
+                }
+                siftDown(heap, size, 0, next);
+            }
+        }
+
+        private void siftDown(int[] heap, int size, int i, int[] next) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && before(heap[left], heap[smallest], next)) {
+                    smallest = left;
+                }
+                if (right < size && before(heap[right], heap[smallest], next)) {
+                    smallest = right;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                int swap = heap[i];
+                heap[i] = heap[smallest];
+                heap[smallest] = swap;
+                i = smallest;
+            }
+        }
+
+        private boolean before(int sliceA, int sliceB, int[] next) {
+            int dateA = stationFile.date(next[sliceA]);
+            int dateB = stationFile.date(next[sliceB]);
+            return dateA < dateB || (dateA == dateB && sliceA < sliceB);
+        }
+    }
+}
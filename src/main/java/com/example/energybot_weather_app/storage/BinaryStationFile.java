@@ -0,0 +1,160 @@
+package com.example.energybot_weather_app.storage;
+
+import com.example.energybot_weather_app.model.WeatherRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.example.energybot_weather_app.storage.BinaryStationFormat.*;
+
+/**
+ * Read access to a memory-mapped binary station file, see {@link BinaryStationFormat}.
+ *
+ * Rows are decoded on demand with absolute reads, so a query only touches the pages of the rows
+ * it looks at and only builds a {@link WeatherRecord} for the rows it returns. Safe for concurrent reads.
+ */
+public final class BinaryStationFile {
+    private final ByteBuffer buffer;
+    private final int rowsOffset;
+    private final int rowCount;
+    private final String[] elements;
+    private final int[] elementFirstRows;
+    private final int[] elementRowCounts;
+
+    private BinaryStationFile(Path file, ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary station file: " + file);
+        }
+        if (buffer.getShort(4) != VERSION || buffer.getShort(6) != ROW_SIZE) {
+            throw new IOException("Unsupported binary station file version in " + file + ", the data needs to be ingested again");
+        }
+
+        rowCount = buffer.getInt(8);
+        int elementCount = buffer.getShort(12) & 0xffff;
+        elements = new String[elementCount];
+        elementFirstRows = new int[elementCount];
+        elementRowCounts = new int[elementCount];
+        for (int code = 0; code < elementCount; code++) {
+            int entry = HEADER_SIZE + code * DICTIONARY_ENTRY_SIZE;
+            elements[code] = unpackElement(buffer.getInt(entry));
+            elementFirstRows[code] = buffer.getInt(entry + 4);
+            elementRowCounts[code] = buffer.getInt(entry + 8);
+        }
+        rowsOffset = HEADER_SIZE + elementCount * DICTIONARY_ENTRY_SIZE;
+        if ((long) rowsOffset + (long) rowCount * ROW_SIZE > buffer.capacity()) {
+            throw new IOException("Truncated binary station file: " + file);
+        }
+    }
+
+    /**
+     * Map a station file into memory. The mapping stays valid after the channel is closed.
+     */
+    public static BinaryStationFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new BinaryStationFile(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read a whole station file onto the heap, for data that is kept around
+     */
+    public static BinaryStationFile read(Path file) throws IOException {
+        return new BinaryStationFile(file, ByteBuffer.wrap(Files.readAllBytes(file)));
+    }
+
+    /**
+     * Read a station file held in a buffer, from index 0 to its capacity, like a slice of the
+     * {@link OffHeapStationStore}
+     *
+     * @param file the file the bytes came from, for error messages
+     */
+    public static BinaryStationFile wrap(ByteBuffer buffer, Path file) throws IOException {
+        return new BinaryStationFile(file, buffer);
+    }
+
+    /**
+     * Size of the file in bytes
+     */
+    public int size() {
+        return buffer.capacity();
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public int elementCount() {
+        return elements.length;
+    }
+
+    /**
+     * Element name for a dictionary code
+     */
+    public String element(int code) {
+        return elements[code];
+    }
+
+    /**
+     * First row of an element's slice
+     */
+    public int firstRow(int code) {
+        return elementFirstRows[code];
+    }
+
+    /**
+     * Number of rows in an element's slice
+     */
+    public int rowCount(int code) {
+        return elementRowCounts[code];
+    }
+
+    public int date(int row) {
+        return buffer.getInt(rowOffset(row) + DATE_OFFSET);
+    }
+
+    public int value(int row) {
+        return buffer.getInt(rowOffset(row) + VALUE_OFFSET);
+    }
+
+    public int elementCode(int row) {
+        return buffer.getShort(rowOffset(row) + ELEMENT_OFFSET) & 0xffff;
+    }
+
+    public int obsTime(int row) {
+        return buffer.getShort(rowOffset(row) + OBS_TIME_OFFSET);
+    }
+
+    public byte mFlag(int row) {
+        return buffer.get(rowOffset(row) + M_FLAG_OFFSET);
+    }
+
+    public byte qFlag(int row) {
+        return buffer.get(rowOffset(row) + Q_FLAG_OFFSET);
+    }
+
+    public byte sFlag(int row) {
+        return buffer.get(rowOffset(row) + S_FLAG_OFFSET);
+    }
+
+    /**
+     * Decode one row into the API model
+     */
+    public WeatherRecord toRecord(int row, String stationId) {
+        WeatherRecord record = new WeatherRecord(stationId, formatDate(date(row)),
+                elements[elementCode(row)], formatValue(value(row)));
+        record.setmFlag(formatFlag(mFlag(row)));
+        record.setqFlag(formatFlag(qFlag(row)));
+        record.setsFlag(formatFlag(sFlag(row)));
+        record.setObsTime(formatObsTime(obsTime(row)));
+        return record;
+    }
+
+    private int rowOffset(int row) {
+        return rowsOffset + row * ROW_SIZE;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.energybot_weather_app.storage;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the binary station files ({@code <stationId>.bin}).
+ *
+ * A file starts with a 16 byte header followed by the element dictionary and the rows,
+ * all big-endian:
+ * <pre>
+ * header      magic (int) | version (short) | row size (short) | row count (int) | element count (short) | reserved (short)
+ * dictionary  element count x [element name (int) | first row (int) | row count (int)]
+ * rows        row count x [date (int) | value (int) | element code (short) | obs time (short) | mFlag | qFlag | sFlag | reserved]
+ * </pre>
+ * Element names are up to 4 ASCII characters packed into an int, in the order they first appear
+ * in the input. Rows are grouped by element in dictionary order and sorted by date within each
+ * element, so the dictionary doubles as an index: an element's rows are one contiguous slice and
+ * a date range within it is found by binary search.
+ *
+ * Dates are stored as yyyyMMdd ints, element codes index the dictionary, absent flags are 0
+ * and an absent observation time is -1.
+ */
+public final class BinaryStationFormat {
+    public static final String FILE_EXTENSION = ".bin";
+
+    public static final int MAGIC = 0x47484344; // "GHCD"
+    public static final short VERSION = 2;
+
+    public static final int HEADER_SIZE = 16;
+    public static final int ELEMENT_SIZE = 4;
+    public static final int DICTIONARY_ENTRY_SIZE = 12;
+
+    public static final int ROW_SIZE = 16;
+    public static final int DATE_OFFSET = 0;
+    public static final int VALUE_OFFSET = 4;
+    public static final int ELEMENT_OFFSET = 8;
+    public static final int OBS_TIME_OFFSET = 10;
+    public static final int M_FLAG_OFFSET = 12;
+    public static final int Q_FLAG_OFFSET = 13;
+    public static final int S_FLAG_OFFSET = 14;
+
+    public static final int NO_OBS_TIME = -1;
+    // The CSV requires a value column but allows it to be empty
+    public static final int EMPTY_VALUE = Integer.MIN_VALUE;
+
+    // Longest formatted date, value or observation time: a sign and 10 digits
+    public static final int MAX_DIGITS = 11;
+
+    // Flags are single ASCII characters, so their strings can be shared
+    private static final String[] FLAGS = new String[128];
+
+    static {
+        for (int i = 1; i < FLAGS.length; i++) {
+            FLAGS[i] = String.valueOf((char) i);
+        }
+    }
+
+    private BinaryStationFormat() {
+    }
+
+    /**
+     * Pack an element name of up to 4 ASCII characters held in buf[offset, offset + length) into an int
+     *
+     * @throws IllegalArgumentException if the name is longer than 4 characters or not ASCII
+     */
+    public static int packElement(byte[] buf, int offset, int length) {
+        if (length > ELEMENT_SIZE) {
+            throw new IllegalArgumentException("element name longer than " + ELEMENT_SIZE + " characters");
+        }
+        int packed = 0;
+        for (int i = 0; i < ELEMENT_SIZE; i++) {
+            int b = i < length ? buf[offset + i] : 0;
+            if (b < 0) {
+                throw new IllegalArgumentException("element name is not ASCII");
+            }
+            packed = (packed << 8) | b;
+        }
+        return packed;
+    }
+
+    public static String unpackElement(int packed) {
+        byte[] name = new byte[ELEMENT_SIZE];
+        int length = 0;
+        for (int shift = 24; shift >= 0 && ((packed >>> shift) & 0xff) != 0; shift -= 8) {
+            name[length++] = (byte) (packed >>> shift);
+        }
+        return new String(name, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Parse a yyyyMMdd date
+     *
+     * @return the date as an int, or -1 if the text is not 8 digits
+     */
+    public static int parseDate(String text) {
+        if (text == null || text.length() != 8) {
+            return -1;
+        }
+        int date = 0;
+        for (int i = 0; i < 8; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            date = date * 10 + (c - '0');
+        }
+        return date;
+    }
+
+    public static String formatDate(int date) {
+        return formatDigits(date, 8);
+    }
+
+    public static String formatValue(int value) {
+        return value == EMPTY_VALUE ? "" : Integer.toString(value);
+    }
+
+    public static String formatObsTime(int obsTime) {
+        return obsTime == NO_OBS_TIME ? null : formatDigits(obsTime, 4);
+    }
+
+    public static String formatFlag(byte flag) {
+        return flag > 0 ? FLAGS[flag] : null;
+    }
+
+    /**
+     * Format a date into chars[0, length), for writers that avoid a String per field
+     *
+     * @return the length of the formatted date
+     */
+    public static int formatDate(int date, char[] chars) {
+        return formatDigits(date, 8, chars);
+    }
+
+    /**
+     * Format a value into chars[0, length) - at least {@link #MAX_DIGITS} chars long
+     *
+     * @return the length of the formatted value, 0 for an empty value
+     */
+    public static int formatValue(int value, char[] chars) {
+        if (value == EMPTY_VALUE) {
+            return 0;
+        }
+        int length = 0;
+        if (value < 0) {
+            chars[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return length + digits;
+    }
+
+    /**
+     * Format an observation time that is present into chars[0, length)
+     *
+     * @return the length of the formatted time
+     */
+    public static int formatObsTime(int obsTime, char[] chars) {
+        return formatDigits(obsTime, 4, chars);
+    }
+
+    private static String formatDigits(int value, int width) {
+        char[] digits = new char[width];
+        formatDigits(value, width, digits);
+        return new String(digits);
+    }
+
+    private static int formatDigits(int value, int width, char[] chars) {
+        for (int i = width - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return width;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.energybot_weather_app.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Content hashes of an ingested dataset: one per station, taken over the station's unfiltered
+ * response, and one for the dataset as a whole. Written next to the station files at the end
+ * of an ingest and used as the API's ETags.
+ *
+ * @param hash hash over all station hashes, changes whenever any station changes
+ * @param createdAt when the dataset was ingested, in epoch milliseconds
+ * @param stations station ID to the hash of its unfiltered response
+ */
+public record DatasetHashes(String hash, long createdAt, Map<String, String> stations) {
+    // Not a station file name - the API strips dots from station IDs
+    public static final String FILE_NAME = "dataset.hashes";
+
+    // Hashes are truncated SHA-256 digests, plenty to tell versions apart
+    private static final int HASH_BYTES = 16;
+
+    public static DatasetHashes of(Map<String, String> stations, long createdAt) {
+        Map<String, String> sorted = new TreeMap<>(stations);
+        MessageDigest digest = newDigest();
+        sorted.forEach((stationId, hash) -> {
+            digest.update(stationId.getBytes(StandardCharsets.US_ASCII));
+            digest.update((byte) ':');
+            digest.update(hash.getBytes(StandardCharsets.US_ASCII));
+            digest.update((byte) '\n');
+        });
+        return new DatasetHashes(toHash(digest), createdAt, sorted);
+    }
+
+    /**
+     * Read the hashes of the dataset in a directory
+     *
+     * @return the hashes, or null if the dataset was ingested without them
+     */
+    public static DatasetHashes read(Path directory, ObjectMapper objectMapper) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        return objectMapper.readValue(file.toFile(), DatasetHashes.class);
+    }
+
+    /**
+     * Write the hashes into a directory, replacing any previous ones in one step
+     */
+    public void write(Path directory, ObjectMapper objectMapper) throws IOException {
+        DatasetStore.writeDurably(directory.resolve(FILE_NAME), ByteBuffer.wrap(objectMapper.writeValueAsBytes(this)));
+    }
+
+    public String stationHash(String stationId) {
+        return stations.get(stationId);
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static String toHash(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest(), 0, HASH_BYTES);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.energybot_weather_app.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description of one published dataset version: where it came from and what it holds.
+ * Written last into a version's directory, so a version without a manifest is incomplete.
+ *
+ * @param version the version's name, also its directory name
+ * @param createdAt when the version was built, in epoch milliseconds
+ * @param sourceUrl URL of the data file the version was built from, the URL pattern for a version
+ *                  built from one file per year
+ * @param sourceEtag the data file's entity tag, or null if the server sent none
+ * @param sourceLastModified the data file's Last-Modified header, or null if the server sent none
+ * @param sourceLength the data file's length in bytes
+ * @param format station file format, "binary" or "json"
+ * @param lines lines read from the data file
+ * @param validLines lines written to a station file
+ * @param datasetHash hash over all station hashes, see {@link DatasetHashes}
+ * @param stations station ID to what was written for the station; for a partitioned version, the
+ *                 records of all years with hashes over the station's hashes in each year
+ * @param years the {@link YearPartitions} with their own manifests, null if the version isn't partitioned
+ */
+public record DatasetManifest(String version, long createdAt, String sourceUrl, String sourceEtag,
+                              String sourceLastModified, long sourceLength, String format, long lines,
+                              long validLines, String datasetHash, Map<String, Station> stations,
+                              List<Integer> years) {
+    public static final String FILE_NAME = "manifest.json";
+
+    /**
+     * @param records number of records in the station file
+     * @param checksum truncated SHA-256 of the station file
+     * @param hash content hash of the station's unfiltered response
+     * @param recordsHash truncated SHA-256 of the station's encoded records, known before its files
+     *                    are written, so a refresh can tell which stations it can take over unchanged
+     */
+    public record Station(int records, String checksum, String hash, String recordsHash) {
+    }
+
+    /**
+     * Read the manifest of a dataset version
+     *
+     * @return the manifest, or null if the directory has none
+     */
+    public static DatasetManifest read(Path directory, ObjectMapper objectMapper) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        return objectMapper.readValue(file.toFile(), DatasetManifest.class);
+    }
+
+    /**
+     * Write the manifest into a directory in one step, so it is either complete or missing
+     */
+    public void write(Path directory, ObjectMapper objectMapper) throws IOException {
+        DatasetStore.writeDurably(directory.resolve(FILE_NAME), ByteBuffer.wrap(objectMapper.writeValueAsBytes(this)));
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.energybot_weather_app.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Layout of the data directory, which holds every dataset version side by side:
+ *
+ * <pre>
+ * CURRENT              name of the version being served
+ * versions/&lt;version&gt;/  station files and manifest of each published version
+ * staging/             the version being built
+ * </pre>
+ *
+ * A version is built in the staging directory, moved into {@code versions/} and then made current
+ * by replacing {@code CURRENT} in one atomic rename. Readers resolve {@code CURRENT} once and keep
+ * using that version's files until told about the switch, so a half-built version is never served
+ * and the old one stays readable until after the switch.
+ */
+public class DatasetStore {
+    private static final Logger logger = LoggerFactory.getLogger(DatasetStore.class);
+
+    public static final String CURRENT_FILE = "CURRENT";
+    private static final String VERSIONS_DIRECTORY = "versions";
+    private static final String STAGING_DIRECTORY = "staging";
+
+    // Versions kept besides the current one, for requests still reading them
+    private static final int PREVIOUS_VERSIONS_KEPT = 1;
+
+    // Version names sort in the order they were created
+    private static final DateTimeFormatter VERSION_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssSSS'Z'").withZone(ZoneOffset.UTC);
+
+    private final Path root;
+
+    public DatasetStore(Path root) {
+        this.root = root;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public Path getStagingDirectory() {
+        return root.resolve(STAGING_DIRECTORY);
+    }
+
+    public Path getVersionDirectory(String version) {
+        return root.resolve(VERSIONS_DIRECTORY).resolve(version);
+    }
+
+    /**
+     * Name for a version created at the given time
+     */
+    public static String newVersion(long timeMillis) {
+        return VERSION_FORMAT.format(Instant.ofEpochMilli(timeMillis));
+    }
+
+    /**
+     * @return the name of the version being served, or null if none was published yet
+     */
+    public String getCurrentVersion() throws IOException {
+        Path file = root.resolve(CURRENT_FILE);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        String version = Files.readString(file, StandardCharsets.US_ASCII).trim();
+        return version.isEmpty() ? null : version;
+    }
+
+    /**
+     * @return the directory of the version being served, or null if none was published yet
+     */
+    public Path getCurrentDirectory() throws IOException {
+        String version = getCurrentVersion();
+        return version == null ? null : getVersionDirectory(version);
+    }
+
+    /**
+     * Publish the staged version: move it into place, switch {@code CURRENT} over to it
+     * and drop versions that are no longer needed
+     *
+     * @return the published version's directory
+     */
+    public Path publish(String version) throws IOException {
+        // Everything the version holds is on disk before CURRENT can point at it
+        syncRecursively(getStagingDirectory());
+        Path directory = getVersionDirectory(version);
+        Files.createDirectories(directory.getParent());
+        Files.move(getStagingDirectory(), directory, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(directory.getParent());
+
+        writeDurably(root.resolve(CURRENT_FILE), StandardCharsets.US_ASCII.encode(version + "\n"));
+        logger.info("Published dataset version {}", version);
+
+        removeOldVersions(version);
+        removeUnversionedFiles();
+        return directory;
+    }
+
+    /**
+     * Replace a file in one step with content that is on disk before the file appears under its name,
+     * so after a crash it is either the old file or the complete new one
+     */
+    public static void writeDurably(Path file, ByteBuffer content) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(file.getParent());
+    }
+
+    /**
+     * Flush every file under a directory and the directories themselves to disk. Files linked from
+     * an older version have nothing left to flush, so taking them over stays cheap.
+     */
+    private static void syncRecursively(Path directory) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            paths = walk.toList();
+        }
+        for (Path path : paths) {
+            if (Files.isRegularFile(path)) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    channel.force(true);
+                }
+            }
+        }
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                syncDirectory(path);
+            }
+        }
+    }
+
+    /**
+     * Flush a directory's entries to disk, so files created, renamed or moved into it stay there after a crash
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform can open a directory, Windows for one; its renames are durable without it
+            logger.debug("Cannot sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Delete versions older than the current one beyond the few that are kept
+     */
+    private void removeOldVersions(String current) throws IOException {
+        List<Path> older;
+        try (Stream<Path> versions = Files.list(root.resolve(VERSIONS_DIRECTORY))) {
+            older = versions.filter(path -> path.getFileName().toString().compareTo(current) < 0)
+                    .sorted(Comparator.reverseOrder())
+                    .toList();
+        }
+        for (Path version : older.subList(Math.min(PREVIOUS_VERSIONS_KEPT, older.size()), older.size())) {
+            logger.info("Removing dataset version {}", version.getFileName());
+            deleteRecursively(version);
+        }
+    }
+
+    /**
+     * @return whether the data directory holds station files from before versioning, which are
+     *         served as they are until the first version is published
+     */
+    public boolean hasUnversionedStations() throws IOException {
+        if (!Files.isDirectory(root)) {
+            return false;
+        }
+        try (Stream<Path> paths = Files.list(root)) {
+            return paths.filter(Files::isRegularFile)
+                    .map(path -> path.getFileName().toString())
+                    .filter(DatasetStore::isStationFile)
+                    .anyMatch(name -> name.endsWith(".json") || name.endsWith(BinaryStationFormat.FILE_EXTENSION));
+        }
+    }
+
+    /**
+     * Whether a file name is one an ingest from before versioning wrote into the data directory
+     */
+    static boolean isStationFile(String name) {
+        // The manifest and the ingest checkpoint are JSON as well
+        if (name.equals(DatasetManifest.FILE_NAME) || name.equals("checkpoint.json")) {
+            return false;
+        }
+        return name.endsWith(".json") || name.endsWith(BinaryStationFormat.FILE_EXTENSION) || name.endsWith(".json.gz")
+                || name.endsWith(StationSummary.FILE_EXTENSION) || name.equals(DatasetHashes.FILE_NAME);
+    }
+
+    /**
+     * Delete station files left directly in the data directory by ingests from before versioning.
+     * Anything else in there isn't ours and is left alone.
+     */
+    private void removeUnversionedFiles() throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(root)) {
+            files = paths.filter(Files::isRegularFile)
+                    .filter(path -> isStationFile(path.getFileName().toString()))
+                    .toList();
+        }
+        if (!files.isEmpty()) {
+            logger.info("Removing {} files of the unversioned dataset in {}", files.size(), root);
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Delete a directory and everything in it
+     */
+    public static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Hard link every file of a directory and its subdirectories into a new directory, copying files
+     * where the file system doesn't support links. Lets a new version share unchanged files with an old one.
+     */
+    public static void linkFiles(Path source, Path target) throws IOException {
+        Files.createDirectories(target);
+        List<Path> entries;
+        try (Stream<Path> paths = Files.list(source)) {
+            entries = paths.toList();
+        }
+        for (Path entry : entries) {
+            Path link = target.resolve(entry.getFileName().toString());
+            if (Files.isDirectory(entry)) {
+                linkFiles(entry, link);
+                continue;
+            }
+            if (!Files.isRegularFile(entry)) {
+                continue;
+            }
+            try {
+                Files.createLink(link, entry);
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(entry, link);
+            }
+        }
+    }
+}
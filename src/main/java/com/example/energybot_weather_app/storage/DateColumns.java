@@ -0,0 +1,170 @@
+package com.example.energybot_weather_app.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One day of a dataset across all its stations, the secondary layout next to the station files
+ * for questions like "TMAX of every station on 2024-07-15". Each day is a file
+ * {@code dates/<yyyyMMdd>.day} holding a column per element, all big-endian:
+ * <pre>
+ * header      magic (int) | version (short) | reserved (short) | date (int) | element count (int)
+ * dictionary  element count x [element name (int) | value count (int) | column offset (int)]
+ * column      value count x station (int), then value count x value (int), then value count x quality flag (byte)
+ * </pre>
+ * Stations are numbered by their position in {@code dates/stations.txt}, which lists the
+ * directory's station IDs in ascending order, one per line. A column is ordered by station, so
+ * looking up a station is a binary search.
+ */
+public final class DateColumns {
+    public static final String DIRECTORY = "dates";
+    public static final String FILE_EXTENSION = ".day";
+    public static final String STATIONS_FILE = "stations.txt";
+
+    public static final int MAGIC = 0x47484443; // "GHDC"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int DICTIONARY_ENTRY_SIZE = 12;
+    // Bytes of a value across the station, value and flag arrays
+    public static final int VALUE_SIZE = 9;
+
+    private final ByteBuffer buffer;
+    private final String[] stations;
+    private final int date;
+    private final String[] elements;
+    private final int[] counts;
+    private final int[] offsets;
+
+    private DateColumns(Path file, ByteBuffer buffer, String[] stations) throws IOException {
+        this.buffer = buffer;
+        this.stations = stations;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a date column file: " + file);
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("Unsupported date column file version, the data needs to be ingested again: " + file);
+        }
+        date = buffer.getInt(8);
+        int elementCount = buffer.getInt(12);
+        elements = new String[elementCount];
+        counts = new int[elementCount];
+        offsets = new int[elementCount];
+        for (int code = 0; code < elementCount; code++) {
+            int entry = HEADER_SIZE + code * DICTIONARY_ENTRY_SIZE;
+            elements[code] = BinaryStationFormat.unpackElement(buffer.getInt(entry));
+            counts[code] = buffer.getInt(entry + 4);
+            offsets[code] = buffer.getInt(entry + 8);
+            if ((long) offsets[code] + (long) counts[code] * VALUE_SIZE > buffer.capacity()) {
+                throw new IOException("Truncated date column file: " + file);
+            }
+        }
+    }
+
+    /**
+     * Map a day's file into memory
+     *
+     * @param stations the station list of the file's directory, see {@link #readStations}
+     */
+    public static DateColumns open(Path file, String[] stations) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new DateColumns(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), stations);
+        }
+    }
+
+    /**
+     * The file of a day in a directory of station files
+     */
+    public static Path file(Path directory, int date) {
+        return directory.resolve(DIRECTORY).resolve(BinaryStationFormat.formatDate(date) + FILE_EXTENSION);
+    }
+
+    /**
+     * The station IDs of a directory's date columns, in ascending order
+     */
+    public static String[] readStations(Path directory) throws IOException {
+        List<String> stations = Files.readAllLines(directory.resolve(DIRECTORY).resolve(STATIONS_FILE),
+                StandardCharsets.US_ASCII);
+        return stations.toArray(new String[0]);
+    }
+
+    /**
+     * The yyyyMMdd date of the day
+     */
+    public int date() {
+        return date;
+    }
+
+    /**
+     * Code of an element, ignoring case
+     *
+     * @return the code, or -1 if no station has the element on the day
+     */
+    public int find(String element) {
+        for (int code = 0; code < elements.length; code++) {
+            if (elements[code].equalsIgnoreCase(element)) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of stations with a row for the element
+     */
+    public int count(int code) {
+        return counts[code];
+    }
+
+    /**
+     * Station of the i-th value of an element, as its position in the station list
+     */
+    public int station(int code, int i) {
+        return buffer.getInt(offsets[code] + i * 4);
+    }
+
+    public String stationId(int code, int i) {
+        return stations[station(code, i)];
+    }
+
+    public int value(int code, int i) {
+        return buffer.getInt(offsets[code] + counts[code] * 4 + i * 4);
+    }
+
+    public byte qFlag(int code, int i) {
+        return buffer.get(offsets[code] + counts[code] * 8 + i);
+    }
+
+    /**
+     * Position of a station's value in an element's column
+     *
+     * @return the position, or -1 if the station has no row for the element on the day
+     */
+    public int indexOf(int code, String stationId) {
+        int station = Arrays.binarySearch(stations, stationId);
+        return station < 0 ? -1 : indexOf(code, station);
+    }
+
+    private int indexOf(int code, int station) {
+        int low = 0;
+        int high = counts[code] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int found = station(code, mid);
+            if (found < station) {
+                low = mid + 1;
+            } else if (found > station) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,448 @@
+package com.example.energybot_weather_app.storage;
+
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.energybot_weather_app.storage.WeatherRecordJson.*;
+
+/**
+ * Station data parsed from a JSON station file, held as primitive columns rather than a
+ * WeatherRecord per row:
+ * <pre>
+ * dates      int per row, yyyyMMdd
+ * values     int per row, {@link BinaryStationFormat#EMPTY_VALUE} if empty
+ * elements   short per row, a code into the element dictionary
+ * obsTimes   short per row, HHMM or {@link BinaryStationFormat#NO_OBS_TIME}
+ * flags      3 bytes per row: mFlag, qFlag, sFlag, 0 if absent
+ * </pre>
+ * Element names and station IDs are interned dictionary entries, and the per-row station codes
+ * are only kept if a file holds more than one station. That's 15 bytes a row instead of a few
+ * hundred, and date filters compare ints.
+ *
+ * Rows are kept in file order. A row whose fields wouldn't come back the same from the columns,
+ * like a date that isn't 8 digits or a value with a leading zero, keeps its WeatherRecord, so the
+ * records are written out exactly as they were read.
+ */
+public class JsonStationData implements StationData {
+    // Rough heap cost of the object, its arrays and dictionaries, and of a record kept as is
+    private static final int FIXED_OVERHEAD_BYTES = 256;
+    private static final int DICTIONARY_ENTRY_BYTES = 64;
+    private static final int RECORD_BYTES = 400;
+    private static final int FLAG_COUNT = 3;
+    // Fields of a record in the order the builder takes them
+    private static final String[] FIELD_NAMES = {
+            STATION_ID.getValue(), DATE.getValue(), ELEMENT.getValue(), VALUE.getValue(),
+            M_FLAG.getValue(), Q_FLAG.getValue(), S_FLAG.getValue(), OBS_TIME.getValue()};
+
+    private final int rowCount;
+    private final int[] dates;
+    private final int[] values;
+    private final short[] elements;
+    private final short[] obsTimes;
+    private final byte[] flags;
+    private final String[] elementNames;
+    private final String[] stationIds;
+    // Null while every row belongs to stationIds[0]
+    private final short[] stationCodes;
+    // Rows that don't fit the columns, by row
+    private final Map<Integer, WeatherRecord> records;
+    private final long estimatedBytes;
+
+    private JsonStationData(Builder builder) {
+        rowCount = builder.rowCount;
+        dates = Arrays.copyOf(builder.dates, rowCount);
+        values = Arrays.copyOf(builder.values, rowCount);
+        elements = Arrays.copyOf(builder.elements, rowCount);
+        obsTimes = Arrays.copyOf(builder.obsTimes, rowCount);
+        flags = Arrays.copyOf(builder.flags, rowCount * FLAG_COUNT);
+        elementNames = builder.elementNames.toArray(new String[0]);
+        stationIds = builder.stationIds.toArray(new String[0]);
+        stationCodes = builder.stationIds.size() > 1 ? Arrays.copyOf(builder.stationCodes, rowCount) : null;
+        records = builder.records.isEmpty() ? Map.of() : builder.records;
+        estimatedBytes = FIXED_OVERHEAD_BYTES + (long) rowCount * (4 + 4 + 2 + 2 + FLAG_COUNT)
+                + (stationCodes == null ? 0 : 2L * rowCount)
+                + (long) (elementNames.length + stationIds.length) * DICTIONARY_ENTRY_BYTES
+                + (long) records.size() * RECORD_BYTES;
+    }
+
+    public JsonStationData(List<WeatherRecord> records) {
+        this(collect(records));
+    }
+
+    private static Builder collect(List<WeatherRecord> records) {
+        Builder builder = new Builder();
+        for (WeatherRecord record : records) {
+            builder.add(record.getStationId(), record.getDate(), record.getElement(), record.getValue(),
+                    record.getmFlag(), record.getqFlag(), record.getsFlag(), record.getObsTime());
+        }
+        return builder;
+    }
+
+    /**
+     * Read a JSON station file, an array of records, straight into columns without building a
+     * WeatherRecord per row
+     */
+    public static JsonStationData read(Path file, JsonFactory jsonFactory) throws IOException {
+        return read(jsonFactory.createParser(Files.newInputStream(file)), file);
+    }
+
+    /**
+     * Read a JSON station file already in memory, such as one kept in a segment
+     *
+     * @param buffer the file's bytes, on the heap
+     * @param file where the file came from, for error messages
+     */
+    public static JsonStationData read(ByteBuffer buffer, Path file, JsonFactory jsonFactory) throws IOException {
+        return read(jsonFactory.createParser(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()), file);
+    }
+
+    private static JsonStationData read(JsonParser jsonParser, Path file) throws IOException {
+        Builder builder = new Builder();
+        try (JsonParser parser = jsonParser) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Not a JSON array of records: " + file);
+            }
+            String[] fields = new String[FIELD_NAMES.length];
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                Arrays.fill(fields, null);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    int field = fieldIndex(parser.currentName());
+                    JsonToken token = parser.nextToken();
+                    if (field < 0 || !token.isScalarValue() || token == JsonToken.VALUE_NULL) {
+                        parser.skipChildren();
+                    } else {
+                        fields[field] = parser.getValueAsString();
+                    }
+                }
+                builder.add(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5], fields[6], fields[7]);
+            }
+        }
+        return new JsonStationData(builder);
+    }
+
+    private static int fieldIndex(String name) {
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            if (FIELD_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of rows
+     */
+    public int size() {
+        return rowCount;
+    }
+
+    @Override
+    public StationSelection select(String elementType, String startDate, String endDate) {
+        Filter filter = new Filter(elementType, startDate, endDate);
+        int count = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (filter.test(row)) {
+                count++;
+            }
+        }
+        return new Selection(filter, count);
+    }
+
+    @Override
+    public void visitValues(ValueVisitor visitor) {
+        for (int row = 0; row < rowCount; row++) {
+            WeatherRecord record = record(row);
+            if (record == null) {
+                visitor.visit(elementNames[elements[row]], dates[row], values[row], flags[row * FLAG_COUNT + 1]);
+            } else {
+                String qFlag = record.getqFlag();
+                visitor.visit(record.getElement(), BinaryStationFormat.parseDate(record.getDate()), parseValue(record.getValue()),
+                        qFlag == null || qFlag.isBlank() ? 0 : (byte) qFlag.charAt(0));
+            }
+        }
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Element type and date range filters, each optional. Dates compare as yyyyMMdd ints; a
+     * filter date that isn't 8 digits, and the rows kept as records, compare as strings.
+     */
+    private final class Filter {
+        private final String elementType;
+        // Element codes the element type matches, names may differ in case only
+        private final boolean[] elementMatches;
+        private final String startDate;
+        private final String endDate;
+        private final int startBound;
+        private final int endBound;
+
+        Filter(String elementType, String startDate, String endDate) {
+            this.elementType = elementType == null || elementType.isEmpty() ? null : elementType;
+            this.startDate = startDate == null || startDate.isEmpty() ? null : startDate;
+            this.endDate = endDate == null || endDate.isEmpty() ? null : endDate;
+            elementMatches = new boolean[elementNames.length];
+            for (int code = 0; this.elementType != null && code < elementNames.length; code++) {
+                elementMatches[code] = elementNames[code].equalsIgnoreCase(this.elementType);
+            }
+            startBound = BinaryStationFormat.parseDate(this.startDate);
+            endBound = BinaryStationFormat.parseDate(this.endDate);
+        }
+
+        boolean test(int row) {
+            WeatherRecord record = record(row);
+            if (record != null) {
+                return test(record);
+            }
+            if (elementType != null && !elementMatches[elements[row]]) {
+                return false;
+            }
+            return (startDate == null || compareDate(dates[row], startDate, startBound) >= 0)
+                    && (endDate == null || compareDate(dates[row], endDate, endBound) <= 0);
+        }
+
+        private int compareDate(int date, String filterDate, int parsedFilterDate) {
+            if (parsedFilterDate >= 0) {
+                return Integer.compare(date, parsedFilterDate);
+            }
+            return BinaryStationFormat.formatDate(date).compareTo(filterDate);
+        }
+
+        private boolean test(WeatherRecord record) {
+            if (elementType != null && !elementType.equalsIgnoreCase(record.getElement())) {
+                return false;
+            }
+            return (startDate == null || record.getDate().compareTo(startDate) >= 0)
+                    && (endDate == null || record.getDate().compareTo(endDate) <= 0);
+        }
+    }
+
+    /**
+     * The matching rows, found again by the filter each time they are written or collected
+     */
+    private final class Selection implements StationSelection {
+        private final Filter filter;
+        private final int count;
+
+        Selection(Filter filter, int count) {
+            this.filter = filter;
+            this.count = count;
+        }
+
+        @Override
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public void writeJson(JsonGenerator generator) throws IOException {
+            char[] digits = new char[BinaryStationFormat.MAX_DIGITS];
+            for (int row = 0; row < rowCount; row++) {
+                if (!filter.test(row)) {
+                    continue;
+                }
+                WeatherRecord record = record(row);
+                if (record != null) {
+                    WeatherRecordJson.write(generator, record);
+                    continue;
+                }
+                generator.writeStartObject();
+                generator.writeFieldName(STATION_ID);
+                generator.writeString(stationId(row));
+                generator.writeFieldName(DATE);
+                generator.writeString(digits, 0, BinaryStationFormat.formatDate(dates[row], digits));
+                generator.writeFieldName(ELEMENT);
+                generator.writeString(elementNames[elements[row]]);
+                generator.writeFieldName(VALUE);
+                generator.writeString(digits, 0, BinaryStationFormat.formatValue(values[row], digits));
+                writeFlag(generator, M_FLAG, flags[row * FLAG_COUNT]);
+                writeFlag(generator, Q_FLAG, flags[row * FLAG_COUNT + 1]);
+                writeFlag(generator, S_FLAG, flags[row * FLAG_COUNT + 2]);
+                if (obsTimes[row] != BinaryStationFormat.NO_OBS_TIME) {
+                    generator.writeFieldName(OBS_TIME);
+                    generator.writeString(digits, 0, BinaryStationFormat.formatObsTime(obsTimes[row], digits));
+                }
+                generator.writeEndObject();
+            }
+        }
+
+        @Override
+        public List<WeatherRecord> toRecords() {
+            List<WeatherRecord> result = new ArrayList<>(count);
+            for (int row = 0; row < rowCount; row++) {
+                if (filter.test(row)) {
+                    result.add(toRecord(row));
+                }
+            }
+            return result;
+        }
+
+        private void writeFlag(JsonGenerator generator, SerializableString name, byte flag) throws IOException {
+            if (flag > 0) {
+                generator.writeFieldName(name);
+                generator.writeString(BinaryStationFormat.formatFlag(flag));
+            }
+        }
+    }
+
+    private String stationId(int row) {
+        return stationIds[stationCodes == null ? 0 : stationCodes[row]];
+    }
+
+    /**
+     * The record a row kept because it doesn't fit the columns, or null
+     */
+    private WeatherRecord record(int row) {
+        return records.isEmpty() ? null : records.get(row);
+    }
+
+    private WeatherRecord toRecord(int row) {
+        WeatherRecord record = record(row);
+        if (record != null) {
+            return record;
+        }
+        record = new WeatherRecord(stationId(row), BinaryStationFormat.formatDate(dates[row]), elementNames[elements[row]],
+                BinaryStationFormat.formatValue(values[row]));
+        record.setmFlag(BinaryStationFormat.formatFlag(flags[row * FLAG_COUNT]));
+        record.setqFlag(BinaryStationFormat.formatFlag(flags[row * FLAG_COUNT + 1]));
+        record.setsFlag(BinaryStationFormat.formatFlag(flags[row * FLAG_COUNT + 2]));
+        record.setObsTime(BinaryStationFormat.formatObsTime(obsTimes[row]));
+        return record;
+    }
+
+    private static int parseValue(String value) {
+        if (value == null || value.isBlank()) {
+            return BinaryStationFormat.EMPTY_VALUE;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return BinaryStationFormat.EMPTY_VALUE;
+        }
+    }
+
+    /**
+     * Collects rows into growing columns
+     */
+    private static final class Builder {
+        private int rowCount;
+        private int[] dates = new int[256];
+        private int[] values = new int[256];
+        private short[] elements = new short[256];
+        private short[] obsTimes = new short[256];
+        private byte[] flags = new byte[256 * FLAG_COUNT];
+        private short[] stationCodes = new short[256];
+        private final List<String> elementNames = new ArrayList<>();
+        private final List<String> stationIds = new ArrayList<>();
+        private final Map<Integer, WeatherRecord> records = new HashMap<>();
+
+        void add(String stationId, String date, String element, String value,
+                 String mFlag, String qFlag, String sFlag, String obsTime) {
+            if (rowCount == dates.length) {
+                int capacity = rowCount * 2;
+                dates = Arrays.copyOf(dates, capacity);
+                values = Arrays.copyOf(values, capacity);
+                elements = Arrays.copyOf(elements, capacity);
+                obsTimes = Arrays.copyOf(obsTimes, capacity);
+                flags = Arrays.copyOf(flags, capacity * FLAG_COUNT);
+                stationCodes = Arrays.copyOf(stationCodes, capacity);
+            }
+            int row = rowCount++;
+
+            int parsedDate = BinaryStationFormat.parseDate(date);
+            int parsedValue = value == null || value.isEmpty() ? BinaryStationFormat.EMPTY_VALUE : parseInt(value);
+            int parsedObsTime = obsTime == null ? BinaryStationFormat.NO_OBS_TIME : parseObsTime(obsTime);
+            int stationCode = stationId == null ? -1 : code(stationIds, stationId);
+            int elementCode = element == null ? -1 : code(elementNames, element);
+            boolean fits = parsedDate >= 0 && value != null
+                    && (value.isEmpty() || BinaryStationFormat.formatValue(parsedValue).equals(value))
+                    && (obsTime == null || parsedObsTime >= 0)
+                    && stationCode >= 0 && elementCode >= 0
+                    && fitsFlag(mFlag) && fitsFlag(qFlag) && fitsFlag(sFlag);
+            if (!fits) {
+                WeatherRecord record = new WeatherRecord(stationId, date, element, value);
+                record.setmFlag(mFlag);
+                record.setqFlag(qFlag);
+                record.setsFlag(sFlag);
+                record.setObsTime(obsTime);
+                records.put(row, record);
+                return;
+            }
+            dates[row] = parsedDate;
+            values[row] = parsedValue;
+            elements[row] = (short) elementCode;
+            obsTimes[row] = (short) parsedObsTime;
+            flags[row * FLAG_COUNT] = flag(mFlag);
+            flags[row * FLAG_COUNT + 1] = flag(qFlag);
+            flags[row * FLAG_COUNT + 2] = flag(sFlag);
+            stationCodes[row] = (short) stationCode;
+        }
+
+        /**
+         * Code of a dictionary entry, adding it if it's new
+         *
+         * @return the code, or -1 if the dictionary is full
+         */
+        private static int code(List<String> dictionary, String entry) {
+            int code = dictionary.indexOf(entry);
+            if (code < 0 && dictionary.size() <= Short.MAX_VALUE) {
+                code = dictionary.size();
+                dictionary.add(entry.intern());
+            }
+            return code;
+        }
+
+        private static int parseInt(String value) {
+            try {
+                int parsed = Integer.parseInt(value);
+                return parsed == BinaryStationFormat.EMPTY_VALUE ? 0 : parsed;
+            } catch (NumberFormatException e) {
+                // Doesn't format back to the same text, so the row keeps its record
+                return 0;
+            }
+        }
+
+        /**
+         * @return the HHMM time, or -1 if it isn't 4 digits
+         */
+        private static int parseObsTime(String obsTime) {
+            if (obsTime.length() != 4) {
+                return -1;
+            }
+            int time = 0;
+            for (int i = 0; i < 4; i++) {
+                char c = obsTime.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                time = time * 10 + (c - '0');
+            }
+            return time;
+        }
+
+        private static boolean fitsFlag(String flag) {
+            return flag == null || (flag.length() == 1 && flag.charAt(0) > 0 && flag.charAt(0) < 128);
+        }
+
+        private static byte flag(String flag) {
+            return flag == null ? 0 : (byte) flag.charAt(0);
+        }
+    }
+}
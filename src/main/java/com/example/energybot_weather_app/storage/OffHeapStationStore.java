@@ -0,0 +1,201 @@
+package com.example.energybot_weather_app.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Every binary station file of a dataset copied into direct buffers, outside the GC heap.
+ *
+ * The files are packed back to back into chunks of up to {@link #CHUNK_SIZE} bytes, with an
+ * offset table per directory: station IDs in ascending order and the chunk, offset and length of
+ * each station's bytes. A station is found by binary search and read as a {@link BinaryStationFile}
+ * over a slice of its chunk, so queries never touch the disk and the heap only holds the table.
+ * Immutable once loaded and safe for concurrent reads. A directory packed into
+ * {@link StationSegments} is loaded from the ranges of its segments.
+ */
+public final class OffHeapStationStore {
+    public static final int CHUNK_SIZE = 256 * 1024 * 1024;
+
+    private final ByteBuffer[] chunks;
+    private final Map<Path, Directory> directories;
+    private final int stationCount;
+    private final long sizeBytes;
+
+    private OffHeapStationStore(ByteBuffer[] chunks, Map<Path, Directory> directories, int stationCount, long sizeBytes) {
+        this.chunks = chunks;
+        this.directories = directories;
+        this.stationCount = stationCount;
+        this.sizeBytes = sizeBytes;
+    }
+
+    /**
+     * Station IDs of a directory in ascending order, with where each station's file is kept
+     */
+    private record Directory(String[] stationIds, int[] chunks, int[] offsets, int[] lengths) {
+    }
+
+    /**
+     * Copy the binary station files of the directories into direct buffers, checking each file
+     * as it goes
+     *
+     * @param maxBytes most bytes of station files to load
+     * @throws IOException if a file can't be read, isn't a valid station file, or the files
+     *         together are larger than maxBytes
+     */
+    public static OffHeapStationStore load(List<Path> directories, long maxBytes) throws IOException {
+        List<List<String>> stations = new ArrayList<>(directories.size());
+        List<List<StationSegments.Range>> files = new ArrayList<>(directories.size());
+        long total = 0;
+        for (Path directory : directories) {
+            List<String> stationIds = new ArrayList<>();
+            List<StationSegments.Range> stationFiles = new ArrayList<>();
+            StationSegments segments = StationSegments.open(directory);
+            if (segments != null) {
+                try (segments) {
+                    for (int i = 0; i < segments.size(); i++) {
+                        StationSegments.Range range = segments.range(i, BinaryStationFormat.FILE_EXTENSION);
+                        if (range != null) {
+                            stationIds.add(segments.stationId(i));
+                            stationFiles.add(range);
+                        }
+                    }
+                }
+            } else {
+                List<Path> paths;
+                try (Stream<Path> entries = Files.list(directory)) {
+                    paths = entries.filter(path -> path.getFileName().toString().endsWith(BinaryStationFormat.FILE_EXTENSION))
+                            .sorted()
+                            .toList();
+                }
+                for (Path file : paths) {
+                    String name = file.getFileName().toString();
+                    long size = Files.size(file);
+                    if (size > Integer.MAX_VALUE) {
+                        throw new IOException("Station file too large: " + file);
+                    }
+                    stationIds.add(name.substring(0, name.length() - BinaryStationFormat.FILE_EXTENSION.length()));
+                    stationFiles.add(new StationSegments.Range(file, 0, (int) size));
+                }
+            }
+            for (StationSegments.Range file : stationFiles) {
+                total += file.length();
+            }
+            stations.add(stationIds);
+            files.add(stationFiles);
+        }
+        if (total > maxBytes) {
+            throw new IOException("The station files take " + total / (1024 * 1024) + " MB, more than the "
+                    + maxBytes / (1024 * 1024) + " MB allowed");
+        }
+
+        List<ByteBuffer> chunks = new ArrayList<>();
+        ByteBuffer chunk = null;
+        long remaining = total;
+        int stationCount = 0;
+        Map<Path, Directory> index = new HashMap<>();
+        for (int d = 0; d < directories.size(); d++) {
+            List<StationSegments.Range> stationFiles = files.get(d);
+            int count = stationFiles.size();
+            Directory directory = new Directory(stations.get(d).toArray(new String[0]), new int[count], new int[count],
+                    new int[count]);
+            // Stations packed into a segment come one after another, so its channel stays open between them
+            Path open = null;
+            FileChannel channel = null;
+            try {
+                for (int i = 0; i < count; i++) {
+                    StationSegments.Range file = stationFiles.get(i);
+                    if (!file.file().equals(open)) {
+                        if (channel != null) {
+                            channel.close();
+                        }
+                        channel = FileChannel.open(file.file(), StandardOpenOption.READ);
+                        open = file.file();
+                    }
+                    int size = file.length();
+                    if (chunk == null || chunk.remaining() < size) {
+                        // The last chunk only takes what is left, a file larger than a chunk gets one of its own
+                        chunk = ByteBuffer.allocateDirect((int) Math.max(size, Math.min(CHUNK_SIZE, remaining)));
+                        chunks.add(chunk);
+                    }
+                    int offset = chunk.position();
+                    ByteBuffer target = chunk.slice(offset, size);
+                    while (target.hasRemaining()) {
+                        if (channel.read(target, file.offset() + target.position()) < 0) {
+                            throw new IOException("Station file changed while loading: " + file.file());
+                        }
+                    }
+                    BinaryStationFile.wrap(chunk.slice(offset, size), file.file());
+                    chunk.position(offset + size);
+                    remaining -= size;
+
+                    directory.chunks()[i] = chunks.size() - 1;
+                    directory.offsets()[i] = offset;
+                    directory.lengths()[i] = size;
+                }
+            } finally {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+            // A directory of JSON station files is left to be read from disk
+            if (count > 0) {
+                index.put(key(directories.get(d)), directory);
+            }
+            stationCount += count;
+        }
+        return new OffHeapStationStore(chunks.toArray(new ByteBuffer[0]), index, stationCount, total);
+    }
+
+    /**
+     * Whether the directory's stations were loaded, false for one without binary station files
+     */
+    public boolean contains(Path directory) {
+        return directories.containsKey(key(directory));
+    }
+
+    /**
+     * A station's file, read from the store
+     *
+     * @return the file, or null if the directory was loaded without the station or wasn't loaded
+     */
+    public BinaryStationFile station(Path directory, String stationId) throws IOException {
+        Directory entry = directories.get(key(directory));
+        if (entry == null) {
+            return null;
+        }
+        int i = Arrays.binarySearch(entry.stationIds(), stationId);
+        if (i < 0) {
+            return null;
+        }
+        return BinaryStationFile.wrap(chunks[entry.chunks()[i]].slice(entry.offsets()[i], entry.lengths()[i]),
+                directory.resolve(stationId + BinaryStationFormat.FILE_EXTENSION));
+    }
+
+    /**
+     * Number of stations loaded, counting a station once per directory it's in
+     */
+    public int stationCount() {
+        return stationCount;
+    }
+
+    /**
+     * Bytes of station files held off the heap
+     */
+    public long sizeBytes() {
+        return sizeBytes;
+    }
+
+    private static Path key(Path directory) {
+        return directory.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.energybot_weather_app.storage;
+
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A station's selections from several year partitions, one after the other. The partitions
+ * hold disjoint, ascending date ranges, so the result is in date order without merging.
+ */
+public class PartitionedSelection implements StationSelection {
+    private final List<StationSelection> partitions;
+    private final int count;
+
+    /**
+     * @param partitions selections from the partitions, in ascending year order
+     */
+    public PartitionedSelection(List<StationSelection> partitions) {
+        this.partitions = partitions;
+        int total = 0;
+        for (StationSelection partition : partitions) {
+            total += partition.count();
+        }
+        this.count = total;
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public void writeJson(JsonGenerator generator) throws IOException {
+        for (StationSelection partition : partitions) {
+            partition.writeJson(generator);
+        }
+    }
+
+    @Override
+    public List<WeatherRecord> toRecords() {
+        List<WeatherRecord> records = new ArrayList<>(count);
+        for (StationSelection partition : partitions) {
+            records.addAll(partition.toRecords());
+        }
+        return records;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.energybot_weather_app.storage;
+
+import com.example.energybot_weather_app.model.WeatherRecord;
+
+import java.util.List;
+
+/**
+ * All records of one station, loaded into memory so that any combination of
+ * filters can be answered without going back to disk.
+ */
+public interface StationData {
+
+    /**
+     * Select the records matching the filters, each of which is optional
+     *
+     * @param elementType element type to match, ignoring case (e.g., TMAX, PRCP)
+     * @param startDate first date to include (YYYYMMDD format)
+     * @param endDate last date to include (YYYYMMDD format)
+     */
+    StationSelection select(String elementType, String startDate, String endDate);
+
+    /**
+     * Records matching the filters, see {@link #select}
+     */
+    default List<WeatherRecord> query(String elementType, String startDate, String endDate) {
+        return select(elementType, startDate, endDate).toRecords();
+    }
+
+    /**
+     * Pass every record to the visitor as primitives, without building records or strings per row
+     */
+    void visitValues(ValueVisitor visitor);
+
+    /**
+     * Estimated heap footprint in bytes, used to weigh cache entries
+     */
+    long estimatedBytes();
+
+    interface ValueVisitor {
+        /**
+         * @param date the date as a yyyyMMdd int
+         * @param value the value, {@link BinaryStationFormat#EMPTY_VALUE} if it is empty
+         * @param qFlag the quality flag, 0 if there is none
+         */
+        void visit(String element, int date, int value, byte qFlag);
+    }
+}
@@ -0,0 +1,399 @@
+package com.example.energybot_weather_app.storage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Station metadata from the GHCN-Daily station list ({@code ghcnd-stations.txt}) with a spatial
+ * index for nearest station and radius queries.
+ *
+ * Stations are points on the unit sphere, so the straight-line (chord) distance between them
+ * orders them the same way as the great-circle distance, without special cases at the poles or
+ * the date line. The points sit in a k-d tree laid out implicitly in parallel primitive arrays:
+ * the subtree over [from, to) has its splitting point in the middle and splits on x, y and z in
+ * turn, so a query only visits the cells it can't rule out by their distance from the splitting planes.
+ */
+public final class StationIndex {
+    public static final String FILE_NAME = "ghcnd-stations.txt";
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+    // The station list's marker for an unknown elevation
+    public static final double MISSING_ELEVATION = -999.9;
+
+    private final String[] ids;
+    private final String[] names;
+    private final String[] states;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] elevations;
+    // Unit vectors of the stations, in tree order
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+
+    private StationIndex(List<String[]> rows, double[] latitudes, double[] longitudes, double[] elevations) {
+        int count = rows.size();
+        int[] order = new int[count];
+        double[][] points = new double[3][count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            double lat = Math.toRadians(latitudes[i]);
+            double lon = Math.toRadians(longitudes[i]);
+            points[0][i] = Math.cos(lat) * Math.cos(lon);
+            points[1][i] = Math.cos(lat) * Math.sin(lon);
+            points[2][i] = Math.sin(lat);
+        }
+        build(order, 0, count, 0, points);
+
+        ids = new String[count];
+        names = new String[count];
+        states = new String[count];
+        this.latitudes = new double[count];
+        this.longitudes = new double[count];
+        this.elevations = new double[count];
+        x = new double[count];
+        y = new double[count];
+        z = new double[count];
+        for (int i = 0; i < count; i++) {
+            int station = order[i];
+            String[] row = rows.get(station);
+            ids[i] = row[0];
+            names[i] = row[1];
+            states[i] = row[2];
+            this.latitudes[i] = latitudes[station];
+            this.longitudes[i] = longitudes[station];
+            this.elevations[i] = elevations[station];
+            x[i] = points[0][station];
+            y[i] = points[1][station];
+            z[i] = points[2][station];
+        }
+    }
+
+    /**
+     * Order the stations in [from, to) into a subtree: the median on the axis in the middle,
+     * smaller ones before it and larger ones after it, each half a subtree on the next axis
+     */
+    private static void build(int[] order, int from, int to, int axis, double[][] points) {
+        if (to - from <= 1) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        select(order, from, to - 1, mid, points[axis]);
+        build(order, from, mid, (axis + 1) % 3, points);
+        build(order, mid + 1, to, (axis + 1) % 3, points);
+    }
+
+    /**
+     * Partially order the stations in [left, right] so that the one at {@code k} is the one a
+     * sort by the coordinate would put there, none before it larger and none after it smaller
+     */
+    private static void select(int[] order, int left, int right, int k, double[] coordinates) {
+        while (left < right) {
+            double pivot = coordinates[order[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (coordinates[order[i]] < pivot) {
+                    i++;
+                }
+                while (coordinates[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read a station list, keeping only the stations accepted by the filter
+     *
+     * @param include e.g. whether the dataset has data for the station
+     */
+    public static StationIndex read(Path file, Predicate<String> include) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        double[] latitudes = new double[1024];
+        double[] longitudes = new double[1024];
+        double[] elevations = new double[1024];
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                String id = column(line, 0, 11);
+                if (!include.test(id)) {
+                    continue;
+                }
+                int station = rows.size();
+                if (station == latitudes.length) {
+                    latitudes = Arrays.copyOf(latitudes, station * 2);
+                    longitudes = Arrays.copyOf(longitudes, station * 2);
+                    elevations = Arrays.copyOf(elevations, station * 2);
+                }
+                try {
+                    latitudes[station] = Double.parseDouble(column(line, 12, 20));
+                    longitudes[station] = Double.parseDouble(column(line, 21, 30));
+                    String elevation = column(line, 31, 37);
+                    elevations[station] = elevation.isEmpty() ? MISSING_ELEVATION : Double.parseDouble(elevation);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid station coordinates on line " + lineNumber + " of " + file, e);
+                }
+                rows.add(new String[] {id, column(line, 41, 71), column(line, 38, 40)});
+            }
+        }
+        return new StationIndex(rows, latitudes, longitudes, elevations);
+    }
+
+    /**
+     * A fixed-width column, trimmed, or empty if the line ends before it
+     */
+    private static String column(String line, int from, int to) {
+        if (from >= line.length()) {
+            return "";
+        }
+        return line.substring(from, Math.min(to, line.length())).trim();
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public String id(int station) {
+        return ids[station];
+    }
+
+    public String name(int station) {
+        return names[station];
+    }
+
+    /**
+     * The U.S. state or Canadian province, empty elsewhere
+     */
+    public String state(int station) {
+        return states[station];
+    }
+
+    public double latitude(int station) {
+        return latitudes[station];
+    }
+
+    public double longitude(int station) {
+        return longitudes[station];
+    }
+
+    /**
+     * Elevation in meters, {@link #MISSING_ELEVATION} if unknown
+     */
+    public double elevation(int station) {
+        return elevations[station];
+    }
+
+    /**
+     * Stations found by a query, nearest first
+     *
+     * @param stations the stations, as arguments to the accessors of the index
+     * @param distancesKm great-circle distance of each station from the query point
+     */
+    public record Matches(int[] stations, double[] distancesKm) {
+        public int size() {
+            return stations.length;
+        }
+    }
+
+    /**
+     * The k stations nearest to a point
+     */
+    public Matches nearest(double latitude, double longitude, int k) {
+        k = Math.min(k, size());
+        if (k <= 0) {
+            return new Matches(new int[0], new double[0]);
+        }
+        Query query = new Query(latitude, longitude, k, Double.POSITIVE_INFINITY);
+        query.search(0, size(), 0);
+        return query.matches();
+    }
+
+    /**
+     * The stations within a great-circle distance of a point, at most {@code limit} of them
+     */
+    public Matches withinRadius(double latitude, double longitude, double radiusKm, int limit) {
+        limit = Math.min(limit, size());
+        if (limit <= 0 || radiusKm < 0) {
+            return new Matches(new int[0], new double[0]);
+        }
+        // The chord subtending the radius on the unit sphere
+        double chord = 2 * Math.sin(Math.min(Math.PI, radiusKm / EARTH_RADIUS_KM) / 2);
+        Query query = new Query(latitude, longitude, limit, chord * chord * (1 + 1e-12));
+        query.search(0, size(), 0);
+        return query.matches();
+    }
+
+    /**
+     * A search for the nearest stations within a bound, keeping the best ones found so far in a
+     * max-heap on the squared chord distance
+     */
+    private final class Query {
+        private final double qx;
+        private final double qy;
+        private final double qz;
+        private final int limit;
+        private final double maxDistance;
+        private final int[] heap;
+        private final double[] heapDistances;
+        private int size;
+
+        Query(double latitude, double longitude, int limit, double maxDistance) {
+            double lat = Math.toRadians(latitude);
+            double lon = Math.toRadians(longitude);
+            qx = Math.cos(lat) * Math.cos(lon);
+            qy = Math.cos(lat) * Math.sin(lon);
+            qz = Math.sin(lat);
+            this.limit = limit;
+            this.maxDistance = maxDistance;
+            heap = new int[limit];
+            heapDistances = new double[limit];
+        }
+
+        /**
+         * Farthest distance a station may have to make the results
+         */
+        private double bound() {
+            return size < limit ? maxDistance : Math.min(maxDistance, heapDistances[0]);
+        }
+
+        void search(int from, int to, int axis) {
+            while (from < to) {
+                int mid = (from + to) >>> 1;
+                double dx = x[mid] - qx;
+                double dy = y[mid] - qy;
+                double dz = z[mid] - qz;
+                double distance = dx * dx + dy * dy + dz * dz;
+                if (distance <= bound()) {
+                    offer(mid, distance);
+                }
+
+                double offset = switch (axis) {
+                    case 0 -> qx - x[mid];
+                    case 1 -> qy - y[mid];
+                    default -> qz - z[mid];
+                };
+                int nextAxis = (axis + 1) % 3;
+                // Search the side of the plane holding the point first, the other side only if it could hold closer stations
+                if (offset < 0) {
+                    search(from, mid, nextAxis);
+                    if (offset * offset > bound()) {
+                        return;
+                    }
+                    from = mid + 1;
+                } else {
+                    search(mid + 1, to, nextAxis);
+                    if (offset * offset > bound()) {
+                        return;
+                    }
+                    to = mid;
+                }
+                axis = nextAxis;
+            }
+        }
+
+        private void offer(int station, double distance) {
+            if (size < limit) {
+                int i = size++;
+                while (i > 0 && heapDistances[(i - 1) / 2] < distance) {
+                    heap[i] = heap[(i - 1) / 2];
+                    heapDistances[i] = heapDistances[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                heap[i] = station;
+                heapDistances[i] = distance;
+                return;
+            }
+            // Replace the farthest station and sift down
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heapDistances[child + 1] > heapDistances[child]) {
+                    child++;
+                }
+                if (heapDistances[child] <= distance) {
+                    break;
+                }
+                heap[i] = heap[child];
+                heapDistances[i] = heapDistances[child];
+                i = child;
+            }
+            heap[i] = station;
+            heapDistances[i] = distance;
+        }
+
+        Matches matches() {
+            // Pop the heap from the farthest station down
+            int[] stations = new int[size];
+            double[] distances = new double[size];
+            for (int n = size; n > 0; n--) {
+                stations[n - 1] = heap[0];
+                distances[n - 1] = greatCircleKm(heapDistances[0]);
+                size--;
+                int last = heap[size];
+                double lastDistance = heapDistances[size];
+                if (size > 0) {
+                    offerRoot(last, lastDistance);
+                }
+            }
+            return new Matches(stations, distances);
+        }
+
+        /**
+         * Put an entry at the root of the heap and sift it down
+         */
+        private void offerRoot(int station, double distance) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heapDistances[child + 1] > heapDistances[child]) {
+                    child++;
+                }
+                if (heapDistances[child] <= distance) {
+                    break;
+                }
+                heap[i] = heap[child];
+                heapDistances[i] = heapDistances[child];
+                i = child;
+            }
+            heap[i] = station;
+            heapDistances[i] = distance;
+        }
+    }
+
+    /**
+     * Great-circle distance of a squared chord length on the unit sphere
+     */
+    private static double greatCircleKm(double squaredChord) {
+        return 2 * Math.asin(Math.min(1, Math.sqrt(squaredChord) / 2)) * EARTH_RADIUS_KM;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.energybot_weather_app.storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+
+/**
+ * The JSON envelope of a station data response, shared by the API and the pre-compressed
+ * responses written at ingest so both produce the same bytes.
+ */
+public final class StationResponseJson {
+    public static final String NO_MATCHES_MESSAGE = "No matching records found with the specified filters";
+
+    private StationResponseJson() {
+    }
+
+    /**
+     * Write the envelope with the selected records written one at a time. The filters are
+     * only echoed back when something matched.
+     */
+    public static void write(JsonGenerator generator, String stationId, StationSelection selection,
+                             String elementType, String startDate, String endDate) throws IOException {
+        generator.writeStartObject();
+        if (selection.count() == 0) {
+            generator.writeStringField("message", NO_MATCHES_MESSAGE);
+        }
+        generator.writeStringField("stationId", stationId);
+        generator.writeNumberField("count", selection.count());
+        generator.writeArrayFieldStart("data");
+        selection.writeJson(generator);
+        generator.writeEndArray();
+
+        if (selection.count() > 0) {
+            if (elementType != null) {
+                generator.writeStringField("elementType", elementType);
+            }
+            if (startDate != null) {
+                generator.writeStringField("startDate", startDate);
+            }
+            if (endDate != null) {
+                generator.writeStringField("endDate", endDate);
+            }
+        }
+        generator.writeEndObject();
+    }
+}
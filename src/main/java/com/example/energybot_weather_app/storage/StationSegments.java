@@ -0,0 +1,272 @@
+package com.example.energybot_weather_app.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The station files of a directory packed into a few large segment files, for the packed storage
+ * layout. Everything lives in {@code segments/}: the segments {@code stations-<n>.seg} hold the
+ * files back to back, and the index {@code index.idx} maps each station to the byte range of each
+ * of its files. The index is big-endian:
+ * <pre>
+ * header      magic (int) | version (short) | ID size (short) | station count (int) | extension count (short) | segment count (short)
+ * extensions  extension count x [file extension, zero padded ASCII (16 bytes)]
+ * entries     station count x [station ID, zero padded ASCII (ID size bytes) | extension count x [segment (int) | offset (long) | length (int)]]
+ * </pre>
+ * Entries are sorted by station ID, so a station is found by binary search over the memory-mapped
+ * index, and a file missing for a station has segment -1. Files are read with positional reads
+ * on segment channels that stay open until the object is closed. The index mapping is released
+ * when the object is garbage collected, as Java has no way to unmap it sooner.
+ */
+public final class StationSegments implements Closeable {
+    public static final String DIRECTORY = "segments";
+    public static final String INDEX_FILE = "index.idx";
+    public static final String SEGMENT_PREFIX = "stations-";
+    public static final String SEGMENT_EXTENSION = ".seg";
+
+    public static final int MAGIC = 0x47485349; // "GHSI"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int EXTENSION_SIZE = 16;
+    public static final int ID_SIZE = 16;
+    public static final int SLOT_SIZE = 16;
+
+    /**
+     * A file's bytes within a segment, or a whole file
+     */
+    public record Range(Path file, long offset, int length) {
+    }
+
+    private final Path directory;
+    private final ByteBuffer index;
+    private final int stationCount;
+    private final String[] extensions;
+    private final int entriesOffset;
+    private final int entrySize;
+    private final FileChannel[] channels;
+    private boolean closed;
+
+    private StationSegments(Path directory, Path indexFile, ByteBuffer index) throws IOException {
+        this.directory = directory;
+        this.index = index;
+        if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC) {
+            throw new IOException("Not a station segment index: " + indexFile);
+        }
+        if (index.getShort(4) != VERSION || index.getShort(6) != ID_SIZE) {
+            throw new IOException("Unsupported station segment index version, the data needs to be ingested again: " + indexFile);
+        }
+        stationCount = index.getInt(8);
+        extensions = new String[index.getShort(12) & 0xffff];
+        channels = new FileChannel[index.getShort(14) & 0xffff];
+        for (int i = 0; i < extensions.length; i++) {
+            extensions[i] = readAscii(index, HEADER_SIZE + i * EXTENSION_SIZE, EXTENSION_SIZE);
+        }
+        entriesOffset = HEADER_SIZE + extensions.length * EXTENSION_SIZE;
+        entrySize = ID_SIZE + extensions.length * SLOT_SIZE;
+        if ((long) entriesOffset + (long) stationCount * entrySize > index.capacity()) {
+            throw new IOException("Truncated station segment index: " + indexFile);
+        }
+    }
+
+    /**
+     * Map a directory's segment index into memory
+     *
+     * @return the segments, or null if the directory isn't packed
+     */
+    public static StationSegments open(Path directory) throws IOException {
+        Path indexFile = indexFile(directory);
+        if (!Files.isRegularFile(indexFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            return new StationSegments(directory, indexFile, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static Path indexFile(Path directory) {
+        return directory.resolve(DIRECTORY).resolve(INDEX_FILE);
+    }
+
+    public static Path segmentFile(Path directory, int segment) {
+        return directory.resolve(DIRECTORY).resolve(String.format("%s%04d%s", SEGMENT_PREFIX, segment, SEGMENT_EXTENSION));
+    }
+
+    /**
+     * Number of stations
+     */
+    public int size() {
+        return stationCount;
+    }
+
+    /**
+     * ID of the i-th station in ascending order
+     */
+    public String stationId(int i) {
+        return readAscii(index, entriesOffset + i * entrySize, ID_SIZE);
+    }
+
+    /**
+     * Position of a station in the index
+     *
+     * @return the position, or -1 if the directory has no such station
+     */
+    public int find(String stationId) {
+        byte[] id = stationId.getBytes(StandardCharsets.US_ASCII);
+        if (id.length > ID_SIZE) {
+            return -1;
+        }
+        int low = 0;
+        int high = stationCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = compareId(entriesOffset + mid * entrySize, id);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Where the i-th station's file with the extension is kept
+     *
+     * @return the range, or null if the station has no such file
+     */
+    public Range range(int i, String extension) {
+        int slot = slot(extension);
+        if (slot < 0) {
+            return null;
+        }
+        int position = entriesOffset + i * entrySize + ID_SIZE + slot * SLOT_SIZE;
+        int segment = index.getInt(position);
+        if (segment < 0) {
+            return null;
+        }
+        return new Range(segmentFile(directory, segment), index.getLong(position + 4), index.getInt(position + 12));
+    }
+
+    /**
+     * Where a station's file with the extension is kept
+     *
+     * @return the range, or null if there is no such station or file
+     */
+    public Range range(String stationId, String extension) {
+        int i = find(stationId);
+        return i < 0 ? null : range(i, extension);
+    }
+
+    /**
+     * Read a station's file onto the heap with a positional read
+     *
+     * @return the file's bytes, or null if there is no such station or file
+     */
+    public ByteBuffer read(String stationId, String extension) throws IOException {
+        int i = find(stationId);
+        if (i < 0) {
+            return null;
+        }
+        int slot = slot(extension);
+        if (slot < 0) {
+            return null;
+        }
+        int position = entriesOffset + i * entrySize + ID_SIZE + slot * SLOT_SIZE;
+        int segment = index.getInt(position);
+        if (segment < 0) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(index.getInt(position + 12));
+        FileChannel channel = channel(segment);
+        long offset = index.getLong(position + 4);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Truncated station segment: " + segmentFile(directory, segment));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private int slot(String extension) {
+        for (int slot = 0; slot < extensions.length; slot++) {
+            if (extensions[slot].equals(extension)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A segment's channel, opened on first use
+     */
+    private FileChannel channel(int segment) throws IOException {
+        FileChannel channel = channels[segment];
+        if (channel == null) {
+            synchronized (channels) {
+                if (closed) {
+                    throw new ClosedChannelException();
+                }
+                channel = channels[segment];
+                if (channel == null) {
+                    channel = FileChannel.open(segmentFile(directory, segment), StandardOpenOption.READ);
+                    channels[segment] = channel;
+                }
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Close the segment channels; reading a file afterwards fails
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        synchronized (channels) {
+            closed = true;
+            for (int i = 0; i < channels.length; i++) {
+                if (channels[i] != null) {
+                    try {
+                        channels[i].close();
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                    channels[i] = null;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private int compareId(int position, byte[] id) {
+        for (int i = 0; i < ID_SIZE; i++) {
+            int stored = index.get(position + i) & 0xff;
+            int wanted = i < id.length ? id[i] & 0xff : 0;
+            if (stored != wanted) {
+                return stored - wanted;
+            }
+        }
+        return 0;
+    }
+
+    private static String readAscii(ByteBuffer buffer, int position, int size) {
+        byte[] bytes = new byte[size];
+        int length = 0;
+        while (length < size && buffer.get(position + length) != 0) {
+            bytes[length] = buffer.get(position + length);
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+}
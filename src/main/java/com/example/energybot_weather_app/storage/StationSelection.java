@@ -0,0 +1,29 @@
+package com.example.energybot_weather_app.storage;
+
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The records of a station that match a query, in date order. Nothing is decoded until
+ * the records are written or collected, so a selection can be streamed with constant memory.
+ */
+public interface StationSelection {
+
+    /**
+     * Number of matching records
+     */
+    int count();
+
+    /**
+     * Write every matching record as a JSON object with the fields of {@link WeatherRecord}
+     */
+    void writeJson(JsonGenerator generator) throws IOException;
+
+    /**
+     * Decode the matching records
+     */
+    List<WeatherRecord> toRecords();
+}
@@ -0,0 +1,316 @@
+package com.example.energybot_weather_app.storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A station's daily temperature and precipitation as primitive series over consecutive days,
+ * with prefix sums so that totals and means over any date range take constant time.
+ *
+ * The daily mean temperature is TAVG where reported, otherwise the midpoint of TMAX and TMIN.
+ * Missing and quality-flagged values are left out, as in {@link StationSummary}. Temperatures are
+ * in tenths of a degree C and precipitation in tenths of a mm, as in the source data.
+ *
+ * Degree days have prefix sums for one heating and one cooling base, fixed when the series is
+ * built, so the series holds no more than {@link #estimatedBytes()} says while it is cached.
+ * Other bases are summed over the requested days.
+ */
+public final class StationSeries {
+    public static final int NO_VALUE = Integer.MIN_VALUE;
+
+    // Trailing windows of the rolling mean temperatures, in days
+    private static final int[] ROLLING_WINDOWS = {7, 30};
+    // Rough heap cost of the object and its maps, and of a day across the series and prefix sums
+    private static final int FIXED_OVERHEAD_BYTES = 256;
+    private static final int PER_DAY_BYTES = 48;
+
+    private final long firstDay;
+    private final int days;
+    private final int[] meanTemperature;
+    private final int[] precipitation;
+    // Element i holds the total over days [0, i) and the number of days with a value in it
+    private final long[] temperatureSums;
+    private final int[] temperatureDays;
+    private final long[] precipitationSums;
+    private final int[] precipitationDays;
+    // Degree day prefix sums for the bases the series was built with
+    private final int heatingBase;
+    private final int coolingBase;
+    private final long[] heatingDegreeDaySums;
+    private final long[] coolingDegreeDaySums;
+
+    private StationSeries(long firstDay, int[] meanTemperature, int[] precipitation, int heatingBase, int coolingBase) {
+        this.firstDay = firstDay;
+        this.days = meanTemperature.length;
+        this.meanTemperature = meanTemperature;
+        this.precipitation = precipitation;
+        this.heatingBase = heatingBase;
+        this.coolingBase = coolingBase;
+        temperatureSums = new long[days + 1];
+        temperatureDays = new int[days + 1];
+        precipitationSums = new long[days + 1];
+        precipitationDays = new int[days + 1];
+        prefixSums(meanTemperature, temperatureSums, temperatureDays);
+        prefixSums(precipitation, precipitationSums, precipitationDays);
+        heatingDegreeDaySums = degreeDayPrefixSums(heatingBase, true);
+        coolingDegreeDaySums = degreeDayPrefixSums(coolingBase, false);
+    }
+
+    /**
+     * Build the series from a station's data
+     *
+     * @param partitions the station's data, e.g. one per year partition
+     * @param heatingBase base temperature of the heating degree days kept as prefix sums, in tenths of a degree C
+     * @param coolingBase base temperature of the cooling degree days kept as prefix sums, in tenths of a degree C
+     */
+    public static StationSeries of(List<StationData> partitions, int heatingBase, int coolingBase) {
+        long[] bounds = {Long.MAX_VALUE, Long.MIN_VALUE};
+        for (StationData stationData : partitions) {
+            stationData.visitValues((element, date, value, qFlag) -> {
+                long day = epochDay(date);
+                if (day != Long.MIN_VALUE && isSeriesElement(element)) {
+                    bounds[0] = Math.min(bounds[0], day);
+                    bounds[1] = Math.max(bounds[1], day);
+                }
+            });
+        }
+        if (bounds[0] > bounds[1]) {
+            return new StationSeries(0, new int[0], new int[0], heatingBase, coolingBase);
+        }
+
+        int days = (int) (bounds[1] - bounds[0] + 1);
+        int[] tmax = filled(days);
+        int[] tmin = filled(days);
+        int[] tavg = filled(days);
+        int[] prcp = filled(days);
+        for (StationData stationData : partitions) {
+            stationData.visitValues((element, date, value, qFlag) -> {
+                if (StationSummary.isMissing(value) || StationSummary.isFlagged(qFlag) || !isSeriesElement(element)) {
+                    return;
+                }
+                long day = epochDay(date);
+                if (day == Long.MIN_VALUE) {
+                    return;
+                }
+                int index = (int) (day - bounds[0]);
+                switch (element) {
+                    case "TMAX" -> tmax[index] = value;
+                    case "TMIN" -> tmin[index] = value;
+                    case "TAVG" -> tavg[index] = value;
+                    default -> prcp[index] = value;
+                }
+            });
+        }
+
+        for (int i = 0; i < days; i++) {
+            if (tavg[i] == NO_VALUE && tmax[i] != NO_VALUE && tmin[i] != NO_VALUE) {
+                tavg[i] = Math.floorDiv(tmax[i] + tmin[i], 2);
+            }
+        }
+        return new StationSeries(bounds[0], tavg, prcp, heatingBase, coolingBase);
+    }
+
+    private static boolean isSeriesElement(String element) {
+        return switch (element) {
+            case "TMAX", "TMIN", "TAVG", "PRCP" -> true;
+            default -> false;
+        };
+    }
+
+    private static int[] filled(int days) {
+        int[] series = new int[days];
+        Arrays.fill(series, NO_VALUE);
+        return series;
+    }
+
+    private static void prefixSums(int[] series, long[] sums, int[] counts) {
+        for (int i = 0; i < series.length; i++) {
+            boolean present = series[i] != NO_VALUE;
+            sums[i + 1] = sums[i] + (present ? series[i] : 0);
+            counts[i + 1] = counts[i] + (present ? 1 : 0);
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 of a yyyyMMdd date, or Long.MIN_VALUE if it isn't a valid date
+     */
+    static long epochDay(int date) {
+        if (date < 0) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return LocalDate.of(date / 10000, date / 100 % 100, date % 100).toEpochDay();
+        } catch (DateTimeException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Number of days covered, from the first to the last day with a value
+     */
+    public int days() {
+        return days;
+    }
+
+    /**
+     * Index of the first day on or after a yyyyMMdd date filter, 0 for no filter
+     */
+    public int startIndex(String startDate) {
+        return startDate == null || startDate.isEmpty() ? 0 : clamp(dayOf(startDate) - firstDay);
+    }
+
+    /**
+     * Index after the last day on or before a yyyyMMdd date filter, {@link #days()} for no filter
+     */
+    public int endIndex(String endDate) {
+        return endDate == null || endDate.isEmpty() ? days : clamp(dayOf(endDate) - firstDay + 1);
+    }
+
+    private static long dayOf(String date) {
+        long day = epochDay(BinaryStationFormat.parseDate(date));
+        if (day == Long.MIN_VALUE) {
+            throw new IllegalArgumentException("Not a yyyyMMdd date: " + date);
+        }
+        return day;
+    }
+
+    private int clamp(long index) {
+        return (int) Math.max(0, Math.min(days, index));
+    }
+
+    /**
+     * Heating degree days over days [from, to), in tenths of a degree day
+     *
+     * @param base base temperature in tenths of a degree C
+     */
+    public long heatingDegreeDays(int from, int to, int base) {
+        if (base == heatingBase) {
+            return heatingDegreeDaySums[to] - heatingDegreeDaySums[from];
+        }
+        return sumDegreeDays(from, to, base, true);
+    }
+
+    /**
+     * Cooling degree days over days [from, to), in tenths of a degree day
+     *
+     * @param base base temperature in tenths of a degree C
+     */
+    public long coolingDegreeDays(int from, int to, int base) {
+        if (base == coolingBase) {
+            return coolingDegreeDaySums[to] - coolingDegreeDaySums[from];
+        }
+        return sumDegreeDays(from, to, base, false);
+    }
+
+    /**
+     * Degree days over days [from, to) for a base without prefix sums, in linear time
+     */
+    private long sumDegreeDays(int from, int to, int base, boolean heating) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += degreeDays(meanTemperature[i], base, heating);
+        }
+        return sum;
+    }
+
+    private long[] degreeDayPrefixSums(int base, boolean heating) {
+        long[] sums = new long[days + 1];
+        for (int i = 0; i < days; i++) {
+            sums[i + 1] = sums[i] + degreeDays(meanTemperature[i], base, heating);
+        }
+        return sums;
+    }
+
+    private static int degreeDays(int temperature, int base, boolean heating) {
+        if (temperature == NO_VALUE) {
+            return 0;
+        }
+        return Math.max(0, heating ? base - temperature : temperature - base);
+    }
+
+    /**
+     * Write the totals over days [from, to) and, if asked for, one entry per day with its mean
+     * temperature, degree days, rolling mean temperatures and the precipitation accumulated since
+     * the first day. Rolling windows reach back before the first day where there is data.
+     *
+     * @param hddBase base temperature for heating degree days, in tenths of a degree C
+     * @param cddBase base temperature for cooling degree days, in tenths of a degree C
+     */
+    public void writeJson(JsonGenerator generator, String stationId, int from, int to, int hddBase, int cddBase,
+                          boolean daily) throws IOException {
+        to = Math.max(from, to);
+        generator.writeStartObject();
+        generator.writeStringField("stationId", stationId);
+        if (from < to) {
+            generator.writeStringField("startDate", BinaryStationFormat.formatDate(date(from)));
+            generator.writeStringField("endDate", BinaryStationFormat.formatDate(date(to - 1)));
+        }
+        generator.writeNumberField("hddBase", hddBase / 10.0);
+        generator.writeNumberField("cddBase", cddBase / 10.0);
+
+        generator.writeObjectFieldStart("totals");
+        generator.writeNumberField("days", to - from);
+        generator.writeNumberField("temperatureDays", temperatureDays[to] - temperatureDays[from]);
+        writeMean(generator, "meanTemperature", temperatureSums[to] - temperatureSums[from],
+                temperatureDays[to] - temperatureDays[from]);
+        generator.writeNumberField("hdd", heatingDegreeDays(from, to, hddBase) / 10.0);
+        generator.writeNumberField("cdd", coolingDegreeDays(from, to, cddBase) / 10.0);
+        generator.writeNumberField("precipitationDays", precipitationDays[to] - precipitationDays[from]);
+        generator.writeNumberField("precipitation", (precipitationSums[to] - precipitationSums[from]) / 10.0);
+        generator.writeEndObject();
+
+        if (daily) {
+            char[] digits = new char[BinaryStationFormat.MAX_DIGITS];
+            generator.writeArrayFieldStart("daily");
+            for (int i = from; i < to; i++) {
+                generator.writeStartObject();
+                generator.writeFieldName("date");
+                generator.writeString(digits, 0, BinaryStationFormat.formatDate(date(i), digits));
+                int temperature = meanTemperature[i];
+                if (temperature != NO_VALUE) {
+                    generator.writeNumberField("tmean", temperature / 10.0);
+                    generator.writeNumberField("hdd", degreeDays(temperature, hddBase, true) / 10.0);
+                    generator.writeNumberField("cdd", degreeDays(temperature, cddBase, false) / 10.0);
+                }
+                for (int window : ROLLING_WINDOWS) {
+                    int first = Math.max(0, i + 1 - window);
+                    writeMean(generator, "tavg" + window, temperatureSums[i + 1] - temperatureSums[first],
+                            temperatureDays[i + 1] - temperatureDays[first]);
+                }
+                if (precipitation[i] != NO_VALUE) {
+                    generator.writeNumberField("prcp", precipitation[i] / 10.0);
+                }
+                generator.writeNumberField("prcpCum", (precipitationSums[i + 1] - precipitationSums[from]) / 10.0);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeMean(JsonGenerator generator, String name, long tenthsSum, int count) throws IOException {
+        if (count > 0) {
+            generator.writeNumberField(name, Math.round(tenthsSum * 10.0 / count) / 100.0);
+        }
+    }
+
+    /**
+     * The yyyyMMdd date of a day
+     */
+    private int date(int index) {
+        LocalDate date = LocalDate.ofEpochDay(firstDay + index);
+        return date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+
+    /**
+     * Estimated heap footprint in bytes, including the degree day sums of its heating and cooling base
+     */
+    public long estimatedBytes() {
+        return FIXED_OVERHEAD_BYTES + (long) days * PER_DAY_BYTES;
+    }
+}
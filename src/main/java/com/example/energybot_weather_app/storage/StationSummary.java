@@ -0,0 +1,476 @@
+package com.example.energybot_weather_app.storage;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Monthly and annual rollups of a station's values, built once during ingest and stored next to
+ * the station file as {@code <stationId>.summary}, all big-endian:
+ * <pre>
+ * header      magic (int) | version (short) | entry size (short) | element count (short) | reserved (short) | entry count (int)
+ * dictionary  element count x [element name (int) | first entry (int) | month entries (int) | year entries (int)]
+ * entries     entry count x [period (int) | count (int) | missing (int) | flagged (int) | min (int) | max (int) | sum (long)]
+ * </pre>
+ * Each element's entries are its months (period yyyyMM) in ascending order followed by its years
+ * (period yyyy). Values are in the units of the source data, e.g. tenths of a degree for TMAX.
+ *
+ * Every rollup treats the rows the same way: an empty value or the -9999 missing marker counts as
+ * missing, a row with a quality flag counts as flagged, and only the remaining rows go into the
+ * count, min, max and sum.
+ */
+public final class StationSummary {
+    public static final String FILE_EXTENSION = ".summary";
+    // The source's marker for a missing value
+    public static final int MISSING_VALUE = -9999;
+
+    private static final int MAGIC = 0x4748534d; // "GHSM"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int DICTIONARY_ENTRY_SIZE = 16;
+    private static final int ENTRY_SIZE = 32;
+
+    private final ByteBuffer buffer;
+    private final String[] elements;
+    private final int[] firstEntries;
+    private final int[] monthCounts;
+    private final int[] yearCounts;
+    private final int entriesOffset;
+
+    private StationSummary(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a station summary file");
+        }
+        if (buffer.getShort(4) != VERSION || buffer.getShort(6) != ENTRY_SIZE) {
+            throw new IOException("Unsupported station summary version, the data needs to be ingested again");
+        }
+        int elementCount = buffer.getShort(8) & 0xffff;
+        int entryCount = buffer.getInt(12);
+        elements = new String[elementCount];
+        firstEntries = new int[elementCount];
+        monthCounts = new int[elementCount];
+        yearCounts = new int[elementCount];
+        for (int code = 0; code < elementCount; code++) {
+            int entry = HEADER_SIZE + code * DICTIONARY_ENTRY_SIZE;
+            elements[code] = BinaryStationFormat.unpackElement(buffer.getInt(entry));
+            firstEntries[code] = buffer.getInt(entry + 4);
+            monthCounts[code] = buffer.getInt(entry + 8);
+            yearCounts[code] = buffer.getInt(entry + 12);
+        }
+        entriesOffset = HEADER_SIZE + elementCount * DICTIONARY_ENTRY_SIZE;
+        if ((long) entriesOffset + (long) entryCount * ENTRY_SIZE > buffer.capacity()) {
+            throw new IOException("Truncated station summary file");
+        }
+    }
+
+    public static StationSummary read(Path file) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(file)), file);
+    }
+
+    /**
+     * Read a summary file already in memory, such as one kept in a segment
+     *
+     * @param file where the file came from, for error messages
+     */
+    public static StationSummary read(ByteBuffer buffer, Path file) throws IOException {
+        try {
+            return new StationSummary(buffer);
+        } catch (IOException e) {
+            throw new IOException(e.getMessage() + ": " + file, e);
+        }
+    }
+
+    /**
+     * Roll up a station's values, for stations stored without a summary file
+     */
+    public static StationSummary of(StationData stationData) {
+        Builder builder = new Builder();
+        stationData.visitValues(builder::add);
+        try {
+            return new StationSummary(ByteBuffer.wrap(builder.toByteArray()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Built an unreadable summary", e);
+        }
+    }
+
+    /**
+     * Whether a value is empty or the source's missing marker
+     */
+    public static boolean isMissing(int value) {
+        return value == BinaryStationFormat.EMPTY_VALUE || value == MISSING_VALUE;
+    }
+
+    /**
+     * Whether a row failed one of the source's quality checks
+     */
+    public static boolean isFlagged(byte qFlag) {
+        return qFlag != 0 && qFlag != ' ';
+    }
+
+    public int elementCount() {
+        return elements.length;
+    }
+
+    public String element(int code) {
+        return elements[code];
+    }
+
+    /**
+     * Write the summaries of a station's partitions as one response, each element's months and
+     * years in the order of the partitions
+     *
+     * @param partitions the station's summaries, in ascending date order
+     * @param elementType element to include, ignoring case, or null for all
+     * @param period "monthly" or "annual" to include only those rollups, or null for both
+     */
+    public static void writeJson(JsonGenerator generator, String stationId, List<StationSummary> partitions,
+                                 String elementType, String period) throws IOException {
+        // Element name to the partitions holding it and its code in each
+        Map<String, List<int[]>> elementCodes = new LinkedHashMap<>();
+        for (int partition = 0; partition < partitions.size(); partition++) {
+            StationSummary summary = partitions.get(partition);
+            for (int code = 0; code < summary.elementCount(); code++) {
+                String element = summary.element(code);
+                if (elementType == null || elementType.isEmpty() || elementType.equalsIgnoreCase(element)) {
+                    elementCodes.computeIfAbsent(element, name -> new ArrayList<>()).add(new int[] {partition, code});
+                }
+            }
+        }
+
+        boolean monthly = period == null || period.equalsIgnoreCase("monthly");
+        boolean annual = period == null || period.equalsIgnoreCase("annual");
+        generator.writeStartObject();
+        generator.writeStringField("stationId", stationId);
+        generator.writeObjectFieldStart("elements");
+        for (Map.Entry<String, List<int[]>> element : elementCodes.entrySet()) {
+            generator.writeObjectFieldStart(element.getKey());
+            if (monthly) {
+                generator.writeArrayFieldStart("monthly");
+                for (int[] code : element.getValue()) {
+                    StationSummary summary = partitions.get(code[0]);
+                    int first = summary.firstEntries[code[1]];
+                    summary.writeEntries(generator, first, first + summary.monthCounts[code[1]]);
+                }
+                generator.writeEndArray();
+            }
+            if (annual) {
+                generator.writeArrayFieldStart("annual");
+                for (int[] code : element.getValue()) {
+                    StationSummary summary = partitions.get(code[0]);
+                    int first = summary.firstEntries[code[1]] + summary.monthCounts[code[1]];
+                    summary.writeEntries(generator, first, first + summary.yearCounts[code[1]]);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write each element's coverage over a station's partitions as one object: the first and last
+     * month with a value, and the number of values
+     *
+     * @param partitions the station's summaries, in ascending date order
+     */
+    public static void writeCoverage(JsonGenerator generator, List<StationSummary> partitions) throws IOException {
+        // Element name to its first and last period with a value and its number of values
+        Map<String, int[]> coverage = new LinkedHashMap<>();
+        for (StationSummary summary : partitions) {
+            for (int code = 0; code < summary.elementCount(); code++) {
+                int first = summary.firstEntries[code];
+                for (int entry = first; entry < first + summary.monthCounts[code]; entry++) {
+                    int offset = summary.entriesOffset + entry * ENTRY_SIZE;
+                    int count = summary.buffer.getInt(offset + 4);
+                    if (count == 0) {
+                        continue;
+                    }
+                    int period = summary.buffer.getInt(offset);
+                    int[] element = coverage.computeIfAbsent(summary.element(code), name -> new int[] {period, period, 0});
+                    element[0] = Math.min(element[0], period);
+                    element[1] = Math.max(element[1], period);
+                    element[2] += count;
+                }
+            }
+        }
+
+        generator.writeStartObject();
+        for (Map.Entry<String, int[]> element : coverage.entrySet()) {
+            int[] span = element.getValue();
+            generator.writeObjectFieldStart(element.getKey());
+            generator.writeStringField("first", formatPeriod(span[0]));
+            generator.writeStringField("last", formatPeriod(span[1]));
+            generator.writeNumberField("values", span[2]);
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    private static String formatPeriod(int period) {
+        return period > 9999 ? String.format("%04d-%02d", period / 100, period % 100) : Integer.toString(period);
+    }
+
+    private void writeEntries(JsonGenerator generator, int from, int to) throws IOException {
+        for (int entry = from; entry < to; entry++) {
+            int offset = entriesOffset + entry * ENTRY_SIZE;
+            int period = buffer.getInt(offset);
+            int count = buffer.getInt(offset + 4);
+            generator.writeStartObject();
+            generator.writeStringField("period", formatPeriod(period));
+            generator.writeNumberField("count", count);
+            generator.writeNumberField("missing", buffer.getInt(offset + 8));
+            generator.writeNumberField("flagged", buffer.getInt(offset + 12));
+            if (count > 0) {
+                long sum = buffer.getLong(offset + 24);
+                generator.writeNumberField("min", buffer.getInt(offset + 16));
+                generator.writeNumberField("max", buffer.getInt(offset + 20));
+                generator.writeNumberField("sum", sum);
+                generator.writeNumberField("mean", Math.round(sum * 100.0 / count) / 100.0);
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Running aggregates per element and month in parallel primitive arrays, one slot per
+     * (element, month) found through an open addressing table, so adding a row allocates nothing.
+     * Rows may come in any order.
+     */
+    public static final class Builder {
+        private static final int INITIAL_SLOTS = 64;
+        // Low bits of a sort key holding the slot, above which sits the yyyyMM month
+        private static final int SLOT_BITS = 20;
+
+        private String[] elements = new String[8];
+        private int elementCount;
+        private int lastElement = -1;
+
+        // Slot data
+        private int[] slotElements = new int[INITIAL_SLOTS];
+        private int[] slotMonths = new int[INITIAL_SLOTS];
+        private int[] counts = new int[INITIAL_SLOTS];
+        private int[] missing = new int[INITIAL_SLOTS];
+        private int[] flagged = new int[INITIAL_SLOTS];
+        private int[] mins = new int[INITIAL_SLOTS];
+        private int[] maxs = new int[INITIAL_SLOTS];
+        private long[] sums = new long[INITIAL_SLOTS];
+        private int slotCount;
+
+        // Hash table of slot index + 1 by (element, month), 0 for an empty bucket
+        private int[] table = new int[INITIAL_SLOTS * 2];
+
+        public void reset() {
+            Arrays.fill(elements, 0, elementCount, null);
+            elementCount = 0;
+            lastElement = -1;
+            Arrays.fill(table, 0);
+            slotCount = 0;
+        }
+
+        /**
+         * Add a row
+         *
+         * @param date the date as a yyyyMMdd int, rows with an unparseable date are left out
+         * @param value the value, {@link BinaryStationFormat#EMPTY_VALUE} if it is empty
+         * @param qFlag the quality flag, 0 if there is none
+         */
+        public void add(String element, int date, int value, byte qFlag) {
+            if (date < 0) {
+                return;
+            }
+            int slot = slot(elementCode(element), date / 100);
+            if (isMissing(value)) {
+                missing[slot]++;
+            } else if (isFlagged(qFlag)) {
+                flagged[slot]++;
+            } else {
+                int count = counts[slot]++;
+                mins[slot] = count == 0 ? value : Math.min(mins[slot], value);
+                maxs[slot] = count == 0 ? value : Math.max(maxs[slot], value);
+                sums[slot] += value;
+            }
+        }
+
+        private int elementCode(String element) {
+            if (lastElement >= 0 && elements[lastElement].equals(element)) {
+                return lastElement;
+            }
+            for (int code = 0; code < elementCount; code++) {
+                if (elements[code].equals(element)) {
+                    return lastElement = code;
+                }
+            }
+            if (elementCount == elements.length) {
+                elements = Arrays.copyOf(elements, elementCount * 2);
+            }
+            elements[elementCount] = element;
+            return lastElement = elementCount++;
+        }
+
+        private int slot(int element, int month) {
+            int mask = table.length - 1;
+            int bucket = hash(element, month) & mask;
+            while (table[bucket] != 0) {
+                int slot = table[bucket] - 1;
+                if (slotElements[slot] == element && slotMonths[slot] == month) {
+                    return slot;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+
+            if (slotCount == slotElements.length) {
+                grow();
+                return slot(element, month);
+            }
+            int slot = slotCount++;
+            slotElements[slot] = element;
+            slotMonths[slot] = month;
+            counts[slot] = 0;
+            missing[slot] = 0;
+            flagged[slot] = 0;
+            mins[slot] = 0;
+            maxs[slot] = 0;
+            sums[slot] = 0;
+            table[bucket] = slot + 1;
+            return slot;
+        }
+
+        private void grow() {
+            int capacity = slotElements.length * 2;
+            slotElements = Arrays.copyOf(slotElements, capacity);
+            slotMonths = Arrays.copyOf(slotMonths, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            missing = Arrays.copyOf(missing, capacity);
+            flagged = Arrays.copyOf(flagged, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            table = new int[capacity * 2];
+            int mask = table.length - 1;
+            for (int slot = 0; slot < slotCount; slot++) {
+                int bucket = hash(slotElements[slot], slotMonths[slot]) & mask;
+                while (table[bucket] != 0) {
+                    bucket = (bucket + 1) & mask;
+                }
+                table[bucket] = slot + 1;
+            }
+        }
+
+        private static int hash(int element, int month) {
+            int h = element * 0x9e3779b9 + month;
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * The summary file of the rows added so far
+         */
+        public byte[] toByteArray() {
+            // Order the slots by element, then month, sorting keys of element | month | slot
+            long[] order = new long[slotCount];
+            for (int slot = 0; slot < slotCount; slot++) {
+                order[slot] = ((long) slotElements[slot] << 48) | ((long) slotMonths[slot] << SLOT_BITS) | slot;
+            }
+            Arrays.sort(order);
+
+            // Each element's months are followed by one entry per year they fall in
+            int years = 0;
+            for (int i = 0; i < slotCount; i++) {
+                if (i == 0 || yearKey(order[i]) != yearKey(order[i - 1])) {
+                    years++;
+                }
+            }
+            int entryCount = slotCount + years;
+            ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + elementCount * DICTIONARY_ENTRY_SIZE + entryCount * ENTRY_SIZE);
+            out.putInt(MAGIC).putShort(VERSION).putShort((short) ENTRY_SIZE)
+                    .putShort((short) elementCount).putShort((short) 0).putInt(entryCount);
+
+            int dictionary = HEADER_SIZE;
+            int entry = 0;
+            int i = 0;
+            out.position(HEADER_SIZE + elementCount * DICTIONARY_ENTRY_SIZE);
+            for (int code = 0; code < elementCount; code++) {
+                int firstEntry = entry;
+                int firstMonth = i;
+                while (i < slotCount && slotElements[slotOf(order[i])] == code) {
+                    putEntry(out, slotOf(order[i]));
+                    i++;
+                    entry++;
+                }
+                int monthEntries = entry - firstEntry;
+                int yearEntries = putYears(out, order, firstMonth, i);
+                entry += yearEntries;
+
+                byte[] name = elements[code].getBytes(StandardCharsets.US_ASCII);
+                out.putInt(dictionary, BinaryStationFormat.packElement(name, 0, name.length));
+                out.putInt(dictionary + 4, firstEntry);
+                out.putInt(dictionary + 8, monthEntries);
+                out.putInt(dictionary + 12, yearEntries);
+                dictionary += DICTIONARY_ENTRY_SIZE;
+            }
+            return out.array();
+        }
+
+        private static int slotOf(long key) {
+            return (int) (key & ((1 << SLOT_BITS) - 1));
+        }
+
+        /**
+         * The element and year of a sort key, dropping the month and slot
+         */
+        private static long yearKey(long key) {
+            long element = key >>> 48;
+            long month = (key >>> SLOT_BITS) & 0xfffffff;
+            return element << 32 | month / 100;
+        }
+
+        private void putEntry(ByteBuffer out, int slot) {
+            out.putInt(slotMonths[slot]).putInt(counts[slot]).putInt(missing[slot]).putInt(flagged[slot])
+                    .putInt(mins[slot]).putInt(maxs[slot]).putLong(sums[slot]);
+        }
+
+        /**
+         * Fold an element's months, order[from, to), into one entry per year
+         *
+         * @return the number of year entries written
+         */
+        private int putYears(ByteBuffer out, long[] order, int from, int to) {
+            int written = 0;
+            int i = from;
+            while (i < to) {
+                int year = slotMonths[slotOf(order[i])] / 100;
+                int count = 0;
+                int missingRows = 0;
+                int flaggedRows = 0;
+                int min = 0;
+                int max = 0;
+                long sum = 0;
+                for (; i < to && slotMonths[slotOf(order[i])] / 100 == year; i++) {
+                    int slot = slotOf(order[i]);
+                    missingRows += missing[slot];
+                    flaggedRows += flagged[slot];
+                    if (counts[slot] > 0) {
+                        min = count == 0 ? mins[slot] : Math.min(min, mins[slot]);
+                        max = count == 0 ? maxs[slot] : Math.max(max, maxs[slot]);
+                        count += counts[slot];
+                        sum += sums[slot];
+                    }
+                }
+                out.putInt(year).putInt(count).putInt(missingRows).putInt(flaggedRows)
+                        .putInt(min).putInt(max).putLong(sum);
+                written++;
+            }
+            return written;
+        }
+    }
+}
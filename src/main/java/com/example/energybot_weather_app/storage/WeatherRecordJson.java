@@ -0,0 +1,49 @@
+package com.example.energybot_weather_app.storage;
+
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+
+/**
+ * Field names of a serialized {@link WeatherRecord}, in the order Jackson writes them,
+ * for code that writes records field by field with a {@link JsonGenerator}.
+ */
+public final class WeatherRecordJson {
+    public static final SerializableString STATION_ID = new SerializedString("stationId");
+    public static final SerializableString DATE = new SerializedString("date");
+    public static final SerializableString ELEMENT = new SerializedString("element");
+    public static final SerializableString VALUE = new SerializedString("value");
+    public static final SerializableString M_FLAG = new SerializedString("mFlag");
+    public static final SerializableString Q_FLAG = new SerializedString("qFlag");
+    public static final SerializableString S_FLAG = new SerializedString("sFlag");
+    public static final SerializableString OBS_TIME = new SerializedString("obsTime");
+
+    private WeatherRecordJson() {
+    }
+
+    /**
+     * Write a record the way Jackson serializes it, leaving out null fields
+     */
+    public static void write(JsonGenerator generator, WeatherRecord record) throws IOException {
+        generator.writeStartObject();
+        writeField(generator, STATION_ID, record.getStationId());
+        writeField(generator, DATE, record.getDate());
+        writeField(generator, ELEMENT, record.getElement());
+        writeField(generator, VALUE, record.getValue());
+        writeField(generator, M_FLAG, record.getmFlag());
+        writeField(generator, Q_FLAG, record.getqFlag());
+        writeField(generator, S_FLAG, record.getsFlag());
+        writeField(generator, OBS_TIME, record.getObsTime());
+        generator.writeEndObject();
+    }
+
+    private static void writeField(JsonGenerator generator, SerializableString name, String value) throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            generator.writeString(value);
+        }
+    }
+}
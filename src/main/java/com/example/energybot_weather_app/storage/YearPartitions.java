@@ -0,0 +1,85 @@
+package com.example.energybot_weather_app.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Year partitions of a dataset built from one source file per year. Each year's station files,
+ * hashes and manifest sit in a subdirectory named after the year:
+ *
+ * <pre>
+ * &lt;version&gt;/manifest.json       stations of all years, with hashes over their years
+ * &lt;version&gt;/dataset.hashes
+ * &lt;version&gt;/2023/USW00094728.bin  the station's records of that year
+ * &lt;version&gt;/2024/...
+ * </pre>
+ *
+ * A date range query only reads the partitions of the years it overlaps.
+ */
+public final class YearPartitions {
+
+    private YearPartitions() {
+    }
+
+    public static Path directory(Path versionDirectory, int year) {
+        return versionDirectory.resolve(Integer.toString(year));
+    }
+
+    /**
+     * Years partitioned in a version directory, in ascending order
+     *
+     * @return the years, empty for a dataset stored unpartitioned
+     */
+    public static int[] list(Path versionDirectory) throws IOException {
+        if (!Files.isDirectory(versionDirectory)) {
+            return new int[0];
+        }
+        try (Stream<Path> entries = Files.list(versionDirectory)) {
+            return entries.filter(Files::isDirectory)
+                    .map(entry -> entry.getFileName().toString())
+                    .filter(YearPartitions::isYear)
+                    .mapToInt(Integer::parseInt)
+                    .sorted()
+                    .toArray();
+        }
+    }
+
+    /**
+     * Plan a date range query: the partitions holding dates between the filters.
+     *
+     * Filters compare with the stored yyyyMMdd dates as strings, so any filter starting with a
+     * four digit year bounds the years, whatever follows. Other filters don't narrow the plan.
+     *
+     * @param years the partitioned years, in ascending order
+     * @param startDate first date to include, or null
+     * @param endDate last date to include, or null
+     * @return the years to read, in ascending order
+     */
+    public static int[] select(int[] years, String startDate, String endDate) {
+        int first = yearOf(startDate, Integer.MIN_VALUE);
+        int last = yearOf(endDate, Integer.MAX_VALUE);
+        return Arrays.stream(years).filter(year -> year >= first && year <= last).toArray();
+    }
+
+    private static int yearOf(String date, int unbounded) {
+        if (date == null || date.length() < 4 || !isYear(date.substring(0, 4))) {
+            return unbounded;
+        }
+        return Integer.parseInt(date, 0, 4, 10);
+    }
+
+    private static boolean isYear(String name) {
+        if (name.length() != 4) {
+            return false;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
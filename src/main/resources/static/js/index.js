@@ -191,10 +191,11 @@ function updateSystemStatusDisplay(status) {
         let detailsHtml = '';
         
         if (status.progress) {
-            const { processedLines, totalLines, processedStations } = status.progress;
+            const { processedLines, totalLines, totalLinesEstimated, processedStations } = status.progress;
             
             if (processedLines !== undefined && totalLines !== undefined) {
-                detailsHtml += `<p>Processed ${processedLines.toLocaleString()} of ${totalLines.toLocaleString()} lines (${percent}%)</p>`;
+                const totalText = totalLinesEstimated ? `~${totalLines.toLocaleString()}` : totalLines.toLocaleString();
+                detailsHtml += `<p>Processed ${processedLines.toLocaleString()} of ${totalText} lines (${percent}%)</p>`;
             }
             
             if (processedStations !== undefined) {
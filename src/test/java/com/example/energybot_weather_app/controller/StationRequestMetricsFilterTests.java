@@ -0,0 +1,46 @@
+package com.example.energybot_weather_app.controller;
+
+import com.example.energybot_weather_app.metrics.MetricsRegistry;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StationRequestMetricsFilterTests {
+
+    @Test
+    void timesStationRequestsByFilterAndResponseSize() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        StationRequestMetricsFilter filter = new StationRequestMetricsFilter(registry);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/station/USC00000001");
+        request.setParameter("elementType", "TMAX");
+        request.setParameter("startDate", "20240101");
+        filter.doFilter(request, new MockHttpServletResponse(),
+                new MockFilterChain(new HttpServlet() {
+                    @Override
+                    protected void service(HttpServletRequest req,
+                                           HttpServletResponse resp) throws IOException {
+                        resp.getOutputStream().write(new byte[20_000]);
+                    }
+                }));
+        // A response sent with sendfile only declares its length
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/station/USC00000001"), new MockHttpServletResponse(),
+                (req, resp) -> ((HttpServletResponse) resp).setContentLengthLong(2_000_000));
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/station/USC00000001/summary"), new MockHttpServletResponse(),
+                new MockFilterChain());
+
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains("weather_station_request_seconds_count{filter=\"element_date\",size=\"10KB-100KB\",status=\"200\"} 1\n"), scrape);
+        assertTrue(scrape.contains("weather_station_request_seconds_count{filter=\"none\",size=\"1MB+\",status=\"200\"} 1\n"), scrape);
+        assertFalse(scrape.contains("0-10KB"), scrape);
+    }
+}
@@ -0,0 +1,471 @@
+package com.example.energybot_weather_app.controller;
+
+import com.example.energybot_weather_app.ingest.BinaryStationFileWriter;
+import com.example.energybot_weather_app.ingest.DateColumnsWriter;
+import com.example.energybot_weather_app.ingest.GhcnBinaryEncoder;
+import com.example.energybot_weather_app.ingest.GhcnJsonEncoder;
+import com.example.energybot_weather_app.ingest.IngestPipeline;
+import com.example.energybot_weather_app.ingest.PartitionedResponseWriter;
+import com.example.energybot_weather_app.ingest.PrecompressedResponseWriter;
+import com.example.energybot_weather_app.ingest.RecordEncoder;
+import com.example.energybot_weather_app.ingest.SortedStationWriter;
+import com.example.energybot_weather_app.ingest.StationFileWriter;
+import com.example.energybot_weather_app.ingest.StationSink;
+import com.example.energybot_weather_app.ingest.StationSummaryWriter;
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.example.energybot_weather_app.service.BulkStationService;
+import com.example.energybot_weather_app.service.HotStationStore;
+import com.example.energybot_weather_app.service.StationAnalyticsService;
+import com.example.energybot_weather_app.service.StationDataCache;
+import com.example.energybot_weather_app.service.StationLocationService;
+import com.example.energybot_weather_app.service.WeatherDataProcessor;
+import com.example.energybot_weather_app.service.WeatherDataService;
+import com.example.energybot_weather_app.storage.DatasetHashes;
+import com.example.energybot_weather_app.storage.JsonStationData;
+import com.example.energybot_weather_app.storage.StationIndex;
+import com.example.energybot_weather_app.storage.YearPartitions;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class WeatherApiControllerTests {
+
+    private static final String CSV = String.join("\n",
+            "USW00094728,20240101,TMAX,122,,,W,2400",
+            "USW00094728,20240101,PRCP,-9999,T,I,7,",
+            "USW00094728,20240101,TMIN,22,,,W,2400",
+            "USW00094728,20240102,TMAX,-33,,,W,2400",
+            "USW00094728,20240102,PRCP,5,,,W,",
+            "USW00094728,20240102,TMIN,-77,,,W,2400",
+            "USW00094728,20240201,TMAX,56,,,W,0700",
+            "USW00094728,20240201,SNOW,,,,W,",
+            "USW00094728,20240202,TMAX,999,,X,W,0700",
+            "") + "\n";
+
+    private static final String[][] FILTERS = {
+            {null, null, null},
+            {"TMAX", null, null},
+            {null, "20240102", "20240131"},
+            {"prcp", "20240102", null},
+            {"TAVG", null, null},
+    };
+
+    private static final long INGESTED_AT = 1_700_000_000_123L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    @TempDir
+    Path jsonDir;
+
+    @TempDir
+    Path binaryDir;
+
+    @TempDir
+    Path runDir;
+
+    @Test
+    void streamsTheEnvelopeOfTheStationRecords() throws Exception {
+        WeatherDataService jsonService = ingest(() -> new GhcnJsonEncoder(objectMapper),
+                () -> new StationFileWriter(jsonDir, 1024), jsonDir);
+        WeatherDataService binaryService = ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir);
+
+        for (WeatherDataService service : new WeatherDataService[] {jsonService, binaryService}) {
+            MockMvc mockMvc = mockMvc(service);
+            for (String[] filter : FILTERS) {
+                List<WeatherRecord> records = jsonService.getStationData("USW00094728", filter[0], filter[1], filter[2]);
+                String actual = perform(mockMvc, "/api/station/USW00094728" + query(filter), 200);
+
+                assertEquals(objectMapper.valueToTree(envelope(records, filter)), objectMapper.readTree(actual),
+                        query(filter));
+                assertFalse(actual.contains("\n"), "compact by default");
+            }
+        }
+    }
+
+    @Test
+    void indentsOnRequestAndReportsMissingStations() throws Exception {
+        MockMvc mockMvc = mockMvc(ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir));
+
+        String pretty = perform(mockMvc, "/api/station/USW00094728?elementType=SNOW&pretty=true", 200);
+        assertTrue(pretty.contains("\n"));
+        assertEquals("", objectMapper.readTree(pretty).get("data").get(0).get("value").asText());
+
+        String missing = perform(mockMvc, "/api/station/USS0000MISS", 404);
+        assertEquals("No data found for station ID: USS0000MISS", objectMapper.readTree(missing).get("error").asText());
+    }
+
+    @Test
+    void answersRepeatRequestsWithNotModifiedAndSendsPrecompressedResponses() throws Exception {
+        MockMvc mockMvc = mockMvc(ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir));
+        String url = "/api/station/USW00094728";
+
+        MvcResult first = mockMvc.perform(get(url)).andReturn();
+        String body = mockMvc.perform(asyncDispatch(first))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=60, public"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn().getResponse().getContentAsString();
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        assertEquals(INGESTED_AT / 1000 * 1000, first.getResponse().getDateHeader(HttpHeaders.LAST_MODIFIED));
+
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get(url).header(HttpHeaders.IF_MODIFIED_SINCE, INGESTED_AT + 1000))
+                .andExpect(status().isNotModified());
+        // A filtered response is a different representation with a tag of its own
+        perform(mockMvc, url + "?elementType=TMAX", 200, get(url + "?elementType=TMAX").header(HttpHeaders.IF_NONE_MATCH, etag));
+
+        // Pre-compressed at ingest, copied as it is
+        MvcResult gzipped = mockMvc.perform(get(url).header(HttpHeaders.ACCEPT_ENCODING, "br, gzip;q=0.8")).andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(gzipped))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse();
+        assertNotEquals(etag, response.getHeader(HttpHeaders.ETAG));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals(body, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(Files.size(binaryDir.resolve("USW00094728.json.gz")), response.getContentLengthLong());
+
+        // Under Tomcat the file is handed over for sendfile
+        MvcResult sendfile = mockMvc.perform(get(url).header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .requestAttr("org.apache.tomcat.sendfile.support", true))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+        assertEquals(binaryDir.resolve("USW00094728.json.gz").toRealPath().toString(),
+                sendfile.getRequest().getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(0, sendfile.getResponse().getContentAsByteArray().length);
+
+        mockMvc.perform(get(url).header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"))
+                .andExpect(request().asyncStarted());
+    }
+
+    @Test
+    void sendsThePrecompressedResponseSpanningAllPartitions() throws Exception {
+        // Each year ingested into its partition, then the response spanning both written for the version
+        List<PrecompressedResponseWriter.StationReader> partitions = new ArrayList<>();
+        for (int year : new int[] {2023, 2024}) {
+            Path partition = YearPartitions.directory(binaryDir, year);
+            Files.createDirectories(partition);
+            WeatherDataService partitionService = ingest(GhcnBinaryEncoder::new,
+                    () -> new BinaryStationFileWriter(partition), partition, CSV.replace("2024", Integer.toString(year)));
+            partitions.add(stationId -> new JsonStationData(partitionService.getStationData(stationId)));
+        }
+        new PartitionedResponseWriter(binaryDir, partitions, objectMapper.getFactory()).write("USW00094728");
+        DatasetHashes.of(Map.of("USW00094728", "0123456789abcdef"), INGESTED_AT).write(binaryDir, objectMapper);
+        WeatherDataService service = new WeatherDataService(objectMapper, new StationDataCache(0), new HotStationStore(0));
+        ReflectionTestUtils.setField(service, "dataDir", binaryDir.toString());
+        MockMvc mockMvc = mockMvc(service);
+        String url = "/api/station/USW00094728";
+
+        String body = perform(mockMvc, url, 200);
+        assertEquals(18, objectMapper.readTree(body).get("count").asInt());
+        MvcResult gzipped = mockMvc.perform(get(url).header(HttpHeaders.ACCEPT_ENCODING, "gzip")).andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(gzipped))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals(body, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        MvcResult sendfile = mockMvc.perform(get(url).header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .requestAttr("org.apache.tomcat.sendfile.support", true))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+        assertEquals(binaryDir.resolve("USW00094728.json.gz").toRealPath().toString(),
+                sendfile.getRequest().getAttribute("org.apache.tomcat.sendfile.filename"));
+    }
+
+    @Test
+    void servesTheRollupsWrittenAtIngest() throws Exception {
+        MockMvc jsonMockMvc = mockMvc(ingest(() -> new GhcnJsonEncoder(objectMapper),
+                () -> new StationFileWriter(jsonDir, 1024), jsonDir));
+        MockMvc binaryMockMvc = mockMvc(ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir));
+        assertTrue(Files.isRegularFile(binaryDir.resolve("USW00094728.summary")));
+
+        String url = "/api/station/USW00094728/summary";
+        String summary = perform(binaryMockMvc, url, 200);
+        assertEquals(objectMapper.readTree(summary), objectMapper.readTree(perform(jsonMockMvc, url, 200)));
+
+        // The flagged 999 is counted but left out of the statistics
+        JsonNode tmax = objectMapper.readTree(summary).get("elements").get("TMAX");
+        assertEquals(List.of("2024-01", "2024-02"), tmax.get("monthly").findValuesAsText("period"));
+        JsonNode january = tmax.get("monthly").get(0);
+        assertEquals(2, january.get("count").asInt());
+        assertEquals(-33, january.get("min").asInt());
+        assertEquals(122, january.get("max").asInt());
+        assertEquals(44.5, january.get("mean").asDouble());
+        JsonNode year = tmax.get("annual").get(0);
+        assertEquals("2024", year.get("period").asText());
+        assertEquals(3, year.get("count").asInt());
+        assertEquals(1, year.get("flagged").asInt());
+        assertEquals(145, year.get("sum").asLong());
+
+        // -9999 and empty values are missing, however they are flagged
+        JsonNode prcp = objectMapper.readTree(perform(binaryMockMvc, url + "?elementType=prcp&period=monthly", 200))
+                .get("elements");
+        assertEquals(List.of("PRCP"), prcp.properties().stream().map(Map.Entry::getKey).toList());
+        assertEquals(1, prcp.get("PRCP").get("monthly").get(0).get("missing").asInt());
+        assertEquals(1, prcp.get("PRCP").get("monthly").get(0).get("count").asInt());
+        assertNull(prcp.get("PRCP").get("annual"));
+        JsonNode snow = objectMapper.readTree(summary).get("elements").get("SNOW").get("monthly").get(0);
+        assertEquals(1, snow.get("missing").asInt());
+        assertNull(snow.get("mean"));
+
+        perform(binaryMockMvc, url + "?period=weekly", 400);
+        perform(binaryMockMvc, "/api/station/USS0000MISS/summary", 404);
+        MvcResult first = binaryMockMvc.perform(get(url)).andReturn();
+        binaryMockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, first.getResponse().getHeader(HttpHeaders.ETAG)))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void computesDegreeDaysAndRollingWindowsOverTheDailySeries() throws Exception {
+        MockMvc mockMvc = mockMvc(ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir));
+        String url = "/api/station/USW00094728/analytics";
+
+        // Mean temperatures are the TMAX/TMIN midpoints 7.2 and -5.5, the flagged TMAX and the lone one have none
+        JsonNode all = objectMapper.readTree(perform(mockMvc, url, 200));
+        assertEquals("20240101", all.get("startDate").asText());
+        assertEquals("20240202", all.get("endDate").asText());
+        JsonNode totals = all.get("totals");
+        assertEquals(33, totals.get("days").asInt());
+        assertEquals(2, totals.get("temperatureDays").asInt());
+        assertEquals(0.85, totals.get("meanTemperature").asDouble());
+        assertEquals(34.9, totals.get("hdd").asDouble(), 1e-9);
+        assertEquals(0.0, totals.get("cdd").asDouble());
+        assertEquals(0.5, totals.get("precipitation").asDouble());
+        assertEquals(33, all.get("daily").size());
+
+        JsonNode day = objectMapper.readTree(perform(mockMvc, url + "?startDate=20240102&endDate=20240102", 200));
+        assertEquals(23.8, day.get("totals").get("hdd").asDouble(), 1e-9);
+        JsonNode daily = day.get("daily").get(0);
+        assertEquals(-5.5, daily.get("tmean").asDouble());
+        // The rolling windows reach back before the range
+        assertEquals(0.85, daily.get("tavg7").asDouble());
+        assertEquals(0.5, daily.get("prcpCum").asDouble());
+
+        JsonNode cooling = objectMapper.readTree(perform(mockMvc, url + "?cddBase=0&daily=false", 200));
+        assertEquals(7.2, cooling.get("totals").get("cdd").asDouble(), 1e-9);
+        assertNull(cooling.get("daily"));
+
+        perform(mockMvc, url + "?startDate=2024-01-01", 400);
+        perform(mockMvc, "/api/station/USS0000MISS/analytics", 404);
+    }
+
+    @Test
+    void streamsManyStationsAsNewlineDelimitedJson() throws Exception {
+        MockMvc mockMvc = mockMvc(ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir));
+        String single = perform(mockMvc, "/api/station/USW00094728?elementType=TMAX", 200);
+
+        String lines = perform(mockMvc, "/api/stations?stationIds=USW00094728,USS0000MISS,USW00094728&elementType=TMAX", 200);
+        Map<String, JsonNode> byStation = new LinkedHashMap<>();
+        for (String line : lines.split("\n")) {
+            JsonNode station = objectMapper.readTree(line);
+            byStation.put(station.get("stationId").asText(), station);
+        }
+        assertEquals(2, lines.split("\n").length, "one line per distinct station");
+        assertEquals(objectMapper.readTree(single), byStation.get("USW00094728"));
+        assertEquals("No data found for station ID: USS0000MISS", byStation.get("USS0000MISS").get("error").asText());
+
+        String body = "{\"stationIds\":[\"USW00094728\"],\"startDate\":\"20240201\"}";
+        String posted = perform(mockMvc, "/api/stations", 200,
+                post("/api/stations").contentType(MediaType.APPLICATION_JSON).content(body));
+        assertEquals(3, objectMapper.readTree(posted).get("count").asInt());
+
+        perform(mockMvc, "/api/stations?stationIds=A,B,C,D", 400);
+    }
+
+    @Test
+    void readsOneDateAcrossStationsFromTheDateColumns() throws Exception {
+        MockMvc mockMvc = mockMvc(ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir));
+        JsonNode day = objectMapper.readTree(perform(mockMvc, "/api/date/20240102?elementType=tmin", 200));
+        assertEquals("TMIN", day.get("elementType").asText());
+        JsonNode date = day.get("dates").get(0);
+        assertEquals("20240102", date.get("date").asText());
+        assertEquals(1, date.get("count").asInt());
+        assertEquals("USW00094728", date.get("stationIds").get(0).asText());
+        assertEquals(-77, date.get("values").get(0).asInt());
+
+        // Days without the element are listed empty, the flagged TMAX of Feb 2 is left out
+        JsonNode range = objectMapper.readTree(perform(mockMvc,
+                "/api/date/20240131?elementType=TMAX&endDate=20240202&stationIds=USW00094728,USS0000MISS", 200));
+        assertEquals(3, range.get("dates").size());
+        assertEquals(0, range.get("dates").get(0).get("count").asInt());
+        assertEquals(56, range.get("dates").get(1).get("values").get(0).asInt());
+        assertEquals(0, range.get("dates").get(2).get("count").asInt());
+        JsonNode missing = objectMapper.readTree(perform(mockMvc, "/api/date/20240101?elementType=PRCP", 200));
+        assertEquals(0, missing.get("dates").get(0).get("count").asInt());
+
+        perform(mockMvc, "/api/date/20240230?elementType=TMAX", 400);
+        perform(mockMvc, "/api/date/20240101?elementType=TMAX&endDate=20240301", 400);
+        perform(mockMvc, "/api/date/20240102?elementType=TMAX&endDate=20240101", 400);
+    }
+
+    @Test
+    void findsTheNearestStationsWithData() throws Exception {
+        WeatherDataService service = ingest(GhcnBinaryEncoder::new, () -> new BinaryStationFileWriter(binaryDir), binaryDir);
+        perform(mockMvc(service), "/api/stations/nearest?lat=40.7&lon=-74", 503);
+
+        Files.copy(Path.of(getClass().getResource("/ghcnd-stations-sample.txt").toURI()),
+                binaryDir.resolve(StationIndex.FILE_NAME));
+        MockMvc mockMvc = mockMvc(service);
+        // Of the listed stations only the one with data is found
+        JsonNode nearest = objectMapper.readTree(perform(mockMvc, "/api/stations/nearest?lat=40.7&lon=-74&k=3", 200));
+        assertEquals(1, nearest.get("count").asInt());
+        JsonNode station = nearest.get("stations").get(0);
+        assertEquals("USW00094728", station.get("stationId").asText());
+        assertEquals("NEW YORK CNTRL PK TWR", station.get("name").asText());
+        assertEquals(40.7789, station.get("latitude").asDouble());
+        assertEquals(9.15, station.get("distanceKm").asDouble(), 0.1);
+        assertNull(station.get("coverage"));
+
+        JsonNode within = objectMapper.readTree(perform(mockMvc, "/api/stations/nearest?lat=40.7&lon=-74&radiusKm=5", 200));
+        assertEquals(0, within.get("count").asInt());
+
+        JsonNode coverage = objectMapper.readTree(perform(mockMvc,
+                "/api/stations/nearest?lat=40.7&lon=-74&radiusKm=10&coverage=true", 200)).get("stations").get(0).get("coverage");
+        assertEquals("2024-01", coverage.get("TMAX").get("first").asText());
+        assertEquals("2024-02", coverage.get("TMAX").get("last").asText());
+        assertEquals(3, coverage.get("TMAX").get("values").asInt());
+        assertEquals(1, coverage.get("PRCP").get("values").asInt());
+        assertNull(coverage.get("SNOW"));
+
+        perform(mockMvc, "/api/stations/nearest?lat=91&lon=0", 400);
+        perform(mockMvc, "/api/stations/nearest?lat=0&lon=0&k=0", 400);
+    }
+
+    /**
+     * The response the endpoint built in memory before it was streamed
+     */
+    private Map<String, Object> envelope(List<WeatherRecord> records, String[] filter) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        if (records.isEmpty()) {
+            response.put("message", "No matching records found with the specified filters");
+        }
+        response.put("stationId", "USW00094728");
+        response.put("count", records.size());
+        response.put("data", records);
+        if (!records.isEmpty()) {
+            String[] names = {"elementType", "startDate", "endDate"};
+            for (int i = 0; i < names.length; i++) {
+                if (filter[i] != null) {
+                    response.put(names[i], filter[i]);
+                }
+            }
+        }
+        return response;
+    }
+
+    private static String query(String[] filter) {
+        StringBuilder query = new StringBuilder();
+        String[] names = {"elementType", "startDate", "endDate"};
+        for (int i = 0; i < names.length; i++) {
+            if (filter[i] != null) {
+                query.append(query.length() == 0 ? '?' : '&').append(names[i]).append('=').append(filter[i]);
+            }
+        }
+        return query.toString();
+    }
+
+    private String perform(MockMvc mockMvc, String url, int status) throws Exception {
+        return perform(mockMvc, url, status, get(url));
+    }
+
+    private String perform(MockMvc mockMvc, String url, int status, MockHttpServletRequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andExpect(request().asyncStarted()).andReturn();
+        return mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().is(status))
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    private MockMvc mockMvc(WeatherDataService service) {
+        WeatherDataProcessor processor = mock(WeatherDataProcessor.class);
+        when(processor.isProcessingComplete()).thenReturn(true);
+        WeatherApiController controller = new WeatherApiController(service, processor,
+                new StationAnalyticsService(service, 16, 18.3, 18.3), new BulkStationService(service, 2, 2),
+                new StationLocationService(service), objectMapper);
+        ReflectionTestUtils.setField(controller, "cacheMaxAgeSeconds", 60L);
+        ReflectionTestUtils.setField(controller, "hddBaseC", 18.3);
+        ReflectionTestUtils.setField(controller, "cddBaseC", 18.3);
+        ReflectionTestUtils.setField(controller, "bulkMaxStations", 3);
+        ReflectionTestUtils.setField(controller, "nearestMaxResults", 100);
+        ReflectionTestUtils.setField(controller, "dateMaxDays", 31);
+        return MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    private WeatherDataService ingest(Supplier<RecordEncoder> encoder, Supplier<StationSink> output, Path dataDir) throws Exception {
+        return ingest(encoder, output, dataDir, CSV);
+    }
+
+    private WeatherDataService ingest(Supplier<RecordEncoder> encoder, Supplier<StationSink> output, Path dataDir,
+                                      String csv) throws Exception {
+        WeatherDataService service = new WeatherDataService(objectMapper, new StationDataCache(0), new HotStationStore(0));
+        ReflectionTestUtils.setField(service, "dataDir", dataDir.toString());
+
+        Map<String, String> stationHashes = new ConcurrentHashMap<>();
+        PrecompressedResponseWriter.StationReader reader = stationId -> new JsonStationData(service.getStationData(stationId));
+        Supplier<StationSink> precompressed = () -> new StationSummaryWriter(new PrecompressedResponseWriter(output.get(),
+                reader, dataDir, objectMapper.getFactory(), stationHashes), dataDir);
+        new IngestPipeline(encoder,
+                shard -> new SortedStationWriter(runDir, "shard-" + shard, 1024 * 1024, 4, precompressed, new AtomicInteger()),
+                2, 2, new AtomicLong())
+                .run(new ByteArrayInputStream(csv.getBytes(StandardCharsets.US_ASCII)), new IngestPipeline.Listener() {});
+        DatasetHashes.of(stationHashes, INGESTED_AT).write(dataDir, objectMapper);
+        // No memory to speak of, so each month is collected in a pass of its own
+        new DateColumnsWriter(dataDir, stationHashes.keySet().stream().sorted().toList(), reader, 1).write();
+        return service;
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.energybot_weather_app.download;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RangeDownloaderTests {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+    private static final int MB = 1024 * 1024;
+    private static final int LENGTH = 5 * MB + 123;
+    // Four segments
+    private static final long SEGMENT_SIZE = (LENGTH + 3) / 4;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private final AtomicLong bytesServed = new AtomicLong();
+    // Responses cut off after this many bytes while it is positive, counting down per cut
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private volatile byte[] content;
+    private volatile String etag = "\"v1\"";
+    private volatile boolean rangeSupport = true;
+    // When set, the range starting at this offset isn't served until the latch opens
+    private volatile long heldRangeStart = -1;
+    private final CountDownLatch releaseHeldRange = new CountDownLatch(1);
+    private HttpServer server;
+    private String url;
+
+    @TempDir
+    Path downloadDir;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        content = new byte[LENGTH];
+        new Random(42).nextBytes(content);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/2024.csv.gz", this::serve);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/2024.csv.gz";
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void downloadsRangesInParallel() throws Exception {
+        Path file = downloadDir.resolve("2024.csv.gz");
+        AtomicLong downloaded = new AtomicLong();
+        AtomicLong total = new AtomicLong();
+
+        downloader(4, 0, downloaded, total).download(url, file);
+
+        assertArrayEquals(content, Files.readAllBytes(file));
+        assertEquals(4, ranges.size());
+        assertEquals(content.length, downloaded.get());
+        assertEquals(content.length, total.get());
+        assertEquals(content.length, bytesServed.get());
+    }
+
+    @Test
+    void retriesBrokenSegmentsFromWhereTheyStopped() throws Exception {
+        Path file = downloadDir.resolve("2024.csv.gz");
+        failuresLeft.set(2);
+
+        downloader(4, 3, new AtomicLong(), new AtomicLong()).download(url, file);
+
+        assertArrayEquals(content, Files.readAllBytes(file));
+        assertEquals(6, ranges.size());
+        // Only the cut off bytes were sent twice
+        assertTrue(bytesServed.get() < content.length + MB, "served " + bytesServed.get());
+    }
+
+    @Test
+    void resumesAnInterruptedDownloadAfterRestart() throws Exception {
+        Path file = downloadDir.resolve("2024.csv.gz");
+        failuresLeft.set(1);
+        assertThrows(IOException.class, () -> downloader(4, 0, new AtomicLong(), new AtomicLong()).download(url, file));
+        Path stateFile = downloadDir.resolve("2024.csv.gz" + RangeDownloader.STATE_FILE_SUFFIX);
+        assertTrue(Files.exists(stateFile));
+        // At least the part of the broken segment that arrived was saved. Segments that hadn't
+        // started when the download failed are still to do as well.
+        long saved = DownloadState.read(stateFile, objectMapper).downloadedBytes();
+        assertTrue(saved >= 256 * 1024, "saved " + saved);
+
+        ranges.clear();
+        bytesServed.set(0);
+        AtomicLong downloaded = new AtomicLong();
+        RangeDownloader downloader = downloader(4, 0, downloaded, new AtomicLong());
+        downloader.download(url, file);
+
+        assertArrayEquals(content, Files.readAllBytes(file));
+        assertTrue(ranges.size() <= 2, ranges.toString());
+        // Only what wasn't saved is fetched again
+        assertEquals(content.length - saved, bytesServed.get());
+        assertEquals(content.length, downloaded.get());
+
+        // A finished download isn't fetched again until it is discarded
+        ranges.clear();
+        downloader.download(url, file);
+        assertTrue(ranges.isEmpty());
+        downloader.discard(file);
+        assertFalse(Files.exists(file));
+        assertFalse(Files.exists(downloadDir.resolve("2024.csv.gz" + RangeDownloader.STATE_FILE_SUFFIX)));
+    }
+
+    @Test
+    void startsOverWhenTheFileChangesOnTheServer() throws Exception {
+        Path file = downloadDir.resolve("2024.csv.gz");
+        failuresLeft.set(1);
+        assertThrows(IOException.class, () -> downloader(4, 0, new AtomicLong(), new AtomicLong()).download(url, file));
+
+        content = content.clone();
+        content[0]++;
+        etag = "\"v2\"";
+        ranges.clear();
+        downloader(4, 0, new AtomicLong(), new AtomicLong()).download(url, file);
+
+        assertArrayEquals(content, Files.readAllBytes(file));
+        assertEquals(4, ranges.size());
+    }
+
+    @Test
+    void downloadsInOnePieceWithoutRangeSupport() throws Exception {
+        Path file = downloadDir.resolve("2024.csv.gz");
+        rangeSupport = false;
+        failuresLeft.set(1);
+
+        downloader(4, 1, new AtomicLong(), new AtomicLong()).download(url, file);
+
+        assertArrayEquals(content, Files.readAllBytes(file));
+        assertTrue(ranges.isEmpty());
+    }
+
+    @Test
+    void fileCanBeReadWhileItDownloads() throws Exception {
+        Path file = downloadDir.resolve("2024.csv.gz");
+        // The last segment is only sent once the reader has consumed everything before it
+        heldRangeStart = 3 * SEGMENT_SIZE;
+        DownloadInputStream stream = new DownloadInputStream(file);
+        RangeDownloader downloader = new RangeDownloader(objectMapper, 2, SEGMENT_SIZE, 0, new AtomicLong(), new AtomicLong(),
+                new RangeDownloader.Listener() {
+                    @Override
+                    public void onAvailable(long bytes) {
+                        stream.advance(bytes);
+                    }
+                });
+        CompletableFuture<Void> download = CompletableFuture.runAsync(() -> {
+            try {
+                downloader.download(url, file);
+                stream.finish(null);
+            } catch (IOException e) {
+                stream.finish(e);
+            }
+        });
+
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        try (InputStream in = stream) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                read.write(buffer, 0, n);
+                if (read.size() >= heldRangeStart) {
+                    releaseHeldRange.countDown();
+                }
+            }
+        }
+        download.get(30, TimeUnit.SECONDS);
+
+        assertArrayEquals(content, read.toByteArray());
+        assertArrayEquals(content, Files.readAllBytes(file));
+    }
+
+    @Test
+    void readerSeesAFailedDownload() throws Exception {
+        Path file = downloadDir.resolve("2024.csv.gz");
+        failuresLeft.set(4);
+        DownloadInputStream stream = new DownloadInputStream(file);
+        RangeDownloader downloader = new RangeDownloader(objectMapper, 4, SEGMENT_SIZE, 0, new AtomicLong(), new AtomicLong(),
+                new RangeDownloader.Listener() {
+                    @Override
+                    public void onAvailable(long bytes) {
+                        stream.advance(bytes);
+                    }
+                });
+        IOException failure = assertThrows(IOException.class, () -> downloader.download(url, file));
+        stream.finish(failure);
+
+        // What did arrive is readable, then the failure surfaces instead of a premature end of stream
+        AtomicLong read = new AtomicLong();
+        try (InputStream in = stream) {
+            IOException e = assertThrows(IOException.class, () -> {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    read.addAndGet(n);
+                }
+            });
+            assertTrue(e.getMessage().startsWith("Download failed"), e.getMessage());
+        }
+        assertTrue(read.get() <= 256 * 1024, "read " + read.get());
+    }
+
+    private RangeDownloader downloader(int connections, int retries, AtomicLong downloaded, AtomicLong total) {
+        return new RangeDownloader(objectMapper, connections, SEGMENT_SIZE, retries, downloaded, total,
+                new RangeDownloader.Listener() {});
+    }
+
+    private void awaitRelease() throws IOException {
+        try {
+            assertTrue(releaseHeldRange.await(30, TimeUnit.SECONDS), "reader never caught up");
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Serve the content, honouring Range and If-Range like a static file server
+     */
+    private void serve(HttpExchange exchange) throws IOException {
+        byte[] body = content;
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (rangeSupport) {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        }
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        int start = 0;
+        int end = body.length;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (rangeSupport && range != null && (ifRange == null || ifRange.equals(etag))) {
+            ranges.add(range);
+            Matcher matcher = RANGE.matcher(range);
+            assertTrue(matcher.matches(), range);
+            start = Integer.parseInt(matcher.group(1));
+            end = Integer.parseInt(matcher.group(2)) + 1;
+            status = 206;
+            if (start == heldRangeStart) {
+                awaitRelease();
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + body.length);
+        }
+
+        exchange.sendResponseHeaders(status, end - start);
+        try (OutputStream out = exchange.getResponseBody()) {
+            int length = end - start;
+            if (failuresLeft.getAndDecrement() > 0) {
+                // Send part of the body, then drop the connection
+                length = Math.min(length, 256 * 1024);
+                out.write(body, start, length);
+                bytesServed.addAndGet(length);
+                out.flush();
+                throw new IOException("connection dropped");
+            }
+            out.write(body, start, length);
+            bytesServed.addAndGet(length);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.energybot_weather_app.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountingInputStreamTests {
+
+    @Test
+    void countsBytesReadAndSkippedButNotEndOfInput() throws Exception {
+        AtomicLong counter = new AtomicLong(100);
+        InputStream in = new CountingInputStream(new ByteArrayInputStream(new byte[10]), counter);
+
+        assertEquals(0, in.read());
+        assertEquals(101, counter.get());
+        byte[] buffer = new byte[4];
+        assertEquals(4, in.read(buffer, 0, 4));
+        assertEquals(105, counter.get());
+        assertEquals(2, in.skip(2));
+        assertEquals(107, counter.get());
+        // Only what is left is counted
+        assertEquals(3, in.read(new byte[8], 0, 8));
+        assertEquals(110, counter.get());
+        assertEquals(-1, in.read());
+        assertEquals(-1, in.read(buffer, 0, 4));
+        assertEquals(110, counter.get());
+        assertFalse(in.markSupported());
+    }
+
+    @Test
+    void countsCompressedBytesUnderneathGzip() throws Exception {
+        StringBuilder lines = new StringBuilder();
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 5000; i++) {
+            lines.append(String.format("USC%08d,2024%04d,TMAX,%d,,,7,0700\n", random.nextInt(100000000),
+                    random.nextInt(10000), random.nextInt(-500, 500)));
+        }
+        byte[] csv = lines.toString().getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(csv);
+        }
+
+        AtomicLong counter = new AtomicLong();
+        try (InputStream in = new GZIPInputStream(new CountingInputStream(
+                new ByteArrayInputStream(compressed.toByteArray()), counter), 64)) {
+            byte[] head = in.readNBytes(csv.length / 2);
+            assertArrayEquals(Arrays.copyOf(csv, csv.length / 2), head);
+            long halfway = counter.get();
+            assertTrue(halfway > 0 && halfway < compressed.size(), "read " + halfway);
+            in.readAllBytes();
+        }
+        assertEquals(compressed.size(), counter.get());
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.energybot_weather_app.ingest;
+
+import com.example.energybot_weather_app.metrics.Counter;
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestPipelineTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    @TempDir
+    Path dataDir;
+
+    @TempDir
+    Path runDir;
+
+    @Test
+    void writesEachStationInInputOrderAcrossThreads() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        Map<String, List<String>> expected = new LinkedHashMap<>();
+        int lines = 0;
+        for (int day = 1; day <= 200; day++) {
+            for (int station = 0; station < 50; station++) {
+                String stationId = String.format("USC%08d", station);
+                String date = String.format("2024%04d", day);
+                String value = Integer.toString(day * station % 311);
+                csv.append(stationId).append(',').append(date).append(",TMAX,").append(value).append(",,,7,0700\n");
+                lines++;
+
+                WeatherRecord record = new WeatherRecord(stationId, date, "TMAX", value);
+                record.setsFlag("7");
+                record.setObsTime("0700");
+                expected.computeIfAbsent(stationId, id -> new ArrayList<>()).add(objectMapper.writeValueAsString(record));
+            }
+        }
+        // Malformed and blank lines are counted but not written
+        csv.append("BROKEN LINE\n\n");
+        lines += 2;
+
+        AtomicLong processedLines = new AtomicLong();
+        AtomicInteger processedStations = new AtomicInteger();
+        AtomicInteger openStations = new AtomicInteger();
+        // A tiny sort buffer and merge fan-in force many spills and several merge passes
+        IngestPipeline pipeline = new IngestPipeline(() -> new GhcnJsonEncoder(objectMapper),
+                shard -> new SortedStationWriter(runDir, "shard-" + shard, 16 * 1024, 3,
+                        () -> new TrackedStationSink(new StationFileWriter(dataDir, 1024), openStations), processedStations),
+                4, 3, processedLines);
+        Counter lineCounter = new Counter();
+        Counter validLineCounter = new Counter();
+        Counter invalidLineCounter = new Counter();
+        pipeline.setLineCounters(lineCounter, validLineCounter, invalidLineCounter);
+
+        IngestStats stats = pipeline.run(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.US_ASCII)),
+                new IngestPipeline.Listener() {});
+
+        assertEquals(lines, stats.lines());
+        assertEquals(lines - 2, stats.validLines());
+        assertEquals(50, stats.stations());
+        assertEquals(lines, processedLines.get());
+        assertEquals(50, processedStations.get());
+        assertEquals(lines, lineCounter.count());
+        assertEquals(lines - 2, validLineCounter.count());
+        assertEquals(2, invalidLineCounter.count());
+        assertEquals(0, openStations.get());
+        for (Map.Entry<String, List<String>> entry : expected.entrySet()) {
+            String content = Files.readString(dataDir.resolve(entry.getKey() + ".json"));
+            assertEquals("[\n" + String.join(",\n", entry.getValue()) + "\n]", content);
+        }
+        try (Stream<Path> runs = Files.list(runDir)) {
+            assertEquals(0, runs.count());
+        }
+    }
+
+    @Test
+    void binaryEncoderRejectsValuesItCouldNotServeBackAsWritten() throws Exception {
+        GhcnBinaryEncoder encoder = new GhcnBinaryEncoder();
+        for (String value : List.of("0", "5", "-5", "50", "-9999", "")) {
+            byte[] line = ("USW00094728,20240101,TMAX," + value + ",,,W,2400").getBytes(StandardCharsets.US_ASCII);
+            assertTrue(encoder.encode(line, 0, line.length, new ByteArrayOutputStream()), value);
+        }
+        for (String value : List.of("005", "+5", "-0", "-05", "00")) {
+            byte[] line = ("USW00094728,20240101,TMAX," + value + ",,,W,2400").getBytes(StandardCharsets.US_ASCII);
+            assertThrows(IllegalArgumentException.class,
+                    () -> encoder.encode(line, 0, line.length, new ByteArrayOutputStream()), value);
+        }
+    }
+
+    @Test
+    void resumesAnInterruptedRunFromItsLastCheckpoint() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        Map<String, List<String>> expected = new LinkedHashMap<>();
+        for (int day = 1; day <= 366; day++) {
+            for (int station = 0; station < 200; station++) {
+                String stationId = String.format("USC%08d", station);
+                String date = String.format("2024%04d", day);
+                csv.append(stationId).append(',').append(date).append(",PRCP,").append(day).append(",,,7,\n");
+
+                WeatherRecord record = new WeatherRecord(stationId, date, "PRCP", Integer.toString(day));
+                record.setsFlag("7");
+                expected.computeIfAbsent(stationId, id -> new ArrayList<>()).add(objectMapper.writeValueAsString(record));
+            }
+        }
+        byte[] input = csv.toString().getBytes(StandardCharsets.US_ASCII);
+
+        // The first run dies two thirds of the way through the input
+        List<IngestPipeline.Checkpoint> checkpoints = new ArrayList<>();
+        InputStream failing = new FilterInputStream(new ByteArrayInputStream(input)) {
+            private int remaining = input.length * 2 / 3;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    throw new IOException("connection reset");
+                }
+                int n = super.read(b, off, Math.min(len, remaining));
+                remaining -= n;
+                return n;
+            }
+        };
+        IngestPipeline first = pipeline(0, new AtomicLong());
+        first.setCheckpoints(64 * 1024, null);
+        assertThrows(IOException.class, () -> first.run(failing, new IngestPipeline.Listener() {
+            @Override
+            public void onCheckpoint(IngestPipeline.Checkpoint checkpoint) {
+                checkpoints.add(checkpoint);
+            }
+        }));
+        assertTrue(checkpoints.size() >= 2, checkpoints.toString());
+        IngestPipeline.Checkpoint last = checkpoints.get(checkpoints.size() - 1);
+        assertTrue(last.inputOffset() > 0 && last.inputOffset() <= input.length * 2 / 3);
+        try (Stream<Path> dataFiles = Files.list(dataDir)) {
+            assertEquals(0, dataFiles.count());
+        }
+        // Only the runs of the last checkpoint are left
+        Set<String> runs = new HashSet<>();
+        last.runs().forEach(runs::addAll);
+        try (Stream<Path> runFiles = Files.list(runDir)) {
+            assertEquals(runs, runFiles.map(run -> run.getFileName().toString()).collect(Collectors.toSet()));
+        }
+
+        // The progress counter is shared with another pipeline that has read lines of its own
+        AtomicLong processedLines = new AtomicLong(1000);
+        IngestPipeline second = pipeline(1, processedLines);
+        second.setCheckpoints(64 * 1024, last);
+        IngestStats stats = second.run(new ByteArrayInputStream(input), new IngestPipeline.Listener() {});
+
+        assertEquals(366 * 200, stats.lines());
+        assertEquals(366 * 200, stats.validLines());
+        assertEquals(1000 + 366 * 200, processedLines.get());
+        for (Map.Entry<String, List<String>> entry : expected.entrySet()) {
+            String content = Files.readString(dataDir.resolve(entry.getKey() + ".json"));
+            assertEquals("[\n" + String.join(",\n", entry.getValue()) + "\n]", content);
+        }
+    }
+
+    private IngestPipeline pipeline(int attempt, AtomicLong processedLines) {
+        return new IngestPipeline(() -> new GhcnJsonEncoder(objectMapper),
+                shard -> new SortedStationWriter(runDir, "shard-" + shard + "-" + attempt, 1024 * 1024, 8,
+                        () -> new StationFileWriter(dataDir, 1024), new AtomicInteger()),
+                2, 2, processedLines);
+    }
+}
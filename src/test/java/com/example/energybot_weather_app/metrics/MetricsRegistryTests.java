@@ -0,0 +1,62 @@
+package com.example.energybot_weather_app.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsRegistryTests {
+
+    @Test
+    void writesCountersAndGaugesInThePrometheusFormat() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter files = registry.counter("bytes_read_total", "Bytes read", "layout", "files");
+        registry.counter("bytes_read_total", "Bytes read", "layout", "packed").increment(7);
+        AtomicInteger open = new AtomicInteger(3);
+        registry.gauge("open_writers", "Open \"writers\"", open::get);
+
+        files.increment(1024);
+        assertSame(files, registry.counter("bytes_read_total", "Bytes read", "layout", "files"));
+        open.set(2);
+
+        assertEquals("""
+                # HELP bytes_read_total Bytes read
+                # TYPE bytes_read_total counter
+                bytes_read_total{layout="files"} 1024
+                bytes_read_total{layout="packed"} 7
+                # HELP open_writers Open "writers"
+                # TYPE open_writers gauge
+                open_writers 2
+                """, registry.scrape());
+    }
+
+    @Test
+    void writesTimersAsCumulativeHistogramsInSeconds() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Timer timer = registry.timer("request_seconds", "Request time", new double[] {0.01, 0.1}, "filter", "none");
+        timer.record(5_000_000);
+        timer.record(10_000_000);
+        timer.record(50_000_000);
+        timer.record(2_000_000_000);
+
+        String scrape = registry.scrape();
+        assertTrue(scrape.contains("# TYPE request_seconds histogram\n"), scrape);
+        assertTrue(scrape.contains("request_seconds_bucket{filter=\"none\",le=\"0.01\"} 2\n"), scrape);
+        assertTrue(scrape.contains("request_seconds_bucket{filter=\"none\",le=\"0.1\"} 3\n"), scrape);
+        assertTrue(scrape.contains("request_seconds_bucket{filter=\"none\",le=\"+Inf\"} 4\n"), scrape);
+        assertTrue(scrape.contains("request_seconds_sum{filter=\"none\"} 2.065\n"), scrape);
+        assertTrue(scrape.contains("request_seconds_count{filter=\"none\"} 4\n"), scrape);
+    }
+
+    @Test
+    void rejectsANameRegisteredWithAnotherType() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("lines_total", "Lines");
+
+        assertThrows(IllegalArgumentException.class, () -> registry.gauge("lines_total", "Lines", () -> 1));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.storage.StationIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StationLocationServiceTests {
+
+    private static final String CENTRAL_PARK = "USW00094728  40.7789  -73.9692   39.6 NY NEW YORK CNTRL PK TWR\n";
+    private static final String LAGUARDIA = "USW00014732  40.7794  -73.8803    3.4 NY NEW YORK LAGUARDIA AP\n";
+
+    @TempDir
+    Path dataDir;
+
+    @TempDir
+    Path nextVersion;
+
+    @Test
+    void buildsTheIndexAgainOnceTheDatasetMovesOn() throws Exception {
+        Files.writeString(dataDir.resolve(StationIndex.FILE_NAME), CENTRAL_PARK);
+        Files.writeString(nextVersion.resolve(StationIndex.FILE_NAME), CENTRAL_PARK + LAGUARDIA);
+        WeatherDataService service = new WeatherDataService(new ObjectMapper(), new StationDataCache(0), new HotStationStore(0));
+        ReflectionTestUtils.setField(service, "dataDir", dataDir.toString());
+        StationLocationService locations = new StationLocationService(service);
+        assertEquals(1, locations.getStationIndex().size());
+
+        // Told about the new version before the data service, so the index is built from the old one again
+        StationDataUpdatedEvent event = new StationDataUpdatedEvent(nextVersion);
+        locations.onStationDataUpdated(event);
+        assertEquals(1, locations.getStationIndex().size());
+
+        // Not for long: the data service's switch is picked up without another event
+        service.onStationDataUpdated(event);
+        assertEquals(2, locations.getStationIndex().size());
+    }
+}
@@ -0,0 +1,410 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.example.energybot_weather_app.storage.DatasetManifest;
+import com.example.energybot_weather_app.storage.DatasetStore;
+import com.example.energybot_weather_app.storage.DateColumns;
+import com.example.energybot_weather_app.storage.StationSegments;
+import com.example.energybot_weather_app.storage.YearPartitions;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WeatherDataProcessorTests {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Path to the file served there and its ETag
+    private final Map<String, byte[]> contents = new ConcurrentHashMap<>();
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private String baseUrl;
+
+    @TempDir
+    Path dataDir;
+
+    @TempDir
+    Path downloadDir;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::serve);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void refreshRewritesOnlyChangedStations() throws Exception {
+        publish("/2024.csv.gz", "\"v1\"", csv(2024, 122, true));
+        contents.put("/ghcnd-stations.txt", "USW00094728  40.7789  -73.9692   39.6 NY NEW YORK CNTRL PK TWR\n"
+                .getBytes(StandardCharsets.US_ASCII));
+        etags.put("/ghcnd-stations.txt", "\"s1\"");
+        StationDataCache cache = new StationDataCache(0);
+        WeatherDataService service = service(cache);
+        WeatherDataProcessor processor = processor(service, cache);
+        ReflectionTestUtils.setField(processor, "stationsUrl", baseUrl + "/ghcnd-stations.txt");
+
+        processor.initializeDataProcessing();
+        assertTrue(processor.isProcessingComplete());
+        Path firstVersion = service.getDataDirectory();
+        assertEquals("123", service.getStationData("USW00094728", "TMAX", null, null).get(0).getValue());
+        assertTrue(Files.isRegularFile(firstVersion.resolve("ghcnd-stations.txt")));
+
+        // One station changes, one disappears, one stays the same. The station list is unavailable.
+        publish("/2024.csv.gz", "\"v2\"", csv(2024, 150, false));
+        contents.remove("/ghcnd-stations.txt");
+        processor.refreshData();
+
+        Map<String, Object> status = processor.getRefreshStatus();
+        assertEquals("updated", status.get("lastResult"));
+        assertEquals(1, status.get("stationsChanged"));
+        assertEquals(1, status.get("stationsRemoved"));
+        assertEquals(1, status.get("stationsUnchanged"));
+        Path secondVersion = service.getDataDirectory();
+        assertNotEquals(firstVersion, secondVersion);
+        List<WeatherRecord> records = service.getStationData("USW00094728", "TMAX", null, null);
+        assertEquals("151", records.get(0).getValue());
+        assertNull(service.getStationData("USC00000002"));
+
+        // The unchanged station's files are the previous version's, not copies
+        for (String file : List.of("USC00000001.bin", "USC00000001.json.gz", "USC00000001.summary", "ghcnd-stations.txt")) {
+            assertEquals(fileKey(firstVersion.resolve(file)), fileKey(secondVersion.resolve(file)), file);
+        }
+        assertNotEquals(fileKey(firstVersion.resolve("USW00094728.bin")), fileKey(secondVersion.resolve("USW00094728.bin")));
+
+        // Nothing new at the source
+        processor.refreshData();
+        status = processor.getRefreshStatus();
+        assertEquals("unchanged", status.get("lastResult"));
+        assertEquals(2, status.get("stationsUnchanged"));
+        assertEquals(secondVersion, service.getDataDirectory());
+    }
+
+    @Test
+    void servesTheUnversionedLayoutUntilTheFirstPublish() throws Exception {
+        // Station files an ingest from before versioning left directly in the data directory
+        publish("/2024.csv.gz", "\"v1\"", csv(2024, 122, true));
+        StationDataCache cache = new StationDataCache(0);
+        WeatherDataProcessor ingest = processor(service(cache), cache);
+        ReflectionTestUtils.setField(ingest, "dataDir", downloadDir.resolve("old").toString());
+        ingest.initializeDataProcessing();
+        try (Stream<Path> files = Files.list(new DatasetStore(downloadDir.resolve("old")).getCurrentDirectory())) {
+            for (Path file : files.filter(file -> !file.getFileName().toString().equals(DatasetManifest.FILE_NAME)).toList()) {
+                Files.copy(file, dataDir.resolve(file.getFileName()));
+            }
+        }
+        Files.writeString(dataDir.resolve("README.txt"), "not a station file");
+        contents.clear();
+
+        cache = new StationDataCache(0);
+        WeatherDataService service = service(cache);
+        WeatherDataProcessor processor = processor(service, cache);
+        processor.initializeDataProcessing();
+        // Served as it is, without downloading anything
+        assertTrue(processor.isProcessingComplete());
+        assertEquals(dataDir, service.getDataDirectory());
+        assertEquals("123", service.getStationData("USW00094728", "TMAX", null, null).get(0).getValue());
+
+        publish("/2024.csv.gz", "\"v2\"", csv(2024, 150, false));
+        processor.refreshData();
+        assertEquals("updated", processor.getRefreshStatus().get("lastResult"));
+        assertNotEquals(dataDir, service.getDataDirectory());
+        assertEquals("151", service.getStationData("USW00094728", "TMAX", null, null).get(0).getValue());
+        assertFalse(Files.exists(dataDir.resolve("USW00094728.bin")));
+        assertFalse(Files.exists(dataDir.resolve("USW00094728.json.gz")));
+        assertFalse(Files.exists(dataDir.resolve("USW00094728.summary")));
+        assertTrue(Files.exists(dataDir.resolve("README.txt")));
+    }
+
+    @Test
+    void estimatesTotalLinesFromCompressedBytesWithoutACountingPass() {
+        // Nothing read yet, nothing to extrapolate from
+        assertEquals(0, WeatherDataProcessor.totalLines(0, 0, 0, 1000));
+        assertEquals(0, WeatherDataProcessor.percentComplete(0, 0, 0, 1000));
+        assertEquals(0, WeatherDataProcessor.totalLines(0, 0, 0, 0));
+        assertEquals(0, WeatherDataProcessor.percentComplete(0, 0, 0, 0));
+
+        // A quarter of the compressed bytes held 2500 lines
+        assertEquals(10000, WeatherDataProcessor.totalLines(2500, 0, 250, 1000));
+        assertEquals(25, WeatherDataProcessor.percentComplete(2500, 0, 250, 1000));
+        // The size of a file still downloading can be behind what was read
+        assertEquals(100, WeatherDataProcessor.percentComplete(2500, 0, 1200, 1000));
+
+        // A counting pass gives the exact total
+        assertEquals(8000, WeatherDataProcessor.totalLines(2500, 8000, 250, 1000));
+        assertEquals(31, WeatherDataProcessor.percentComplete(2500, 8000, 250, 1000));
+    }
+
+    @Test
+    void reportsExactLineCountsWithoutSinglePassIngest() throws Exception {
+        String csv = csv(2024, 122, true);
+        long lines = csv.lines().count();
+        publish("/2024.csv.gz", "\"v1\"", csv);
+        StationDataCache cache = new StationDataCache(0);
+        WeatherDataService service = service(cache);
+
+        // Single pass, streamed: extrapolated from the compressed bytes, exact once they're all read
+        WeatherDataProcessor processor = processor(service, cache);
+        processor.initializeDataProcessing();
+        Map<String, Object> progress = processor.getProcessingProgress();
+        assertEquals(lines, progress.get("processedLines"));
+        assertEquals(lines, progress.get("totalLines"));
+        assertEquals(100, progress.get("percentComplete"));
+        assertEquals(true, progress.get("totalLinesEstimated"));
+
+        // Downloaded first, then counted before processing, into a data directory of its own
+        processor = processor(service, cache);
+        ReflectionTestUtils.setField(processor, "dataDir", dataDir.resolve("counted").toString());
+        ReflectionTestUtils.setField(processor, "streamingIngest", false);
+        ReflectionTestUtils.setField(processor, "singlePassIngest", false);
+        processor.initializeDataProcessing();
+        assertTrue(processor.isProcessingComplete());
+        progress = processor.getProcessingProgress();
+        assertEquals(lines, progress.get("processedLines"));
+        assertEquals(lines, progress.get("totalLines"));
+        assertEquals(100, progress.get("percentComplete"));
+        assertNull(progress.get("totalLinesEstimated"));
+    }
+
+    @Test
+    void ingestsYearsIntoPartitionsAndReadsOnlyTheQueriedOnes() throws Exception {
+        for (int year = 2022; year <= 2024; year++) {
+            publish("/" + year + ".csv.gz", "\"" + year + "\"", csv(year, 100, year == 2022));
+        }
+        StationDataCache cache = new StationDataCache(16);
+        WeatherDataService service = service(cache);
+        WeatherDataProcessor processor = processor(service, cache);
+        ReflectionTestUtils.setField(processor, "dataYears", "2022-2024");
+        ReflectionTestUtils.setField(processor, "dataYearUrl", baseUrl + "/{year}.csv.gz");
+        ReflectionTestUtils.setField(processor, "parallelYears", 3);
+
+        processor.initializeDataProcessing();
+        assertTrue(processor.isProcessingComplete());
+        Path firstVersion = service.getDataDirectory();
+        assertTrue(Files.isRegularFile(firstVersion.resolve("2023").resolve("USW00094728.bin")));
+        // The pre-compressed response spans every year, so it belongs to the version and not a partition
+        assertFalse(Files.exists(firstVersion.resolve("2023").resolve("USW00094728.json.gz")));
+        assertEquals(firstVersion.resolve("USW00094728.json.gz"), service.getPrecompressedResponse("USW00094728").file());
+        // The years were ingested side by side, each manifest counts only its own year's lines
+        assertEquals(3 * 28, DatasetManifest.read(YearPartitions.directory(firstVersion, 2022), objectMapper).lines());
+        assertEquals(2 * 28, DatasetManifest.read(YearPartitions.directory(firstVersion, 2023), objectMapper).lines());
+        assertEquals(2 * 28, DatasetManifest.read(YearPartitions.directory(firstVersion, 2024), objectMapper).lines());
+
+        // A range within one year loads only that year's partition
+        List<WeatherRecord> records = service.getStationData("USW00094728", null, "20230101", "20231231");
+        assertEquals(28, records.size());
+        assertTrue(records.stream().allMatch(record -> record.getDate().startsWith("2023")));
+        assertEquals(1L, service.getCacheStats().get("misses"));
+
+        // Unfiltered queries read every year, in date order
+        records = service.getStationData("USW00094728");
+        assertEquals(3 * 28, records.size());
+        assertEquals("20220201", records.get(0).getDate());
+        assertEquals("20240228", records.get(records.size() - 1).getDate());
+        assertEquals(List.of("20230201", "20240201"), service.getStationData("USW00094728", "TMAX", "20230201", "20240201")
+                .stream().map(WeatherRecord::getDate).filter(date -> date.endsWith("0201")).toList());
+
+        // A station outside the queried years exists, it just has no records there
+        assertEquals(0, service.getStationData("USC00000002", null, "20240101", null).size());
+        assertNull(service.getStationData("USC00000003", null, "20240101", null));
+
+        // Only the year whose file changed is ingested again
+        publish("/2024.csv.gz", "\"2024b\"", csv(2024, 110, false));
+        processor.refreshData();
+        Map<String, Object> status = processor.getRefreshStatus();
+        assertEquals("updated", status.get("lastResult"));
+        assertEquals(1, status.get("stationsChanged"));
+        assertEquals(2, status.get("stationsUnchanged"));
+        Path secondVersion = service.getDataDirectory();
+        assertEquals(fileKey(firstVersion.resolve("2022").resolve("USW00094728.bin")),
+                fileKey(secondVersion.resolve("2022").resolve("USW00094728.bin")));
+        assertEquals("111", service.getStationData("USW00094728", "TMAX", "20240201", "20240201").get(0).getValue());
+        assertEquals(fileKey(firstVersion.resolve("USC00000001.json.gz")), fileKey(secondVersion.resolve("USC00000001.json.gz")));
+        assertNotEquals(fileKey(firstVersion.resolve("USW00094728.json.gz")), fileKey(secondVersion.resolve("USW00094728.json.gz")));
+
+        // Each year has its days' values of all stations, the unchanged years linked with the rest
+        assertEquals(fileKey(firstVersion.resolve("2022").resolve("dates").resolve("20220228.day")),
+                fileKey(secondVersion.resolve("2022").resolve("dates").resolve("20220228.day")));
+        DateColumns day = service.getDateColumns(20220215);
+        int tmin = day.find("TMIN");
+        assertEquals(1, day.count(tmin));
+        assertEquals("USC00000002", day.stationId(tmin, 0));
+        assertEquals(-15, day.value(tmin, 0));
+        day = service.getDateColumns(20240215);
+        assertEquals(125, day.value(day.find("TMAX"), day.indexOf(day.find("TMAX"), "USW00094728")));
+        assertNull(service.getDateColumns(20250101));
+    }
+
+    @Test
+    void packedLayoutServesStationsFromSegmentsAndTakesOverUnchangedOnes() throws Exception {
+        publish("/2024.csv.gz", "\"v1\"", csv(2024, 122, true));
+        StationDataCache cache = new StationDataCache(0);
+        WeatherDataService service = service(cache);
+        WeatherDataProcessor processor = processor(service, cache);
+        ReflectionTestUtils.setField(processor, "storageLayout", "packed");
+
+        processor.initializeDataProcessing();
+        assertTrue(processor.isProcessingComplete());
+        Path firstVersion = service.getDataDirectory();
+        assertTrue(Files.isRegularFile(StationSegments.indexFile(firstVersion)));
+        assertTrue(Files.notExists(firstVersion.resolve("USW00094728.bin")));
+        assertEquals("123", service.getStationData("USW00094728", "TMAX", null, null).get(0).getValue());
+        assertEquals(1, service.getStationSummary("USC00000001").size());
+        StationSegments.Range response = service.getPrecompressedResponse("USC00000001");
+        assertEquals(StationSegments.segmentFile(firstVersion, 0), response.file());
+        assertTrue(response.length() > 0);
+        assertEquals(1, service.getDateColumns(20240215).count(0));
+
+        // Unchanged stations are copied out of the previous version's segments
+        publish("/2024.csv.gz", "\"v2\"", csv(2024, 150, false));
+        processor.refreshData();
+        Map<String, Object> status = processor.getRefreshStatus();
+        assertEquals("updated", status.get("lastResult"));
+        assertEquals(1, status.get("stationsChanged"));
+        assertEquals(1, status.get("stationsUnchanged"));
+        Path secondVersion = service.getDataDirectory();
+        assertNotEquals(firstVersion, secondVersion);
+        StationSegments segments = StationSegments.open(secondVersion);
+        assertEquals(2, segments.size());
+        assertEquals("151", service.getStationData("USW00094728", "TMAX", null, null).get(0).getValue());
+        assertEquals(28, service.getStationData("USC00000001").size());
+        assertNull(service.getStationData("USC00000002"));
+        assertNotNull(service.getPrecompressedResponse("USC00000001"));
+    }
+
+    private WeatherDataService service(StationDataCache cache) {
+        WeatherDataService service = new WeatherDataService(objectMapper, cache, new HotStationStore(0));
+        ReflectionTestUtils.setField(service, "dataDir", dataDir.toString());
+        return service;
+    }
+
+    private WeatherDataProcessor processor(WeatherDataService service, StationDataCache cache) {
+        WeatherDataProcessor processor = new WeatherDataProcessor(objectMapper, event -> {
+            cache.onStationDataUpdated((StationDataUpdatedEvent) event);
+            service.onStationDataUpdated((StationDataUpdatedEvent) event);
+        });
+        ReflectionTestUtils.setField(processor, "dataUrl", baseUrl + "/2024.csv.gz");
+        ReflectionTestUtils.setField(processor, "dataYears", "");
+        ReflectionTestUtils.setField(processor, "stationsUrl", "");
+        ReflectionTestUtils.setField(processor, "dataDir", dataDir.toString());
+        ReflectionTestUtils.setField(processor, "downloadDir", downloadDir.toString());
+        ReflectionTestUtils.setField(processor, "downloadConnections", 2);
+        ReflectionTestUtils.setField(processor, "downloadSegmentSizeMb", 1);
+        ReflectionTestUtils.setField(processor, "streamingIngest", true);
+        ReflectionTestUtils.setField(processor, "singlePassIngest", true);
+        ReflectionTestUtils.setField(processor, "ingestThreads", 2);
+        ReflectionTestUtils.setField(processor, "ingestWriterThreads", 2);
+        ReflectionTestUtils.setField(processor, "ingestParser", "bytes");
+        ReflectionTestUtils.setField(processor, "storageFormat", "binary");
+        ReflectionTestUtils.setField(processor, "storageLayout", "files");
+        ReflectionTestUtils.setField(processor, "segmentSizeMb", 1024);
+        ReflectionTestUtils.setField(processor, "sortBufferMb", 1);
+        ReflectionTestUtils.setField(processor, "maxOpenFiles", 16);
+        ReflectionTestUtils.setField(processor, "writeDateColumns", true);
+        return processor;
+    }
+
+    private static String csv(int year, int tmax, boolean withSecondCoopStation) {
+        StringBuilder csv = new StringBuilder();
+        for (int day = 1; day <= 28; day++) {
+            String date = String.format("%d02%02d", year, day);
+            csv.append("USW00094728,").append(date).append(",TMAX,").append(tmax + day).append(",,,W,2400\n");
+            csv.append("USC00000001,").append(date).append(",PRCP,").append(day).append(",,,7,\n");
+            if (withSecondCoopStation) {
+                csv.append("USC00000002,").append(date).append(",TMIN,-").append(day).append(",,,7,0700\n");
+            }
+        }
+        return csv.toString();
+    }
+
+    private void publish(String path, String etag, String csv) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(csv.getBytes(StandardCharsets.US_ASCII));
+        }
+        contents.put(path, bytes.toByteArray());
+        etags.put(path, etag);
+    }
+
+    private static Object fileKey(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+
+    /**
+     * Serve the content with its ETag, answering conditional HEAD requests and byte ranges
+     */
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        byte[] body = contents.get(path);
+        String etag = etags.get(path);
+        if (body == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+                exchange.sendResponseHeaders(200, -1);
+            }
+            exchange.close();
+            return;
+        }
+
+        int start = 0;
+        int end = body.length;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            Matcher matcher = RANGE.matcher(range);
+            assertTrue(matcher.matches(), range);
+            start = Integer.parseInt(matcher.group(1));
+            end = Math.min(body.length, Integer.parseInt(matcher.group(2)) + 1);
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + body.length);
+        }
+        exchange.sendResponseHeaders(status, end - start);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body, start, end - start);
+        }
+    }
+}
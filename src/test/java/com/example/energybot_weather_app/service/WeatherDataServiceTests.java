@@ -0,0 +1,301 @@
+package com.example.energybot_weather_app.service;
+
+import com.example.energybot_weather_app.ingest.BinaryStationFileWriter;
+import com.example.energybot_weather_app.ingest.GhcnBinaryEncoder;
+import com.example.energybot_weather_app.ingest.GhcnJsonEncoder;
+import com.example.energybot_weather_app.ingest.IngestPipeline;
+import com.example.energybot_weather_app.ingest.RecordEncoder;
+import com.example.energybot_weather_app.ingest.SortedStationWriter;
+import com.example.energybot_weather_app.ingest.StationFileWriter;
+import com.example.energybot_weather_app.ingest.StationSegmentWriter;
+import com.example.energybot_weather_app.ingest.StationSink;
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.example.energybot_weather_app.storage.DatasetHashes;
+import com.example.energybot_weather_app.storage.StationData;
+import com.example.energybot_weather_app.storage.StationSegments;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WeatherDataServiceTests {
+
+    private static final String CSV = String.join("\n",
+            "USW00094728,20240101,TMAX,122,,,W,2400",
+            "USW00094728,20240101,PRCP,-9999,T,I,7,",
+            "USW00094728,20240102,TMAX,-33,,,W,2400",
+            "USW00094728,20240102,WT01,1,,,X,",
+            "USW00094728,20240201,TMAX,56,,,W,0700",
+            "USW00094728,20240201,SNOW,,,,W,",
+            "USC00000001,20240101,TMAX,-20,,,7,0700",
+            "USC00000001,20240101,TMIN,-100,,,7,0700",
+            // PRCP first appears on the second day but is listed ahead of the temperatures
+            "USC00000001,20240102,PRCP,3,,,7,",
+            "USC00000001,20240102,TMAX,-10,,,7,0700",
+            "USC00000001,20240102,TMIN,-90,,,7,0700",
+            "USC00000001,20240103,PRCP,0,,,7,",
+            "USC00000001,20240103,TMIN,-80,,,7,0700",
+            "") + "\n";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    @TempDir
+    Path jsonDir;
+
+    @TempDir
+    Path binaryDir;
+
+    @TempDir
+    Path runDir;
+
+    @TempDir
+    Path packedDir;
+
+    @Test
+    void binaryFilesAnswerQueriesLikeJsonFiles() throws Exception {
+        WeatherDataService jsonService = ingest(() -> new GhcnJsonEncoder(objectMapper),
+                () -> new StationFileWriter(jsonDir, 1024), jsonDir);
+        WeatherDataService binaryService = ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir);
+        assertTrue(Files.exists(binaryDir.resolve("USW00094728.bin")));
+
+        String[][] filters = {
+                {null, null, null},
+                {"TMAX", null, null},
+                {"prcp", null, null},
+                {"WT01", "20240102", "20240102"},
+                {null, "20240102", null},
+                {null, null, "202401"},
+                {"", "", ""},
+                {"TAVG", null, null},
+                {"TMIN", "20240102", null},
+                {null, "20240102", "20240103"},
+                {"TMAX", "20240105", "20240101"},
+        };
+        for (String stationId : List.of("USW00094728", "USC00000001")) {
+            for (String[] filter : filters) {
+                List<WeatherRecord> expected = jsonService.getStationData(stationId, filter[0], filter[1], filter[2]);
+                List<WeatherRecord> actual = binaryService.getStationData(stationId, filter[0], filter[1], filter[2]);
+                assertEquals(objectMapper.writeValueAsString(expected), objectMapper.writeValueAsString(actual),
+                        stationId + " " + String.join(",", String.valueOf(filter[0]), filter[1], filter[2]));
+            }
+        }
+
+        List<WeatherRecord> records = binaryService.getStationData("USW00094728", "PRCP", null, null);
+        assertEquals(1, records.size());
+        assertEquals("-9999", records.get(0).getValue());
+        assertEquals("T", records.get(0).getmFlag());
+        assertNull(records.get(0).getObsTime());
+        assertNull(binaryService.getStationData("USS0000MISS"));
+    }
+
+    @Test
+    void servesFilteredQueriesFromCachedStationUntilDataIsUpdated() throws Exception {
+        StationDataCache cache = new StationDataCache(1);
+        WeatherDataService service = ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir, cache);
+
+        assertEquals(6, service.getStationData("USW00094728").size());
+        Files.delete(binaryDir.resolve("USW00094728.bin"));
+
+        // Served from memory although the file is gone
+        assertEquals(3, service.getStationData("USW00094728", "TMAX", null, null).size());
+        assertEquals(2, service.getStationData("USW00094728", null, "20240102", "20240131").size());
+        Map<String, Object> stats = service.getCacheStats();
+        assertEquals(2L, stats.get("hits"));
+        assertEquals(1L, stats.get("misses"));
+        assertEquals(1L, stats.get("entries"));
+
+        cache.onStationDataUpdated(new StationDataUpdatedEvent(binaryDir));
+        assertNull(service.getStationData("USW00094728"));
+    }
+
+    @Test
+    void snapshotKeepsReadingItsVersionAfterASwitch() throws Exception {
+        WeatherDataService service = ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir);
+        DatasetHashes.of(Map.of("USW00094728", "old", "USC00000001", "old"), 1000).write(binaryDir, objectMapper);
+        ingest(GhcnBinaryEncoder::new, () -> new BinaryStationFileWriter(packedDir), packedDir);
+        Files.delete(packedDir.resolve("USC00000001.bin"));
+        DatasetHashes.of(Map.of("USW00094728", "new"), 2000).write(packedDir, objectMapper);
+
+        WeatherDataService.DatasetSnapshot snapshot = service.snapshot();
+        service.onStationDataUpdated(new StationDataUpdatedEvent(packedDir));
+
+        assertEquals("new", service.getStationHash("USW00094728"));
+        assertNull(service.selectStationData("USC00000001", null, null, null));
+        // Everything the request started with is still the old version's
+        assertEquals("old", snapshot.stationHash("USW00094728"));
+        assertEquals("old", snapshot.stationHash("USC00000001"));
+        assertEquals(1000, snapshot.hashes().createdAt());
+        assertEquals(7, snapshot.selectStationData("USC00000001", null, null, null).count());
+    }
+
+    @Test
+    void loadStartedBeforeVersionSwitchIsNotServedForNewVersion() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch switched = new CountDownLatch(1);
+        AtomicBoolean blockNextLoad = new AtomicBoolean(true);
+        // Holds the first load after it has resolved its directory until the version is switched
+        StationDataCache cache = new StationDataCache(1) {
+            @Override
+            public StationData get(String key, StationLoader loader) throws IOException {
+                return super.get(key, k -> {
+                    if (blockNextLoad.compareAndSet(true, false)) {
+                        loading.countDown();
+                        try {
+                            switched.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return loader.load(k);
+                });
+            }
+        };
+        WeatherDataService service = ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir, cache);
+        ingest(GhcnBinaryEncoder::new, () -> new BinaryStationFileWriter(packedDir), packedDir);
+        // The new version no longer has the station
+        Files.delete(packedDir.resolve("USW00094728.bin"));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<WeatherRecord>> inFlight = executor.submit(() -> service.getStationData("USW00094728"));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            cache.onStationDataUpdated(new StationDataUpdatedEvent(packedDir));
+            service.onStationDataUpdated(new StationDataUpdatedEvent(packedDir));
+            switched.countDown();
+
+            // The request that started on the old version is answered from it
+            assertEquals(6, inFlight.get(10, TimeUnit.SECONDS).size());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(packedDir, service.getDataDirectory());
+        assertNull(service.getStationData("USW00094728"));
+        assertEquals(7, service.getStationData("USC00000001").size());
+    }
+
+    @Test
+    void answersQueriesFromTheHotStoreOnceLoaded() throws Exception {
+        WeatherDataService fileService = ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir);
+        HotStationStore hotStore = new HotStationStore(1);
+        WeatherDataService hotService = ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(jsonDir), jsonDir, new StationDataCache(0), hotStore);
+        hotStore.load(List.of(jsonDir));
+        assertEquals(2, hotStore.getStats().get("stations"));
+        assertEquals(true, hotStore.getStats().get("loaded"));
+
+        // Served from the store although the files are gone
+        Files.delete(jsonDir.resolve("USW00094728.bin"));
+        Files.delete(jsonDir.resolve("USC00000001.bin"));
+        for (String stationId : List.of("USW00094728", "USC00000001")) {
+            for (String[] filter : new String[][] {{null, null, null}, {"TMAX", null, null}, {"tmin", "20240102", null}}) {
+                assertEquals(objectMapper.writeValueAsString(fileService.getStationData(stationId, filter[0], filter[1], filter[2])),
+                        objectMapper.writeValueAsString(hotService.getStationData(stationId, filter[0], filter[1], filter[2])));
+            }
+        }
+        assertNull(hotService.getStationData("USS0000MISS"));
+
+        // A dataset over the budget isn't loaded and the files are read as before
+        HotStationStore tooSmall = new HotStationStore(1);
+        ReflectionTestUtils.setField(tooSmall, "maxBytes", 64L);
+        tooSmall.load(List.of(binaryDir));
+        assertNull(tooSmall.get());
+        assertNotNull(tooSmall.getStats().get("lastError"));
+
+        // Nor is the previous store kept for a version it no longer serves
+        ReflectionTestUtils.setField(hotStore, "maxBytes", 64L);
+        hotStore.load(List.of(binaryDir));
+        assertNull(hotStore.get());
+        assertEquals(false, hotStore.getStats().get("loaded"));
+    }
+
+    @Test
+    void answersQueriesFromPackedSegments() throws Exception {
+        WeatherDataService fileService = ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(binaryDir), binaryDir);
+        WeatherDataService binaryService = ingest(GhcnBinaryEncoder::new,
+                () -> new BinaryStationFileWriter(packedDir), packedDir);
+        WeatherDataService jsonService = ingest(() -> new GhcnJsonEncoder(objectMapper),
+                () -> new StationFileWriter(jsonDir, 8192), jsonDir);
+        List<String> stationIds = List.of("USC00000001", "USW00094728");
+        // Segments this small take one file each
+        assertEquals(2, new StationSegmentWriter(packedDir, List.of(".bin", ".json.gz"), 64).pack(stationIds));
+        assertEquals(1, new StationSegmentWriter(jsonDir, List.of(".json"), 1024 * 1024).pack(stationIds));
+        assertTrue(Files.notExists(packedDir.resolve("USW00094728.bin")));
+        assertTrue(Files.notExists(jsonDir.resolve("USW00094728.json")));
+
+        StationSegments segments = StationSegments.open(packedDir);
+        assertEquals(2, segments.size());
+        assertEquals("USW00094728", segments.stationId(1));
+        assertNull(segments.range("USW00094728", ".json.gz"));
+        assertNull(segments.range("USW0009472", ".bin"));
+        assertNotNull(segments.read("USW00094728", ".bin"));
+        segments.close();
+        assertThrows(IOException.class, () -> segments.read("USW00094728", ".bin"));
+        for (String stationId : stationIds) {
+            for (String[] filter : new String[][] {{null, null, null}, {"TMAX", null, null}, {"tmin", "20240102", null}}) {
+                String expected = objectMapper.writeValueAsString(fileService.getStationData(stationId, filter[0], filter[1], filter[2]));
+                assertEquals(expected, objectMapper.writeValueAsString(binaryService.getStationData(stationId, filter[0], filter[1], filter[2])));
+                assertEquals(expected, objectMapper.writeValueAsString(jsonService.getStationData(stationId, filter[0], filter[1], filter[2])));
+            }
+        }
+        assertNull(binaryService.getStationData("USS0000MISS"));
+        assertNull(jsonService.getStationData("USS0000MISS"));
+
+        // Packing again, as a resumed ingest does, keeps the segments
+        assertEquals(2, new StationSegmentWriter(packedDir, List.of(".bin", ".json.gz"), 64).pack(stationIds));
+        assertEquals(6, binaryService.getStationData("USW00094728").size());
+    }
+
+    private WeatherDataService ingest(Supplier<RecordEncoder> encoder, Supplier<StationSink> output, Path dataDir) throws Exception {
+        return ingest(encoder, output, dataDir, new StationDataCache(0));
+    }
+
+    private WeatherDataService ingest(Supplier<RecordEncoder> encoder, Supplier<StationSink> output, Path dataDir,
+                                      StationDataCache cache) throws Exception {
+        return ingest(encoder, output, dataDir, cache, new HotStationStore(0));
+    }
+
+    private WeatherDataService ingest(Supplier<RecordEncoder> encoder, Supplier<StationSink> output, Path dataDir,
+                                      StationDataCache cache, HotStationStore hotStore) throws Exception {
+        new IngestPipeline(encoder,
+                shard -> new SortedStationWriter(runDir, "shard-" + shard, 1024 * 1024, 4, output, new AtomicInteger()),
+                2, 2, new AtomicLong())
+                .run(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.US_ASCII)), new IngestPipeline.Listener() {});
+
+        WeatherDataService service = new WeatherDataService(objectMapper, cache, hotStore);
+        ReflectionTestUtils.setField(service, "dataDir", dataDir.toString());
+        return service;
+    }
+}
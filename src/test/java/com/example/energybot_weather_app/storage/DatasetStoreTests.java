@@ -0,0 +1,81 @@
+package com.example.energybot_weather_app.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatasetStoreTests {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void publishesStagedVersionsAndKeepsThePreviousOne() throws Exception {
+        DatasetStore store = new DatasetStore(dataDir);
+        // Station files from before versioning
+        Files.writeString(dataDir.resolve("USC00000001.bin"), "old");
+        assertNull(store.getCurrentVersion());
+        assertNull(store.getCurrentDirectory());
+
+        String first = stage(store, 1_700_000_000_000L, "first");
+        Path firstDirectory = store.publish(first);
+        assertEquals(first, store.getCurrentVersion());
+        assertEquals(firstDirectory, store.getCurrentDirectory());
+        assertEquals("first", Files.readString(firstDirectory.resolve("USC00000001.bin")));
+        assertFalse(Files.exists(store.getStagingDirectory()));
+        assertFalse(Files.exists(dataDir.resolve("USC00000001.bin")));
+
+        String second = stage(store, 1_700_000_001_000L, "second");
+        // Until the switch, readers still get the first version
+        assertEquals(firstDirectory, store.getCurrentDirectory());
+        store.publish(second);
+        String third = stage(store, 1_700_000_002_000L, "third");
+        Path thirdDirectory = store.publish(third);
+
+        assertEquals(thirdDirectory, store.getCurrentDirectory());
+        assertEquals("third", Files.readString(thirdDirectory.resolve("USC00000001.bin")));
+        assertTrue(Files.isDirectory(store.getVersionDirectory(second)));
+        assertFalse(Files.exists(firstDirectory));
+        try (Stream<Path> files = Files.list(dataDir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void servesUnversionedStationFilesUntilThePublishAndRemovesOnlyThose() throws Exception {
+        DatasetStore store = new DatasetStore(dataDir);
+        assertFalse(store.hasUnversionedStations());
+        Files.writeString(dataDir.resolve("notes.txt"), "kept");
+        Files.writeString(dataDir.resolve(DatasetManifest.FILE_NAME), "{}");
+        assertFalse(store.hasUnversionedStations());
+        for (String file : List.of("USC00000001.json", "USC00000001.bin", "USC00000001.json.gz",
+                "USC00000001.summary", DatasetHashes.FILE_NAME)) {
+            Files.writeString(dataDir.resolve(file), "old");
+        }
+        assertTrue(store.hasUnversionedStations());
+
+        store.publish(stage(store, 1_700_000_000_000L, "first"));
+        assertFalse(store.hasUnversionedStations());
+        try (Stream<Path> files = Files.list(dataDir)) {
+            assertEquals(Set.of(DatasetStore.CURRENT_FILE, "versions", "notes.txt", DatasetManifest.FILE_NAME),
+                    files.map(path -> path.getFileName().toString()).collect(Collectors.toSet()));
+        }
+    }
+
+    private static String stage(DatasetStore store, long time, String content) throws Exception {
+        Files.createDirectories(store.getStagingDirectory());
+        Files.writeString(store.getStagingDirectory().resolve("USC00000001.bin"), content);
+        return DatasetStore.newVersion(time);
+    }
+}
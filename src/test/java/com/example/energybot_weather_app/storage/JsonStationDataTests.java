@@ -0,0 +1,105 @@
+package com.example.energybot_weather_app.storage;
+
+import com.example.energybot_weather_app.model.WeatherRecord;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonStationDataTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writesRecordsBackExactlyAsTheyWereRead() throws Exception {
+        List<WeatherRecord> records = new ArrayList<>(List.of(
+                record("USW00094728", "20240101", "TMAX", "122", null, null, "W", "2400"),
+                record("USW00094728", "20240101", "PRCP", "-9999", "T", "I", "7", null),
+                record("USW00094728", "20240102", "SNOW", "", null, null, "W", null),
+                record("USW00094728", "20240103", "TMAX", "-33", null, null, "W", "0700"),
+                // None of these come back the same from the columns, so they keep their records
+                record("USW00094728", "2024-01-04", "TMAX", "10", null, null, "W", null),
+                record("USW00094728", "20240105", "TMAX", "007", null, null, "W", null),
+                record("USW00094728", "20240106", "TMAX", "12", "XY", null, "W", "7"),
+                record("USW00094728", "20240107", "TMAX", null, null, null, null, null),
+                // A second station in the same file
+                record("USC00000001", "20240102", "tmax", "-20", null, null, "7", "0700")));
+        Path file = dir.resolve("USW00094728.json");
+        objectMapper.writeValue(file.toFile(), records);
+
+        JsonStationData fromFile = JsonStationData.read(file, objectMapper.getFactory());
+        JsonStationData fromRecords = new JsonStationData(records);
+        assertEquals(9, fromFile.size());
+
+        String[][] filters = {
+                {null, null, null},
+                {"TMAX", null, null},
+                {"prcp", null, null},
+                {null, "20240102", "20240103"},
+                {null, "2024-01-04", null},
+                {null, null, "202401"},
+                {"", "", ""},
+                {"TAVG", null, null},
+        };
+        for (String[] filter : filters) {
+            List<WeatherRecord> expected = records.stream().filter(record -> matches(record, filter)).toList();
+            for (JsonStationData data : List.of(fromFile, fromRecords)) {
+                StationSelection selection = data.select(filter[0], filter[1], filter[2]);
+                assertEquals(expected.size(), selection.count(), String.join(",", String.valueOf(filter[0])));
+                assertEquals(objectMapper.writeValueAsString(expected), writeJson(selection));
+                assertEquals(objectMapper.writeValueAsString(expected), objectMapper.writeValueAsString(selection.toRecords()));
+            }
+        }
+
+        List<String> visited = new ArrayList<>();
+        fromFile.visitValues((element, date, value, qFlag) -> visited.add(element + date + "=" + value + (char) qFlag));
+        assertEquals("PRCP20240101=-9999I", visited.get(1));
+        assertEquals("SNOW20240102=" + BinaryStationFormat.EMPTY_VALUE + (char) 0, visited.get(2));
+        assertEquals("TMAX20240105=7" + (char) 0, visited.get(5));
+
+        // 15 bytes a row in the columns, plus the rows kept as records
+        assertTrue(fromFile.estimatedBytes() < 4 * 400 + 9 * 17 + 1024, "estimated " + fromFile.estimatedBytes());
+    }
+
+    private String writeJson(StationSelection selection) throws Exception {
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(json)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartArray();
+            selection.writeJson(generator);
+            generator.writeEndArray();
+        }
+        return json.toString();
+    }
+
+    private static boolean matches(WeatherRecord record, String[] filter) {
+        return (filter[0] == null || filter[0].isEmpty() || filter[0].equalsIgnoreCase(record.getElement()))
+                && (filter[1] == null || filter[1].isEmpty() || record.getDate().compareTo(filter[1]) >= 0)
+                && (filter[2] == null || filter[2].isEmpty() || record.getDate().compareTo(filter[2]) <= 0);
+    }
+
+    private static WeatherRecord record(String stationId, String date, String element, String value,
+                                        String mFlag, String qFlag, String sFlag, String obsTime) {
+        WeatherRecord record = new WeatherRecord(stationId, date, element, value);
+        record.setmFlag(mFlag);
+        record.setqFlag(qFlag);
+        record.setsFlag(sFlag);
+        record.setObsTime(obsTime);
+        return record;
+    }
+}
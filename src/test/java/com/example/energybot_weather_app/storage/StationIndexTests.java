@@ -0,0 +1,111 @@
+package com.example.energybot_weather_app.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StationIndexTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsTheStationListAndFindsTheNearestStations() throws Exception {
+        Path file = Path.of(getClass().getResource("/ghcnd-stations-sample.txt").toURI());
+        StationIndex index = StationIndex.read(file, stationId -> true);
+        assertEquals(16, index.size());
+
+        StationIndex.Matches nearest = index.nearest(40.78, -73.97, 3);
+        assertArrayEquals(new String[] {"USW00094728", "USW00014732", "USC00000001"}, ids(index, nearest));
+        int centralPark = nearest.stations()[0];
+        assertEquals("NEW YORK CNTRL PK TWR", index.name(centralPark));
+        assertEquals("NY", index.state(centralPark));
+        assertEquals(39.6, index.elevation(centralPark));
+        assertEquals(0.14, nearest.distancesKm()[0], 0.01);
+        // Central Park to LaGuardia
+        assertEquals(7.5, nearest.distancesKm()[1], 0.1);
+
+        // Neighbors across the date line and over the pole
+        assertEquals("RSM00025563", ids(index, index.nearest(65, -179.5, 1))[0]);
+        assertEquals("FJ000091680", ids(index, index.nearest(-17, -179.9, 1))[0]);
+        assertEquals("NOE00100926", ids(index, index.nearest(89, -165, 1))[0]);
+
+        StationIndex.Matches within = index.withinRadius(40.78, -73.97, 25, 100);
+        assertEquals(Set.of("USW00094728", "USC00000001", "USW00014732", "USW00094789", "USW00014734"),
+                Set.of(ids(index, within)));
+        assertEquals(3, index.withinRadius(40.78, -73.97, 25, 3).size());
+        assertEquals(0, index.withinRadius(0, 0, 100, 10).size());
+        assertEquals(16, index.withinRadius(0, 0, 30_000, 100).size());
+
+        // Stations without data are left out, and the missing elevation marker is kept
+        StationIndex sample = StationIndex.read(file, stationId -> stationId.startsWith("USC"));
+        assertEquals(2, sample.size());
+        StationIndex.Matches albany = sample.nearest(42.6, -73.8, 1);
+        assertEquals("USC00000002", ids(sample, albany)[0]);
+        assertEquals(StationIndex.MISSING_ELEVATION, sample.elevation(albany.stations()[0]));
+    }
+
+    @Test
+    void matchesABruteForceSearch() throws Exception {
+        Random random = new Random(7);
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            // Clustered like real stations, with some spread over the whole globe
+            double lat = i % 4 == 0 ? random.nextDouble() * 180 - 90 : 35 + random.nextGaussian() * 5;
+            double lon = i % 4 == 0 ? random.nextDouble() * 360 - 180 : -95 + random.nextGaussian() * 10;
+            list.append(String.format(Locale.ROOT, "US%09d %8.4f %9.4f %6.1f %-2s %-30s%n",
+                    i, Math.max(-90, Math.min(90, lat)), Math.max(-180, Math.min(180, lon)), 100.0, "", "STATION " + i));
+        }
+        Path file = dir.resolve(StationIndex.FILE_NAME);
+        Files.writeString(file, list);
+        StationIndex index = StationIndex.read(file, stationId -> true);
+
+        for (int query = 0; query < 200; query++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            double[] distances = IntStream.range(0, index.size())
+                    .mapToDouble(station -> haversineKm(lat, lon, index.latitude(station), index.longitude(station)))
+                    .toArray();
+            Integer[] order = IntStream.range(0, index.size()).boxed().toArray(Integer[]::new);
+            Arrays.sort(order, Comparator.comparingDouble(station -> distances[station]));
+
+            StationIndex.Matches nearest = index.nearest(lat, lon, 8);
+            for (int i = 0; i < 8; i++) {
+                assertEquals(distances[order[i]], nearest.distancesKm()[i], 1e-6);
+            }
+
+            double radiusKm = random.nextDouble() * 2000;
+            long inside = Arrays.stream(distances).filter(distance -> distance <= radiusKm).count();
+            StationIndex.Matches within = index.withinRadius(lat, lon, radiusKm, index.size());
+            assertEquals(inside, within.size());
+            for (int i = 0; i < within.size(); i++) {
+                assertTrue(within.distancesKm()[i] <= radiusKm + 1e-6);
+                assertTrue(i == 0 || within.distancesKm()[i - 1] <= within.distancesKm()[i]);
+            }
+        }
+    }
+
+    private static String[] ids(StationIndex index, StationIndex.Matches matches) {
+        return Arrays.stream(matches.stations()).mapToObj(index::id).toArray(String[]::new);
+    }
+
+    private static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.pow(Math.sin(dLat / 2), 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.pow(Math.sin(dLon / 2), 2);
+        return 2 * StationIndex.EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}